@@ -0,0 +1,71 @@
+-- Бенчмарк поиска пользователей: lower(col) LIKE '%...%' без индексов и с GIN pg_trgm.
+--
+-- Запуск на dev окружении (docker-compose, сервис db-user):
+--   docker compose exec -T db-user psql -U user -d user_service < benchmark/user-search-trgm.sql
+--
+-- Скрипт работает с отдельной таблицей users_bench (структура как у users), боевую таблицу не трогает.
+-- Ожидаемая картина:
+--   до   - Parallel Seq Scan on users_bench, Filter: lower(first_name) ~~ '%...%', Rows Removed by Filter ~ все строки
+--   после - Bitmap Heap Scan on users_bench -> Bitmap Index Scan on idx_users_bench_*_trgm
+-- Для шаблонов короче 3 символов pg_trgm не извлекает триграммы, планировщик оставит seq scan - это ожидаемо.
+
+\timing on
+\set rows 3000000
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP TABLE IF EXISTS users_bench;
+CREATE TABLE users_bench (LIKE users INCLUDING DEFAULTS);
+
+INSERT INTO users_bench (id, user_uuid, first_name, last_name, patronymic, phone_number, email, created_at)
+SELECT g,
+       gen_random_uuid(),
+       (ARRAY['Alexander', 'Maria', 'Ivan', 'Elena', 'Dmitry', 'Olga', 'Sergey', 'Anna'])[1 + g % 8] || substr(md5(g::text), 1, 6),
+       (ARRAY['Ivanov', 'Petrova', 'Sidorov', 'Smirnova', 'Kuznetsov', 'Popova'])[1 + g % 6] || substr(md5(g::text), 7, 4),
+       (ARRAY['Sergeevich', 'Alexandrovna', 'Ivanovich', 'Dmitrievna'])[1 + g % 4] || substr(md5(g::text), 11, 4),
+       '79' || lpad((g % 1000000000)::text, 9, '0'),
+       substr(md5(g::text), 1, 10) || '@' || (ARRAY['gmail.com', 'example.com', 'mail.ru', 'yandex.ru'])[1 + g % 4],
+       now() - (g % 1000) * interval '1 day'
+FROM generate_series(1, :rows) AS g;
+
+ANALYZE users_bench;
+
+\echo '===== BEFORE: no search indexes ====='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(first_name) LIKE '%ria3f%' ORDER BY id LIMIT 20;
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(email) LIKE '%c4ca42%' ORDER BY id LIMIT 20;
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(*) FROM users_bench WHERE lower(patronymic) LIKE '%vna1f%';
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(last_name) = 'ivanovc4ca' ORDER BY id LIMIT 20;
+
+CREATE INDEX idx_users_bench_first_name_trgm ON users_bench USING gin (lower(first_name) gin_trgm_ops);
+CREATE INDEX idx_users_bench_patronymic_trgm ON users_bench USING gin (lower(patronymic) gin_trgm_ops);
+CREATE INDEX idx_users_bench_email_trgm ON users_bench USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX idx_users_bench_last_name_lower ON users_bench (lower(last_name));
+ANALYZE users_bench;
+
+\echo '===== AFTER: pg_trgm GIN + lower(last_name) btree ====='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(first_name) LIKE '%ria3f%' ORDER BY id LIMIT 20;
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(email) LIKE '%c4ca42%' ORDER BY id LIMIT 20;
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(*) FROM users_bench WHERE lower(patronymic) LIKE '%vna1f%';
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench WHERE lower(last_name) = 'ivanovc4ca' ORDER BY id LIMIT 20;
+
+\echo '===== AFTER: ranked search (rank=true) ====='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM users_bench
+WHERE lower(first_name) LIKE '%ria3f%'
+ORDER BY similarity(lower(first_name), 'ria3f') DESC, id
+LIMIT 20;
+
+\echo '===== index sizes ====='
+SELECT indexrelname, pg_size_pretty(pg_relation_size(indexrelid))
+FROM pg_stat_user_indexes
+WHERE relname = 'users_bench';
+
+DROP TABLE users_bench;
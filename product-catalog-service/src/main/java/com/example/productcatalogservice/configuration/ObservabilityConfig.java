@@ -0,0 +1,94 @@
+package com.example.productcatalogservice.configuration;
+
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import co.elastic.clients.transport.rest_client.SafeResponseConsumer;
+import com.example.productcatalogservice.observability.ElasticsearchClientMetrics;
+import com.example.productcatalogservice.observability.HibernateRequestMetricsFilter;
+import com.example.productcatalogservice.observability.HibernateRequestStatisticsIntegrator;
+import com.example.productcatalogservice.observability.SqlStatementBudgetFilter;
+import com.example.productcatalogservice.observability.SqlStatementBudgetProperties;
+import com.example.productcatalogservice.observability.SqlStatementCountingListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.elasticsearch.client.RestClientBuilder;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.jpa.boot.spi.JpaSettings;
+import org.springframework.boot.autoconfigure.elasticsearch.RestClientBuilderCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(SqlStatementBudgetProperties.class)
+public class ObservabilityConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateRequestStatisticsCustomizer() {
+        return properties -> properties.put(JpaSettings.INTEGRATOR_PROVIDER,
+                (IntegratorProvider) () -> List.of(new HibernateRequestStatisticsIntegrator()));
+    }
+
+    @Bean
+    public FilterRegistrationBean<HibernateRequestMetricsFilter> hibernateRequestMetricsFilter(
+            MeterRegistry meterRegistry) {
+        FilterRegistrationBean<HibernateRequestMetricsFilter> registration =
+                new FilterRegistrationBean<>(new HibernateRequestMetricsFilter(meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    /**
+     * datasource-micrometer сам добавляет бины QueryExecutionListener в прокси DataSource
+     */
+    @Bean
+    public SqlStatementCountingListener sqlStatementCountingListener() {
+        return new SqlStatementCountingListener();
+    }
+
+    @Bean
+    public FilterRegistrationBean<SqlStatementBudgetFilter> sqlStatementBudgetFilter(
+            MeterRegistry meterRegistry, SqlStatementBudgetProperties properties) {
+        FilterRegistrationBean<SqlStatementBudgetFilter> registration =
+                new FilterRegistrationBean<>(new SqlStatementBudgetFilter(meterRegistry, properties));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 11);
+        return registration;
+    }
+
+    @Bean
+    public ElasticsearchClientMetrics elasticsearchClientMetrics(MeterRegistry meterRegistry) {
+        return new ElasticsearchClientMetrics(meterRegistry);
+    }
+
+    @Bean
+    public RestClientBuilderCustomizer elasticsearchClientMetricsCustomizer(ElasticsearchClientMetrics metrics) {
+        return new RestClientBuilderCustomizer() {
+            @Override
+            public void customize(RestClientBuilder builder) {
+            }
+
+            @Override
+            public void customize(HttpAsyncClientBuilder builder) {
+                builder.addInterceptorFirst((HttpRequestInterceptor) metrics);
+                builder.addInterceptorLast((HttpResponseInterceptor) metrics);
+            }
+        };
+    }
+
+    /**
+     * Boot передает этот бин в RestClientTransport. Базой служат опции клиента по умолчанию (SafeResponseConsumer),
+     * поверх них consumer'ы оборачиваются, чтобы запросы без ответа попадали в метрику со status=IO_ERROR
+     */
+    @Bean
+    public RestClientOptions elasticsearchRestClientOptions(ElasticsearchClientMetrics metrics) {
+        return new RestClientOptions.Builder(SafeResponseConsumer.DEFAULT_REQUEST_OPTIONS.toBuilder()
+                .setHttpAsyncResponseConsumerFactory(metrics.responseConsumerFactory(SafeResponseConsumer.DEFAULT_FACTORY)))
+                .build();
+    }
+}
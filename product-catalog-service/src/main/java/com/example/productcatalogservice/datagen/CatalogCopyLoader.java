@@ -0,0 +1,225 @@
+package com.example.productcatalogservice.datagen;
+
+import com.example.productcatalogservice.datagen.CatalogModel.FeedbackSpec;
+import com.example.productcatalogservice.datagen.CatalogModel.ProductSpec;
+import com.example.productcatalogservice.entity.Attribute;
+import com.example.productcatalogservice.entity.AttributeValue;
+import com.example.productcatalogservice.entity.Brand;
+import com.example.productcatalogservice.entity.Category;
+import com.example.productcatalogservice.entity.Feedback;
+import com.example.productcatalogservice.util.LogMarker;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Запись {@link CatalogModel} в Postgres через COPY. Справочники пишутся одной транзакцией, товары - чанками
+ * по {@code chunkSize} параллельно в {@code parallelism} потоков. Каждый чанк - своя транзакция с COPY в products,
+ * product_categories, product_attribute_values, inventory и feedbacks; вставка через COPY на порядки быстрее JPA
+ * и batch INSERT, 10 млн товаров загружаются за десятки минут вместо суток.
+ * <p>
+ * Id справочников и товаров задаются явно, после загрузки identity последовательности сдвигаются на max(id),
+ * чтобы сервис мог дальше создавать сущности обычным путем. Используется генератором (профиль datagen)
+ * и тестами, которым нужен каталог реалистичного размера.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CatalogCopyLoader {
+    private static final List<String> TABLES = List.of("feedbacks", "inventory", "product_attribute_values",
+            "custom_attributes", "product_categories", "products", "attribute_values", "attributes", "categories", "brands");
+    private static final List<String> EXPLICIT_ID_TABLES = List.of("brands", "categories", "attributes",
+            "attribute_values", "products");
+
+    private final DataSource dataSource;
+    private final DataGeneratorProperties properties;
+
+    /**
+     * @param onChunkCommitted вызывается в потоке загрузки после коммита каждого чанка товаров
+     */
+    public void load(CatalogModel model, Consumer<List<ProductSpec>> onChunkCommitted) throws SQLException, IOException,
+            InterruptedException {
+        prepareTables();
+        writeDictionaries(model);
+        writeProducts(model, onChunkCommitted);
+        finishTables();
+    }
+
+    private void prepareTables() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            if (properties.truncate()) {
+                statement.execute("TRUNCATE " + String.join(", ", TABLES) + " RESTART IDENTITY CASCADE");
+                return;
+            }
+            for (String table : TABLES) {
+                try (ResultSet rs = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + table + ")")) {
+                    rs.next();
+                    if (rs.getBoolean(1)) {
+                        throw new IllegalStateException("Table %s is not empty, run with catalog.datagen.truncate=true".formatted(table));
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeDictionaries(CatalogModel model) throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (CopyWriter copy = new CopyWriter(connection, "brands", "id, version, name, slug, description, public_id, is_active, created_at")) {
+                for (Brand brand : model.brands()) {
+                    copy.value(brand.getId()).value(brand.getVersion()).value(brand.getName()).value(brand.getSlug())
+                            .value(brand.getDescription()).value(brand.getPublicId()).value(brand.getIsActive())
+                            .value(brand.getCreatedAt()).endRow();
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "categories", "id, version, name, public_id, slug, description, parent_id, is_active, created_at")) {
+                for (Category category : model.categories()) {
+                    copy.value(category.getId()).value(category.getVersion()).value(category.getName())
+                            .value(category.getPublicId()).value(category.getSlug()).value(category.getDescription())
+                            .value(category.getParent() == null ? null : category.getParent().getId())
+                            .value(category.getIsActive()).value(category.getCreatedAt()).endRow();
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "attributes", "id, version, name, slug, public_id, filterable, is_active, created_at")) {
+                for (Attribute attribute : model.attributes()) {
+                    copy.value(attribute.getId()).value(attribute.getVersion()).value(attribute.getName())
+                            .value(attribute.getSlug()).value(attribute.getPublicId()).value(attribute.getFilterable())
+                            .value(attribute.getIsActive()).value(attribute.getCreatedAt()).endRow();
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "attribute_values", "id, version, attribute_id, public_id, value, slug, is_active")) {
+                for (Attribute attribute : model.attributes()) {
+                    for (AttributeValue value : attribute.getValues()) {
+                        copy.value(value.getId()).value(value.getVersion()).value(attribute.getId())
+                                .value(value.getPublicId()).value(value.getValue()).value(value.getSlug())
+                                .value(value.getIsActive()).endRow();
+                    }
+                }
+                copy.finish();
+            }
+
+            connection.commit();
+        }
+        log.info(LogMarker.AUDIT.getMarker(), "service=Data-Generator | action=writeDictionaries | brands={} | categories={} | attributes={}",
+                model.brands().size(), model.categories().size(), model.attributes().size());
+    }
+
+    private void writeProducts(CatalogModel model, Consumer<List<ProductSpec>> onChunkCommitted) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(properties.parallelism());
+        AtomicLong written = new AtomicLong();
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (long from = 1; from <= properties.products(); from += properties.chunkSize()) {
+                long chunkFrom = from;
+                long chunkTo = Math.min(from + properties.chunkSize() - 1, properties.products());
+                chunks.add(executor.submit(() -> {
+                    List<ProductSpec> specs = new ArrayList<>((int) (chunkTo - chunkFrom + 1));
+                    for (long id = chunkFrom; id <= chunkTo; id++) {
+                        specs.add(model.product(id));
+                    }
+                    writeChunk(specs);
+                    onChunkCommitted.accept(specs);
+                    long total = written.addAndGet(specs.size());
+                    double seconds = (System.nanoTime() - started) / 1e9;
+                    log.info(LogMarker.AUDIT.getMarker(), "service=Data-Generator | action=writeChunk | from={} | to={} | total={} | productsPerSecond={}",
+                            chunkFrom, chunkTo, total, Math.round(total / seconds));
+                    return null;
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (ExecutionException exception) {
+            log.error(LogMarker.ERROR.getMarker(), "service=Data-Generator | CHUNK FAILED | written={} | error={}",
+                    written.get(), exception.getCause().getMessage());
+            throw new IllegalStateException("Catalog generation failed", exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeChunk(List<ProductSpec> specs) throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (CopyWriter copy = new CopyWriter(connection, "products", "id, version, stock_keeping_unit, name, brand_id, public_id, " +
+                    "primary_category_id, description, long_description, base_price, currency, is_active, is_available, " +
+                    "wight_kg, length_cm, width_cm, height_cm, rating_count, rating, created_at")) {
+                for (ProductSpec spec : specs) {
+                    copy.value(spec.id()).value(0).value(spec.sku()).value(spec.name()).value(spec.brand().getId())
+                            .value(spec.publicId()).value(spec.primaryCategory().getId()).value(spec.description())
+                            .value(spec.longDescription()).value(spec.basePrice()).value("RUB").value(true)
+                            .value(spec.quantity() > 0).value(spec.weightKg()).value(spec.lengthCm()).value(spec.widthCm())
+                            .value(spec.heightCm()).value(spec.ratingCount()).value(spec.rating()).value(spec.createdAt())
+                            .endRow();
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "product_categories", "product_id, category_id")) {
+                for (ProductSpec spec : specs) {
+                    for (Category category : spec.categories()) {
+                        copy.value(spec.id()).value(category.getId()).endRow();
+                    }
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "product_attribute_values", "version, public_id, product_id, attribute_value_id")) {
+                for (ProductSpec spec : specs) {
+                    for (int i = 0; i < spec.attributeValues().size(); i++) {
+                        copy.value(0).value(spec.attributeValuePublicIds().get(i)).value(spec.id())
+                                .value(spec.attributeValues().get(i).getId()).endRow();
+                    }
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "inventory", "version, public_id, product_id, quantity, low_stock_threshold, created_at")) {
+                for (ProductSpec spec : specs) {
+                    copy.value(0).value(spec.inventoryPublicId()).value(spec.id()).value(spec.quantity())
+                            .value(spec.lowStockThreshold()).value(spec.createdAt()).endRow();
+                }
+                copy.finish();
+            }
+            try (CopyWriter copy = new CopyWriter(connection, "feedbacks", "version, public_id, user_public_id, description, estimation, product_id, feedback_status, create_at")) {
+                for (ProductSpec spec : specs) {
+                    for (FeedbackSpec feedback : spec.feedbacks()) {
+                        copy.value(0).value(feedback.publicId()).value(feedback.userPublicId()).value(feedback.description())
+                                .value(feedback.estimation()).value(spec.id()).value(Feedback.FeedbackStatus.APPROVED)
+                                .value(feedback.createdAt()).endRow();
+                    }
+                }
+                copy.finish();
+            }
+
+            connection.commit();
+        }
+    }
+
+    private void finishTables() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String table : EXPLICIT_ID_TABLES) {
+                statement.execute("SELECT setval(pg_get_serial_sequence('%1$s', 'id'), (SELECT COALESCE(MAX(id), 0) + 1 FROM %1$s), false)"
+                        .formatted(table));
+            }
+            // Статистика планировщика сразу после массовой загрузки, не дожидаясь autovacuum
+            statement.execute("ANALYZE " + String.join(", ", TABLES));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.productcatalogservice.datagen;
+
+import com.example.productcatalogservice.datagen.CatalogModel.ProductSpec;
+import com.example.productcatalogservice.elastic_document.ProductDoc;
+import com.example.productcatalogservice.util.LogMarker;
+import com.example.productcatalogservice.util.mapper.ProductDocumentMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Заполняет базу (и опционально индекс product_v1) синтетическим каталогом из {@link CatalogModel} и завершает
+ * приложение. Запускается профилем datagen, например:
+ * <pre>
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev,datagen \
+ *     -Dspring-boot.run.arguments="--catalog.datagen.products=10000000 --catalog.datagen.truncate=true"
+ * </pre>
+ * Запись в Postgres - {@link CatalogCopyLoader}, индексация идет после коммита каждого чанка.
+ */
+@Slf4j
+@Component
+@Profile("datagen")
+@RequiredArgsConstructor
+@EnableConfigurationProperties(DataGeneratorProperties.class)
+public class CatalogDataGenerator implements ApplicationRunner {
+    private static final IndexCoordinates PRODUCT_INDEX = IndexCoordinates.of("product_v1");
+
+    private final DataGeneratorProperties properties;
+    private final DataSource dataSource;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ProductDocumentMapper productDocumentMapper;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        long started = System.nanoTime();
+        log.info(LogMarker.AUDIT.getMarker(), "service=Data-Generator | action=start | products={} | brands={} | attributes={} | seed={} | index={}",
+                properties.products(), properties.brands(), properties.attributes(), properties.seed(), properties.index());
+
+        CatalogModel model = new CatalogModel(properties);
+        new CatalogCopyLoader(dataSource, properties).load(model, specs -> {
+            if (properties.index()) {
+                indexChunk(model, specs);
+            }
+        });
+        if (properties.index()) {
+            elasticsearchOperations.indexOps(PRODUCT_INDEX).refresh();
+        }
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=Data-Generator | action=finish | products={} | seconds={}",
+                properties.products(), (System.nanoTime() - started) / 1_000_000_000);
+        SpringApplication.exit(applicationContext, () -> 0);
+    }
+
+    /**
+     * Индексирует уже закоммиченный чанк: документ строится {@link ProductDocumentMapper} из несохраняемых сущностей
+     */
+    private void indexChunk(CatalogModel model, List<ProductSpec> specs) {
+        List<IndexQuery> batch = new ArrayList<>(properties.indexBatchSize());
+        for (ProductSpec spec : specs) {
+            ProductDoc doc = productDocumentMapper.toProduct(model.toProduct(spec), Optional.of(model.toInventory(spec)));
+            batch.add(new IndexQueryBuilder().withId(String.valueOf(spec.id())).withObject(doc).build());
+            if (batch.size() == properties.indexBatchSize()) {
+                elasticsearchOperations.bulkIndex(batch, PRODUCT_INDEX);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            elasticsearchOperations.bulkIndex(batch, PRODUCT_INDEX);
+        }
+    }
+}
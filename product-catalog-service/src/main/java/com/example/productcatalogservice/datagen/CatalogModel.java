@@ -0,0 +1,365 @@
+package com.example.productcatalogservice.datagen;
+
+import com.example.productcatalogservice.entity.Attribute;
+import com.example.productcatalogservice.entity.AttributeValue;
+import com.example.productcatalogservice.entity.Brand;
+import com.example.productcatalogservice.entity.Category;
+import com.example.productcatalogservice.entity.Inventory;
+import com.example.productcatalogservice.entity.Product;
+import com.example.productcatalogservice.entity.ProductAttributeValue;
+import com.example.productcatalogservice.util.mapper.SlugMapper;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Синтетический каталог: справочники (бренды, дерево категорий, атрибуты со значениями) строятся целиком,
+ * товары - по одному из их id. Каждый товар генерируется собственным {@link SplittableRandom} от seed и id,
+ * поэтому результат не зависит от размера чанка и количества потоков, а любой товар можно пересоздать отдельно.
+ * <p>
+ * Популярность брендов, листовых категорий, атрибутов и значений атрибутов распределена по Ципфу: несколько
+ * значений встречаются в большинстве товаров, длинный хвост - редко. Так выглядят реальные фильтры каталога,
+ * и на таких данных видны проблемы селективности индексов.
+ * <p>
+ * Id выдаются с 1 подряд, поэтому загружать модель можно только в пустые таблицы.
+ */
+public final class CatalogModel {
+    static final OffsetDateTime EPOCH = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int HISTORY_DAYS = 730;
+    private static final long PRODUCT_SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final String[] SYLLABLES = {"ar", "bel", "cor", "dan", "el", "fin", "gar", "hol", "ix", "jor",
+            "kel", "lum", "mar", "nor", "ost", "pra", "qua", "ren", "sol", "tor", "ul", "ven", "wex", "yor", "zen"};
+    private static final String[] ADJECTIVES = {"Compact", "Classic", "Smart", "Pro", "Ultra", "Eco", "Portable",
+            "Wireless", "Premium", "Basic", "Mini", "Max", "Silent", "Turbo", "Light", "Heavy", "Digital", "Modular"};
+    private static final String[] NOUNS = {"Kettle", "Headphones", "Backpack", "Lamp", "Chair", "Jacket", "Drill",
+            "Blender", "Monitor", "Keyboard", "Sneakers", "Watch", "Tent", "Speaker", "Router", "Mixer", "Camera",
+            "Bicycle", "Vacuum", "Heater", "Mug", "Knife", "Pillow", "Scooter"};
+    private static final String[] ATTRIBUTES = {"Color", "Material", "Size", "Power", "Weight class", "Country",
+            "Warranty", "Capacity", "Connectivity", "Season", "Gender", "Style"};
+    private static final String[] TEXT = {"durable", "reliable", "lightweight", "comfortable", "stylish", "quiet",
+            "efficient", "easy", "to", "use", "for", "home", "office", "travel", "everyday", "with", "and", "the",
+            "best", "quality", "design", "materials", "warranty", "included", "perfect", "gift", "new", "model"};
+
+    private final DataGeneratorProperties properties;
+    private final List<Brand> brands;
+    private final List<Category> categories;
+    private final List<Category> leaves;
+    private final List<Attribute> attributes;
+    private final ZipfDistribution brandPopularity;
+    private final ZipfDistribution leafPopularity;
+    private final ZipfDistribution attributePopularity;
+    private final ZipfDistribution valuePopularity;
+
+    /**
+     * Отзыв товара, оценка 1-5
+     */
+    public record FeedbackSpec(UUID publicId, UUID userPublicId, int estimation, String description,
+                               OffsetDateTime createdAt) {
+    }
+
+    /**
+     * Товар со всеми зависимыми строками: категории (лист и его предки), значения атрибутов, склад и отзывы.
+     * Рейтинг и количество оценок согласованы с отзывами.
+     */
+    public record ProductSpec(long id, UUID publicId, String sku, String name, String description,
+                              String longDescription, Brand brand, Category primaryCategory, List<Category> categories,
+                              List<AttributeValue> attributeValues, List<UUID> attributeValuePublicIds,
+                              BigDecimal basePrice, double weightKg, double lengthCm, double widthCm, double heightCm,
+                              UUID inventoryPublicId, int quantity, int lowStockThreshold,
+                              List<FeedbackSpec> feedbacks, Double rating, OffsetDateTime createdAt) {
+
+        public long ratingCount() {
+            return feedbacks.size();
+        }
+    }
+
+    public CatalogModel(DataGeneratorProperties properties) {
+        this.properties = properties;
+        SplittableRandom random = new SplittableRandom(properties.seed());
+        this.brands = buildBrands(random);
+        this.categories = new ArrayList<>();
+        this.leaves = new ArrayList<>();
+        buildCategories(random);
+        this.attributes = buildAttributes(random);
+        this.brandPopularity = new ZipfDistribution(brands.size(), properties.zipfExponent());
+        this.leafPopularity = new ZipfDistribution(leaves.size(), properties.zipfExponent());
+        this.attributePopularity = new ZipfDistribution(attributes.size(), properties.zipfExponent());
+        this.valuePopularity = new ZipfDistribution(properties.valuesPerAttribute(), properties.zipfExponent());
+    }
+
+    public List<Brand> brands() {
+        return brands;
+    }
+
+    /**
+     * Категории в порядке обхода в ширину: родитель всегда раньше детей
+     */
+    public List<Category> categories() {
+        return categories;
+    }
+
+    public List<Attribute> attributes() {
+        return attributes;
+    }
+
+    public ProductSpec product(long id) {
+        SplittableRandom random = new SplittableRandom(properties.seed() * PRODUCT_SEED_GAMMA + id);
+
+        Brand brand = brands.get(brandPopularity.sample(random));
+        Category leaf = leaves.get(leafPopularity.sample(random));
+        List<Category> path = new ArrayList<>();
+        for (Category category = leaf; category != null; category = category.getParent()) {
+            path.add(category);
+        }
+
+        int valueCount = Math.min(properties.attributesPerProduct(), attributes.size());
+        Set<Integer> chosenAttributes = new LinkedHashSet<>();
+        // Популярные атрибуты выпадают чаще, после нескольких повторов добираем равномерно, чтобы не зациклиться
+        for (int attempt = 0; chosenAttributes.size() < valueCount; attempt++) {
+            chosenAttributes.add(attempt < valueCount * 4
+                    ? attributePopularity.sample(random)
+                    : random.nextInt(attributes.size()));
+        }
+        List<AttributeValue> values = new ArrayList<>(valueCount);
+        List<UUID> valuePublicIds = new ArrayList<>(valueCount);
+        for (int attribute : chosenAttributes) {
+            values.add(attributes.get(attribute).getValues().get(valuePopularity.sample(random)));
+            valuePublicIds.add(uuid(random));
+        }
+
+        String noun = NOUNS[random.nextInt(NOUNS.length)];
+        String name = "%s %s %s %s-%d".formatted(brand.getName(), ADJECTIVES[random.nextInt(ADJECTIVES.length)], noun,
+                Character.toString('A' + random.nextInt(26)), 100 + random.nextInt(900));
+        // Логнормальная цена: медиана около 1100, хвост до сотен тысяч
+        BigDecimal price = BigDecimal.valueOf(Math.max(10, Math.exp(7 + 1.2 * gaussian(random))))
+                .setScale(2, RoundingMode.HALF_UP);
+        OffsetDateTime createdAt = EPOCH.plusMinutes(random.nextLong(HISTORY_DAYS * 24L * 60));
+
+        int feedbackCount = geometric(random, properties.feedbacksPerProduct());
+        List<FeedbackSpec> feedbacks = new ArrayList<>(feedbackCount);
+        long estimationSum = 0;
+        for (int i = 0; i < feedbackCount; i++) {
+            int estimation = estimation(random);
+            estimationSum += estimation;
+            feedbacks.add(new FeedbackSpec(uuid(random), uuid(random), estimation, text(random, 8, 40),
+                    createdAt.plusMinutes(1 + random.nextLong(HISTORY_DAYS * 24L * 60))));
+        }
+        Double rating = feedbackCount == 0 ? null : Math.round(estimationSum * 100.0 / feedbackCount) / 100.0;
+
+        return new ProductSpec(
+                id,
+                uuid(random),
+                "SKU-%s-%010d".formatted(noun.substring(0, 3).toUpperCase(), id),
+                name,
+                text(random, 6, 20),
+                text(random, 40, 160),
+                brand,
+                leaf,
+                path,
+                values,
+                valuePublicIds,
+                price,
+                round(0.1 + random.nextDouble() * 25),
+                round(5 + random.nextDouble() * 120),
+                round(5 + random.nextDouble() * 80),
+                round(2 + random.nextDouble() * 60),
+                uuid(random),
+                random.nextInt(10) == 0 ? 0 : random.nextInt(1, 500),
+                random.nextInt(3, 15),
+                feedbacks,
+                rating,
+                createdAt);
+    }
+
+    /**
+     * Несохраняемая сущность товара для {@code ProductDocumentMapper}: документ в индексе получается тем же
+     * кодом, что и при обычной индексации
+     */
+    public Product toProduct(ProductSpec spec) {
+        Product product = Product.builder()
+                .id(spec.id())
+                .version(0L)
+                .publicId(spec.publicId())
+                .sku(spec.sku())
+                .name(spec.name())
+                .description(spec.description())
+                .longDescription(spec.longDescription())
+                .brand(spec.brand())
+                .primaryCategory(spec.primaryCategory())
+                .categories(new LinkedHashSet<>(spec.categories()))
+                .basePrice(spec.basePrice())
+                .isActive(true)
+                .isAvailable(spec.quantity() > 0)
+                .weightKg(spec.weightKg())
+                .lengthCm(spec.lengthCm())
+                .widthCm(spec.widthCm())
+                .heightCm(spec.heightCm())
+                .ratingCount(spec.ratingCount())
+                .rating(spec.rating())
+                .createdAt(spec.createdAt())
+                .build();
+        for (int i = 0; i < spec.attributeValues().size(); i++) {
+            product.getAttributeValues().add(ProductAttributeValue.builder()
+                    .publicId(spec.attributeValuePublicIds().get(i))
+                    .product(product)
+                    .attributeValue(spec.attributeValues().get(i))
+                    .build());
+        }
+        return product;
+    }
+
+    public Inventory toInventory(ProductSpec spec) {
+        return Inventory.builder()
+                .publicId(spec.inventoryPublicId())
+                .quantity(spec.quantity())
+                .lowStockThreshold(spec.lowStockThreshold())
+                .build();
+    }
+
+    private List<Brand> buildBrands(SplittableRandom random) {
+        Set<String> names = new HashSet<>();
+        List<Brand> result = new ArrayList<>(properties.brands());
+        for (int i = 0; i < properties.brands(); i++) {
+            String name = capitalize(SYLLABLES[random.nextInt(SYLLABLES.length)] + SYLLABLES[random.nextInt(SYLLABLES.length)]
+                    + (random.nextBoolean() ? SYLLABLES[random.nextInt(SYLLABLES.length)] : ""));
+            if (!names.add(name)) {
+                name = name + " " + (i + 1);
+                names.add(name);
+            }
+            result.add(Brand.builder()
+                    .id(i + 1L)
+                    .version(0L)
+                    .name(name)
+                    .slug(SlugMapper.from(name))
+                    .description(text(random, 5, 15))
+                    .publicId(uuid(random))
+                    .isActive(true)
+                    .createdAt(EPOCH)
+                    .build());
+        }
+        return result;
+    }
+
+    private void buildCategories(SplittableRandom random) {
+        List<Category> level = new ArrayList<>();
+        level.add(null);
+        for (int depth = 1; depth <= properties.categoryDepth(); depth++) {
+            List<Category> next = new ArrayList<>();
+            for (Category parent : level) {
+                for (int child = 1; child <= properties.categoryBranching(); child++) {
+                    String path = (parent == null ? "" : parent.getSlug().substring("category-".length()) + ".") + child;
+                    Category category = Category.builder()
+                            .id(categories.size() + 1L)
+                            .version(0L)
+                            .name(NOUNS[random.nextInt(NOUNS.length)] + " " + path)
+                            .slug("category-" + path)
+                            .description(text(random, 5, 15))
+                            .publicId(uuid(random))
+                            .parent(parent)
+                            .isActive(true)
+                            .createdAt(EPOCH)
+                            .build();
+                    categories.add(category);
+                    next.add(category);
+                }
+            }
+            level = next;
+        }
+        leaves.addAll(level);
+    }
+
+    private List<Attribute> buildAttributes(SplittableRandom random) {
+        List<Attribute> result = new ArrayList<>(properties.attributes());
+        long valueId = 1;
+        for (int i = 0; i < properties.attributes(); i++) {
+            String name = i < ATTRIBUTES.length ? ATTRIBUTES[i] : "Attribute " + (i + 1);
+            Attribute attribute = Attribute.builder()
+                    .id(i + 1L)
+                    .version(0L)
+                    .name(name)
+                    .slug(SlugMapper.from(name))
+                    .publicId(uuid(random))
+                    .filterable(i < properties.attributes() / 2)
+                    .isActive(true)
+                    .createdAt(EPOCH)
+                    .build();
+            for (int j = 1; j <= properties.valuesPerAttribute(); j++) {
+                attribute.getValues().add(AttributeValue.builder()
+                        .id(valueId++)
+                        .version(0L)
+                        .attribute(attribute)
+                        .publicId(uuid(random))
+                        .value(name + " " + j)
+                        .slug(attribute.getSlug() + "-" + j)
+                        .isActive(true)
+                        .build());
+            }
+            result.add(attribute);
+        }
+        return result;
+    }
+
+    /**
+     * Оценки смещены к 4-5, как в реальных отзывах: 5% / 5% / 10% / 30% / 50%
+     */
+    private static int estimation(SplittableRandom random) {
+        int point = random.nextInt(100);
+        if (point < 5) return 1;
+        if (point < 10) return 2;
+        if (point < 20) return 3;
+        if (point < 50) return 4;
+        return 5;
+    }
+
+    /**
+     * Геометрическое распределение со средним {@code mean}: у большинства товаров мало отзывов, у немногих - много
+     */
+    private static int geometric(SplittableRandom random, int mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        double p = 1.0 / (mean + 1);
+        return (int) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static String text(SplittableRandom random, int minWords, int maxWords) {
+        int words = random.nextInt(minWords, maxWords + 1);
+        StringBuilder text = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(TEXT[random.nextInt(TEXT.length)]);
+        }
+        return capitalize(text.toString()) + ".";
+    }
+
+    private static UUID uuid(SplittableRandom random) {
+        // Версия 4, вариант RFC 4122 - как у UUID.randomUUID()
+        long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long least = (random.nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+        return new UUID(most, least);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String capitalize(String value) {
+        return Character.toUpperCase(value.charAt(0)) + value.substring(1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.productcatalogservice.datagen;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Построчная запись в {@code COPY table (columns) FROM STDIN} в текстовом формате Postgres:
+ * значения через табуляцию, {@code \N} - null, спецсимволы экранируются обратным слешем.
+ * Строки копятся в буфере драйвера и уходят на сервер пачками, без round-trip на каждую строку.
+ */
+final class CopyWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSXXX");
+
+    private final PGCopyOutputStream output;
+    private final StringBuilder row = new StringBuilder(512);
+    private boolean firstValue = true;
+
+    CopyWriter(Connection connection, String table, String columns) throws SQLException {
+        this.output = new PGCopyOutputStream(connection.unwrap(PGConnection.class),
+                "COPY " + table + " (" + columns + ") FROM STDIN", BUFFER_SIZE);
+    }
+
+    CopyWriter value(Object value) {
+        if (!firstValue) {
+            row.append('\t');
+        }
+        firstValue = false;
+        if (value == null) {
+            row.append("\\N");
+        } else if (value instanceof OffsetDateTime timestamp) {
+            row.append(TIMESTAMP.format(timestamp));
+        } else {
+            escape(value.toString());
+        }
+        return this;
+    }
+
+    void endRow() throws IOException {
+        row.append('\n');
+        output.write(row.toString().getBytes(StandardCharsets.UTF_8));
+        row.setLength(0);
+        firstValue = true;
+    }
+
+    /**
+     * Завершает COPY
+     *
+     * @return количество записанных строк по данным сервера
+     */
+    long finish() throws SQLException {
+        return output.endCopy();
+    }
+
+    /**
+     * Отменяет COPY, если {@link #finish()} не был вызван (ошибка посреди записи)
+     */
+    @Override
+    public void close() throws SQLException {
+        if (output.isActive()) {
+            output.cancelCopy();
+        }
+    }
+
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+    }
+}
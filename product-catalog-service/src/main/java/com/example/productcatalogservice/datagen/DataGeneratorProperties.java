@@ -0,0 +1,43 @@
+package com.example.productcatalogservice.datagen;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Параметры генератора синтетического каталога, {@code catalog.datagen.*}.
+ * Одинаковые параметры и seed дают один и тот же каталог, поэтому замеры на разных машинах сравнимы.
+ *
+ * @param brands количество брендов
+ * @param categoryDepth глубина дерева категорий, товары привязываются к листьям
+ * @param categoryBranching количество детей у каждой не листовой категории
+ * @param attributes количество атрибутов (цвет, материал...)
+ * @param valuesPerAttribute количество значений у каждого атрибута
+ * @param zipfExponent показатель распределения Ципфа для популярности брендов, категорий, атрибутов и значений
+ * @param products количество товаров
+ * @param attributesPerProduct сколько значений атрибутов у товара (K)
+ * @param feedbacksPerProduct среднее количество отзывов на товар
+ * @param chunkSize товаров в одной транзакции COPY
+ * @param parallelism сколько чанков грузится одновременно
+ * @param seed seed генератора
+ * @param truncate очистить таблицы каталога перед загрузкой, иначе на непустой базе генератор падает
+ * @param index проиндексировать товары в Elasticsearch после загрузки чанка
+ * @param indexBatchSize документов в одном bulk запросе
+ */
+@ConfigurationProperties("catalog.datagen")
+public record DataGeneratorProperties(
+        @DefaultValue("500") int brands,
+        @DefaultValue("3") int categoryDepth,
+        @DefaultValue("6") int categoryBranching,
+        @DefaultValue("100") int attributes,
+        @DefaultValue("40") int valuesPerAttribute,
+        @DefaultValue("1.07") double zipfExponent,
+        @DefaultValue("100000") long products,
+        @DefaultValue("6") int attributesPerProduct,
+        @DefaultValue("4") int feedbacksPerProduct,
+        @DefaultValue("5000") int chunkSize,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("42") long seed,
+        @DefaultValue("false") boolean truncate,
+        @DefaultValue("false") boolean index,
+        @DefaultValue("1000") int indexBatchSize) {
+}
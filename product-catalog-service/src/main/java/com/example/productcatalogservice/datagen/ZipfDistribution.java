@@ -0,0 +1,41 @@
+package com.example.productcatalogservice.datagen;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Распределение Ципфа на рангах {@code [0, size)}: вероятность ранга k пропорциональна {@code 1 / (k + 1)^exponent}.
+ * Функция распределения считается один раз, выборка - бинарный поиск, O(log size).
+ */
+public final class ZipfDistribution {
+    private final double[] cumulative;
+
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Zipf distribution size must be positive: " + size);
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    public int sample(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.productcatalogservice.observability;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Латентность запросов низкоуровневого Elasticsearch RestClient: от отправки запроса до получения ответа,
+ * {@code elasticsearch_client_requests{method, operation, status}}. operation - последний сегмент пути,
+ * начинающийся с "_" (_search, _doc, _bulk...), имя индекса и id в теги не попадают.
+ * Тот же интервал пишется в JFR как {@link ElasticsearchRequestEvent}.
+ * <p>
+ * Запросы без ответа (таймаут, отказ соединения) пишутся со status=IO_ERROR через
+ * {@link #responseConsumerFactory(HttpAsyncResponseConsumerFactory)}: до ответа response interceptor не вызывается,
+ * а consumer получает failed(). Consumer создается RestClient прямо перед execute, а request interceptor
+ * вызывается в том же потоке до выдачи соединения - через ThreadLocal consumer связывается с HttpContext запроса.
+ */
+public class ElasticsearchClientMetrics implements HttpRequestInterceptor, HttpResponseInterceptor {
+    static final String IO_ERROR = "IO_ERROR";
+
+    private static final String START = ElasticsearchClientMetrics.class.getName() + ".start";
+    private static final String METHOD = ElasticsearchClientMetrics.class.getName() + ".method";
+    private static final String OPERATION = ElasticsearchClientMetrics.class.getName() + ".operation";
+    private static final String EVENT = ElasticsearchClientMetrics.class.getName() + ".event";
+
+    private final ThreadLocal<FailureRecordingConsumer> pendingConsumer = new ThreadLocal<>();
+    private final MeterRegistry meterRegistry;
+
+    public ElasticsearchClientMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Фабрика consumer'ов для RequestOptions клиента, оборачивает consumer'ы delegate
+     */
+    public HttpAsyncResponseConsumerFactory responseConsumerFactory(HttpAsyncResponseConsumerFactory delegate) {
+        return () -> {
+            FailureRecordingConsumer consumer = new FailureRecordingConsumer(delegate.createHttpAsyncResponseConsumer());
+            pendingConsumer.set(consumer);
+            return consumer;
+        };
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        context.setAttribute(METHOD, request.getRequestLine().getMethod());
+        context.setAttribute(OPERATION, operation(request.getRequestLine().getUri()));
+        context.setAttribute(START, System.nanoTime());
+
+        ElasticsearchRequestEvent event = new ElasticsearchRequestEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            context.setAttribute(EVENT, event);
+        }
+
+        FailureRecordingConsumer consumer = pendingConsumer.get();
+        if (consumer != null) {
+            pendingConsumer.remove();
+            consumer.context = context;
+        }
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        record(context, String.valueOf(response.getStatusLine().getStatusCode()));
+    }
+
+    /**
+     * START снимается из контекста, поэтому запрос учитывается один раз: ошибка чтения тела после
+     * полученного ответа уже не пишется повторно как IO_ERROR
+     */
+    private void record(HttpContext context, String status) {
+        if (!(context.removeAttribute(START) instanceof Long start)) {
+            return;
+        }
+        String method = String.valueOf(context.getAttribute(METHOD));
+        String operation = String.valueOf(context.getAttribute(OPERATION));
+
+        if (context.getAttribute(EVENT) instanceof ElasticsearchRequestEvent event) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = method;
+                event.operation = operation;
+                event.status = status;
+                event.commit();
+            }
+        }
+
+        Timer.builder("elasticsearch_client_requests")
+                .description("Elasticsearch client request latency")
+                .tags("method", method, "operation", operation, "status", status)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    static String operation(String uri) {
+        int queryStart = uri.indexOf('?');
+        String path = queryStart < 0 ? uri : uri.substring(0, queryStart);
+
+        String operation = "index";
+        for (String segment : path.split("/")) {
+            if (segment.startsWith("_")) {
+                operation = segment;
+            }
+        }
+        return operation;
+    }
+
+    private final class FailureRecordingConsumer implements HttpAsyncResponseConsumer<HttpResponse> {
+        private final HttpAsyncResponseConsumer<HttpResponse> delegate;
+        private volatile HttpContext context;
+
+        private FailureRecordingConsumer(HttpAsyncResponseConsumer<HttpResponse> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void responseReceived(HttpResponse response) throws IOException, HttpException {
+            delegate.responseReceived(response);
+        }
+
+        @Override
+        public void consumeContent(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            delegate.consumeContent(decoder, ioControl);
+        }
+
+        @Override
+        public void responseCompleted(HttpContext context) {
+            delegate.responseCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception exception) {
+            try {
+                delegate.failed(exception);
+            } finally {
+                HttpContext requestContext = context;
+                if (requestContext != null) {
+                    record(requestContext, IO_ERROR);
+                }
+            }
+        }
+
+        @Override
+        public Exception getException() {
+            return delegate.getException();
+        }
+
+        @Override
+        public HttpResponse getResult() {
+            return delegate.getResult();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean cancel() {
+            return delegate.cancel();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.productcatalogservice.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR событие HTTP запроса к Elasticsearch (поиск, индексация), пишется {@link ElasticsearchClientMetrics}
+ */
+@Name("com.example.productcatalogservice.ElasticsearchRequest")
+@Label("Elasticsearch Request")
+@Description("Elasticsearch low-level client request")
+@Category({"Shop", "Elasticsearch"})
+@StackTrace(false)
+@Threshold("0 ms")
+class ElasticsearchRequestEvent extends Event {
+    @Label("HTTP Method")
+    String method;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Status")
+    @Description("HTTP status or IO_ERROR when no response was received")
+    String status;
+}
@@ -0,0 +1,52 @@
+package com.example.productcatalogservice.observability;
+
+import com.example.productcatalogservice.observability.HibernateRequestStatistics.Snapshot;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Пишет на каждый HTTP запрос сколько он загрузил сущностей и дозагрузил коллекций:
+ * {@code hibernate_request_entity_loads}, {@code hibernate_request_collection_fetches} с тегом uri (шаблон маршрута).
+ * Количество SQL и предупреждения о N+1 - в {@link SqlStatementBudgetFilter}.
+ */
+public class HibernateRequestMetricsFilter extends OncePerRequestFilter {
+    private final MeterRegistry meterRegistry;
+
+    public HibernateRequestMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HibernateRequestStatistics.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            record(request, HibernateRequestStatistics.stop());
+        }
+    }
+
+    private void record(HttpServletRequest request, Snapshot snapshot) {
+        String uri = Objects.toString(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE), "UNKNOWN");
+
+        summary("hibernate_request_entity_loads", "Entities loaded per HTTP request", uri).record(snapshot.entityLoads());
+        summary("hibernate_request_collection_fetches", "Lazy collections initialized per HTTP request", uri).record(snapshot.collectionFetches());
+    }
+
+    private DistributionSummary summary(String name, String description, String uri) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tag("uri", uri)
+                .register(meterRegistry);
+    }
+}
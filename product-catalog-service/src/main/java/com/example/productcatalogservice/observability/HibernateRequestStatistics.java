@@ -0,0 +1,46 @@
+package com.example.productcatalogservice.observability;
+
+/**
+ * Счетчики Hibernate в рамках одного HTTP запроса: загруженные сущности и дозагруженные коллекции
+ * (выполненный SQL считает {@link SqlStatementStatistics} на уровне DataSource).
+ * Глобальная статистика Hibernate общая на все потоки, поэтому по запросу считаем сами в ThreadLocal.
+ * Вне {@link #start()} - {@link #stop()} (фоновые потоки) счетчики не ведутся.
+ */
+public final class HibernateRequestStatistics {
+    private static final ThreadLocal<Counts> CURRENT = new ThreadLocal<>();
+
+    private HibernateRequestStatistics() {
+    }
+
+    public static void start() {
+        CURRENT.set(new Counts());
+    }
+
+    public static Snapshot stop() {
+        Counts counts = CURRENT.get();
+        CURRENT.remove();
+        return counts == null ? new Snapshot(0, 0) : new Snapshot(counts.entityLoads, counts.collectionFetches);
+    }
+
+    static void entityLoaded() {
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.entityLoads++;
+        }
+    }
+
+    static void collectionFetched() {
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.collectionFetches++;
+        }
+    }
+
+    private static final class Counts {
+        private int entityLoads;
+        private int collectionFetches;
+    }
+
+    public record Snapshot(int entityLoads, int collectionFetches) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.productcatalogservice.observability;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * {@code GET /actuator/jfr?minutes=N} - последние N минут {@link ContinuousRecording} (по умолчанию 10).
+ * В web не открыт, пока у actuator нет security chain как в user-service; до этого - jcmd JFR.dump.
+ * Временный файл удаляется после отправки ответа.
+ */
+@Component
+@Endpoint(id = "jfr")
+@ConditionalOnProperty(name = "monitoring.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class JfrEndpoint {
+    private static final int DEFAULT_MINUTES = 10;
+
+    private final ContinuousRecording recording;
+
+    public JfrEndpoint(ContinuousRecording recording) {
+        this.recording = recording;
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump(@Nullable Integer minutes) throws IOException {
+        Duration window = Duration.ofMinutes(minutes == null ? DEFAULT_MINUTES : minutes);
+        if (window.isNegative() || window.isZero() || window.compareTo(recording.getMaxAge()) > 0) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+
+        Path file = recording.dump(window);
+        return new WebEndpointResponse<>(new InputStreamResource(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE)));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.productcatalogservice.observability;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Накопитель времени одного HTTP запроса по внешним зависимостям, из него собирается заголовок Server-Timing.
+ * <p>
+ * Привязан к потоку запроса через ThreadLocal, как MDC. Время считается исключительным: вложенный вызов
+ * вычитается из внешнего, поэтому сумма категорий не больше общего времени запроса.
+ * Вне запроса {@link #begin(Category)} ничего не стоит.
+ */
+public final class RequestTimings {
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+    private static final Stopwatch NOOP = new Stopwatch(null, null, 0, 0);
+
+    public enum Category {
+        DB("db"), ES("es"), SERIALIZATION("ser");
+
+        private final String metric;
+
+        Category(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(CATEGORIES.length);
+    private final AtomicLongArray counts = new AtomicLongArray(CATEGORIES.length);
+    private volatile Stopwatch openSerialization;
+
+    public static RequestTimings start() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Привязывает накопитель к текущему потоку (null - отвязывает), используется при передаче задачи в пул
+     */
+    public static void bind(RequestTimings timings) {
+        if (timings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timings);
+        }
+    }
+
+    public static Stopwatch begin(Category category) {
+        RequestTimings timings = CURRENT.get();
+        if (timings == null) {
+            return NOOP;
+        }
+
+        Stopwatch stopwatch = new Stopwatch(timings, category, System.nanoTime(), timings.total());
+        if (category == Category.SERIALIZATION) {
+            timings.openSerialization = stopwatch;
+        }
+        return stopwatch;
+    }
+
+    private long total() {
+        long total = 0;
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            total += nanos.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return значение Server-Timing: категории, в которые что-то попало, и app - общее время на момент вызова.
+     * Если сериализация ответа еще идет (заголовок пишется перед первым байтом тела), ser - время до этого момента.
+     */
+    public String header() {
+        long now = System.nanoTime();
+        StringBuilder header = new StringBuilder(128);
+        for (Category category : CATEGORIES) {
+            long duration = nanos.get(category.ordinal());
+            long count = counts.get(category.ordinal());
+
+            Stopwatch open = category == Category.SERIALIZATION ? openSerialization : null;
+            if (open != null) {
+                duration += now - open.startNanos;
+                count++;
+            }
+            if (count > 0) {
+                append(header, category.metric, duration).append(";desc=\"").append(count).append(count == 1 ? " call\"" : " calls\"");
+            }
+        }
+        return append(header, "app", now - startNanos).toString();
+    }
+
+    private static StringBuilder append(StringBuilder header, String metric, long durationNanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        return header.append(metric).append(";dur=").append(String.format(Locale.ROOT, "%.2f", durationNanos / 1_000_000.0));
+    }
+
+    public static final class Stopwatch {
+        private final RequestTimings timings;
+        private final Category category;
+        private final long startNanos;
+        private final long nestedMark;
+
+        private Stopwatch(RequestTimings timings, Category category, long startNanos, long nestedMark) {
+            this.timings = timings;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.nestedMark = nestedMark;
+        }
+
+        public void stop() {
+            if (timings == null) {
+                return;
+            }
+
+            long elapsed = System.nanoTime() - startNanos;
+            long nested = timings.total() - nestedMark;
+            timings.nanos.addAndGet(category.ordinal(), Math.max(0, elapsed - nested));
+            timings.counts.incrementAndGet(category.ordinal());
+            if (timings.openSerialization == this) {
+                timings.openSerialization = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.productcatalogservice.observability;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Добавляет к ответу заголовок {@code Server-Timing} из {@link RequestTimings}: db, es, ser и app.
+ * <p>
+ * Тело не буферизуется: заголовок пишется прямо перед первым байтом тела (или перед коммитом пустого ответа),
+ * поэтому работает и для потоковых ответов, а все, что случилось после начала отправки тела, в заголовок не попадает.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+    public static final String HEADER = "Server-Timing";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.start();
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, timings);
+        try {
+            filterChain.doFilter(request, timedResponse);
+        } finally {
+            if (!request.isAsyncStarted()) {
+                timedResponse.writeHeader();
+            }
+            RequestTimings.bind(null);
+        }
+    }
+
+    static class ServerTimingResponse extends HttpServletResponseWrapper {
+        private final RequestTimings timings;
+        private boolean headerWritten;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        ServerTimingResponse(HttpServletResponse response, RequestTimings timings) {
+            super(response);
+            this.timings = timings;
+        }
+
+        void writeHeader() {
+            if (!headerWritten && !isCommitted()) {
+                setHeader(HEADER, timings.header());
+            }
+            headerWritten = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new HeaderFirstOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                PrintWriter delegate = super.getWriter();
+                writer = new PrintWriter(new FilterWriter(delegate) {
+                    @Override
+                    public void write(int c) throws IOException {
+                        writeHeader();
+                        super.write(c);
+                    }
+
+                    @Override
+                    public void write(char[] buffer, int offset, int length) throws IOException {
+                        writeHeader();
+                        super.write(buffer, offset, length);
+                    }
+
+                    @Override
+                    public void write(String value, int offset, int length) throws IOException {
+                        writeHeader();
+                        super.write(value, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        writeHeader();
+                        super.flush();
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            writeHeader();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            writeHeader();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeHeader();
+            super.sendRedirect(location);
+        }
+
+        private class HeaderFirstOutputStream extends ServletOutputStream {
+            private final ServletOutputStream delegate;
+
+            private HeaderFirstOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                writeHeader();
+                delegate.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                writeHeader();
+                delegate.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writeHeader();
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                writeHeader();
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                delegate.setWriteListener(writeListener);
+            }
+        }
+    }
+}
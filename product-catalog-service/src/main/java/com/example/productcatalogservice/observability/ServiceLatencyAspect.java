@@ -0,0 +1,101 @@
+package com.example.productcatalogservice.observability;
+
+import com.example.productcatalogservice.util.LogMarker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время каждого публичного метода классов с {@code @Service}:
+ * <ul>
+ *     <li>{@code service_method_duration{service, method, outcome=success|error}} - гистограмма с фиксированными SLO бакетами</li>
+ *     <li>вызовы дольше {@code slowThreshold} - warn с маркером APP_CALL</li>
+ *     <li>{@link ServiceMethodEvent} в JFR</li>
+ * </ul>
+ * Аспект внешний по отношению к транзакциям, ретраям и circuit breaker'ам - меряется время, которое видит вызывающий.
+ * Метры создаются один раз на метод, на горячем пути только nanoTime, поиск в map и запись в таймер.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceLatencyAspect {
+    private static final Duration[] BUCKETS = {
+            Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100),
+            Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5)
+    };
+
+    private final MeterRegistry meterRegistry;
+    private final long slowThresholdNanos;
+    private final ConcurrentMap<Method, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    public ServiceLatencyAspect(MeterRegistry meterRegistry,
+                                @Value("${monitoring.service-latency.slow-threshold:500ms}") Duration slowThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Around("within(@org.springframework.stereotype.Service *) && execution(public * *(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        MethodMeters methodMeters = meters.computeIfAbsent(method, this::createMeters);
+
+        ServiceMethodEvent event = new ServiceMethodEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            (success ? methodMeters.success : methodMeters.error).record(elapsed, TimeUnit.NANOSECONDS);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.service = methodMeters.service;
+                event.method = methodMeters.method;
+                event.outcome = success ? "success" : "error";
+                event.commit();
+            }
+
+            if (elapsed > slowThresholdNanos) {
+                log.warn(LogMarker.APP_CALL.getMarker(), "service=Service-Latency | SLOW | method={}.{} | outcome={} | ms={}",
+                        methodMeters.service, methodMeters.method, success ? "success" : "error", TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }
+    }
+
+    private MethodMeters createMeters(Method method) {
+        String service = method.getDeclaringClass().getSimpleName();
+        return new MethodMeters(service, method.getName(),
+                timer(service, method.getName(), "success"),
+                timer(service, method.getName(), "error"));
+    }
+
+    private Timer timer(String service, String method, String outcome) {
+        return Timer.builder("service_method_duration")
+                .description("Public @Service method latency")
+                .tags("service", service, "method", method, "outcome", outcome)
+                .serviceLevelObjectives(BUCKETS)
+                .register(meterRegistry);
+    }
+
+    private record MethodMeters(String service, String method, Timer success, Timer error) {
+    }
+}
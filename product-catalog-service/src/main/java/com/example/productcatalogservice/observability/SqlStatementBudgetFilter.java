@@ -0,0 +1,97 @@
+package com.example.productcatalogservice.observability;
+
+import com.example.productcatalogservice.observability.SqlStatementStatistics.Snapshot;
+import com.example.productcatalogservice.util.LogMarker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Для доли {@code sampleRate} HTTP запросов считает выполненные JDBC выражения ({@link SqlStatementStatistics})
+ * и сверяет с бюджетом маршрута. Единственный счетчик SQL на запрос: видит весь SQL, а не только подготовленный
+ * Hibernate, и ловит N+1 по повтору одной формы, а не только по общему количеству.
+ * <p>
+ * Метрики: {@code sql_request_statements} по uri и {@code sql_request_budget_exceeded} по uri и reason
+ * (budget - выражений больше бюджета, repeated - одна форма выполнена {@code repeatedThreshold} раз и больше).
+ */
+@Slf4j
+public class SqlStatementBudgetFilter extends OncePerRequestFilter {
+    private static final int MAX_LOGGED_SHAPE_LENGTH = 300;
+
+    private final MeterRegistry meterRegistry;
+    private final SqlStatementBudgetProperties properties;
+    private final DoubleSupplier sampler;
+
+    public SqlStatementBudgetFilter(MeterRegistry meterRegistry, SqlStatementBudgetProperties properties) {
+        this(meterRegistry, properties, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    SqlStatementBudgetFilter(MeterRegistry meterRegistry, SqlStatementBudgetProperties properties, DoubleSupplier sampler) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.sampler = sampler;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (sampler.getAsDouble() >= properties.sampleRate()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        SqlStatementStatistics.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            record(request, SqlStatementStatistics.stop());
+        }
+    }
+
+    private void record(HttpServletRequest request, Snapshot snapshot) {
+        String uri = Objects.toString(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE), "UNKNOWN");
+
+        DistributionSummary.builder("sql_request_statements")
+                .description("JDBC statements executed per sampled HTTP request")
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(snapshot.statements());
+
+        int budget = properties.budget(uri);
+        if (snapshot.statements() > budget) {
+            exceeded(uri, "budget");
+            log.warn(LogMarker.APP_CALL.getMarker(), "service=Product-Catalog | SQL BUDGET EXCEEDED | method={} | uri={} | statements={} | budget={}",
+                    request.getMethod(), uri, snapshot.statements(), budget);
+        }
+        if (snapshot.repeatedCount() >= properties.repeatedThreshold()) {
+            exceeded(uri, "repeated");
+            log.warn(LogMarker.APP_CALL.getMarker(), "service=Product-Catalog | REPEATED SQL | method={} | uri={} | times={} | statements={} | shape={}",
+                    request.getMethod(), uri, snapshot.repeatedCount(), snapshot.statements(), abbreviate(snapshot.repeatedShape()));
+        }
+    }
+
+    private void exceeded(String uri, String reason) {
+        Counter.builder("sql_request_budget_exceeded")
+                .description("Sampled HTTP requests over their SQL statement budget")
+                .tag("uri", uri)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String abbreviate(String shape) {
+        return shape.length() <= MAX_LOGGED_SHAPE_LENGTH ? shape : shape.substring(0, MAX_LOGGED_SHAPE_LENGTH) + "...";
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.productcatalogservice.observability;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Бюджеты SQL выражений на HTTP запрос, {@code catalog.observability.sql.*}.
+ *
+ * @param sampleRate доля запросов, для которых считаются выражения и их формы (0..1)
+ * @param defaultBudget сколько выражений допустимо маршруту без собственного бюджета
+ * @param routes бюджеты по шаблону маршрута, например {@code "[/products/{publicId}]": 6}
+ * @param repeatedThreshold сколько раз одна форма SQL может выполниться за запрос, дальше это N+1
+ */
+@ConfigurationProperties("catalog.observability.sql")
+public record SqlStatementBudgetProperties(
+        @DefaultValue("0.1") double sampleRate,
+        @DefaultValue("20") int defaultBudget,
+        @DefaultValue Map<String, Integer> routes,
+        @DefaultValue("5") int repeatedThreshold
+) {
+
+    public int budget(String route) {
+        return routes.getOrDefault(route, defaultBudget);
+    }
+}
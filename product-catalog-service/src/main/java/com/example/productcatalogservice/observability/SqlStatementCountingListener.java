@@ -0,0 +1,30 @@
+package com.example.productcatalogservice.observability;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+
+/**
+ * Слушатель datasource-proxy: DataSource уже обернут datasource-micrometer, бины {@link QueryExecutionListener}
+ * он подключает сам. Передает каждое выполненное выражение в {@link SqlStatementStatistics}; вне записи
+ * стоимость - одно чтение ThreadLocal.
+ */
+public class SqlStatementCountingListener implements QueryExecutionListener {
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (!SqlStatementStatistics.isActive()) {
+            return;
+        }
+        // Batch из PreparedStatement - один QueryInfo, из Statement.addBatch(sql) - по одному на каждый SQL
+        for (QueryInfo queryInfo : queryInfoList) {
+            SqlStatementStatistics.executed(queryInfo.getQuery());
+        }
+    }
+}
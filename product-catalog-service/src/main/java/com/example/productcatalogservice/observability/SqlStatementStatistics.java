@@ -0,0 +1,77 @@
+package com.example.productcatalogservice.observability;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Выполненные JDBC выражения в рамках одного запроса (или куска теста) на уровне DataSource: видны и SQL Hibernate,
+ * и JdbcTemplate, и COPY. Кроме количества запоминается "форма" каждого выражения - SQL без литералов и с
+ * IN-списками любой длины, приведенными к одному виду. Одна и та же форма много раз подряд - признак N+1.
+ * <p>
+ * Как и {@link HibernateRequestStatistics}, считает в ThreadLocal и только между {@link #start()} и {@link #stop()}.
+ */
+public final class SqlStatementStatistics {
+    private static final ThreadLocal<Map<String, Integer>> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlStatementStatistics() {
+    }
+
+    public static void start() {
+        CURRENT.set(new HashMap<>());
+    }
+
+    public static Snapshot stop() {
+        Map<String, Integer> shapes = CURRENT.get();
+        CURRENT.remove();
+        return shapes == null ? Snapshot.EMPTY : Snapshot.of(shapes);
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Одно обращение к базе; batch из N строк - тоже одно
+     */
+    static void executed(String sql) {
+        Map<String, Integer> shapes = CURRENT.get();
+        if (shapes != null) {
+            shapes.merge(shape(sql), 1, Integer::sum);
+        }
+    }
+
+    static String shape(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("in (?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * @param shapes сколько раз выполнена каждая форма
+     * @param repeatedShape самая частая форма, null если выражений не было
+     */
+    public record Snapshot(int statements, Map<String, Integer> shapes, String repeatedShape, int repeatedCount) {
+        static final Snapshot EMPTY = new Snapshot(0, Map.of(), null, 0);
+
+        static Snapshot of(Map<String, Integer> shapes) {
+            int statements = 0;
+            String repeatedShape = null;
+            int repeatedCount = 0;
+            for (Map.Entry<String, Integer> entry : shapes.entrySet()) {
+                statements += entry.getValue();
+                if (entry.getValue() > repeatedCount) {
+                    repeatedShape = entry.getKey();
+                    repeatedCount = entry.getValue();
+                }
+            }
+            return new Snapshot(statements, Map.copyOf(shapes), repeatedShape, repeatedCount);
+        }
+    }
+}
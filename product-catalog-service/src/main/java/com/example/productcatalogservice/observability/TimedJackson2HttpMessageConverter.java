@@ -0,0 +1,32 @@
+package com.example.productcatalogservice.observability;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.productcatalogservice.observability.RequestTimings.Category;
+import com.example.productcatalogservice.observability.RequestTimings.Stopwatch;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON конвертер, который пишет время сериализации ответа в {@link RequestTimings} (ser в Server-Timing)
+ */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        Stopwatch stopwatch = RequestTimings.begin(Category.SERIALIZATION);
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            stopwatch.stop();
+        }
+    }
+}
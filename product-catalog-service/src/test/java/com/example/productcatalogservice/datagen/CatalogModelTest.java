@@ -0,0 +1,90 @@
+package com.example.productcatalogservice.datagen;
+
+import com.example.productcatalogservice.datagen.CatalogModel.FeedbackSpec;
+import com.example.productcatalogservice.datagen.CatalogModel.ProductSpec;
+import com.example.productcatalogservice.entity.AttributeValue;
+import com.example.productcatalogservice.entity.Category;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogModelTest {
+
+    private static DataGeneratorProperties properties(long seed) {
+        return new DataGeneratorProperties(50, 3, 4, 20, 10, 1.07, 1000, 6, 4, 100, 2, seed, false, false, 100);
+    }
+
+    @Test
+    void product_ShouldBeIdentical_WhenGeneratedByDifferentModelsWithSameSeed() {
+        CatalogModel first = new CatalogModel(properties(7));
+        CatalogModel second = new CatalogModel(properties(7));
+
+        ProductSpec a = first.product(123);
+        ProductSpec b = second.product(123);
+
+        assertEquals(a.publicId(), b.publicId());
+        assertEquals(a.name(), b.name());
+        assertEquals(a.basePrice(), b.basePrice());
+        assertEquals(a.brand().getPublicId(), b.brand().getPublicId());
+        assertEquals(a.attributeValues().stream().map(AttributeValue::getId).toList(),
+                b.attributeValues().stream().map(AttributeValue::getId).toList());
+        assertEquals(a.feedbacks(), b.feedbacks());
+    }
+
+    @Test
+    void product_ShouldDiffer_WhenSeedDiffers() {
+        assertNotEquals(new CatalogModel(properties(7)).product(1).publicId(),
+                new CatalogModel(properties(8)).product(1).publicId());
+    }
+
+    @Test
+    void product_ShouldHaveConsistentRowsForCopy_WhenGenerated() {
+        CatalogModel model = new CatalogModel(properties(42));
+
+        for (long id = 1; id <= 200; id++) {
+            ProductSpec spec = model.product(id);
+
+            assertEquals(6, spec.attributeValues().stream().map(value -> value.getAttribute().getId()).distinct().count());
+            assertEquals(spec.primaryCategory(), spec.categories().get(0));
+            assertNull(spec.categories().get(spec.categories().size() - 1).getParent());
+            assertEquals(3, spec.categories().size());
+            if (spec.feedbacks().isEmpty()) {
+                assertNull(spec.rating());
+            } else {
+                double average = spec.feedbacks().stream().mapToInt(FeedbackSpec::estimation).average().orElseThrow();
+                assertEquals(average, spec.rating(), 0.005);
+            }
+        }
+    }
+
+    @Test
+    void categories_ShouldListParentsBeforeChildren_WhenTreeBuilt() {
+        CatalogModel model = new CatalogModel(properties(42));
+
+        assertEquals(4 + 16 + 64, model.categories().size());
+        for (Category category : model.categories()) {
+            if (category.getParent() != null) {
+                assertTrue(category.getParent().getId() < category.getId());
+            }
+        }
+        assertEquals(model.categories().size(), model.categories().stream().map(Category::getSlug).distinct().count());
+    }
+
+    @Test
+    void sample_ShouldFollowZipfLaw_WhenManyDraws() {
+        ZipfDistribution zipf = new ZipfDistribution(100, 1.0);
+        SplittableRandom random = new SplittableRandom(1);
+        int[] hits = new int[zipf.size()];
+
+        int draws = 200_000;
+        for (int i = 0; i < draws; i++) {
+            hits[zipf.sample(random)]++;
+        }
+
+        assertEquals(zipf.probability(0), (double) hits[0] / draws, 0.01);
+        assertEquals(zipf.probability(0) / 2, zipf.probability(1), 1e-12);
+        assertTrue(hits[0] > hits[9] * 5);
+    }
+}
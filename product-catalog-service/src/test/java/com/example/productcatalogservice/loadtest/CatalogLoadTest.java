@@ -0,0 +1,184 @@
+package com.example.productcatalogservice.loadtest;
+
+import com.example.productcatalogservice.dto.create.CreateBrandDto;
+import com.example.productcatalogservice.dto.create.CreateCategoryDto;
+import com.example.productcatalogservice.dto.create.CreateFeedbackDto;
+import com.example.productcatalogservice.dto.create.CreateProductDto;
+import com.example.productcatalogservice.elastic_document.ProductDoc;
+import com.example.productcatalogservice.entity.Brand;
+import com.example.productcatalogservice.entity.Category;
+import com.example.productcatalogservice.entity.Product;
+import com.example.productcatalogservice.loadtest.LoadDriver.Scenario;
+import com.example.productcatalogservice.repositoty.elastic.ProductSearchRepository;
+import com.example.productcatalogservice.service.BrandService;
+import com.example.productcatalogservice.service.CategoryService;
+import com.example.productcatalogservice.service.FeedbackService;
+import com.example.productcatalogservice.service.ProductService;
+import com.example.productcatalogservice.util.mapper.ProductDocumentMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пропускная способность и задержки каталога на смеси: полнотекстовый поиск, чтение товара, создание отзыва.
+ * HTTP API у каталога пока нет, поэтому сценарии вызывают сервисы и репозитории в поднятом контексте -
+ * меряется все от транзакции до Postgres и Elasticsearch, без MVC. Postgres, Redis и Elasticsearch - Testcontainers.
+ * <p>
+ * Запуск: {@code mvn test -Pload-test}, параметры через -D: load.users, load.warmup, load.duration, load.products.
+ * Отчет - target/load-test/product-catalog-service.txt.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers
+@ActiveProfiles({"integration", "load-test"})
+class CatalogLoadTest {
+    private static final int USERS = Integer.getInteger("load.users", 16);
+    private static final int PRODUCTS = Integer.getInteger("load.products", 2000);
+    private static final Duration WARMUP = duration("load.warmup", "10s");
+    private static final Duration DURATION = duration("load.duration", "30s");
+
+    private static final List<String> WORDS = List.of("phone", "laptop", "camera", "speaker", "monitor", "keyboard",
+            "headphones", "tablet", "router", "charger", "watch", "printer", "console", "drone", "lamp");
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @Container
+    @ServiceConnection(name = "redis")
+    static final GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine")
+            .withExposedPorts(6379);
+
+    @Container
+    @ServiceConnection
+    static final ElasticsearchContainer elasticsearch = new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch:9.1.4")
+            .withEnv("xpack.security.enabled", "false")
+            .withEnv("ES_JAVA_OPTS", "-Xms512m -Xmx512m");
+
+    @Autowired
+    private BrandService brandService;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private FeedbackService feedbackService;
+    @Autowired
+    private ProductSearchRepository productSearchRepository;
+    @Autowired
+    private ProductDocumentMapper productDocumentMapper;
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void mixedWorkload() throws Exception {
+        List<UUID> productIds = seed();
+
+        List<Scenario> scenarios = List.of(
+                new Scenario("search", 40, () -> {
+                    String word = WORDS.get(ThreadLocalRandom.current().nextInt(WORDS.size()));
+                    CriteriaQuery query = new CriteriaQuery(new Criteria("name").matches(word));
+                    query.setPageable(PageRequest.of(0, 20));
+                    return elasticsearchOperations.search(query, ProductDoc.class).getTotalHits() > 0;
+                }),
+                new Scenario("product-read", 45, () -> {
+                    UUID productId = productIds.get(ThreadLocalRandom.current().nextInt(productIds.size()));
+                    return productService.getProductByPublicId(productId) != null;
+                }),
+                new Scenario("feedback-create", 15, () -> {
+                    UUID productId = productIds.get(ThreadLocalRandom.current().nextInt(productIds.size()));
+                    CreateFeedbackDto feedback = new CreateFeedbackDto("Load test feedback", ThreadLocalRandom.current().nextInt(1, 6));
+                    return feedbackService.createFeedback(productId, UUID.randomUUID(), feedback) != null;
+                })
+        );
+
+        LoadReport report = LoadDriver.run("product-catalog-service", scenarios, USERS, WARMUP, DURATION);
+        System.out.println(report.format());
+        report.writeTo(Path.of("target", "load-test"));
+
+        assertThat(report.errorRate()).isLessThan(0.01);
+    }
+
+    /**
+     * Бренды, категории и товары через сервисы, документы товаров - в индекс пачками
+     *
+     * @return public id созданных товаров
+     */
+    private List<UUID> seed() {
+        List<Brand> brands = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            brands.add(brandService.createBrand(new CreateBrandDto("Load Brand " + i, "Brand for load test")));
+        }
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            categories.add(categoryService.createCategory(new CreateCategoryDto("Load Category " + i, "Category for load test", null)));
+        }
+
+        List<UUID> productIds = new ArrayList<>(PRODUCTS);
+        List<ProductDoc> documents = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Brand brand = brands.get(i % brands.size());
+            Category primary = categories.get(i % categories.size());
+            Category secondary = categories.get((i * 7 + 3) % categories.size());
+            String word = WORDS.get(i % WORDS.size());
+
+            CreateProductDto dto = new CreateProductDto(
+                    "Load " + word + " " + i, brand.getPublicId(), primary.getPublicId(),
+                    List.of(primary.getPublicId(), secondary.getPublicId()),
+                    "Short description of " + word, "Long description of " + word + " number " + i,
+                    BigDecimal.valueOf(100 + i % 900), "RUB", 1.0, 10.0, 10.0, 10.0, List.of(), 100, 5);
+
+            ProductDoc document = transactionTemplate.execute(status -> {
+                Product product = productService.createProduct(dto);
+                productIds.add(product.getPublicId());
+                return productDocumentMapper.toProduct(product, Optional.empty());
+            });
+            documents.add(document);
+
+            if (documents.size() == 500) {
+                productSearchRepository.saveAll(documents);
+                documents.clear();
+            }
+        }
+        if (!documents.isEmpty()) {
+            productSearchRepository.saveAll(documents);
+        }
+        elasticsearchOperations.indexOps(ProductDoc.class).refresh();
+
+        return productIds;
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.productcatalogservice.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Результат прогона {@link LoadDriver}: пропускная способность и перцентили задержки по сценариям, задержки в мс
+ */
+public record LoadReport(String title, int users, Duration duration, List<Row> rows) {
+
+    public record Row(String scenario, long requests, long errors, double throughput,
+                      double p50, double p90, double p99, double p999, double max) {
+
+        static Row of(String scenario, Histogram histogram, long errors, Duration duration) {
+            return new Row(scenario, histogram.getTotalCount(), errors,
+                    histogram.getTotalCount() / (duration.toNanos() / 1e9),
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    public long totalRequests() {
+        return rows.stream().mapToLong(Row::requests).sum();
+    }
+
+    public long totalErrors() {
+        return rows.stream().mapToLong(Row::errors).sum();
+    }
+
+    public double errorRate() {
+        long total = totalRequests();
+        return total == 0 ? 0 : (double) totalErrors() / total;
+    }
+
+    public String format() {
+        StringBuilder report = new StringBuilder()
+                .append(title).append(" | users=").append(users).append(" | duration=").append(duration).append('\n')
+                .append(String.format(Locale.ROOT, "%-20s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                        "scenario", "requests", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max"));
+        for (Row row : rows) {
+            report.append(String.format(Locale.ROOT, "%-20s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    row.scenario(), row.requests(), row.errors(), row.throughput(),
+                    row.p50(), row.p90(), row.p99(), row.p999(), row.max()));
+        }
+        report.append(String.format(Locale.ROOT, "%-20s %9d %7d %9.1f%n",
+                "total", totalRequests(), totalErrors(), totalRequests() / (duration.toNanos() / 1e9)));
+        return report.toString();
+    }
+
+    /**
+     * Пишет отчет в {@code directory/<title>.txt}, повторный прогон перезаписывает файл
+     */
+    public Path writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(title + ".txt");
+        Files.writeString(file, format(), StandardCharsets.UTF_8);
+        return file;
+    }
+}
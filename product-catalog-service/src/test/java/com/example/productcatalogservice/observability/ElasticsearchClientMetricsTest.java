@@ -0,0 +1,73 @@
+package com.example.productcatalogservice.observability;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElasticsearchClientMetricsTest {
+
+    @Test
+    void operation_ShouldReturnLastUnderscoreSegment_WhenPathHasIndexAndId() {
+        assertEquals("_search", ElasticsearchClientMetrics.operation("/products/_search?typed_keys=true"));
+        assertEquals("_doc", ElasticsearchClientMetrics.operation("/products/_doc/9f1c"));
+        assertEquals("_bulk", ElasticsearchClientMetrics.operation("/_bulk?refresh=false"));
+        assertEquals("index", ElasticsearchClientMetrics.operation("/products"));
+    }
+
+    @Test
+    void process_ShouldRecordTimerWithoutIndexName_WhenResponseReceived() {
+        var meterRegistry = new SimpleMeterRegistry();
+        var metrics = new ElasticsearchClientMetrics(meterRegistry);
+        var context = new BasicHttpContext();
+
+        metrics.process(new BasicHttpRequest("POST", "/products/_search"), context);
+        metrics.process(new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), context);
+
+        var timer = meterRegistry.get("elasticsearch_client_requests")
+                .tags("method", "POST", "operation", "_search", "status", "200")
+                .timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void failed_ShouldRecordIoError_WhenRequestGotNoResponse() {
+        var meterRegistry = new SimpleMeterRegistry();
+        var metrics = new ElasticsearchClientMetrics(meterRegistry);
+        var context = new BasicHttpContext();
+
+        var consumer = metrics.responseConsumerFactory(HttpAsyncResponseConsumerFactory.DEFAULT)
+                .createHttpAsyncResponseConsumer();
+        metrics.process(new BasicHttpRequest("GET", "/products/_doc/9f1c"), context);
+        consumer.failed(new SocketTimeoutException("30,000 milliseconds timeout"));
+
+        var timer = meterRegistry.get("elasticsearch_client_requests")
+                .tags("method", "GET", "operation", "_doc", "status", ElasticsearchClientMetrics.IO_ERROR)
+                .timer();
+        assertEquals(1, timer.count());
+        assertInstanceOf(SocketTimeoutException.class, consumer.getException());
+    }
+
+    @Test
+    void failed_ShouldNotRecordTwice_WhenBodyFailsAfterResponse() {
+        var meterRegistry = new SimpleMeterRegistry();
+        var metrics = new ElasticsearchClientMetrics(meterRegistry);
+        var context = new BasicHttpContext();
+
+        var consumer = metrics.responseConsumerFactory(HttpAsyncResponseConsumerFactory.DEFAULT)
+                .createHttpAsyncResponseConsumer();
+        metrics.process(new BasicHttpRequest("POST", "/products/_search"), context);
+        metrics.process(new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), context);
+        consumer.failed(new SocketTimeoutException("body"));
+
+        assertEquals(1, meterRegistry.get("elasticsearch_client_requests").timers().size());
+        assertEquals(1, meterRegistry.get("elasticsearch_client_requests").tags("status", "200").timer().count());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.productcatalogservice.observability;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HibernateRequestMetricsFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HibernateRequestMetricsFilter filter = new HibernateRequestMetricsFilter(meterRegistry);
+
+    @Test
+    void doFilter_ShouldRecordLoadsPerRoute_WhenRequestLoadsEntities() throws Exception {
+        var request = new MockHttpServletRequest("GET", "/products/42");
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/products/{id}");
+            HibernateRequestStatistics.entityLoaded();
+            HibernateRequestStatistics.entityLoaded();
+            HibernateRequestStatistics.collectionFetched();
+        });
+
+        var entityLoads = meterRegistry.get("hibernate_request_entity_loads").tag("uri", "/products/{id}").summary();
+        assertEquals(1, entityLoads.count());
+        assertEquals(2, entityLoads.totalAmount());
+        assertTrue(meterRegistry.find("hibernate_request_queries").meters().isEmpty());
+        assertEquals(1, meterRegistry.get("hibernate_request_collection_fetches").summary().totalAmount());
+    }
+
+    @Test
+    void entityLoaded_ShouldNotCount_WhenOutsideRequest() {
+        HibernateRequestStatistics.entityLoaded();
+        HibernateRequestStatistics.collectionFetched();
+
+        assertEquals(new HibernateRequestStatistics.Snapshot(0, 0), HibernateRequestStatistics.stop());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.productcatalogservice.observability;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlStatementBudgetFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SqlStatementBudgetProperties properties =
+            new SqlStatementBudgetProperties(0.5, 20, Map.of("/products/{id}", 3), 5);
+
+    @Test
+    void doFilter_ShouldCountBudgetExceeded_WhenRouteRunsMoreThanItsBudget() throws Exception {
+        var filter = new SqlStatementBudgetFilter(meterRegistry, properties, () -> 0.0);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/products/42"), new MockHttpServletResponse(),
+                statements("/products/{id}", "select * from products where id = 1", "select * from brands where id = 2",
+                        "select * from categories where id = 3", "select * from inventories where product_id = 1"));
+
+        assertEquals(4, meterRegistry.get("sql_request_statements").tag("uri", "/products/{id}").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("sql_request_budget_exceeded").tag("reason", "budget").counter().count());
+        assertNull(meterRegistry.find("sql_request_budget_exceeded").tag("reason", "repeated").counter());
+    }
+
+    @Test
+    void doFilter_ShouldCountRepeated_WhenSameShapeRunsPerEntity() throws Exception {
+        var filter = new SqlStatementBudgetFilter(meterRegistry, properties, () -> 0.0);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/feedbacks"), new MockHttpServletResponse(),
+                statements("/feedbacks", "select * from products where id = 1", "select * from products where id = 2",
+                        "select * from products where id = 3", "select * from products where id = 4",
+                        "select * from products where id = 5"));
+
+        assertEquals(1, meterRegistry.get("sql_request_budget_exceeded").tag("uri", "/feedbacks").tag("reason", "repeated").counter().count());
+        assertNull(meterRegistry.find("sql_request_budget_exceeded").tag("reason", "budget").counter());
+    }
+
+    @Test
+    void doFilter_ShouldNotRecord_WhenRequestNotSampled() throws Exception {
+        var filter = new SqlStatementBudgetFilter(meterRegistry, properties, () -> 0.7);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/products/42"), new MockHttpServletResponse(), (req, res) ->
+                assertFalse(SqlStatementStatistics.isActive()));
+
+        assertNull(meterRegistry.find("sql_request_statements").summary());
+    }
+
+    private static FilterChain statements(String route, String... sql) {
+        return (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, route);
+            for (String statement : sql) {
+                SqlStatementStatistics.executed(statement);
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.productcatalogservice.observability;
+
+import com.example.productcatalogservice.observability.SqlStatementStatistics.Snapshot;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Точное количество JDBC выражений в тестах, где DataSource обернут datasource-micrometer и есть бин
+ * {@link SqlStatementCountingListener}:
+ * <pre>
+ * SqlStatementCount.assertStatements(2, () -> productService.getProduct(publicId));
+ * </pre>
+ * При расхождении в сообщении перечислены формы SQL - сразу видно, какая связь догружается отдельным запросом.
+ */
+public final class SqlStatementCount {
+
+    private SqlStatementCount() {
+    }
+
+    public static Snapshot record(Executable action) throws Throwable {
+        SqlStatementStatistics.start();
+        try {
+            action.execute();
+        } catch (Throwable e) {
+            // Упавшее действие не должно оставить запись включенной для следующего теста на этом потоке
+            SqlStatementStatistics.stop();
+            throw e;
+        }
+        return SqlStatementStatistics.stop();
+    }
+
+    public static void assertStatements(int expected, Executable action) throws Throwable {
+        Snapshot snapshot = record(action);
+        assertEquals(expected, snapshot.statements(), () -> "Unexpected JDBC statements: " + snapshot.shapes());
+    }
+}
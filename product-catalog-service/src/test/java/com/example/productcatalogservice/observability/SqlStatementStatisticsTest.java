@@ -0,0 +1,79 @@
+package com.example.productcatalogservice.observability;
+
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SqlStatementStatisticsTest {
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        when(connection.createStatement()).thenAnswer(invocation -> mock(Statement.class));
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+
+        dataSource = ProxyDataSourceBuilder.create(target).listener(new SqlStatementCountingListener()).build();
+    }
+
+    @Test
+    void shape_ShouldIgnoreLiteralsAndInListSize_WhenStatementsDifferOnlyByValues() {
+        assertEquals(
+                SqlStatementStatistics.shape("select * from products p1_0 where p1_0.id in (?, ?, ?) and p1_0.sku = 'A-1'"),
+                SqlStatementStatistics.shape("select * from products p1_0\n where p1_0.id IN (?) and p1_0.sku = 'B-''2'"));
+        assertEquals("select ? from brands where id = ?", SqlStatementStatistics.shape("select 1 from brands where id = 42"));
+    }
+
+    @Test
+    void executed_ShouldCountRepeatedShape_WhenSameStatementRunsPerRow() throws Throwable {
+        var snapshot = SqlStatementCount.record(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.prepareStatement("select * from products where id = ?").executeQuery();
+                for (int i = 0; i < 3; i++) {
+                    PreparedStatement brand = connection.prepareStatement("select * from brands where id = ?");
+                    brand.setLong(1, i);
+                    brand.executeQuery();
+                }
+            }
+        });
+
+        assertEquals(4, snapshot.statements());
+        assertEquals("select * from brands where id = ?", snapshot.repeatedShape());
+        assertEquals(3, snapshot.repeatedCount());
+    }
+
+    @Test
+    void executed_ShouldCountBatchOnce_WhenPreparedStatementBatched() throws Throwable {
+        SqlStatementCount.assertStatements(1, () -> {
+            try (Connection connection = dataSource.getConnection()) {
+                PreparedStatement insert = connection.prepareStatement("insert into feedbacks (id) values (?)");
+                for (int i = 0; i < 50; i++) {
+                    insert.setLong(1, i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Test
+    void executed_ShouldNotCount_WhenOutsideRecording() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().execute("select 1");
+        }
+
+        assertEquals(0, SqlStatementStatistics.stop().statements());
+    }
+}
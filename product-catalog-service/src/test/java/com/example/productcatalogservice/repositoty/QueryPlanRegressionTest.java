@@ -0,0 +1,251 @@
+package com.example.productcatalogservice.repositoty;
+
+import com.example.productcatalogservice.datagen.CatalogCopyLoader;
+import com.example.productcatalogservice.datagen.CatalogModel;
+import com.example.productcatalogservice.datagen.CatalogModel.ProductSpec;
+import com.example.productcatalogservice.datagen.DataGeneratorProperties;
+import com.example.productcatalogservice.entity.Attribute;
+import com.example.productcatalogservice.entity.Brand;
+import com.example.productcatalogservice.entity.Category;
+import com.example.productcatalogservice.repositoty.SqlCapture.CapturedStatement;
+import com.example.productcatalogservice.repositoty.jpa.AttributeRepository;
+import com.example.productcatalogservice.repositoty.jpa.AttributeValueRepository;
+import com.example.productcatalogservice.repositoty.jpa.BrandRepository;
+import com.example.productcatalogservice.repositoty.jpa.CategoryRepository;
+import com.example.productcatalogservice.repositoty.jpa.FeedbackRepository;
+import com.example.productcatalogservice.repositoty.jpa.InventoryRepository;
+import com.example.productcatalogservice.repositoty.jpa.ProductAttributeValueRepository;
+import com.example.productcatalogservice.repositoty.jpa.ProductRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Регрессия планов запросов: каждый метод JPA репозиториев выполняется на каталоге из {@link CatalogModel},
+ * весь SQL, который он отправил (вместе с догрузкой EAGER связей), повторяется под {@code EXPLAIN (FORMAT JSON)}
+ * с теми же параметрами. Тест падает, если план читает большую таблицу целиком (Seq Scan) или стоимость выше бюджета.
+ * <p>
+ * Бюджет - доля {@link #LOOKUP_COST_SHARE} стоимости того же выражения, спланированного без индексов на тех же данных,
+ * а не абсолютное число: он не зависит от размера каталога и настроек стоимости Postgres. Планы, которые читают
+ * только маленькие таблицы, по стоимости не проверяются.
+ * <p>
+ * Seq Scan по таблицам не больше {@link #SMALL_TABLE_PAGES} страниц допустим - справочники атрибутов и брендов
+ * на таком размере планировщик правильно читает целиком. Новый метод репозитория без кейса здесь
+ * роняет {@link #everyRepositoryMethod_ShouldHavePlanCase_WhenDeclared()}.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.change-log=classpath:/db/db.changelog-master.yaml",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Import(QueryPlanRegressionTest.SqlCaptureConfig.class)
+class QueryPlanRegressionTest {
+    private static final DataGeneratorProperties DATASET =
+            new DataGeneratorProperties(500, 3, 6, 100, 40, 1.07, 20_000, 6, 4, 5_000, 2, 42, false, false, 1_000);
+    private static final int SMALL_TABLE_PAGES = 16;
+    private static final double LOOKUP_COST_SHARE = 0.1;
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private AttributeRepository attributeRepository;
+    @Autowired
+    private BrandRepository brandRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private FeedbackRepository feedbackRepository;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private CatalogModel model;
+    private ProductSpec product;
+
+    @TestConfiguration
+    static class SqlCaptureConfig {
+
+        @Bean
+        static BeanPostProcessor sqlCapturePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource target && !(bean instanceof SqlCapture) ? new SqlCapture(target) : bean;
+                }
+            };
+        }
+    }
+
+    private record PlanCase(String name, Runnable action, double costShare) {
+    }
+
+    @BeforeAll
+    void generateCatalog() throws Exception {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        model = new CatalogModel(DATASET);
+        new CatalogCopyLoader(dataSource, DATASET).load(model, specs -> {});
+
+        long id = DATASET.products() / 2;
+        do {
+            product = model.product(id++);
+        } while (product.feedbacks().isEmpty());
+    }
+
+    private List<PlanCase> cases() {
+        Attribute attribute = model.attributes().get(model.attributes().size() / 2);
+        Brand brand = model.brands().get(model.brands().size() / 2);
+        Category category = model.categories().get(model.categories().size() / 2);
+        UUID userPublicId = product.feedbacks().get(0).userPublicId();
+
+        return List.of(
+                lookup("AttributeRepository.existsByName", () -> attributeRepository.existsByName(attribute.getName())),
+                lookup("AttributeRepository.findByPublicId", () -> attributeRepository.findByPublicId(attribute.getPublicId())),
+                lookup("AttributeRepository.findByName", () -> attributeRepository.findByName(attribute.getName())),
+                lookup("AttributeRepository.findBySlug", () -> attributeRepository.findBySlug(attribute.getSlug())),
+
+                lookup("BrandRepository.findByPublicId", () -> brandRepository.findByPublicId(brand.getPublicId())),
+                lookup("BrandRepository.findBySlug", () -> brandRepository.findBySlug(brand.getSlug())),
+                lookup("BrandRepository.existsByName", () -> brandRepository.existsByName(brand.getName())),
+
+                lookup("CategoryRepository.findByPublicId", () -> categoryRepository.findByPublicId(category.getPublicId())),
+                lookup("CategoryRepository.findBySlug", () -> categoryRepository.findBySlug(category.getSlug())),
+                lookup("CategoryRepository.existsByName", () -> categoryRepository.existsByName(category.getName())),
+                lookup("CategoryRepository.findByPublicIdIn", () -> categoryRepository.findByPublicIdIn(
+                        product.categories().stream().map(Category::getPublicId).toList())),
+
+                lookup("FeedbackRepository.existsByProduct_PublicIdAndUserPublicId", () ->
+                        feedbackRepository.existsByProduct_PublicIdAndUserPublicId(product.publicId(), userPublicId)),
+                lookup("FeedbackRepository.findByPublicId", () -> feedbackRepository.findByPublicId(product.feedbacks().get(0).publicId())),
+
+                lookup("InventoryRepository.findByPublicId", () -> inventoryRepository.findByPublicId(product.inventoryPublicId())),
+                lookup("InventoryRepository.findByProduct_PublicId", () -> inventoryRepository.findByProduct_PublicId(product.publicId())),
+
+                lookup("ProductRepository.findByPublicId", () -> productRepository.findByPublicId(product.publicId())),
+                lookup("ProductRepository.findBySku", () -> productRepository.findBySku(product.sku()))
+        );
+    }
+
+    @TestFactory
+    Stream<DynamicTest> repositoryQueries_ShouldUseIndexes_WhenCatalogIsLarge() {
+        return cases().stream().map(planCase -> DynamicTest.dynamicTest(planCase.name(), () -> {
+            List<CapturedStatement> statements = ((SqlCapture) dataSource).capture(planCase.action());
+            assertFalse(statements.isEmpty(), "No SQL captured for " + planCase.name());
+
+            for (CapturedStatement statement : statements) {
+                QueryPlan plan = explain(statement, true);
+                for (String relation : plan.seqScannedRelations()) {
+                    if (pages(relation) > SMALL_TABLE_PAGES) {
+                        fail("%s: Seq Scan on %s (%d pages)%n%s".formatted(planCase.name(), relation, pages(relation), plan.describe()));
+                    }
+                }
+                if (plan.scannedRelations().stream().allMatch(relation -> pages(relation) <= SMALL_TABLE_PAGES)) {
+                    continue;
+                }
+
+                QueryPlan withoutIndexes = explain(statement, false);
+                double budget = withoutIndexes.totalCost() * planCase.costShare();
+                assertTrue(plan.totalCost() <= budget, () -> "%s: cost %.1f exceeds budget %.1f (%.0f%% of %.1f without indexes)%n%s%s"
+                        .formatted(planCase.name(), plan.totalCost(), budget, planCase.costShare() * 100,
+                                withoutIndexes.totalCost(), plan.describe(), withoutIndexes.describe()));
+            }
+        }));
+    }
+
+    @Test
+    void everyRepositoryMethod_ShouldHavePlanCase_WhenDeclared() {
+        Set<String> covered = cases().stream()
+                .map(PlanCase::name)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        Set<String> declared = Stream.of(AttributeRepository.class, AttributeValueRepository.class, BrandRepository.class,
+                        CategoryRepository.class, FeedbackRepository.class, InventoryRepository.class,
+                        ProductAttributeValueRepository.class, ProductRepository.class)
+                .flatMap(type -> Arrays.stream(type.getDeclaredMethods())
+                        .filter(method -> Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()))
+                        .filter(method -> !method.isSynthetic())
+                        .map(Method::getName)
+                        .map(name -> type.getSimpleName() + "." + name))
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(declared, covered);
+    }
+
+    /**
+     * @param indexes false - спланировать без индексов, как если бы их не было
+     */
+    private QueryPlan explain(CapturedStatement statement, boolean indexes) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            setIndexScans(connection, indexes);
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + statement.sql())) {
+                statement.bind(explain);
+                try (ResultSet rs = explain.executeQuery()) {
+                    rs.next();
+                    return QueryPlan.parse(statement.sql(), rs.getString(1));
+                }
+            } finally {
+                setIndexScans(connection, true);
+            }
+        }
+    }
+
+    private static void setIndexScans(Connection connection, boolean enabled) throws SQLException {
+        try (Statement settings = connection.createStatement()) {
+            for (String setting : List.of("enable_indexscan", "enable_bitmapscan", "enable_indexonlyscan")) {
+                settings.execute("SET " + setting + " = " + (enabled ? "on" : "off"));
+            }
+        }
+    }
+
+    private int pages(String relation) {
+        Integer pages = jdbcTemplate.queryForObject("SELECT relpages FROM pg_class WHERE relname = ?", Integer.class, relation);
+        return pages == null ? 0 : pages;
+    }
+
+    private static PlanCase lookup(String name, Runnable action) {
+        return new PlanCase(name, action, LOOKUP_COST_SHARE);
+    }
+}
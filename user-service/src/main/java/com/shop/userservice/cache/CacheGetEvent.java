@@ -0,0 +1,46 @@
+package com.shop.userservice.cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR событие чтения из {@link TwoLevelCache}. Попадания в L1 быстрее порога и в запись не идут,
+ * остаются чтения из Redis и загрузки из БД.
+ */
+@Name("com.shop.userservice.CacheGet")
+@Label("Cache Get")
+@Description("TwoLevelCache read, including Redis round trip and value loading")
+@Category({"Shop", "Cache"})
+@StackTrace(false)
+@Threshold("1 ms")
+class CacheGetEvent extends Event {
+    @Label("Cache")
+    String cache;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Result")
+    String result;
+
+    static CacheGetEvent start() {
+        CacheGetEvent event = new CacheGetEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(String cache, String operation, String result) {
+        end();
+        if (shouldCommit()) {
+            this.cache = cache;
+            this.operation = operation;
+            this.result = result;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.shop.userservice.cache;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
+
+/**
+ * Параметры загрузки значений в {@link TwoLevelCache}
+ *
+ * @param negativeCachePolicy какие исключения загрузчика кэшировать как отсутствие значения, null - не кэшировать
+ * @param negativeTtl сколько живет негативная запись в L1 (в Redis TTL задает TtlFunction кэша)
+ * @param refreshAheadThreshold обновлять запись в фоне, если до истечения в Redis осталось меньше, null - выключено
+ * @param refreshExecutor пул для фонового обновления
+ * @param localCopier копия изменяемого значения при записи в L1 и чтении из него, null - значения неизменяемы
+ */
+public record CacheLoadSettings(NegativeCachePolicy negativeCachePolicy,
+                                Duration negativeTtl,
+                                Duration refreshAheadThreshold,
+                                Executor refreshExecutor,
+                                UnaryOperator<Object> localCopier) {
+}
@@ -0,0 +1,119 @@
+package com.shop.userservice.cache;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Индекс тегов кэша: для каждого тега (например, пользователя) в Redis хранится SET полных ключей
+ * его записей во всех кэшах. Eviction по тегу удаляет все записи одним Lua скриптом, в том числе
+ * ключи по старым email/телефону, которые по текущим данным пользователя уже не вычислить.
+ * <p>
+ * Скрипт обращается к ключам, не переданным в KEYS, поэтому рассчитан на standalone Redis, не на cluster.
+ */
+public class CacheTagIndex {
+    private static final int DEL_CHUNK = 500;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> EVICT_SCRIPT = new DefaultRedisScript<>("""
+            local tags = tonumber(ARGV[1])
+            local removed = {}
+            for i = 1, tags do
+                for _, member in ipairs(redis.call('smembers', KEYS[i])) do
+                    table.insert(removed, member)
+                end
+            end
+            for i = tags + 1, #KEYS do
+                table.insert(removed, KEYS[i])
+            end
+            local toDelete = {}
+            for i = 1, tags do
+                table.insert(toDelete, KEYS[i])
+            end
+            for _, key in ipairs(removed) do
+                table.insert(toDelete, key)
+            end
+            for i = 1, #toDelete, %d do
+                redis.call('del', unpack(toDelete, i, math.min(i + %d - 1, #toDelete)))
+            end
+            return removed
+            """.formatted(DEL_CHUNK, DEL_CHUNK), List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String tagPrefix;
+    private final Function<Object, String> tagResolver;
+    private final Duration tagTtl;
+
+    /**
+     * @param tagResolver тег значения или null, если значение не тегируется (например, негативная запись)
+     * @param tagTtl TTL множества тега, продлевается при каждой записи; должен быть не меньше максимального TTL записей
+     */
+    public CacheTagIndex(StringRedisTemplate redisTemplate, String tagPrefix,
+                         Function<Object, String> tagResolver, Duration tagTtl) {
+        this.redisTemplate = redisTemplate;
+        this.tagPrefix = tagPrefix;
+        this.tagResolver = tagResolver;
+        this.tagTtl = tagTtl;
+    }
+
+    /**
+     * Добавляет ключи в множества их тегов одним pipeline (SADD + PEXPIRE на тег)
+     *
+     * @param values значения по полным Redis ключам
+     */
+    public void tag(Map<String, ?> values) {
+        Map<String, List<String>> keysByTag = new LinkedHashMap<>();
+        values.forEach((redisKey, value) -> {
+            String tag = value == null ? null : tagResolver.apply(value);
+            if (tag != null) {
+                keysByTag.computeIfAbsent(tagPrefix + tag, ignored -> new ArrayList<>()).add(redisKey);
+            }
+        });
+
+        if (keysByTag.isEmpty()) {
+            return;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keysByTag.forEach((tagKey, redisKeys) -> {
+                byte[] rawTagKey = tagKey.getBytes(StandardCharsets.UTF_8);
+                connection.setCommands().sAdd(rawTagKey, redisKeys.stream()
+                        .map(redisKey -> redisKey.getBytes(StandardCharsets.UTF_8))
+                        .toArray(byte[][]::new));
+                connection.keyCommands().pExpire(rawTagKey, tagTtl.toMillis());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Удаляет записи всех переданных тегов, сами теги и ключи {@code redisKeys} за один вызов Redis
+     *
+     * @param tags теги без префикса
+     * @param redisKeys полные ключи, которые нужно удалить без тега (например, негативные записи)
+     * @return удаленные ключи записей (без ключей тегов) - для инвалидации L1
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> evict(Collection<String> tags, Collection<String> redisKeys) {
+        if (tags.isEmpty() && redisKeys.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> keys = new ArrayList<>(tags.size() + redisKeys.size());
+        tags.forEach(tag -> keys.add(tagPrefix + tag));
+        keys.addAll(redisKeys);
+
+        List<String> removed = redisTemplate.execute(EVICT_SCRIPT, keys, String.valueOf(tags.size()));
+        return removed == null ? List.copyOf(redisKeys) : removed;
+    }
+}
@@ -0,0 +1,72 @@
+package com.shop.userservice.cache;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Короткая блокировка загрузки ключа в Redis (SET NX PX), чтобы при истечении записи
+ * в БД ходил только один инстанс. Остальные ждут появления значения в Redis.
+ */
+public class DistributedLoadLock {
+    private static final String LOCK_PREFIX = "lock:";
+    private static final long POLL_INTERVAL_MS = 20L;
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('del', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration lockTtl;
+    private final Duration lockWait;
+
+    public DistributedLoadLock(StringRedisTemplate redisTemplate, Duration lockTtl, Duration lockWait) {
+        this.redisTemplate = redisTemplate;
+        this.lockTtl = lockTtl;
+        this.lockWait = lockWait;
+    }
+
+    /**
+     * @return токен владельца или null, если блокировка уже занята
+     */
+    public String tryLock(String redisKey) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + redisKey, token, lockTtl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    public void unlock(String redisKey, String token) {
+        redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_PREFIX + redisKey), token);
+    }
+
+    /**
+     * Ждет, пока владелец блокировки положит значение, не дольше lockWait
+     *
+     * @return значение или null, если не дождались
+     */
+    public <T> T awaitValue(Supplier<T> lookup) {
+        long deadline = System.nanoTime() + lockWait.toNanos();
+
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            T value = lookup.get();
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
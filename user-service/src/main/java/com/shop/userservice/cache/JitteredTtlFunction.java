@@ -0,0 +1,41 @@
+package com.shop.userservice.cache;
+
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * TTL записи в Redis: базовый TTL со случайным разбросом ±jitter, чтобы записи, положенные одновременно,
+ * не истекали одновременно. Для {@link NegativeCacheEntry} - короткий negativeTtl.
+ */
+public class JitteredTtlFunction implements RedisCacheWriter.TtlFunction {
+    private final Duration ttl;
+    private final double jitter;
+    private final Duration negativeTtl;
+
+    /**
+     * @param jitter доля от ttl, например 0.1 - разброс ±10%
+     */
+    public JitteredTtlFunction(Duration ttl, double jitter, Duration negativeTtl) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("TTL jitter must be in range [0, 1)");
+        }
+        this.ttl = ttl;
+        this.jitter = jitter;
+        this.negativeTtl = negativeTtl;
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, Object value) {
+        if (value instanceof NegativeCacheEntry) {
+            return negativeTtl;
+        }
+        if (jitter == 0) {
+            return ttl;
+        }
+
+        long spread = (long) (ttl.toMillis() * jitter);
+        return ttl.plusMillis(ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+    }
+}
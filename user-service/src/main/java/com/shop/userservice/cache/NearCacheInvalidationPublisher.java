@@ -0,0 +1,48 @@
+package com.shop.userservice.cache;
+
+import com.shop.userservice.util.LogMarker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collection;
+
+/**
+ * Рассылает инвалидации L1 всем инстансам через Redis pub/sub.
+ * Сообщение - полные Redis ключи через перевод строки, для clear - префикс кэша со звездочкой.
+ */
+@Slf4j
+public class NearCacheInvalidationPublisher {
+    public static final String CLEAR_SUFFIX = "*";
+    public static final String SEPARATOR = "\n";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+
+    public NearCacheInvalidationPublisher(StringRedisTemplate redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    public void publishEvict(String redisKey) {
+        publish(redisKey);
+    }
+
+    public void publishEvict(Collection<String> redisKeys) {
+        if (!redisKeys.isEmpty()) {
+            publish(String.join(SEPARATOR, redisKeys));
+        }
+    }
+
+    public void publishClear(String keyPrefix) {
+        publish(keyPrefix + CLEAR_SUFFIX);
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (Exception exception) {
+            log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Near-Cache | PUBLISH INVALIDATION ERROR | channel={} | causer={}",
+                    channel, exception.getMessage());
+        }
+    }
+}
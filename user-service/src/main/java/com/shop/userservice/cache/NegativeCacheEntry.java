@@ -0,0 +1,10 @@
+package com.shop.userservice.cache;
+
+/**
+ * Маркер "значения нет" в кэше. Хранится с коротким TTL, при попадании
+ * кэш заново бросает исключение из {@link NegativeCachePolicy} с сохраненным сообщением.
+ *
+ * @param message сообщение исходного исключения
+ */
+public record NegativeCacheEntry(String message) {
+}
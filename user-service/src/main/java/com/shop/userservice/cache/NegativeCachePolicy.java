@@ -0,0 +1,31 @@
+package com.shop.userservice.cache;
+
+import java.util.function.Function;
+
+/**
+ * Какое исключение загрузчика считается отсутствием значения и как его воссоздать при попадании в кэш
+ *
+ * @param exceptionType тип исключения загрузчика, например UserNotFoundException
+ * @param exceptionFactory создает исключение по сохраненному сообщению
+ */
+public record NegativeCachePolicy(Class<? extends RuntimeException> exceptionType,
+                                  Function<String, ? extends RuntimeException> exceptionFactory) {
+
+    /**
+     * Ищет исключение нужного типа в цепочке причин (Spring оборачивает исключения метода)
+     */
+    public RuntimeException find(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (exceptionType.isInstance(current)) {
+                return exceptionType.cast(current);
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return null;
+    }
+
+    public RuntimeException recreate(NegativeCacheEntry entry) {
+        return exceptionFactory.apply(entry.message());
+    }
+}
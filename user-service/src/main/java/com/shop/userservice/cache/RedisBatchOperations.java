@@ -0,0 +1,100 @@
+package com.shop.userservice.cache;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Пакетные команды Redis на сырых ключах/значениях: один MGET на чтение, pipeline SET NX PX на запись
+ * и один DEL на удаление, без round-trip на каждый ключ. GET вместе с PTTL - одним pipeline.
+ */
+public class RedisBatchOperations {
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisBatchOperations(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * @return значения в порядке ключей, null - ключа нет
+     */
+    public List<byte[]> mget(List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys.toArray(byte[][]::new)));
+
+        return values == null ? Collections.nCopies(keys.size(), null) : values;
+    }
+
+    /**
+     * Значение и оставшийся TTL ключа за один round-trip
+     */
+    public ExpiringValue getWithTtl(byte[] key) {
+        // без сериализатора результатов: иначе StringRedisTemplate превратит значение в строку
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(key);
+            connection.keyCommands().pTtl(key);
+            return null;
+        }, null);
+
+        byte[] value = (byte[]) results.get(0);
+        Long ttl = (Long) results.get(1);
+        return new ExpiringValue(value, ttl == null ? -1 : ttl);
+    }
+
+    /**
+     * Записывает значения одним pipeline, только если ключа еще нет:
+     * свежее значение, положенное параллельным загрузчиком, не перетирается.
+     */
+    public void setAllIfAbsent(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Entry entry : entries) {
+                connection.stringCommands().set(entry.key(), entry.value(), expiration(entry.ttl()),
+                        RedisStringCommands.SetOption.ifAbsent());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return сколько ключей было удалено
+     */
+    public long delete(List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        Long deleted = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.keyCommands().del(keys.toArray(byte[][]::new)));
+
+        return deleted == null ? 0 : deleted;
+    }
+
+    private static Expiration expiration(Duration ttl) {
+        return ttl == null || ttl.isZero() || ttl.isNegative()
+                ? Expiration.persistent()
+                : Expiration.from(ttl);
+    }
+
+    public record Entry(byte[] key, byte[] value, Duration ttl) {
+    }
+
+    /**
+     * @param value null - ключа нет
+     * @param ttlMillis отрицательный, если ключа нет или TTL не задан
+     */
+    public record ExpiringValue(byte[] value, long ttlMillis) {
+    }
+}
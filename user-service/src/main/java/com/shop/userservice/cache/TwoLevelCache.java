@@ -0,0 +1,556 @@
+package com.shop.userservice.cache;
+
+import com.shop.userservice.observability.RequestTimings;
+import com.shop.userservice.observability.RequestTimings.Category;
+import com.shop.userservice.observability.RequestTimings.Stopwatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Двухуровневый кэш: L1 - in-process Caffeine (ограничен по размеру и TTL), L2 - {@link RedisCache}.
+ * <p>
+ * Чтение идет сначала в L1, при промахе в Redis, найденное значение кладется в L1.
+ * Eviction/clear удаляют запись в обоих уровнях и рассылают инвалидацию L1 остальным инстансам
+ * через {@link NearCacheInvalidationPublisher}. Устаревание L1 на других инстансах ограничено TTL L1.
+ * Значение из Redis не кладется в L1, если за время чтения прошла инвалидация (счетчик {@code invalidations}):
+ * иначе параллельный evict мог бы вернуть в L1 старое значение.
+ * <p>
+ * L1 хранит сами объекты, без сериализации. Изменяемые значения (JPA сущности) копируются
+ * {@link CacheLoadSettings#localCopier()} при записи в L1 и на каждое чтение, чтобы изменение объекта вызывающим
+ * не попадало в кэш; неизменяемые значения копировщик отдает как есть.
+ * <p>
+ * {@link #get(Object, Callable)} (используется {@code @Cacheable(sync = true)}) защищает БД от stampede:
+ * один загрузчик на ключ внутри инстанса и {@link DistributedLoadLock} между инстансами.
+ * Исключения из {@link NegativeCachePolicy} кэшируются как {@link NegativeCacheEntry},
+ * записи, близкие к истечению в Redis, обновляются в фоне (refresh-ahead): при включенном refresh-ahead промах L1
+ * читает значение вместе с TTL одним pipeline, и задача ставится в пул только для таких записей.
+ * <p>
+ * {@link #getAll(Collection)}/{@link #putAll(Map)} - пакетный путь: L1, затем один MGET в Redis,
+ * дозаполнение одним pipeline.
+ * <p>
+ * Записанные значения регистрируются в {@link CacheTagIndex} (если задан), чтобы все записи
+ * одной сущности во всех кэшах удалялись одной операцией.
+ * <p>
+ * Время чтений и пакетных операций идет в cache у {@link RequestTimings} (без вложенной загрузки из БД).
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+    private final RedisCache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final NearCacheInvalidationPublisher invalidationPublisher;
+    private final DistributedLoadLock loadLock;
+    private final CacheLoadSettings loadSettings;
+    private final RedisBatchOperations batchOperations;
+    private final CacheTagIndex tagIndex;
+    private final ConversionService conversionService;
+    private final String keyPrefix;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Counter localHit;
+    private final Counter localMiss;
+    private final Counter remoteHit;
+    private final Counter remoteMiss;
+    private final Counter loads;
+    private final Counter negativeHit;
+    private final Counter refreshes;
+
+    public TwoLevelCache(RedisCache remote,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+                         NearCacheInvalidationPublisher invalidationPublisher,
+                         DistributedLoadLock loadLock,
+                         CacheLoadSettings loadSettings,
+                         RedisBatchOperations batchOperations,
+                         CacheTagIndex tagIndex,
+                         MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.local = local;
+        this.invalidationPublisher = invalidationPublisher;
+        this.loadLock = loadLock;
+        this.loadSettings = loadSettings;
+        this.batchOperations = batchOperations;
+        this.tagIndex = tagIndex;
+        this.conversionService = remote.getCacheConfiguration().getConversionService();
+        this.keyPrefix = remote.getCacheConfiguration().getKeyPrefixFor(remote.getName());
+
+        this.localHit = requests(meterRegistry, "l1", "hit");
+        this.localMiss = requests(meterRegistry, "l1", "miss");
+        this.remoteHit = requests(meterRegistry, "l2", "hit");
+        this.remoteMiss = requests(meterRegistry, "l2", "miss");
+        this.negativeHit = requests(meterRegistry, "any", "negative_hit");
+        this.loads = loads(meterRegistry, "load");
+        this.refreshes = loads(meterRegistry, "refresh_ahead");
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder("cache_requests")
+                .description("Two level cache lookups by level and result")
+                .tags("cache", remote.getName(), "level", level, "result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter loads(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("cache_loads")
+                .description("Calls of the cache value loader (database lookups)")
+                .tags("cache", remote.getName(), "type", type)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    /**
+     * Полный ключ записи в Redis (prefix + ключ), он же ключ L1 и сообщение инвалидации
+     */
+    public String redisKey(Object key) {
+        return keyPrefix + conversionService.convert(key, String.class);
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Негативные записи для этого пути считаются промахом: вызывающий загрузит значение сам
+     */
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheGetEvent event = CacheGetEvent.start();
+        Stopwatch stopwatch = RequestTimings.begin(Category.CACHE);
+        Object stored;
+        try {
+            stored = lookup(key, redisKey(key));
+        } finally {
+            stopwatch.stop();
+        }
+        boolean hit = stored != null && !(stored instanceof NegativeCacheEntry);
+        event.finish(getName(), "get", hit ? "hit" : "miss");
+
+        return hit ? new SimpleValueWrapper(fromStoreValue(stored)) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [%s]: %s".formatted(type.getName(), value));
+        }
+        return (T) value;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CacheGetEvent event = CacheGetEvent.start();
+        Stopwatch stopwatch = RequestTimings.begin(Category.CACHE);
+        boolean completed = false;
+        try {
+            T value = getOrLoad(key, valueLoader);
+            completed = true;
+            return value;
+        } finally {
+            stopwatch.stop();
+            event.finish(getName(), "getOrLoad", completed ? "success" : "error");
+        }
+    }
+
+    private <T> T getOrLoad(Object key, Callable<T> valueLoader) {
+        String redisKey = redisKey(key);
+
+        Object cached = localGet(redisKey);
+        if (cached != null) {
+            localHit.increment();
+            return unwrap(key, valueLoader, cached);
+        }
+        localMiss.increment();
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(redisKey, flight);
+        if (leader != null) {
+            return unwrap(key, valueLoader, localCopy(await(leader)));
+        }
+
+        try {
+            Object stored = loadThroughRemote(key, redisKey, valueLoader);
+            flight.complete(stored);
+            return unwrap(key, valueLoader, stored);
+        } catch (RuntimeException exception) {
+            flight.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(redisKey, flight);
+        }
+    }
+
+    private Object lookup(Object key, String redisKey) {
+        Object cached = localGet(redisKey);
+        if (cached != null) {
+            localHit.increment();
+            return cached;
+        }
+        localMiss.increment();
+
+        long sequence = invalidations.get();
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null) {
+            remoteMiss.increment();
+            return null;
+        }
+        remoteHit.increment();
+
+        Object stored = toStoreValue(wrapper.get());
+        fillLocal(redisKey, stored, sequence);
+        return stored;
+    }
+
+    private Object loadThroughRemote(Object key, String redisKey, Callable<?> valueLoader) {
+        long sequence = invalidations.get();
+        Object cached;
+        long remainingTtl = -1;
+        if (loadSettings.refreshAheadThreshold() == null) {
+            ValueWrapper wrapper = remote.get(key);
+            cached = wrapper == null ? null : toStoreValue(wrapper.get());
+        } else {
+            // TTL приходит тем же round-trip, что и значение: задача refresh-ahead ставится, только если она нужна
+            RedisBatchOperations.ExpiringValue expiring = batchOperations.getWithTtl(serializeKey(redisKey));
+            cached = remoteValue(expiring.value());
+            remainingTtl = expiring.ttlMillis();
+        }
+        if (cached != null) {
+            remoteHit.increment();
+            fillLocal(redisKey, cached, sequence);
+            if (remainingTtl >= 0 && remainingTtl <= loadSettings.refreshAheadThreshold().toMillis()) {
+                scheduleRefreshAhead(key, redisKey, valueLoader);
+            }
+            return cached;
+        }
+        remoteMiss.increment();
+
+        String token = loadLock.tryLock(redisKey);
+        if (token == null) {
+            ValueWrapper loadedByOther = loadLock.awaitValue(() -> remote.get(key));
+            if (loadedByOther != null) {
+                Object stored = toStoreValue(loadedByOther.get());
+                fillLocal(redisKey, stored, sequence);
+                return stored;
+            }
+        }
+
+        try {
+            return loadAndStore(key, redisKey, valueLoader, loads);
+        } finally {
+            if (token != null) {
+                loadLock.unlock(redisKey, token);
+            }
+        }
+    }
+
+    private Object loadAndStore(Object key, String redisKey, Callable<?> valueLoader, Counter counter) {
+        counter.increment();
+
+        Object stored;
+        try {
+            stored = toStoreValue(valueLoader.call());
+        } catch (Exception exception) {
+            RuntimeException negative = loadSettings.negativeCachePolicy() == null
+                    ? null : loadSettings.negativeCachePolicy().find(exception);
+
+            if (negative != null) {
+                NegativeCacheEntry entry = new NegativeCacheEntry(negative.getMessage());
+                remote.put(key, entry);
+                localPut(redisKey, entry);
+            }
+            throw new ValueRetrievalException(key, valueLoader, exception);
+        }
+
+        remote.put(key, fromStoreValue(stored));
+        localPut(redisKey, stored);
+        tag(Map.of(redisKey, stored));
+        return stored;
+    }
+
+    /**
+     * Перезагружает скоро истекающую запись в фоне, пока остальные читают старое значение.
+     * Перезагружает только владелец {@link DistributedLoadLock}.
+     */
+    private void scheduleRefreshAhead(Object key, String redisKey, Callable<?> valueLoader) {
+        try {
+            loadSettings.refreshExecutor().execute(() -> {
+                String token = loadLock.tryLock(redisKey);
+                if (token == null) {
+                    return;
+                }
+                try {
+                    loadAndStore(key, redisKey, valueLoader, refreshes);
+                } catch (RuntimeException exception) {
+                    log.debug("service=Near-Cache | action=refreshAhead | key={} | causer={}", redisKey, exception.getMessage());
+                } finally {
+                    loadLock.unlock(redisKey, token);
+                }
+            });
+        } catch (RuntimeException exception) {
+            log.debug("service=Near-Cache | action=refreshAhead | SKIPPED | key={} | causer={}", redisKey, exception.getMessage());
+        }
+    }
+
+    private Object await(CompletableFuture<Object> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw exception;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T unwrap(Object key, Callable<T> valueLoader, Object stored) {
+        if (stored instanceof NegativeCacheEntry entry) {
+            negativeHit.increment();
+            if (loadSettings.negativeCachePolicy() == null) {
+                throw new ValueRetrievalException(key, valueLoader, new IllegalStateException(entry.message()));
+            }
+            throw new ValueRetrievalException(key, valueLoader, loadSettings.negativeCachePolicy().recreate(entry));
+        }
+        return (T) fromStoreValue(stored);
+    }
+
+    private Object localGet(String redisKey) {
+        Object cached = local.getIfPresent(redisKey);
+        return cached == null ? null : localCopy(cached);
+    }
+
+    private void localPut(String redisKey, Object stored) {
+        local.put(redisKey, localCopy(stored));
+    }
+
+    /**
+     * Кладет прочитанное из Redis в L1 и убирает обратно, если с начала чтения прошла инвалидация.
+     * Инвалидация увеличивает счетчик до очистки L1, поэтому запись либо удалит она, либо эта проверка.
+     *
+     * @param sequence значение {@code invalidations} до обращения к Redis
+     */
+    private void fillLocal(String redisKey, Object stored, long sequence) {
+        Object copy = localCopy(stored);
+        local.put(redisKey, copy);
+        if (invalidations.get() != sequence) {
+            local.asMap().remove(redisKey, copy);
+        }
+    }
+
+    /**
+     * NullValue и {@link NegativeCacheEntry} неизменяемы и не копируются
+     */
+    private Object localCopy(Object stored) {
+        if (stored == NullValue.INSTANCE || stored instanceof NegativeCacheEntry || loadSettings.localCopier() == null) {
+            return stored;
+        }
+        return loadSettings.localCopier().apply(stored);
+    }
+
+    /**
+     * Значение, прочитанное из Redis в обход {@link RedisCache}: null сохранен там как NullValue
+     */
+    private Object remoteValue(byte[] raw) {
+        Object value = deserializeValue(raw);
+        return value instanceof NullValue ? NullValue.INSTANCE : value;
+    }
+
+    private static Object toStoreValue(Object value) {
+        return value == null ? NullValue.INSTANCE : value;
+    }
+
+    private static Object fromStoreValue(Object stored) {
+        return stored == NullValue.INSTANCE ? null : stored;
+    }
+
+    /**
+     * Пакетное чтение: сначала L1, промахи одним MGET из Redis, найденное в Redis кладется в L1.
+     * Загрузчик не вызывается.
+     *
+     * @return найденные значения по ключам, включая {@link NegativeCacheEntry}; промахов в карте нет
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> result = new LinkedHashMap<>();
+        List<Object> remoteKeys = new ArrayList<>();
+        List<byte[]> rawKeys = new ArrayList<>();
+
+        for (Object key : keys) {
+            String redisKey = redisKey(key);
+            Object cached = localGet(redisKey);
+            if (cached != null) {
+                localHit.increment();
+                result.put(key, fromStoreValue(cached));
+            } else {
+                localMiss.increment();
+                remoteKeys.add(key);
+                rawKeys.add(serializeKey(redisKey));
+            }
+        }
+
+        long sequence = invalidations.get();
+        Stopwatch stopwatch = RequestTimings.begin(Category.CACHE);
+        List<byte[]> rawValues;
+        try {
+            rawValues = batchOperations.mget(rawKeys);
+        } finally {
+            stopwatch.stop();
+        }
+        for (int i = 0; i < remoteKeys.size(); i++) {
+            Object value = deserializeValue(rawValues.get(i));
+            if (value == null) {
+                remoteMiss.increment();
+                continue;
+            }
+            remoteHit.increment();
+
+            Object key = remoteKeys.get(i);
+            fillLocal(redisKey(key), value, sequence);
+            result.put(key, value);
+        }
+
+        return result;
+    }
+
+    /**
+     * Пакетная запись в оба уровня, в Redis - одним pipeline с TTL каждой записи.
+     * Значения, которые уже есть в Redis, не перезаписываются.
+     */
+    public void putAll(Map<?, ?> values) {
+        RedisCacheConfiguration configuration = remote.getCacheConfiguration();
+        List<RedisBatchOperations.Entry> entries = new ArrayList<>(values.size());
+        Map<String, Object> written = new LinkedHashMap<>();
+
+        values.forEach((key, value) -> {
+            if (value == null) {
+                return;
+            }
+            String redisKey = redisKey(key);
+            entries.add(new RedisBatchOperations.Entry(
+                    serializeKey(redisKey),
+                    ByteUtils.getBytes(configuration.getValueSerializationPair().write(value)),
+                    configuration.getTtlFunction().getTimeToLive(key, value)
+            ));
+            localPut(redisKey, value);
+            written.put(redisKey, value);
+        });
+
+        Stopwatch stopwatch = RequestTimings.begin(Category.CACHE);
+        try {
+            batchOperations.setAllIfAbsent(entries);
+        } finally {
+            stopwatch.stop();
+        }
+        tag(written);
+    }
+
+    private void tag(Map<String, ?> values) {
+        if (tagIndex != null) {
+            tagIndex.tag(values);
+        }
+    }
+
+    private byte[] serializeKey(String redisKey) {
+        return ByteUtils.getBytes(remote.getCacheConfiguration().getKeySerializationPair().write(redisKey));
+    }
+
+    private Object deserializeValue(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return remote.getCacheConfiguration().getValueSerializationPair().read(ByteBuffer.wrap(raw));
+        } catch (RuntimeException exception) {
+            log.debug("service=Near-Cache | action=read | UNREADABLE VALUE | cache={} | causer={}",
+                    getName(), exception.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String redisKey = redisKey(key);
+
+        remote.put(key, value);
+        localPut(redisKey, toStoreValue(value));
+        tag(Collections.singletonMap(redisKey, value));
+    }
+
+    @Override
+    public void evict(Object key) {
+        String redisKey = redisKey(key);
+
+        remote.evict(key);
+        invalidations.incrementAndGet();
+        local.invalidate(redisKey);
+        invalidationPublisher.publishEvict(redisKey);
+    }
+
+    /**
+     * @return была ли запись хотя бы в одном из уровней (в Redis - по ответу DEL)
+     */
+    @Override
+    public boolean evictIfPresent(Object key) {
+        String redisKey = redisKey(key);
+
+        boolean remotePresent = batchOperations.delete(List.of(serializeKey(redisKey))) > 0;
+        invalidations.incrementAndGet();
+        boolean localPresent = local.asMap().remove(redisKey) != null;
+        invalidationPublisher.publishEvict(redisKey);
+        return remotePresent || localPresent;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        invalidations.incrementAndGet();
+        local.invalidateAll();
+        invalidationPublisher.publishClear(keyPrefix);
+    }
+
+    /**
+     * Инвалидация L1 по сообщению от другого инстанса, Redis не трогает
+     */
+    void invalidateLocal(String redisKey) {
+        invalidations.incrementAndGet();
+        local.invalidate(redisKey);
+    }
+
+    void invalidateLocalAll() {
+        invalidations.incrementAndGet();
+        local.invalidateAll();
+    }
+}
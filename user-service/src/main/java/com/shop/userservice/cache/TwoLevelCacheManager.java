@@ -0,0 +1,160 @@
+package com.shop.userservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Оборачивает {@link RedisCacheManager}: кэши из {@code nearCacheNames} получают L1 перед Redis,
+ * остальные отдаются как есть. Одновременно слушает канал инвалидации L1.
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+    private final RedisCacheManager redisCacheManager;
+    private final NearCacheInvalidationPublisher invalidationPublisher;
+    private final DistributedLoadLock loadLock;
+    private final CacheLoadSettings loadSettings;
+    private final RedisBatchOperations batchOperations;
+    private final CacheTagIndex tagIndex;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> nearCacheNames;
+    private final long maximumSize;
+    private final Duration localTtl;
+
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager,
+                                NearCacheInvalidationPublisher invalidationPublisher,
+                                DistributedLoadLock loadLock,
+                                CacheLoadSettings loadSettings,
+                                RedisBatchOperations batchOperations,
+                                CacheTagIndex tagIndex,
+                                MeterRegistry meterRegistry,
+                                Set<String> nearCacheNames,
+                                long maximumSize,
+                                Duration localTtl) {
+        this.redisCacheManager = redisCacheManager;
+        this.invalidationPublisher = invalidationPublisher;
+        this.loadLock = loadLock;
+        this.loadSettings = loadSettings;
+        this.batchOperations = batchOperations;
+        this.tagIndex = tagIndex;
+        this.meterRegistry = meterRegistry;
+        this.nearCacheNames = Set.copyOf(nearCacheNames);
+        this.maximumSize = maximumSize;
+        this.localTtl = localTtl;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        if (!nearCacheNames.contains(name)) {
+            return redisCacheManager.getCache(name);
+        }
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    /**
+     * Полный Redis ключ записи кэша с L1
+     */
+    public String redisKey(String cacheName, Object key) {
+        if (!nearCacheNames.contains(cacheName)) {
+            throw new IllegalArgumentException("Cache %s has no near cache".formatted(cacheName));
+        }
+        return caches.computeIfAbsent(cacheName, this::createCache).redisKey(key);
+    }
+
+    /**
+     * Удаляет все записи тегов и переданные ключи одной операцией Redis, сбрасывает их в L1
+     * этого инстанса и рассылает одну инвалидацию остальным
+     *
+     * @param tags теги сущностей (см. {@link CacheTagIndex})
+     * @param redisKeys полные ключи, которые нужно удалить помимо тегированных
+     */
+    public void evictTagged(Collection<String> tags, Collection<String> redisKeys) {
+        List<String> removed = tagIndex.evict(tags, redisKeys);
+
+        invalidateLocal(removed);
+        invalidationPublisher.publishEvict(removed);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        RedisCache remote = (RedisCache) redisCacheManager.getCache(name);
+
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new LocalExpiry())
+                .build();
+
+        return new TwoLevelCache(remote, local, invalidationPublisher, loadLock, loadSettings, batchOperations,
+                tagIndex, meterRegistry);
+    }
+
+    /**
+     * Негативные записи живут в L1 не дольше negativeTtl, остальные - localTtl
+     */
+    private class LocalExpiry implements Expiry<String, Object> {
+        @Override
+        public long expireAfterCreate(String key, Object value, long currentTime) {
+            Duration ttl = value instanceof NegativeCacheEntry && loadSettings.negativeTtl() != null
+                    && loadSettings.negativeTtl().compareTo(localTtl) < 0
+                    ? loadSettings.negativeTtl()
+                    : localTtl;
+            return ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+
+        invalidateLocal(Arrays.asList(body.split(NearCacheInvalidationPublisher.SEPARATOR)));
+
+        log.debug("service=Near-Cache | action=invalidate | keys={}", body);
+    }
+
+    private void invalidateLocal(Collection<String> redisKeys) {
+        for (String redisKey : redisKeys) {
+            for (TwoLevelCache cache : caches.values()) {
+                if (!redisKey.startsWith(cache.getKeyPrefix())) {
+                    continue;
+                }
+                if (redisKey.equals(cache.getKeyPrefix() + NearCacheInvalidationPublisher.CLEAR_SUFFIX)) {
+                    cache.invalidateLocalAll();
+                } else {
+                    cache.invalidateLocal(redisKey);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.shop.userservice.cache;
+
+import java.util.Set;
+
+/**
+ * Единое определение пользовательских кэшей: имена для {@code @Cacheable}, конфигурации кэшей
+ * и eviction, а также тег, которым помечаются все записи одного пользователя
+ */
+public final class UserCacheNames {
+    public static final String BY_UUID = "users:byUUID";
+    public static final String BY_ID = "users:byId";
+    public static final String BY_EMAIL = "users:byEmail";
+    public static final String BY_PHONE = "users:byPhone";
+
+    public static final Set<String> ALL = Set.of(BY_UUID, BY_ID, BY_EMAIL, BY_PHONE);
+
+    public static final String TAG_PREFIX = "users:tag:";
+
+    private UserCacheNames() {
+    }
+
+    public static String userTag(Long userId) {
+        return "user:" + userId;
+    }
+}
@@ -1,43 +1,193 @@
 package com.shop.userservice.configuration;
 
+import com.shop.userservice.observability.RequestTimings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.TaskDecorator;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Пулы сервиса. Каждый публикует метрики executor_* (active, queued, completed, pool size) с тегом name
+ * и executor_queue_wait - время задачи в очереди до начала выполнения.
+ */
 @Configuration
 @EnableAsync
+@EnableScheduling
+@EnableConfigurationProperties(AsyncExecutorProperties.class)
 public class AsyncConfig {
+    private final MeterRegistry meterRegistry;
 
+    public AsyncConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public OverloadRejectionHandler taskExecutorOverloadHandler(AsyncExecutorProperties properties) {
+        return new OverloadRejectionHandler("taskExecutor", properties.overloadPolicy(), properties.maxWait(), meterRegistry);
+    }
+
+    /**
+     * Общий пул: размеры и политика перегрузки меняются на лету через {@link AsyncExecutorTuner}.
+     * Сейчас его единственный потребитель - refresh-ahead кэша пользователей
+     * (см. {@link AsyncExecutorProperties.OverloadPolicy#CALLER_RUNS}).
+     */
     @Bean
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(50);
-        executor.setQueueCapacity(100);
+    public ThreadPoolTaskExecutor taskExecutor(AsyncExecutorProperties properties, OverloadRejectionHandler taskExecutorOverloadHandler) {
+        ThreadPoolTaskExecutor executor = new MeteredThreadPoolTaskExecutor(meterRegistry);
+        executor.setCorePoolSize(properties.corePoolSize());
+        executor.setMaxPoolSize(properties.maxPoolSize());
+        executor.setQueueCapacity(properties.queueCapacity());
+        executor.setRejectedExecutionHandler(taskExecutorOverloadHandler);
         executor.setThreadNamePrefix("Async-");
-        executor.setTaskDecorator(new MdcTaskDecorator());
-        executor.initialize();
+        return instrument(executor, "taskExecutor");
+    }
+
+    /**
+     * Пул для DELETE запросов в Keycloak из очереди удаления: ограничивает параллелизм
+     * и не делит потоки с {@link #taskExecutor()}
+     */
+    @Bean
+    public Executor keycloakDeletionExecutor(@Value("${keycloak.deletion.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new MeteredThreadPoolTaskExecutor(meterRegistry);
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("Keycloak-Delete-");
+        return instrument(executor, "keycloakDeletionExecutor");
+    }
+
+    /**
+     * Фоновые задачи массового импорта, очередь ограничена - лишние запуски отклоняются
+     */
+    @Bean
+    public Executor userImportExecutor(@Value("${users.import.max-concurrent-imports:1}") int maxConcurrentImports) {
+        ThreadPoolTaskExecutor executor = new MeteredThreadPoolTaskExecutor(meterRegistry);
+        executor.setCorePoolSize(maxConcurrentImports);
+        executor.setMaxPoolSize(maxConcurrentImports);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("User-Import-");
+        return instrument(executor, "userImportExecutor");
+    }
+
+    /**
+     * Окно параллельного создания пользователей в Keycloak при импорте
+     */
+    @Bean
+    public Executor userImportProvisioningExecutor(@Value("${users.import.parallelism:8}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new MeteredThreadPoolTaskExecutor(meterRegistry);
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("User-Import-Keycloak-");
+        return instrument(executor, "userImportProvisioningExecutor");
+    }
+
+    /**
+     * Сверка пользователей с Keycloak: parallelism потоков на страницы Keycloak и проверки,
+     * еще один - на чтение таблицы users
+     */
+    @Bean
+    public Executor userReconciliationExecutor(@Value("${keycloak.reconciliation.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new MeteredThreadPoolTaskExecutor(meterRegistry);
+        executor.setCorePoolSize(parallelism + 1);
+        executor.setMaxPoolSize(parallelism + 1);
+        executor.setThreadNamePrefix("User-Reconciliation-");
+        return instrument(executor, "userReconciliationExecutor");
+    }
+
+    private ThreadPoolTaskExecutor instrument(ThreadPoolTaskExecutor executor, String name) {
+        MdcTaskDecorator mdcTaskDecorator = new MdcTaskDecorator();
+        QueueWaitTaskDecorator queueWaitTaskDecorator = new QueueWaitTaskDecorator(Timer.builder("executor_queue_wait")
+                .description("Time a task waited in the executor queue before it started")
+                .tag("name", name)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
+
+        executor.setTaskDecorator(runnable -> mdcTaskDecorator.decorate(queueWaitTaskDecorator.decorate(runnable)));
+        executor.setBeanName(name);
         return executor;
     }
 
+    /**
+     * Пул создает Spring в afterPropertiesSet, поэтому executor_* привязываются к нему в момент создания,
+     * а не в @Bean методе - там пул, созданный вручную, был бы заменен новым и метрики показывали бы пустой пул
+     */
+    static class MeteredThreadPoolTaskExecutor extends ThreadPoolTaskExecutor {
+        private final MeterRegistry meterRegistry;
+        private String name;
+
+        MeteredThreadPoolTaskExecutor(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public void setBeanName(String name) {
+            super.setBeanName(name);
+            this.name = name;
+        }
+
+        @Override
+        protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+            ExecutorService executorService = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+            new ExecutorServiceMetrics(getThreadPoolExecutor(), name, List.of()).bindTo(meterRegistry);
+            return executorService;
+        }
+    }
+
+    static class QueueWaitTaskDecorator implements TaskDecorator {
+        private final Timer queueWait;
+
+        QueueWaitTaskDecorator(Timer queueWait) {
+            this.queueWait = queueWait;
+        }
+
+        @Override
+        public Runnable decorate(Runnable runnable) {
+            long submittedAt = System.nanoTime();
+            return () -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                runnable.run();
+            };
+        }
+    }
+
+    /**
+     * Переносит MDC в поток пула. {@link RequestTimings} не переносится: задачи пулов фоновые,
+     * запрос их не ждет, и их время не должно попадать в Server-Timing запроса.
+     * <p>
+     * После задачи MDC потока восстанавливается, а не очищается: при CALLER_RUNS задача выполняется
+     * в потоке запроса, и очистка стерла бы MDC запроса (ip, trace id) до конца его обработки.
+     */
     static class MdcTaskDecorator implements TaskDecorator {
         @Override
         public Runnable decorate(Runnable runnable) {
             Map<String, String> contextMap = MDC.getCopyOfContextMap();
             return () -> {
+                Map<String, String> previous = MDC.getCopyOfContextMap();
                 try {
                     if (contextMap != null)
                         MDC.setContextMap(contextMap);
 
                     runnable.run();
                 } finally {
-                    MDC.clear();
+                    if (previous != null)
+                        MDC.setContextMap(previous);
+                    else
+                        MDC.clear();
                 }
             };
         }
@@ -0,0 +1,39 @@
+package com.shop.userservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Настройки общего пула {@code taskExecutor}. Размеры пула и политика перегрузки применяются на лету
+ * при изменении конфигурации в Consul, емкость очереди - только при старте.
+ *
+ * @param corePoolSize постоянных потоков
+ * @param maxPoolSize максимум потоков, сверх core создаются только при заполненной очереди
+ * @param queueCapacity емкость очереди задач
+ * @param overloadPolicy что делать с задачей, когда заняты все потоки и очередь
+ * @param maxWait сколько ждать места в очереди при {@link OverloadPolicy#BOUNDED_WAIT}
+ */
+@ConfigurationProperties(prefix = "async.executor")
+public record AsyncExecutorProperties(@DefaultValue("10") int corePoolSize,
+                                      @DefaultValue("50") int maxPoolSize,
+                                      @DefaultValue("100") int queueCapacity,
+                                      @DefaultValue("SHED") OverloadPolicy overloadPolicy,
+                                      @DefaultValue("200ms") Duration maxWait) {
+
+    public enum OverloadPolicy {
+        /**
+         * Задача выполняется в вызывающем потоке - естественное торможение источника.
+         * Для taskExecutor вызывающий - поток HTTP запроса, а задача - refresh-ahead кэша: при перегрузке
+         * фоновое обновление превращается в синхронную загрузку из Redis/БД на пути запроса.
+         * Для этого пула предпочтительны SHED (обновление пропускается, запись перезагрузится при промахе)
+         * или BOUNDED_WAIT.
+         */
+        CALLER_RUNS,
+        /** Ждать места в очереди не дольше maxWait, затем отклонить */
+        BOUNDED_WAIT,
+        /** Сразу отклонить (TaskRejectedException) */
+        SHED
+    }
+}
@@ -0,0 +1,61 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.util.LogMarker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Применяет изменения async.executor.* из Consul к работающему {@code taskExecutor} без перезапуска.
+ * Consul config watch публикует RefreshEvent, после обновления Environment приходит {@link EnvironmentChangeEvent}.
+ */
+@Slf4j
+@Component
+public class AsyncExecutorTuner {
+    private static final String PREFIX = "async.executor";
+
+    private final Environment environment;
+    private final ThreadPoolTaskExecutor taskExecutor;
+    private final OverloadRejectionHandler overloadHandler;
+
+    public AsyncExecutorTuner(Environment environment,
+                              @Qualifier("taskExecutor") ThreadPoolTaskExecutor taskExecutor,
+                              OverloadRejectionHandler taskExecutorOverloadHandler) {
+        this.environment = environment;
+        this.taskExecutor = taskExecutor;
+        this.overloadHandler = taskExecutorOverloadHandler;
+    }
+
+    @EventListener
+    public void onEnvironmentChange(EnvironmentChangeEvent event) {
+        if (event.getKeys().stream().anyMatch(key -> key.startsWith(PREFIX + "."))) {
+            apply(Binder.get(environment).bindOrCreate(PREFIX, AsyncExecutorProperties.class));
+        }
+    }
+
+    void apply(AsyncExecutorProperties properties) {
+        if (properties.corePoolSize() < 1 || properties.maxPoolSize() < properties.corePoolSize()) {
+            log.warn(LogMarker.INFRA_ERROR.getMarker(), "service=Executor | RESIZE REJECTED | executor=taskExecutor | core={} | max={}",
+                    properties.corePoolSize(), properties.maxPoolSize());
+            return;
+        }
+
+        // ThreadPoolExecutor требует core <= max на каждом шаге: при росте сначала max, при уменьшении сначала core
+        if (properties.maxPoolSize() >= taskExecutor.getMaxPoolSize()) {
+            taskExecutor.setMaxPoolSize(properties.maxPoolSize());
+            taskExecutor.setCorePoolSize(properties.corePoolSize());
+        } else {
+            taskExecutor.setCorePoolSize(properties.corePoolSize());
+            taskExecutor.setMaxPoolSize(properties.maxPoolSize());
+        }
+        overloadHandler.update(properties.overloadPolicy(), properties.maxWait());
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=Executor | action=resize | executor=taskExecutor | core={} | max={} | overloadPolicy={} | maxWait={}",
+                properties.corePoolSize(), properties.maxPoolSize(), properties.overloadPolicy(), properties.maxWait());
+    }
+}
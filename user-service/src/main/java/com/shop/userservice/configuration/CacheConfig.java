@@ -1,35 +1,137 @@
 package com.shop.userservice.configuration;
 
-import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
+import com.shop.userservice.cache.CacheLoadSettings;
+import com.shop.userservice.cache.CacheTagIndex;
+import com.shop.userservice.cache.DistributedLoadLock;
+import com.shop.userservice.cache.JitteredTtlFunction;
+import com.shop.userservice.cache.NearCacheInvalidationPublisher;
+import com.shop.userservice.cache.NegativeCachePolicy;
+import com.shop.userservice.cache.RedisBatchOperations;
+import com.shop.userservice.cache.TwoLevelCacheManager;
+import com.shop.userservice.cache.UserCacheNames;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.exception.UserNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
 import java.time.Duration;
+import java.util.concurrent.Executor;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
+    private final String invalidationChannel;
+    private final Duration userTtl;
+    private final double userTtlJitter;
+    private final Duration negativeTtl;
+
+    public CacheConfig(@Value("${cache.near.invalidation-channel:users:cache:invalidation}") String invalidationChannel,
+                       @Value("${cache.users.ttl:20m}") Duration userTtl,
+                       @Value("${cache.users.ttl-jitter:0.1}") double userTtlJitter,
+                       @Value("${cache.users.negative-ttl:30s}") Duration negativeTtl) {
+        this.invalidationChannel = invalidationChannel;
+        this.userTtl = userTtl;
+        this.userTtlJitter = userTtlJitter;
+        this.negativeTtl = negativeTtl;
+    }
+
+    @Bean
+    public RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
+        RedisCacheConfiguration baseConfig = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        new GenericJackson2JsonRedisSerializer()
+                ));
+        RedisCacheConfiguration userConfig = baseConfig.entryTtl(new JitteredTtlFunction(userTtl, userTtlJitter, negativeTtl));
+
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory);
+        UserCacheNames.ALL.forEach(name -> builder.withCacheConfiguration(name, userConfig));
+
+        return builder
+                .cacheDefaults(
+                        baseConfig.entryTtl(Duration.ofMinutes(20))
+                )
+                .build();
+    }
+
+    @Bean
+    public NearCacheInvalidationPublisher nearCacheInvalidationPublisher(StringRedisTemplate stringRedisTemplate) {
+        return new NearCacheInvalidationPublisher(stringRedisTemplate, invalidationChannel);
+    }
+
+    @Bean
+    public DistributedLoadLock distributedLoadLock(StringRedisTemplate stringRedisTemplate,
+                                                   @Value("${cache.users.lock-ttl:5s}") Duration lockTtl,
+                                                   @Value("${cache.users.lock-wait:1s}") Duration lockWait) {
+        return new DistributedLoadLock(stringRedisTemplate, lockTtl, lockWait);
+    }
+
+    @Bean
+    public RedisBatchOperations redisBatchOperations(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBatchOperations(stringRedisTemplate);
+    }
+
+    /**
+     * Тег пользователя на всех его записях в users:* кэшах. Множество тега живет не меньше
+     * максимального TTL записи (ttl + jitter)
+     */
+    @Bean
+    public CacheTagIndex userCacheTagIndex(StringRedisTemplate stringRedisTemplate) {
+        Duration tagTtl = Duration.ofMillis((long) (userTtl.toMillis() * (1 + userTtlJitter))).plus(Duration.ofMinutes(1));
+
+        return new CacheTagIndex(stringRedisTemplate, UserCacheNames.TAG_PREFIX,
+                value -> value instanceof User user && user.getId() != null ? UserCacheNames.userTag(user.getId()) : null,
+                tagTtl);
+    }
+
+    /**
+     * L1 (Caffeine) перед Redis для пользовательских кэшей, single-flight загрузка,
+     * негативное кэширование UserNotFoundException и refresh-ahead. {@link User} изменяем,
+     * поэтому L1 отдает его копию через builder - копирование полей без JSON
+     */
+    @Bean
+    @Primary
+    public TwoLevelCacheManager cacheManager(RedisCacheManager redisCacheManager,
+                                             NearCacheInvalidationPublisher nearCacheInvalidationPublisher,
+                                             DistributedLoadLock distributedLoadLock,
+                                             RedisBatchOperations redisBatchOperations,
+                                             CacheTagIndex userCacheTagIndex,
+                                             MeterRegistry meterRegistry,
+                                             @Qualifier("taskExecutor") Executor taskExecutor,
+                                             @Value("${cache.users.refresh-ahead:2m}") Duration refreshAhead,
+                                             @Value("${cache.near.maximum-size:10000}") long maximumSize,
+                                             @Value("${cache.near.ttl:30s}") Duration localTtl) {
+        CacheLoadSettings loadSettings = new CacheLoadSettings(
+                new NegativeCachePolicy(UserNotFoundException.class, UserNotFoundException::new),
+                negativeTtl,
+                refreshAhead.isZero() ? null : refreshAhead,
+                taskExecutor,
+                value -> value instanceof User user ? user.toBuilder().build() : value
+        );
+
+        return new TwoLevelCacheManager(redisCacheManager, nearCacheInvalidationPublisher, distributedLoadLock,
+                loadSettings, redisBatchOperations, userCacheTagIndex, meterRegistry, UserCacheNames.ALL,
+                maximumSize, localTtl);
+    }
 
     @Bean
-    public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer() {
-        return (builder -> {
-            RedisCacheConfiguration baseConfig = RedisCacheConfiguration.defaultCacheConfig()
-                    .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
-                            new GenericJackson2JsonRedisSerializer()
-                    ));
-
-            builder
-                    .withCacheConfiguration("users:byUUID", baseConfig.entryTtl(Duration.ofMinutes(20)))
-                    .withCacheConfiguration("users:byId", baseConfig.entryTtl(Duration.ofMinutes(20)))
-                    .withCacheConfiguration("users:byEmail", baseConfig.entryTtl(Duration.ofMinutes(20)))
-                    .withCacheConfiguration("users:ByPhone", baseConfig.entryTtl(Duration.ofMinutes(20)))
-                    .cacheDefaults(
-                            baseConfig.entryTtl(Duration.ofMinutes(20))
-                    );
-        });
+    public RedisMessageListenerContainer nearCacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                               TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(invalidationChannel));
+        return container;
     }
 }
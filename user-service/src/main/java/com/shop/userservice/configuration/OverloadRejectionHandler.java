@@ -0,0 +1,83 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.configuration.AsyncExecutorProperties.OverloadPolicy;
+import com.shop.userservice.util.LogMarker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Политика перегрузки пула, переключаемая на лету. Каждый исход считается в {@code executor_overload{action}}.
+ */
+@Slf4j
+public class OverloadRejectionHandler implements RejectedExecutionHandler {
+    private final String executorName;
+    private final Counter callerRuns;
+    private final Counter waited;
+    private final Counter shed;
+
+    private volatile OverloadPolicy policy;
+    private volatile Duration maxWait;
+
+    public OverloadRejectionHandler(String executorName, OverloadPolicy policy, Duration maxWait, MeterRegistry meterRegistry) {
+        this.executorName = executorName;
+        this.policy = policy;
+        this.maxWait = maxWait;
+        this.callerRuns = outcome(meterRegistry, executorName, "caller_runs");
+        this.waited = outcome(meterRegistry, executorName, "waited");
+        this.shed = outcome(meterRegistry, executorName, "shed");
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String executorName, String action) {
+        return Counter.builder("executor_overload")
+                .description("Tasks that found the executor saturated, by overload action")
+                .tags("name", executorName, "action", action)
+                .register(meterRegistry);
+    }
+
+    public void update(OverloadPolicy policy, Duration maxWait) {
+        this.policy = policy;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        OverloadPolicy current = executor.isShutdown() ? OverloadPolicy.SHED : policy;
+        switch (current) {
+            case CALLER_RUNS -> {
+                callerRuns.increment();
+                task.run();
+            }
+            case BOUNDED_WAIT -> {
+                if (offer(task, executor)) {
+                    waited.increment();
+                } else {
+                    shed(task, executor);
+                }
+            }
+            case SHED -> shed(task, executor);
+        }
+    }
+
+    private boolean offer(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            return executor.getQueue().offer(task, maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void shed(Runnable task, ThreadPoolExecutor executor) {
+        shed.increment();
+        log.debug(LogMarker.INFRA_ERROR.getMarker(), "service=Executor | TASK SHED | executor={} | active={} | queued={}",
+                executorName, executor.getActiveCount(), executor.getQueue().size());
+        throw new RejectedExecutionException("Executor %s is saturated".formatted(executorName));
+    }
+}
@@ -0,0 +1,60 @@
+package com.shop.userservice.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.ratelimit.RateLimitFilter;
+import com.shop.userservice.ratelimit.RateLimitProperties;
+import com.shop.userservice.ratelimit.TokenBucketTable;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+@ConditionalOnProperty(prefix = "rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig {
+
+    @Bean
+    public TokenBucketTable rateLimitBuckets(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        TokenBucketTable buckets = new TokenBucketTable(properties.maxKeys());
+        Gauge.builder("http_rate_limiter_keys", buckets, TokenBucketTable::size)
+                .description("Rate limiter buckets held in memory")
+                .register(meterRegistry);
+        return buckets;
+    }
+
+    /**
+     * Фильтр сразу за цепочкой Spring Security: аутентификация уже есть, контроллеры еще не вызваны
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimitProperties properties, TokenBucketTable rateLimitBuckets,
+                                                                   ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(
+                new RateLimitFilter(properties, rateLimitBuckets, objectMapper, meterRegistry));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+
+    @Bean
+    public RateLimitSweeper rateLimitSweeper(TokenBucketTable rateLimitBuckets) {
+        return new RateLimitSweeper(rateLimitBuckets);
+    }
+
+    static class RateLimitSweeper {
+        private final TokenBucketTable buckets;
+
+        RateLimitSweeper(TokenBucketTable buckets) {
+            this.buckets = buckets;
+        }
+
+        @Scheduled(fixedDelayString = "${rate-limit.sweep-interval:1m}")
+        public void evictIdle() {
+            buckets.evictIdle();
+        }
+    }
+}
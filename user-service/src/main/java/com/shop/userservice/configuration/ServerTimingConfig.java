@@ -0,0 +1,49 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.observability.ServerTimingFilter;
+import com.shop.userservice.observability.TimedJackson2HttpMessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(prefix = "monitoring.server-timing", name = "enabled", havingValue = "true")
+public class ServerTimingConfig {
+
+    /**
+     * Первым в цепочке: app в Server-Timing включает security, rate limit и все остальные фильтры
+     */
+    @Bean
+    public FilterRegistrationBean<ServerTimingFilter> serverTimingFilter() {
+        FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(new ServerTimingFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Подменяет JSON конвертер на {@link TimedJackson2HttpMessageConverter} с тем же ObjectMapper и media types
+     */
+    @Bean
+    public WebMvcConfigurer timedJacksonConverterConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                for (int i = 0; i < converters.size(); i++) {
+                    if (converters.get(i) instanceof MappingJackson2HttpMessageConverter jackson
+                            && !(jackson instanceof TimedJackson2HttpMessageConverter)) {
+                        TimedJackson2HttpMessageConverter timed = new TimedJackson2HttpMessageConverter(jackson.getObjectMapper());
+                        timed.setSupportedMediaTypes(jackson.getSupportedMediaTypes());
+                        converters.set(i, timed);
+                    }
+                }
+            }
+        };
+    }
+}
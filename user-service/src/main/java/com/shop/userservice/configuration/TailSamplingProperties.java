@@ -0,0 +1,29 @@
+package com.shop.userservice.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Настройки tail выборки трейсов
+ *
+ * @param enabled включает {@code TailSamplingSampler} и {@code TailSamplingSpanProcessor} вместо вероятностного sampler'а
+ * @param slowThreshold корневой спан дольше - трейс экспортируется всегда
+ * @param targetSpansPerSecond бюджет экспорта, под который подстраивается базовая вероятность
+ * @param minRate нижняя граница базовой вероятности
+ * @param maxRate верхняя граница базовой вероятности
+ * @param maxBufferedTraces сколько незавершенных трейсов держать в памяти
+ * @param maxSpansPerTrace спаны сверх лимита в трейсе не экспортируются
+ * @param traceTimeout через сколько забыть трейс, локальный корень которого так и не завершился
+ */
+@ConfigurationProperties(prefix = "monitoring.tracing.tail-sampling")
+public record TailSamplingProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("1s") Duration slowThreshold,
+                                     @DefaultValue("50") long targetSpansPerSecond,
+                                     @DefaultValue("0.01") double minRate,
+                                     @DefaultValue("1.0") double maxRate,
+                                     @DefaultValue("10000") int maxBufferedTraces,
+                                     @DefaultValue("512") int maxSpansPerTrace,
+                                     @DefaultValue("60s") Duration traceTimeout) {
+}
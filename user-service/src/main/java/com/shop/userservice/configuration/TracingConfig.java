@@ -0,0 +1,63 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.keycloak.KeycloakResilienceTraceMarker;
+import com.shop.userservice.observability.TailSamplingSampler;
+import com.shop.userservice.observability.TailSamplingSpanProcessor;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.registry.RegistryEventConsumer;
+import io.github.resilience4j.retry.Retry;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tail выборка трейсов: собственный {@link Sampler} заменяет вероятностный из management.tracing.sampling,
+ * {@link TailSamplingSpanProcessor} экспортирует выбранные трейсы через те же SpanExporter'ы (zipkin).
+ */
+@Configuration
+@EnableConfigurationProperties(TailSamplingProperties.class)
+@ConditionalOnProperty(prefix = "monitoring.tracing.tail-sampling", name = "enabled", havingValue = "true")
+public class TracingConfig {
+
+    @Bean
+    public Sampler tailSamplingSampler() {
+        return new TailSamplingSampler();
+    }
+
+    /**
+     * Свой BatchSpanProcessor не регистрируется бином, иначе он попал бы в SdkTracerProvider
+     * и экспортировал все записанные спаны
+     */
+    @Bean
+    public TailSamplingSpanProcessor tailSamplingSpanProcessor(TailSamplingProperties properties,
+                                                               ObjectProvider<SpanExporter> spanExporters) {
+        BatchSpanProcessor exporter = BatchSpanProcessor.builder(SpanExporter.composite(spanExporters.orderedStream().toList()))
+                .setExportUnsampledSpans(true)
+                .build();
+
+        return new TailSamplingSpanProcessor(exporter, properties.slowThreshold(), properties.targetSpansPerSecond(),
+                properties.minRate(), properties.maxRate(), properties.maxBufferedTraces(),
+                properties.maxSpansPerTrace(), properties.traceTimeout());
+    }
+
+    @Bean
+    public RegistryEventConsumer<Retry> keycloakRetryTraceMarker() {
+        return KeycloakResilienceTraceMarker.retry();
+    }
+
+    @Bean
+    public RegistryEventConsumer<CircuitBreaker> keycloakCircuitBreakerTraceMarker() {
+        return KeycloakResilienceTraceMarker.circuitBreaker();
+    }
+
+    @Bean
+    public RegistryEventConsumer<Bulkhead> keycloakBulkheadTraceMarker() {
+        return KeycloakResilienceTraceMarker.bulkhead();
+    }
+}
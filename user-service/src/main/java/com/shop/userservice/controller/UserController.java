@@ -1,11 +1,15 @@
 package com.shop.userservice.controller;
 
 import com.shop.userservice.dto.PageResponse;
+import com.shop.userservice.dto.UserBatchLookupDto;
 import com.shop.userservice.dto.UserDto;
+import com.shop.userservice.dto.UserImportStatusDto;
 import com.shop.userservice.dto.UserRegistrationDto;
 import com.shop.userservice.dto.UserSearchDto;
 import com.shop.userservice.exception.ValidationException;
 import com.shop.userservice.security.UserPrincipal;
+import com.shop.userservice.service.UserExportService;
+import com.shop.userservice.service.UserImportService;
 import com.shop.userservice.service.UserService;
 import com.shop.userservice.util.NormalizerPhoneNumber;
 import com.shop.userservice.util.factory.UserDtoFactory;
@@ -16,12 +20,18 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -32,6 +42,8 @@ import java.util.UUID;
 @RequestMapping("/api/v1")
 public class UserController implements UserControllerDocs {
     private final UserService userService;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
 
     @PostMapping("/registration")
     @ResponseStatus(HttpStatus.CREATED)
@@ -62,6 +74,15 @@ public class UserController implements UserControllerDocs {
         return ResponseEntity.ok(UserDtoFactory.createUserDto(userService.getUserByUUID(uuid)));
     }
 
+    @PostMapping("/by-uuids")
+    public ResponseEntity<Map<UUID, UserDto>> getUsersByUUIDs(@Valid @RequestBody UserBatchLookupDto userBatchLookupDto) {
+        Map<UUID, UserDto> users = new LinkedHashMap<>();
+        userService.getUsersByUUIDs(userBatchLookupDto.uuids())
+                .forEach((uuid, user) -> users.put(uuid, UserDtoFactory.createUserDto(user)));
+
+        return ResponseEntity.ok(users);
+    }
+
     @GetMapping
     public ResponseEntity<PageResponse<UserDto>> getUserPagingAndSort(@PageableDefault(page = 0, size = 20, sort = "id", direction = Sort.Direction.ASC)
                                                                   Pageable pageable) {
@@ -71,8 +92,40 @@ public class UserController implements UserControllerDocs {
     @PostMapping("/search")
     public ResponseEntity<PageResponse<UserDto>> searchUser(@RequestBody UserSearchDto userSearchDto,
                                                     @PageableDefault(page = 0, size = 20, sort = "id", direction = Sort.Direction.ASC)
-                                                    Pageable pageable) {
-        return ResponseEntity.ok(PageResponse.from(userService.searchUserByFilter(userSearchDto, pageable).map(UserDtoFactory::createUserDto)));
+                                                    Pageable pageable,
+                                                    @RequestParam(name = "rank", defaultValue = "false") boolean rankBySimilarity) {
+        return ResponseEntity.ok(PageResponse.from(userService.searchUserByFilter(userSearchDto, pageable, rankBySimilarity)
+                .map(UserDtoFactory::createUserDto)));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(name = "format", defaultValue = "ndjson") String format) {
+        return switch (format) {
+            case "ndjson" -> ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"")
+                    .body(userExportService::exportNdjson);
+            case "csv" -> ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/gzip"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv.gz\"")
+                    .body(userExportService::exportCsvGzip);
+            default -> throw new ValidationException(Map.of("format", "The export format must be ndjson or csv"));
+        };
+    }
+
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ResponseEntity<UserImportStatusDto> importUsers(@RequestParam("importId") String importId,
+                                                           InputStream body) throws IOException {
+        if (!importId.matches("^[A-Za-z0-9_-]{1,100}$")) {
+            throw new ValidationException(Map.of("importId", "The import id must contain 1 to 100 letters, digits, '_' or '-'"));
+        }
+
+        return ResponseEntity.accepted().body(userImportService.startImport(importId, body));
+    }
+
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<UserImportStatusDto> getImportStatus(@PathVariable String importId) {
+        return ResponseEntity.of(userImportService.getStatus(importId));
     }
 
     @DeleteMapping("/{id}")
@@ -3,6 +3,7 @@ package com.shop.userservice.controller;
 import com.shop.userservice.dto.*;
 import com.shop.userservice.security.UserPrincipal;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -19,7 +20,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
 import java.util.UUID;
 
 @Tag(name = "User management")
@@ -159,10 +165,121 @@ public interface UserControllerDocs {
     ResponseEntity<UserDto> getUserByUUID(@NotNull(message = "The user's UUID must be specified") @PathVariable String rawUuid);
 
 
+    @Operation(summary = "Get users by uuids",
+            description = "Returns found users keyed by UUID, not found UUIDs are absent in the response")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(responseCode = "200", description = "Successful completion of the request",
+                            content = @Content(mediaType = "application/json",
+                                    examples = @ExampleObject(value = """
+                                            {
+                                                "550e8400-e29b-41d4-a716-446655440000": {
+                                                    "id": 1,
+                                                    "userUUID": "550e8400-e29b-41d4-a716-446655440000",
+                                                    "lastName": "Ivanov",
+                                                    "firstName": "Alexander",
+                                                    "patronymic": "Aleksandrovich",
+                                                    "phoneNumber": "88888888888",
+                                                    "email": "martos@example.com"
+                                                }
+                                            }
+                                            """))),
+                    @ApiResponse(responseCode = "400", description = "Invalid input data",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class),
+                                    examples = @ExampleObject(value = """
+                                            {
+                                                "messageCode": "VALIDATION_FAILED",
+                                                "httpCode": 400,
+                                                "message": "Validation error",
+                                                "timestamp": "2025-08-24T20:00:00Z"
+                                                "details": {
+                                                    "uuids": "No more than 100 UUIDs per request",
+                                                }
+                                            }
+                                            """)))
+            }
+    )
+    ResponseEntity<Map<UUID, UserDto>> getUsersByUUIDs(@Valid @RequestBody UserBatchLookupDto userBatchLookupDto);
+
+
 
     ResponseEntity<PageResponse<UserDto>> searchUser(@RequestBody UserSearchDto userSearchDto,
                                                      @PageableDefault(page = 0, size = 20, sort = "id", direction = Sort.Direction.ASC)
-                                                    Pageable pageable);
+                                                    Pageable pageable,
+                                                     @Parameter(description = "Sort by similarity to the text filters instead of the sort parameter")
+                                                     @RequestParam(name = "rank", defaultValue = "false") boolean rankBySimilarity);
+
+
+    @Operation(summary = "Export all users",
+            description = "Streams all users in one pass: NDJSON (one user per line) or gzip compressed CSV")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(responseCode = "200", description = "Export stream",
+                            content = {
+                                    @Content(mediaType = "application/x-ndjson"),
+                                    @Content(mediaType = "application/gzip")
+                            }),
+                    @ApiResponse(responseCode = "400", description = "Invalid input data",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class),
+                                    examples = @ExampleObject(value = """
+                                            {
+                                                "messageCode": "VALIDATION_FAILED",
+                                                "httpCode": 400,
+                                                "message": "Validation error",
+                                                "timestamp": "2025-08-24T20:00:00Z"
+                                                "details": {
+                                                    "format": "The export format must be ndjson or csv",
+                                                }
+                                            }
+                                            """)))
+            }
+    )
+    ResponseEntity<StreamingResponseBody> exportUsers(@Parameter(description = "Export format: ndjson or csv (gzip)")
+                                                      @RequestParam(name = "format", defaultValue = "ndjson") String format);
+
+
+    @Operation(summary = "Start bulk import of users",
+            description = "Body is NDJSON, one registration object per line. The import runs in the background, "
+                    + "repeat the request with the same importId and file to resume after a failure. "
+                    + "Another file with the same importId is rejected")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(responseCode = "202", description = "Import started",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = UserImportStatusDto.class))),
+                    @ApiResponse(responseCode = "400", description = "Invalid import id, the import is already running or was started with another file",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class),
+                                    examples = @ExampleObject(value = """
+                                            {
+                                                "messageCode": "VALIDATION_FAILED",
+                                                "httpCode": 400,
+                                                "message": "Validation error",
+                                                "timestamp": "2025-08-24T20:00:00Z"
+                                                "details": {
+                                                    "importId": "The import with this id is already running",
+                                                }
+                                            }
+                                            """)))
+            }
+    )
+    ResponseEntity<UserImportStatusDto> importUsers(@Parameter(description = "Import id, the checkpoint is stored by it")
+                                                    @RequestParam("importId") String importId,
+                                                    InputStream body) throws IOException;
+
+
+    @Operation(summary = "Get bulk import progress")
+    @ApiResponses(
+            value = {
+                    @ApiResponse(responseCode = "200", description = "Successful completion of the request",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = UserImportStatusDto.class))),
+                    @ApiResponse(responseCode = "404", description = "The import with such id does not exist")
+            }
+    )
+    ResponseEntity<UserImportStatusDto> getImportStatus(@PathVariable String importId);
 
 
     @Operation(summary = "Delete user by id")
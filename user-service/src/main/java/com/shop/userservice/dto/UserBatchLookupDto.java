@@ -0,0 +1,18 @@
+package com.shop.userservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+import java.util.UUID;
+
+public record UserBatchLookupDto(
+        @Schema(description = "Users UUIDs issued by Keycloak", example = "[\"550e8400-e29b-41d4-a716-446655440000\"]")
+        @NotEmpty(message = "The users UUIDs must be specified")
+        @Size(max = UserBatchLookupDto.MAX_SIZE, message = "No more than " + UserBatchLookupDto.MAX_SIZE + " UUIDs per request")
+        List<@NotNull(message = "The user's UUID must be specified") UUID> uuids
+) {
+    public static final int MAX_SIZE = 100;
+}
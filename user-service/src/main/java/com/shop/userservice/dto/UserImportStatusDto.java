@@ -0,0 +1,26 @@
+package com.shop.userservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.OffsetDateTime;
+
+@Schema(description = "Bulk import progress")
+public record UserImportStatusDto(
+        @Schema(description = "Import id chosen by the client, repeat it to resume the import", example = "legacy-shop-2025")
+        String importId,
+        @Schema(description = "RUNNING, COMPLETED or FAILED", example = "RUNNING")
+        String status,
+        @Schema(description = "Input lines already processed (checkpoint)", example = "150000")
+        long processedLines,
+        @Schema(description = "Users created in Keycloak and User-service", example = "149000")
+        long imported,
+        @Schema(description = "Duplicates by email/phone and users already existing in Keycloak", example = "700")
+        long skipped,
+        @Schema(description = "Invalid lines and failed Keycloak provisioning", example = "300")
+        long failed,
+        @Schema(description = "Error which stopped the import")
+        String lastError,
+        OffsetDateTime startedAt,
+        OffsetDateTime updatedAt
+) {
+}
@@ -0,0 +1,8 @@
+package com.shop.userservice.dto;
+
+import java.util.UUID;
+
+public record UserRegistrationRollbackEvent(
+   UUID uuid,
+   String username
+) {}
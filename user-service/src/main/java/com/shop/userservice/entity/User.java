@@ -11,11 +11,11 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@Builder
+@Builder(toBuilder = true)
 @Table(name = "users", uniqueConstraints = {
-        @UniqueConstraint(columnNames = "userUUID"),
+        @UniqueConstraint(columnNames = "user_uuid"),
         @UniqueConstraint(columnNames = "email"),
-        @UniqueConstraint(columnNames = "phoneNumber")
+        @UniqueConstraint(columnNames = "phone_number")
 })
 @NoArgsConstructor
 @AllArgsConstructor
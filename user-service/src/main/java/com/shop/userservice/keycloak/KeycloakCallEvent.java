@@ -0,0 +1,29 @@
+package com.shop.userservice.keycloak;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR событие HTTP вызова Keycloak Admin API, пишется {@link KeycloakCallRecorder}
+ */
+@Name("com.shop.userservice.KeycloakCall")
+@Label("Keycloak Call")
+@Description("Keycloak Admin API HTTP request")
+@Category({"Shop", "Keycloak"})
+@StackTrace(false)
+@Threshold("0 ms")
+class KeycloakCallEvent extends Event {
+    @Label("HTTP Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+}
@@ -0,0 +1,56 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.observability.RequestTimings;
+import com.shop.userservice.observability.RequestTimings.Category;
+import com.shop.userservice.observability.RequestTimings.Stopwatch;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+
+import java.util.regex.Pattern;
+
+/**
+ * Фильтр resteasy клиента Keycloak: каждый HTTP запрос к Admin API, включая получение токена,
+ * пишется в JFR как {@link KeycloakCallEvent} и в keycloak у {@link RequestTimings}.
+ * UUID в пути заменяются на {id}, чтобы события группировались по ресурсу.
+ */
+class KeycloakCallRecorder implements ClientRequestFilter, ClientResponseFilter {
+    private static final String EVENT_PROPERTY = KeycloakCallRecorder.class.getName() + ".event";
+    private static final String STOPWATCH_PROPERTY = KeycloakCallRecorder.class.getName() + ".stopwatch";
+    private static final Pattern UUID_SEGMENT = Pattern.compile("/[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(?=/|$)");
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        requestContext.setProperty(STOPWATCH_PROPERTY, RequestTimings.begin(Category.KEYCLOAK));
+
+        KeycloakCallEvent event = new KeycloakCallEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            requestContext.setProperty(EVENT_PROPERTY, event);
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+        if (requestContext.getProperty(STOPWATCH_PROPERTY) instanceof Stopwatch stopwatch) {
+            stopwatch.stop();
+        }
+
+        if (!(requestContext.getProperty(EVENT_PROPERTY) instanceof KeycloakCallEvent event)) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = requestContext.getMethod();
+            event.path = normalize(requestContext.getUri().getPath());
+            event.status = responseContext.getStatus();
+            event.commit();
+        }
+    }
+
+    static String normalize(String path) {
+        return UUID_SEGMENT.matcher(path).replaceAll("/{id}");
+    }
+}
@@ -1,11 +1,16 @@
 package com.shop.userservice.keycloak;
 
+import org.keycloak.admin.client.ClientBuilderWrapper;
+import org.keycloak.admin.client.JacksonProvider;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class KeycloakConfig {
     private final String serverUrl;
@@ -13,19 +18,30 @@ public class KeycloakConfig {
     private final String adminPassword;
     private final String adminRealms;
     private final String adminClientId;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
 
     public KeycloakConfig(@Value("${keycloak.server-url}") String serverUrl,
                           @Value("${keycloak.realms.admin-realms.username}") String adminUsername,
                           @Value("${keycloak.realms.admin-realms.password}") String adminPassword,
                           @Value("${keycloak.realms.admin-realms.realm}") String adminRealms,
-                          @Value("${keycloak.realms.admin-realms.client.client-id}") String adminClientId) {
+                          @Value("${keycloak.realms.admin-realms.client.client-id}") String adminClientId,
+                          @Value("${keycloak.client.connect-timeout:2s}") Duration connectTimeout,
+                          @Value("${keycloak.client.read-timeout:5s}") Duration readTimeout) {
         this.serverUrl = serverUrl;
         this.adminUsername = adminUsername;
         this.adminPassword = adminPassword;
         this.adminRealms = adminRealms;
         this.adminClientId = adminClientId;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
     }
 
+    /**
+     * Клиент собирается так же, как внутри KeycloakBuilder (пул соединений, JacksonProvider), но с таймаутами:
+     * вызовы Admin API синхронные, поэтому время каждого вызова ограничивается на уровне сокета.
+     * Каждый HTTP запрос пишется в JFR через {@link KeycloakCallRecorder}
+     */
     @Bean
     public Keycloak keycloak() {
         return KeycloakBuilder.builder()
@@ -34,6 +50,12 @@ public class KeycloakConfig {
                 .clientId(adminClientId)
                 .username(adminUsername)
                 .password(adminPassword)
+                .resteasyClient(ClientBuilderWrapper.create(null, false)
+                        .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .register(new JacksonProvider(), 100)
+                        .register(new KeycloakCallRecorder())
+                        .build())
                 .build();
     }
 }
@@ -0,0 +1,179 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository.KeycloakDeletionTask;
+import com.shop.userservice.util.LogMarker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Удаляет пользователей в Keycloak из очереди keycloak_deletion_tasks.
+ * <p>
+ * Задачи забираются пачками, DELETE запросы идут параллельно на отдельном ограниченном пуле,
+ * результаты пачки фиксируются пачечными запросами (удаление выполненных, перенос неудачных с backoff).
+ * После max-attempts задача переводится в FAILED и остается в таблице с последней ошибкой.
+ * Транзакция и соединение с БД на время HTTP вызовов не удерживаются.
+ */
+@Slf4j
+@Component
+public class KeycloakDeletionWorker {
+    private static final double BACKOFF_JITTER = 0.2;
+
+    private final KeycloakDeletionTaskRepository taskRepository;
+    private final KeycloakService keycloakService;
+    private final Executor deletionExecutor;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final Counter removed;
+    private final Counter alreadyAbsent;
+    private final Counter failed;
+    private final Counter exhausted;
+
+    public KeycloakDeletionWorker(KeycloakDeletionTaskRepository taskRepository,
+                                  KeycloakService keycloakService,
+                                  @Qualifier("keycloakDeletionExecutor") Executor deletionExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${keycloak.deletion.batch-size:50}") int batchSize,
+                                  @Value("${keycloak.deletion.max-batches-per-run:20}") int maxBatchesPerRun,
+                                  @Value("${keycloak.deletion.max-attempts:10}") int maxAttempts,
+                                  @Value("${keycloak.deletion.lease:2m}") Duration lease,
+                                  @Value("${keycloak.deletion.initial-backoff:5s}") Duration initialBackoff,
+                                  @Value("${keycloak.deletion.max-backoff:30m}") Duration maxBackoff) {
+        this.taskRepository = taskRepository;
+        this.keycloakService = keycloakService;
+        this.deletionExecutor = deletionExecutor;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+
+        this.removed = results(meterRegistry, "removed");
+        this.alreadyAbsent = results(meterRegistry, "not_found");
+        this.failed = results(meterRegistry, "failed");
+        this.exhausted = results(meterRegistry, "exhausted");
+    }
+
+    private static Counter results(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("keycloak_deletion_tasks")
+                .description("Processed Keycloak user deletion tasks by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${keycloak.deletion.poll-interval:5s}",
+            initialDelayString = "${keycloak.deletion.poll-interval:5s}")
+    public void processPending() {
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<KeycloakDeletionTask> tasks;
+            try {
+                tasks = taskRepository.claim(batchSize, lease);
+            } catch (DataAccessException exception) {
+                log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Keycloak-Deletion-Worker | CLAIM ERROR | causer={}",
+                        exception.getMessage());
+                return;
+            }
+
+            if (tasks.isEmpty()) {
+                return;
+            }
+            processBatch(tasks);
+
+            if (tasks.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    void processBatch(List<KeycloakDeletionTask> tasks) {
+        List<CompletableFuture<String>> calls = tasks.stream()
+                .map(task -> CompletableFuture.supplyAsync(() -> remove(task), deletionExecutor))
+                .toList();
+
+        List<Long> completed = new ArrayList<>();
+        List<KeycloakDeletionTaskRepository.Retry> retries = new ArrayList<>();
+        List<KeycloakDeletionTaskRepository.Failure> failures = new ArrayList<>();
+
+        for (int i = 0; i < tasks.size(); i++) {
+            KeycloakDeletionTask task = tasks.get(i);
+            String error = calls.get(i).exceptionally(throwable -> describe(throwable)).join();
+
+            if (error == null) {
+                completed.add(task.id());
+            } else if (task.attempts() >= maxAttempts) {
+                exhausted.increment();
+                failures.add(new KeycloakDeletionTaskRepository.Failure(task.id(), error));
+
+                log.error(LogMarker.ERROR.getMarker(), "service=Keycloak-Deletion-Worker | DELETE FAILED after retries | userUUID={} | attempts={} | causer={}",
+                        task.userUUID(), task.attempts(), error);
+            } else {
+                failed.increment();
+                retries.add(new KeycloakDeletionTaskRepository.Retry(task.id(), backoff(task.attempts()), error));
+
+                log.warn(LogMarker.APP_CALL.getMarker(), "service=Keycloak-Deletion-Worker | DELETE FAILED | userUUID={} | attempt={} | causer={}",
+                        task.userUUID(), task.attempts(), error);
+            }
+        }
+
+        try {
+            taskRepository.complete(completed);
+            taskRepository.reschedule(retries);
+            taskRepository.fail(failures);
+        } catch (DataAccessException exception) {
+            // задачи останутся заблокированными до истечения lease и будут повторены, DELETE в Keycloak идемпотентен
+            log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Keycloak-Deletion-Worker | SAVE RESULT ERROR | tasks={} | causer={}",
+                    tasks.size(), exception.getMessage());
+        }
+    }
+
+    /**
+     * @return null при успехе, иначе текст ошибки
+     */
+    private String remove(KeycloakDeletionTask task) {
+        if (keycloakService.removeUserByUUID(task.userUUID().toString())) {
+            removed.increment();
+            log.info(LogMarker.AUDIT.getMarker(), "action=deleteKeycloakUser | userUUID={} | attempt={} | status=SUCCESS",
+                    task.userUUID(), task.attempts());
+        } else {
+            alreadyAbsent.increment();
+            log.info(LogMarker.AUDIT.getMarker(), "action=deleteKeycloakUser | userUUID={} | attempt={} | status=NOT_FOUND",
+                    task.userUUID(), task.attempts());
+        }
+        return null;
+    }
+
+    private static String describe(Throwable throwable) {
+        Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    /**
+     * Экспоненциальный backoff от номера попытки с потолком maxBackoff и разбросом ±20%
+     */
+    Duration backoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+        long delayMs = Math.min(initialBackoff.toMillis() * (1L << exponent), maxBackoff.toMillis());
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-BACKOFF_JITTER, BACKOFF_JITTER);
+
+        return Duration.ofMillis((long) (delayMs * jitter));
+    }
+}
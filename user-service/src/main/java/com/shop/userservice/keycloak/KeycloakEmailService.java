@@ -1,19 +1,20 @@
 package com.shop.userservice.keycloak;
 
+import com.shop.userservice.repository.VerifyEmailTaskRepository;
 import com.shop.userservice.util.LogMarker;
-import io.github.resilience4j.retry.annotation.Retry;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import jakarta.ws.rs.ProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.admin.client.Keycloak;
-import org.slf4j.Marker;
-import org.slf4j.MarkerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.UUID;
 
 @Slf4j
 @Service
@@ -21,12 +22,15 @@ public class KeycloakEmailService {
     private static final long SLOW_THRESHOLD_MS = 5000L;
 
     private final Keycloak keycloak;
+    private final VerifyEmailTaskRepository verifyEmailTaskRepository;
     private final Timer verifyEmail;
     private final String realm;
 
-    public KeycloakEmailService(Keycloak keycloak, MeterRegistry meterRegistry,
+    public KeycloakEmailService(Keycloak keycloak, VerifyEmailTaskRepository verifyEmailTaskRepository,
+                                MeterRegistry meterRegistry,
                                 @Value("${keycloak.realms.service-realms.realm}") String realm) {
         this.keycloak = keycloak;
+        this.verifyEmailTaskRepository = verifyEmailTaskRepository;
         this.realm = realm;
         this.verifyEmail = Timer.builder("keycloak_verify_email_duration_second")
                 .description("Duration of Keycloak verify email calls")
@@ -49,8 +53,26 @@ public class KeycloakEmailService {
                 .register(meterRegistry);
     }
 
-    @Async
-    @Retry(name = "keycloakVerifyEmail", fallbackMethod = "sendVerifyEmailFallback")
+    /**
+     * Ставит письмо в очередь verify_email_tasks, отправляет его {@link VerifyEmailDispatcher}.
+     * Ошибка БД не прерывает регистрацию: пользователь уже создан в Keycloak и может запросить письмо повторно.
+     */
+    public void enqueueVerifyEmail(String userId, String username, String email) {
+        try {
+            verifyEmailTaskRepository.enqueue(UUID.fromString(userId), username, email);
+        } catch (DataAccessException exception) {
+            log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Keycloak | verifyEmail ENQUEUE FAILED | username={} | userId={} | cause={}",
+                    username, userId, exception.getMessage());
+        }
+    }
+
+    /**
+     * Синхронная отправка письма через Keycloak, повторы с backoff делает {@link VerifyEmailDispatcher}
+     *
+     * @throws ProcessingException ошибка соединения
+     */
+    @CircuitBreaker(name = "keycloakVerifyEmail")
+    @Bulkhead(name = "keycloakVerifyEmail")
     public void sendVerifyEmail(String userId, String username, String email) {
         try {
             long start = System.currentTimeMillis();
@@ -78,9 +100,4 @@ public class KeycloakEmailService {
             throw exception;
         }
     }
-
-    public void sendVerifyEmailFallback(String userId, String username, String email, Throwable throwable) {
-        log.error(LogMarker.ERROR.getMarker(), "service=Keycloak | verifyEmail FAILED after retries | username={} | email={} | userId={} | cause={}",
-                username, email, userId, throwable.getMessage());
-    }
 }
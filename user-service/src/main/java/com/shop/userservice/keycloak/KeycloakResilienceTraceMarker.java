@@ -0,0 +1,65 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.observability.TailSamplingSpanProcessor;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.registry.EntryAddedEvent;
+import io.github.resilience4j.core.registry.EntryRemovedEvent;
+import io.github.resilience4j.core.registry.EntryReplacedEvent;
+import io.github.resilience4j.core.registry.RegistryEventConsumer;
+import io.github.resilience4j.retry.Retry;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Помечает текущий спан для {@link TailSamplingSpanProcessor}, когда вызов Keycloak пошел не по основному пути:
+ * ретрай, исчерпание ретраев (fallback), отказ circuit breaker'а или bulkhead'а.
+ * События публикуются в потоке вызова, поэтому метка попадает в спан текущего запроса.
+ */
+public final class KeycloakResilienceTraceMarker {
+    private static final String PREFIX = "keycloak";
+
+    private KeycloakResilienceTraceMarker() {
+    }
+
+    public static RegistryEventConsumer<Retry> retry() {
+        return onAdded(Retry::getName, retry -> retry.getEventPublisher()
+                .onRetry(event -> TailSamplingSpanProcessor.keep("keycloak_retry"))
+                .onError(event -> TailSamplingSpanProcessor.keep("keycloak_fallback")));
+    }
+
+    public static RegistryEventConsumer<CircuitBreaker> circuitBreaker() {
+        return onAdded(CircuitBreaker::getName, circuitBreaker -> circuitBreaker.getEventPublisher()
+                .onCallNotPermitted(event -> TailSamplingSpanProcessor.keep("keycloak_circuit_open")));
+    }
+
+    public static RegistryEventConsumer<Bulkhead> bulkhead() {
+        return onAdded(Bulkhead::getName, bulkhead -> bulkhead.getEventPublisher()
+                .onCallRejected(event -> TailSamplingSpanProcessor.keep("keycloak_bulkhead_full")));
+    }
+
+    private static <T> RegistryEventConsumer<T> onAdded(Function<T, String> name, Consumer<T> subscribe) {
+        return new RegistryEventConsumer<>() {
+            @Override
+            public void onEntryAddedEvent(EntryAddedEvent<T> event) {
+                subscribeKeycloak(event.getAddedEntry());
+            }
+
+            @Override
+            public void onEntryRemovedEvent(EntryRemovedEvent<T> event) {
+            }
+
+            @Override
+            public void onEntryReplacedEvent(EntryReplacedEvent<T> event) {
+                subscribeKeycloak(event.getNewEntry());
+            }
+
+            private void subscribeKeycloak(T entry) {
+                if (name.apply(entry).startsWith(PREFIX)) {
+                    subscribe.accept(entry);
+                }
+            }
+        };
+    }
+}
@@ -4,6 +4,10 @@ import com.shop.userservice.exception.ExternalServiceUnavailableException;
 import com.shop.userservice.exception.UserDuplicateException;
 import com.shop.userservice.exception.UserNotFoundException;
 import com.shop.userservice.util.LogMarker;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.ProcessingException;
@@ -21,11 +25,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Optional;
 
 @Slf4j
 @Service
 public class KeycloakService {
-    private static final long SLOW_THRESHOLD_MS = 500L;
+    public static final String USER_ROLE = "app-user";
 
     private final Keycloak keycloak;
     private final String realm;
@@ -49,11 +54,49 @@ public class KeycloakService {
      * @throws UserDuplicateException - Выбрасывается если username/email заняты
      */
     @Retry(name = "keycloakCreateUser", fallbackMethod = "createUserFallback")
+    @CircuitBreaker(name = "keycloakCreateUser")
+    @Bulkhead(name = "keycloakCreateUser")
     public String createUser(String username, String firstName,
                              String lastName, String email, String password) throws UserDuplicateException{
+        return create("createUser", username, firstName, lastName, email, password, true);
+    }
 
-        long start = System.currentTimeMillis();
+    /**
+     * Создание пользователя при массовом импорте: свои retry, circuit breaker и bulkhead (keycloakImportUser),
+     * чтобы импорт не занимал слоты регистрации. Без sendVerifyEmail письмо не ставится в очередь -
+     * VERIFY_EMAIL остается required action, и Keycloak попросит подтвердить почту при первом входе.
+     *
+     * @return UUID пользователя в keycloak
+     * @throws UserDuplicateException - Выбрасывается если username/email заняты
+     */
+    @Retry(name = "keycloakImportUser", fallbackMethod = "importUserFallback")
+    @CircuitBreaker(name = "keycloakImportUser")
+    @Bulkhead(name = "keycloakImportUser")
+    public String importUser(String username, String firstName, String lastName, String email, String password,
+                             boolean sendVerifyEmail) throws UserDuplicateException {
+        return create("importUser", username, firstName, lastName, email, password, sendVerifyEmail);
+    }
 
+    /**
+     * Пользователь с тем же username и email, созданный прерванным запуском импорта: после падения между
+     * созданием в Keycloak и коммитом пачки повтор получает 409. Роль назначается повторно - импорт мог
+     * упасть и до назначения роли.
+     *
+     * @return UUID в keycloak или empty, если username занят пользователем с другой почтой
+     */
+    @CircuitBreaker(name = "keycloakImportUser")
+    @Bulkhead(name = "keycloakImportUser")
+    public Optional<String> findImportedUser(String username, String email) {
+        Optional<String> userId = keycloak.realm(realm).users().searchByUsername(username, true).stream()
+                .filter(user -> email.equalsIgnoreCase(user.getEmail()))
+                .map(UserRepresentation::getId)
+                .findFirst();
+        userId.ifPresent(this::assignRealmRole);
+        return userId;
+    }
+
+    private String create(String action, String username, String firstName, String lastName, String email,
+                          String password, boolean sendVerifyEmail) {
         CredentialRepresentation credential = new CredentialRepresentation();
         credential.setType(CredentialRepresentation.PASSWORD);
         credential.setValue(password);
@@ -71,24 +114,19 @@ public class KeycloakService {
         try (Response response = keycloak.realm(realm).users().create(user)) {
             int status = response.getStatus();
 
-            long elapsed = System.currentTimeMillis() - start;
-
             if (response.getStatus() == 201) {
                 String userId = extractUserId(response);
 
-                if (elapsed > SLOW_THRESHOLD_MS) {
-                    log.warn(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action=createUser | SLOW | ms={} | username={} | email={} | userUUID={}",
-                            elapsed, username, email, userId);
-                } else {
-                    log.debug(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action=createUser | ms={} | username={} | email={} | userUUID={}",
-                            elapsed, username, email, userId);
-                }
+                log.debug(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action={} | username={} | email={} | userUUID={}",
+                        action, username, email, userId);
 
-                keycloakEmailService.sendVerifyEmail(userId, username, email);
+                if (sendVerifyEmail) {
+                    keycloakEmailService.enqueueVerifyEmail(userId, username, email);
+                }
 
                 assignRealmRole(userId);
 
-                log.info(LogMarker.AUDIT.getMarker(), "action=createUser | userId={} | username={} | status=SUCCESS", userId, username);
+                log.info(LogMarker.AUDIT.getMarker(), "action={} | userId={} | username={} | status=SUCCESS", action, userId, username);
 
                 return userId;
             } else if (status == 409){
@@ -121,10 +159,10 @@ public class KeycloakService {
     }
 
     @Retry(name = "keycloakDeleteUser", fallbackMethod = "deleteUserByUUIDFallback")
+    @CircuitBreaker(name = "keycloakDeleteUser")
+    @Bulkhead(name = "keycloakDeleteUser")
     public void deleteUserByUUID(String uuid) {
         try {
-            long start = System.currentTimeMillis();
-
             UserResource userResource = keycloak.realm(realm).users().get(uuid);
 
             try {
@@ -134,16 +172,58 @@ public class KeycloakService {
             }
 
             userResource.remove();
+        } catch (WebApplicationException exception) {
+            throw exception;
+        }
+    }
 
-            long elapsed = System.currentTimeMillis() - start;
-
-            if (elapsed > SLOW_THRESHOLD_MS) {
-                log.warn(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action=deleteUser | SLOW | ms={} | userUUID={}",
-                        elapsed, uuid);
+    /**
+     * Удаляет пользователя одним DELETE запросом, без предварительной проверки существования и без ретраев -
+     * повторы с backoff делает {@link KeycloakDeletionWorker}
+     *
+     * @return false, если пользователя в Keycloak уже нет
+     * @throws WebApplicationException Keycloak ответил ошибкой
+     * @throws ProcessingException ошибка соединения
+     * @throws CallNotPermittedException circuit breaker открыт
+     */
+    @CircuitBreaker(name = "keycloakDeleteUser")
+    @Bulkhead(name = "keycloakDeleteUser")
+    public boolean removeUserByUUID(String uuid) {
+        try (Response response = keycloak.realm(realm).users().delete(uuid)) {
+            int status = response.getStatus();
+            if (status == Response.Status.NOT_FOUND.getStatusCode()) {
+                return false;
+            }
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new WebApplicationException("Keycloak returned status %d".formatted(status), status);
             }
+            return true;
+        }
+    }
 
-        } catch (WebApplicationException exception) {
-            throw exception;
+    /**
+     * Страница пользователей магазина (участники роли {@link #USER_ROLE}) в краткой форме
+     *
+     * @param first смещение
+     * @param max размер страницы
+     */
+    @CircuitBreaker(name = "keycloakReadUsers")
+    @Bulkhead(name = "keycloakReadUsers")
+    public List<UserRepresentation> getShopUsersPage(int first, int max) {
+        return keycloak.realm(realm).roles().get(USER_ROLE).getUserMembers(true, first, max);
+    }
+
+    /**
+     * @return false только если Keycloak ответил 404
+     */
+    @CircuitBreaker(name = "keycloakReadUsers")
+    @Bulkhead(name = "keycloakReadUsers")
+    public boolean existsUserByUUID(String uuid) {
+        try {
+            keycloak.realm(realm).users().get(uuid).toRepresentation();
+            return true;
+        } catch (NotFoundException exception) {
+            return false;
         }
     }
 
@@ -155,6 +235,34 @@ public class KeycloakService {
         throw new ExternalServiceUnavailableException("Connection service error");
     }
 
+    public String createUserFallback(String username, String firstName,
+                                     String lastName, String email, String password, CallNotPermittedException throwable) {
+        throw rejected("createUser", throwable);
+    }
+
+    public String createUserFallback(String username, String firstName,
+                                     String lastName, String email, String password, BulkheadFullException throwable) {
+        throw rejected("createUser", throwable);
+    }
+
+    public String importUserFallback(String username, String firstName, String lastName, String email, String password,
+                                     boolean sendVerifyEmail, ProcessingException throwable) {
+
+        log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Keycloak | CONNECTION ERROR | cause={}", throwable.getMessage());
+
+        throw new ExternalServiceUnavailableException("Connection service error");
+    }
+
+    public String importUserFallback(String username, String firstName, String lastName, String email, String password,
+                                     boolean sendVerifyEmail, CallNotPermittedException throwable) {
+        throw rejected("importUser", throwable);
+    }
+
+    public String importUserFallback(String username, String firstName, String lastName, String email, String password,
+                                     boolean sendVerifyEmail, BulkheadFullException throwable) {
+        throw rejected("importUser", throwable);
+    }
+
     public void deleteUserByUUIDFallback(String uuid, WebApplicationException throwable) {
         log.warn(LogMarker.ERROR.getMarker(), "service=Keycloak | error DELETE user | userId={} | message={}",
                 uuid, throwable.getMessage());
@@ -162,9 +270,27 @@ public class KeycloakService {
         throw new ExternalServiceUnavailableException("Connection service error");
     }
 
+    public void deleteUserByUUIDFallback(String uuid, CallNotPermittedException throwable) {
+        throw rejected("deleteUser", throwable);
+    }
+
+    public void deleteUserByUUIDFallback(String uuid, BulkheadFullException throwable) {
+        throw rejected("deleteUser", throwable);
+    }
+
+    /**
+     * Вызов отклонен без обращения к Keycloak: открыт circuit breaker или заняты все слоты bulkhead
+     */
+    private ExternalServiceUnavailableException rejected(String action, RuntimeException throwable) {
+        log.warn(LogMarker.INFRA_ERROR.getMarker(), "service=Keycloak | action={} | REJECTED | cause={}",
+                action, throwable.getMessage());
+
+        return new ExternalServiceUnavailableException("Connection service error");
+    }
+
     private void assignRealmRole(String userId) {
         RealmResource realmResource = keycloak.realm(realm);
-        RoleRepresentation roleRepresentation = realmResource.roles().get("app-user").toRepresentation();
+        RoleRepresentation roleRepresentation = realmResource.roles().get(USER_ROLE).toRepresentation();
         realmResource.users().get(userId).roles().realmLevel().add(List.of(roleRepresentation));
     }
 }
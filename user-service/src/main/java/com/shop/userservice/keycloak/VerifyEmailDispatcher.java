@@ -0,0 +1,204 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.repository.VerifyEmailTaskRepository;
+import com.shop.userservice.repository.VerifyEmailTaskRepository.QueueStats;
+import com.shop.userservice.repository.VerifyEmailTaskRepository.Retry;
+import com.shop.userservice.repository.VerifyEmailTaskRepository.VerifyEmailTask;
+import com.shop.userservice.util.LogMarker;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.ws.rs.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отправляет письма подтверждения email из очереди verify_email_tasks.
+ * <p>
+ * Задачи забираются пачками, письма уходят в Keycloak не чаще send-rate в секунду, чтобы всплеск регистраций
+ * или импорт не перегружали SMTP Keycloak. Лимит действует на инстанс: N реплик вместе отправляют до N x send-rate,
+ * поэтому send-rate задается как общий лимит SMTP, деленный на число реплик. Проход не ждет слотов отправки:
+ * забирается столько задач, сколько слотов укладывается в send-burst, остальное - следующему проходу, и поток
+ * планировщика не занят паузами. Неудачные задачи откладываются с экспоненциальным backoff,
+ * после max-attempts задача удаляется с ошибкой в логе. 404 от Keycloak - пользователь уже удален, повтор не поможет:
+ * задача удаляется сразу и считается dropped. При открытом circuit breaker остаток пачки
+ * откладывается без обращения в Keycloak.
+ */
+@Slf4j
+@Component
+public class VerifyEmailDispatcher {
+    private static final double BACKOFF_JITTER = 0.2;
+
+    private final VerifyEmailTaskRepository taskRepository;
+    private final KeycloakEmailService keycloakEmailService;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final int maxAttempts;
+    private final long sendIntervalNanos;
+    private final long sendBurstNanos;
+    private final Duration lease;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration circuitOpenDelay;
+
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter dropped;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong queueLagMs = new AtomicLong();
+
+    private long nextSendNanos;
+
+    public VerifyEmailDispatcher(VerifyEmailTaskRepository taskRepository,
+                                 KeycloakEmailService keycloakEmailService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${keycloak.verify-email.batch-size:50}") int batchSize,
+                                 @Value("${keycloak.verify-email.max-batches-per-run:20}") int maxBatchesPerRun,
+                                 @Value("${keycloak.verify-email.max-attempts:8}") int maxAttempts,
+                                 @Value("${keycloak.verify-email.send-rate:5}") double sendRate,
+                                 @Value("${keycloak.verify-email.send-burst:5s}") Duration sendBurst,
+                                 @Value("${keycloak.verify-email.lease:2m}") Duration lease,
+                                 @Value("${keycloak.verify-email.initial-backoff:10s}") Duration initialBackoff,
+                                 @Value("${keycloak.verify-email.max-backoff:30m}") Duration maxBackoff,
+                                 @Value("${keycloak.verify-email.circuit-open-delay:30s}") Duration circuitOpenDelay) {
+        this.taskRepository = taskRepository;
+        this.keycloakEmailService = keycloakEmailService;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.maxAttempts = maxAttempts;
+        this.sendIntervalNanos = (long) (1_000_000_000L / sendRate);
+        this.sendBurstNanos = sendBurst.toNanos();
+        this.lease = lease;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.circuitOpenDelay = circuitOpenDelay;
+
+        this.sent = results(meterRegistry, "sent");
+        this.failed = results(meterRegistry, "failed");
+        this.dropped = results(meterRegistry, "dropped");
+
+        Gauge.builder("verify_email_queue_depth", queueDepth, AtomicLong::get)
+                .description("Verify email tasks waiting in the queue")
+                .register(meterRegistry);
+        Gauge.builder("verify_email_queue_lag_seconds", queueLagMs, lag -> lag.get() / 1000.0)
+                .description("How long the oldest due verify email task has been waiting")
+                .register(meterRegistry);
+    }
+
+    private static Counter results(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("verify_email_tasks")
+                .description("Processed verify email tasks by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${keycloak.verify-email.poll-interval:5s}",
+            initialDelayString = "${keycloak.verify-email.poll-interval:5s}")
+    public void dispatchPending() {
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                int permits = sendPermits();
+                if (permits == 0) {
+                    break;
+                }
+                List<VerifyEmailTask> tasks = taskRepository.claim(permits, lease);
+                if (tasks.isEmpty() || !dispatchBatch(tasks) || tasks.size() < permits) {
+                    break;
+                }
+            }
+            refreshStats();
+        } catch (DataAccessException exception) {
+            log.error(LogMarker.INFRA_ERROR.getMarker(), "service=Verify-Email-Dispatcher | QUEUE ERROR | causer={}",
+                    exception.getMessage());
+        }
+    }
+
+    /**
+     * @return false, если отправка остановлена открытым circuit breaker
+     */
+    boolean dispatchBatch(List<VerifyEmailTask> tasks) {
+        List<Long> completed = new ArrayList<>();
+        List<Retry> retries = new ArrayList<>();
+        boolean circuitOpen = false;
+
+        for (VerifyEmailTask task : tasks) {
+            if (circuitOpen) {
+                retries.add(new Retry(task.id(), circuitOpenDelay, "circuit breaker open"));
+                continue;
+            }
+
+            takeSendSlot();
+            try {
+                keycloakEmailService.sendVerifyEmail(task.userUUID().toString(), task.username(), task.email());
+                sent.increment();
+                completed.add(task.id());
+            } catch (CallNotPermittedException exception) {
+                circuitOpen = true;
+                retries.add(new Retry(task.id(), circuitOpenDelay, "circuit breaker open"));
+            } catch (NotFoundException exception) {
+                dropped.increment();
+                completed.add(task.id());
+                log.warn(LogMarker.NOTIFY.getMarker(), "service=Verify-Email-Dispatcher | USER NOT FOUND | username={} | userUUID={}",
+                        task.username(), task.userUUID());
+            } catch (RuntimeException exception) {
+                String error = exception.getClass().getSimpleName() + ": " + exception.getMessage();
+                if (task.attempts() >= maxAttempts) {
+                    dropped.increment();
+                    completed.add(task.id());
+                    log.error(LogMarker.ERROR.getMarker(), "service=Verify-Email-Dispatcher | verifyEmail FAILED after retries | username={} | email={} | userId={} | cause={}",
+                            task.username(), task.email(), task.userUUID(), error);
+                } else {
+                    failed.increment();
+                    retries.add(new Retry(task.id(), backoff(task.attempts()), error));
+                    log.warn(LogMarker.NOTIFY.getMarker(), "service=Verify-Email-Dispatcher | SEND FAILED | userUUID={} | attempt={} | causer={}",
+                            task.userUUID(), task.attempts(), error);
+                }
+            }
+        }
+
+        taskRepository.complete(completed);
+        taskRepository.reschedule(retries);
+        return !circuitOpen;
+    }
+
+    /**
+     * Сколько писем можно отправить сейчас: слоты идут с интервалом 1 / send-rate и могут опережать текущее время
+     * не больше чем на send-burst. Простой сверх send-burst не накапливается.
+     */
+    private int sendPermits() {
+        long now = System.nanoTime();
+        long ahead = now + sendBurstNanos - Math.max(nextSendNanos, now);
+        return ahead < 0 ? 0 : (int) Math.min(batchSize, ahead / sendIntervalNanos + 1);
+    }
+
+    private void takeSendSlot() {
+        nextSendNanos = Math.max(nextSendNanos, System.nanoTime()) + sendIntervalNanos;
+    }
+
+    private void refreshStats() {
+        QueueStats stats = taskRepository.stats();
+        queueDepth.set(stats.depth());
+        queueLagMs.set((long) (stats.lagSeconds() * 1000));
+    }
+
+    /**
+     * Экспоненциальный backoff от номера попытки с потолком maxBackoff и разбросом ±20%
+     */
+    Duration backoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+        long delayMs = Math.min(initialBackoff.toMillis() * (1L << exponent), maxBackoff.toMillis());
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-BACKOFF_JITTER, BACKOFF_JITTER);
+
+        return Duration.ofMillis((long) (delayMs * jitter));
+    }
+}
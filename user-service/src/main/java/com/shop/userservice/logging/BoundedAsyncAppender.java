@@ -0,0 +1,76 @@
+package com.shop.userservice.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.shop.userservice.util.LogMarker;
+import org.slf4j.Marker;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Асинхронный appender с ограниченной очередью: запись в файл/Loki уходит в отдельный поток,
+ * поток запроса только кладет событие в очередь.
+ * <p>
+ * Когда свободных мест в очереди остается не больше {@code criticalReserve}, обычные события отбрасываются
+ * и считаются в {@link #getDroppedCount()}. Резерв держится под критичные события (маркеры AUDIT, ERROR
+ * и уровень ERROR) - они не отбрасываются никогда, при полностью забитой очереди поток ждет место.
+ */
+public class BoundedAsyncAppender extends AsyncAppender {
+    private static final List<Marker> CRITICAL_MARKERS = List.of(LogMarker.AUDIT.getMarker(), LogMarker.ERROR.getMarker());
+
+    private final LongAdder dropped = new LongAdder();
+    private int criticalReserve = 256;
+
+    public void setCriticalReserve(int criticalReserve) {
+        this.criticalReserve = criticalReserve;
+    }
+
+    public int getCriticalReserve() {
+        return criticalReserve;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void start() {
+        if (criticalReserve < 0 || criticalReserve >= getQueueSize()) {
+            addError("criticalReserve must be in [0, queueSize) for appender " + getName());
+            return;
+        }
+        // Отбрасыванием управляет append, базовый класс только кладет в очередь с ожиданием
+        setDiscardingThreshold(0);
+        setNeverBlock(false);
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (!isCritical(event) && getRemainingCapacity() <= criticalReserve) {
+            dropped.increment();
+            return;
+        }
+        super.append(event);
+    }
+
+    static boolean isCritical(ILoggingEvent event) {
+        if (event.getLevel().isGreaterOrEqual(Level.ERROR)) {
+            return true;
+        }
+        List<Marker> markers = event.getMarkerList();
+        if (markers == null) {
+            return false;
+        }
+        for (Marker marker : markers) {
+            for (Marker critical : CRITICAL_MARKERS) {
+                if (marker.contains(critical)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
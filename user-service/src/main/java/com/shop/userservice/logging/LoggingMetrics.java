@@ -0,0 +1,56 @@
+package com.shop.userservice.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+
+/**
+ * Метрики асинхронного логирования из текущей конфигурации logback:
+ * {@code logging_events_dropped{source=<appender>, reason=overflow}} - отброшено при заполненной очереди,
+ * {@code logging_events_dropped{source=<filter>, reason=sampled}} - отсечено выборкой,
+ * {@code logging_async_queue_remaining{appender}} - свободное место в очереди.
+ */
+@Component
+public class LoggingMetrics implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+            return;
+        }
+
+        Iterator<Appender<ILoggingEvent>> appenders =
+                context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders();
+        while (appenders.hasNext()) {
+            if (appenders.next() instanceof BoundedAsyncAppender appender) {
+                FunctionCounter.builder("logging_events_dropped", appender, BoundedAsyncAppender::getDroppedCount)
+                        .description("Log events dropped before reaching the appender")
+                        .tags("source", appender.getName(), "reason", "overflow")
+                        .register(registry);
+                Gauge.builder("logging_async_queue_remaining", appender, BoundedAsyncAppender::getRemainingCapacity)
+                        .description("Free slots in the async appender queue")
+                        .tag("appender", appender.getName())
+                        .register(registry);
+            }
+        }
+
+        for (TurboFilter turboFilter : context.getTurboFilterList()) {
+            if (turboFilter instanceof SamplingTurboFilter filter) {
+                FunctionCounter.builder("logging_events_dropped", filter, SamplingTurboFilter::getSampledOutCount)
+                        .description("Log events dropped before reaching the appender")
+                        .tags("source", filter.getName(), "reason", "sampled")
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.shop.userservice.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import com.shop.userservice.util.LogMarker;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничивает частоту горячих логов: не больше {@code ratePerSecond} событий в секунду, остальные отбрасываются
+ * до создания события (форматирование и appender'ы не вызываются) и считаются в {@link #getSampledOutCount()}.
+ * <p>
+ * Под выборку попадают события с маркером {@code marker} или, если он не задан, уровня {@code level} и ниже.
+ * События с маркерами AUDIT и ERROR и уровня ERROR фильтр не трогает.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final LongSupplier nanoClock;
+    private final LongAdder sampledOut = new LongAdder();
+    /*
+     * Старшие 32 бита - номер секундного окна, младшие - сколько событий окна уже пропущено.
+     * Одно CAS поле: смена окна и счет не расходятся между потоками.
+     */
+    private final AtomicLong window = new AtomicLong();
+
+    private Marker marker;
+    private Level level = Level.DEBUG;
+    private int ratePerSecond = 100;
+
+    public SamplingTurboFilter() {
+        this(System::nanoTime);
+    }
+
+    SamplingTurboFilter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    public void setMarker(String marker) {
+        this.marker = MarkerFactory.getMarker(marker);
+    }
+
+    public void setLevel(String level) {
+        this.level = Level.toLevel(level, Level.DEBUG);
+    }
+
+    public void setRatePerSecond(int ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    @Override
+    public FilterReply decide(Marker eventMarker, Logger logger, Level eventLevel, String format, Object[] params, Throwable t) {
+        // format == null - это проверка isXxxEnabled, а не запись: не тратим на нее квоту
+        if (format == null || !isStarted() || !matches(eventMarker, eventLevel)) {
+            return FilterReply.NEUTRAL;
+        }
+        // Уровень, который логгер все равно отсечет, не должен расходовать квоту (isXxxEnabled здесь вызвал бы рекурсию)
+        if (!eventLevel.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (tryAcquire()) {
+            return FilterReply.NEUTRAL;
+        }
+        sampledOut.increment();
+        return FilterReply.DENY;
+    }
+
+    private boolean matches(Marker eventMarker, Level eventLevel) {
+        if (eventLevel.isGreaterOrEqual(Level.ERROR)) {
+            return false;
+        }
+        if (eventMarker != null
+                && (eventMarker.contains(LogMarker.AUDIT.getMarker()) || eventMarker.contains(LogMarker.ERROR.getMarker()))) {
+            return false;
+        }
+        if (marker != null) {
+            return eventMarker != null && eventMarker.contains(marker);
+        }
+        return level.isGreaterOrEqual(eventLevel);
+    }
+
+    private boolean tryAcquire() {
+        long currentWindow = (nanoClock.getAsLong() / WINDOW_NANOS) & 0xFFFF_FFFFL;
+        while (true) {
+            long state = window.get();
+            long stateWindow = state >>> 32;
+            long used = state & 0xFFFF_FFFFL;
+
+            long next;
+            if (stateWindow != currentWindow) {
+                next = currentWindow << 32 | 1;
+            } else if (used < ratePerSecond) {
+                next = state + 1;
+            } else {
+                return false;
+            }
+            if (window.compareAndSet(state, next)) {
+                return true;
+            }
+        }
+    }
+}
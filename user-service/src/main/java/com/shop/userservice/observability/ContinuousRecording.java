@@ -0,0 +1,92 @@
+package com.shop.userservice.observability;
+
+import com.shop.userservice.util.LogMarker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Постоянная JFR запись с профилем "default" (накладные расходы ~1%) и кольцевым буфером на диске:
+ * хранятся последние {@code maxAge}, но не больше {@code maxSize}. Вместе с GC, JIT и блокировками
+ * пишутся события сервиса: RepositoryCall, KeycloakCall, CacheGet, ServiceMethod.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "monitoring.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class ContinuousRecording {
+    private static final String RECORDING_NAME = "user-service-continuous";
+
+    private final Duration maxAge;
+    private final DataSize maxSize;
+    private Recording recording;
+
+    public ContinuousRecording(@Value("${monitoring.jfr.max-age:30m}") Duration maxAge,
+                               @Value("${monitoring.jfr.max-size:256MB}") DataSize maxSize) {
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+    }
+
+    @PostConstruct
+    void start() throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.start();
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=JFR | action=startRecording | maxAge={} | maxSize={}", maxAge, maxSize);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Сбрасывает последние {@code window} записи в новый временный файл. Граница приблизительная -
+     * JFR отдает целые чанки, поэтому в файле может оказаться немного больше.
+     */
+    public Path dump(Duration window) throws IOException {
+        Path file = Files.createTempFile("user-service-", ".jfr");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String[] arguments = {
+                    "name=" + recording.getId(),
+                    "maxage=" + window.toSeconds() + "s",
+                    "filename=" + file.toAbsolutePath()
+            };
+            // JFR.dump с maxage есть только как диагностическая команда, в jdk.jfr API 17 фильтра по времени нет
+            server.invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"), "jfrDump",
+                    new Object[]{arguments}, new String[]{String[].class.getName()});
+        } catch (JMException exception) {
+            Files.deleteIfExists(file);
+            throw new IOException("JFR dump failed", exception);
+        }
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=JFR | action=dump | window={} | bytes={}", window, Files.size(file));
+        return file;
+    }
+}
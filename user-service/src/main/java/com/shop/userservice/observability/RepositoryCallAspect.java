@@ -0,0 +1,69 @@
+package com.shop.userservice.observability;
+
+import com.shop.userservice.observability.RequestTimings.Category;
+import com.shop.userservice.observability.RequestTimings.Stopwatch;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Пишет {@link RepositoryCallEvent} на каждый публичный метод репозиториев и время в db у {@link RequestTimings}.
+ * Вне записи JFR и вне HTTP запроса стоит одну проверку isEnabled.
+ */
+@Aspect
+@Component
+public class RepositoryCallAspect {
+    private final ConcurrentMap<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    @Around("execution(public * *(..)) && (this(org.springframework.data.repository.Repository) " +
+            "|| within(@org.springframework.stereotype.Repository *))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        Stopwatch stopwatch = RequestTimings.begin(Category.DB);
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        if (!event.isEnabled()) {
+            try {
+                return joinPoint.proceed();
+            } finally {
+                stopwatch.stop();
+            }
+        }
+
+        event.begin();
+        boolean success = false;
+        try {
+            Object result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            stopwatch.stop();
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repositoryNames.computeIfAbsent(joinPoint.getThis().getClass(), type -> repositoryName(joinPoint.getThis()));
+                event.method = joinPoint.getSignature().getName();
+                event.outcome = success ? "success" : "error";
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Для Spring Data прокси - интерфейс репозитория, для остальных - класс без CGLIB суффикса
+     */
+    private static String repositoryName(Object proxy) {
+        if (proxy instanceof Repository<?, ?>) {
+            for (Class<?> type : AopProxyUtils.proxiedUserInterfaces(proxy)) {
+                if (Repository.class.isAssignableFrom(type)) {
+                    return type.getSimpleName();
+                }
+            }
+        }
+        return ClassUtils.getUserClass(proxy).getSimpleName();
+    }
+}
@@ -0,0 +1,29 @@
+package com.shop.userservice.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR событие вызова репозитория (Spring Data или JDBC {@code @Repository}), пишется {@link RepositoryCallAspect}
+ */
+@Name("com.shop.userservice.RepositoryCall")
+@Label("Repository Call")
+@Description("Repository method invocation, including SQL execution and result mapping")
+@Category({"Shop", "Repository"})
+@StackTrace(false)
+@Threshold("1 ms")
+class RepositoryCallEvent extends Event {
+    @Label("Repository")
+    String repository;
+
+    @Label("Method")
+    String method;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,141 @@
+package com.shop.userservice.observability;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Накопитель времени одного HTTP запроса по внешним зависимостям, из него собирается заголовок Server-Timing.
+ * <p>
+ * Привязан к потоку запроса и в пулы не переносится: фоновая работа (refresh-ahead кэша, очереди, импорт)
+ * запрос не задерживает и в его время не входит. Время считается исключительным: если внутри кэша была загрузка
+ * из БД, она идет в db, а в cache - только остаток. Вложенность отслеживается по стеку замеров своего потока,
+ * поэтому замер в другом потоке не вычитается из чужого. Вне запроса {@link #begin(Category)} ничего не стоит.
+ */
+public final class RequestTimings {
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Stopwatch> OPEN = new ThreadLocal<>();
+    private static final Stopwatch NOOP = new Stopwatch(null, null, 0, null);
+
+    public enum Category {
+        DB("db"), CACHE("cache"), KEYCLOAK("keycloak"), ES("es"), SERIALIZATION("ser");
+
+        private final String metric;
+
+        Category(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(CATEGORIES.length);
+    private final AtomicLongArray counts = new AtomicLongArray(CATEGORIES.length);
+    private volatile Stopwatch openSerialization;
+
+    public static RequestTimings start() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        OPEN.remove();
+        return timings;
+    }
+
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Привязывает накопитель к текущему потоку (null - отвязывает). Переносить в другой поток стоит только работу,
+     * которую запрос дожидается.
+     */
+    public static void bind(RequestTimings timings) {
+        if (timings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timings);
+        }
+        OPEN.remove();
+    }
+
+    public static Stopwatch begin(Category category) {
+        RequestTimings timings = CURRENT.get();
+        if (timings == null) {
+            return NOOP;
+        }
+
+        Stopwatch stopwatch = new Stopwatch(timings, category, System.nanoTime(), OPEN.get());
+        OPEN.set(stopwatch);
+        if (category == Category.SERIALIZATION) {
+            timings.openSerialization = stopwatch;
+        }
+        return stopwatch;
+    }
+
+    /**
+     * @return значение Server-Timing: категории, в которые что-то попало, и app - общее время на момент вызова.
+     * Если сериализация ответа еще идет (заголовок пишется перед первым байтом тела), ser - время до этого момента.
+     */
+    public String header() {
+        long now = System.nanoTime();
+        StringBuilder header = new StringBuilder(128);
+        for (Category category : CATEGORIES) {
+            long duration = nanos.get(category.ordinal());
+            long count = counts.get(category.ordinal());
+
+            Stopwatch open = category == Category.SERIALIZATION ? openSerialization : null;
+            if (open != null) {
+                duration += now - open.startNanos;
+                count++;
+            }
+            if (count > 0) {
+                append(header, category.metric, duration).append(";desc=\"").append(count).append(count == 1 ? " call\"" : " calls\"");
+            }
+        }
+        return append(header, "app", now - startNanos).toString();
+    }
+
+    private static StringBuilder append(StringBuilder header, String metric, long durationNanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        return header.append(metric).append(";dur=").append(String.format(Locale.ROOT, "%.2f", durationNanos / 1_000_000.0));
+    }
+
+    /**
+     * Замер одного вызова. Открывается и закрывается в одном потоке; вложенные замеры того же потока
+     * вычитаются из его времени.
+     */
+    public static final class Stopwatch {
+        private final RequestTimings timings;
+        private final Category category;
+        private final long startNanos;
+        private final Stopwatch parent;
+        private long nestedNanos;
+
+        private Stopwatch(RequestTimings timings, Category category, long startNanos, Stopwatch parent) {
+            this.timings = timings;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.parent = parent;
+        }
+
+        public void stop() {
+            if (timings == null) {
+                return;
+            }
+
+            long elapsed = System.nanoTime() - startNanos;
+            timings.nanos.addAndGet(category.ordinal(), Math.max(0, elapsed - nestedNanos));
+            timings.counts.incrementAndGet(category.ordinal());
+            if (parent != null) {
+                parent.nestedNanos += elapsed;
+            }
+            if (OPEN.get() == this) {
+                OPEN.set(parent);
+            }
+            if (timings.openSerialization == this) {
+                timings.openSerialization = null;
+            }
+        }
+    }
+}
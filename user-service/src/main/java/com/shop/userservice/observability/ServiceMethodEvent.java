@@ -0,0 +1,30 @@
+package com.shop.userservice.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR событие вызова публичного метода {@code @Service}. Пишется только во время записи JFR
+ * и только для вызовов дольше порога (по умолчанию 10 ms, меняется в настройках записи).
+ */
+@Name("com.shop.userservice.ServiceMethod")
+@Label("Service Method")
+@Description("Public @Service method invocation")
+@Category({"Shop", "Service"})
+@StackTrace(false)
+@Threshold("10 ms")
+class ServiceMethodEvent extends Event {
+    @Label("Service")
+    String service;
+
+    @Label("Method")
+    String method;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,33 @@
+package com.shop.userservice.observability;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+
+import java.util.List;
+
+/**
+ * Head-часть tail выборки: если родитель уже выбран выше по цепочке - RECORD_AND_SAMPLE, иначе RECORD_ONLY.
+ * Спаны записываются всегда, решение об экспорте принимает {@link TailSamplingSpanProcessor}.
+ * <p>
+ * Вниз по цепочке уходит sampled=0 для трейсов, которые этот сервис выбрал сам: решение принимается после ответа.
+ */
+public class TailSamplingSampler implements Sampler {
+
+    @Override
+    public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                       Attributes attributes, List<LinkData> parentLinks) {
+        SpanContext parent = Span.fromContext(parentContext).getSpanContext();
+        return parent.isValid() && parent.isSampled() ? SamplingResult.recordAndSample() : SamplingResult.recordOnly();
+    }
+
+    @Override
+    public String getDescription() {
+        return "TailSamplingSampler{parentSampled=recordAndSample, otherwise=recordOnly}";
+    }
+}
@@ -0,0 +1,281 @@
+package com.shop.userservice.observability;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Tail-based выборка трейсов внутри сервиса. Все спаны записываются ({@link TailSamplingSampler} - RECORD_ONLY),
+ * но не экспортируются сразу: спаны трейса копятся в буфере, решение принимается, когда завершается локальный
+ * корневой спан (без родителя или с удаленным родителем). Трейс экспортируется целиком, если:
+ * <ul>
+ *     <li>корневой спан дольше {@code slowThreshold} - slow</li>
+ *     <li>в трейсе есть спан со статусом ERROR или ответ 5xx - error</li>
+ *     <li>спан помечен {@link #keep(String)}, например ретрай или fallback Keycloak - keep</li>
+ *     <li>иначе - с базовой вероятностью, которая раз в секунду подстраивается так, чтобы экспорт держался
+ *     около {@code targetSpansPerSecond} - base</li>
+ * </ul>
+ * Трейсы, которые уже выбраны выше по цепочке (sampled флаг у родителя), экспортирует стандартный
+ * BatchSpanProcessor, этот процессор их пропускает. Спаны, завершившиеся после решения (асинхронные задачи),
+ * идут за решением своего трейса. Буфер ограничен по числу трейсов, спанов в трейсе и времени жизни.
+ */
+public class TailSamplingSpanProcessor implements SpanProcessor, MeterBinder {
+    public static final AttributeKey<String> KEEP_ATTRIBUTE = AttributeKey.stringKey("sampling.keep");
+
+    private static final AttributeKey<String> OUTCOME_ATTRIBUTE = AttributeKey.stringKey("outcome");
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    public enum Decision {
+        SLOW, ERROR, KEEP, BASE, DROPPED, EVICTED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    private final SpanProcessor exporter;
+    private final long slowThresholdNanos;
+    private final long targetSpansPerSecond;
+    private final double minRate;
+    private final double maxRate;
+    private final int maxSpansPerTrace;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier random;
+
+    private final Cache<String, TraceBuffer> buffers;
+    private final Cache<String, Boolean> decisions;
+    private final Map<Decision, LongAdder> decisionCounts = new EnumMap<>(Decision.class);
+
+    private final AtomicLong windowStart;
+    private final LongAdder windowForcedSpans = new LongAdder();
+    private final LongAdder windowCandidateSpans = new LongAdder();
+    private volatile double baseRate;
+
+    public TailSamplingSpanProcessor(SpanProcessor exporter, Duration slowThreshold, long targetSpansPerSecond,
+                                     double minRate, double maxRate, int maxBufferedTraces, int maxSpansPerTrace,
+                                     Duration traceTimeout) {
+        this(exporter, slowThreshold, targetSpansPerSecond, minRate, maxRate, maxBufferedTraces, maxSpansPerTrace,
+                traceTimeout, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    TailSamplingSpanProcessor(SpanProcessor exporter, Duration slowThreshold, long targetSpansPerSecond,
+                              double minRate, double maxRate, int maxBufferedTraces, int maxSpansPerTrace,
+                              Duration traceTimeout, LongSupplier nanoClock, DoubleSupplier random) {
+        this.exporter = exporter;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.targetSpansPerSecond = targetSpansPerSecond;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.nanoClock = nanoClock;
+        this.random = random;
+        this.baseRate = maxRate;
+        this.windowStart = new AtomicLong(nanoClock.getAsLong());
+
+        for (Decision decision : Decision.values()) {
+            decisionCounts.put(decision, new LongAdder());
+        }
+        this.buffers = Caffeine.newBuilder()
+                .maximumSize(maxBufferedTraces)
+                .expireAfterWrite(traceTimeout)
+                .executor(Runnable::run)
+                .<String, TraceBuffer>removalListener((traceId, buffer, cause) -> {
+                    if (cause == RemovalCause.EXPIRED || cause == RemovalCause.SIZE) {
+                        decisionCounts.get(Decision.EVICTED).increment();
+                    }
+                })
+                .build();
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(maxBufferedTraces)
+                .expireAfterWrite(traceTimeout)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * Помечает текущий спан: его трейс будет экспортирован независимо от базовой вероятности.
+     * Вне трейса ничего не делает.
+     *
+     * @param reason значение атрибута {@code sampling.keep}
+     */
+    public static void keep(String reason) {
+        Span.current().setAttribute(KEEP_ATTRIBUTE, reason);
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        SpanContext spanContext = span.getSpanContext();
+        if (spanContext.isSampled()) {
+            return;
+        }
+
+        String traceId = spanContext.getTraceId();
+        Boolean decided = decisions.getIfPresent(traceId);
+        if (decided != null) {
+            if (decided) {
+                exporter.onEnd(span);
+            }
+            return;
+        }
+
+        SpanContext parent = span.getParentSpanContext();
+        if (parent.isValid() && !parent.isRemote()) {
+            buffers.asMap().compute(traceId, (id, buffer) -> {
+                TraceBuffer target = buffer == null ? new TraceBuffer() : buffer;
+                target.add(span, maxSpansPerTrace);
+                return target;
+            });
+            return;
+        }
+
+        TraceBuffer buffer = buffers.asMap().remove(traceId);
+        if (buffer == null) {
+            buffer = new TraceBuffer();
+        }
+        buffer.add(span, Integer.MAX_VALUE);
+
+        Decision decision = decide(span, buffer);
+        boolean export = decision != Decision.DROPPED;
+        decisions.put(traceId, export);
+        decisionCounts.get(decision).increment();
+
+        if (export) {
+            buffer.spans.forEach(exporter::onEnd);
+        }
+    }
+
+    private Decision decide(ReadableSpan root, TraceBuffer buffer) {
+        Decision decision;
+        if (buffer.error) {
+            decision = Decision.ERROR;
+        } else if (root.getLatencyNanos() >= slowThresholdNanos) {
+            decision = Decision.SLOW;
+        } else if (buffer.keep) {
+            decision = Decision.KEEP;
+        } else {
+            decision = null;
+        }
+
+        int spans = buffer.spans.size();
+        rollWindow();
+        if (decision != null) {
+            windowForcedSpans.add(spans);
+            return decision;
+        }
+        windowCandidateSpans.add(spans);
+        return random.getAsDouble() < baseRate ? Decision.BASE : Decision.DROPPED;
+    }
+
+    /**
+     * Раз в секунду пересчитывает базовую вероятность: бюджет минус обязательные спаны, деленный на спаны
+     * остальных трейсов. Новое значение усредняется с предыдущим, чтобы одна пиковая секунда не обнуляла выборку.
+     */
+    private void rollWindow() {
+        long now = nanoClock.getAsLong();
+        long start = windowStart.get();
+        long elapsed = now - start;
+        if (elapsed < WINDOW_NANOS || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+
+        double seconds = (double) elapsed / WINDOW_NANOS;
+        double forced = windowForcedSpans.sumThenReset() / seconds;
+        double candidates = windowCandidateSpans.sumThenReset() / seconds;
+
+        double target = candidates == 0 ? maxRate : Math.max(0, targetSpansPerSecond - forced) / candidates;
+        double clamped = Math.min(maxRate, Math.max(minRate, target));
+        baseRate = (baseRate + clamped) / 2;
+    }
+
+    public double getBaseRate() {
+        return baseRate;
+    }
+
+    public long getDecisionCount(Decision decision) {
+        return decisionCounts.get(decision).sum();
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return exporter.shutdown();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return exporter.forceFlush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Decision decision : Decision.values()) {
+            FunctionCounter.builder("tracing_tail_sampling_traces", decisionCounts.get(decision), LongAdder::sum)
+                    .description("Local traces by tail sampling decision")
+                    .tag("decision", decision.tag)
+                    .register(registry);
+        }
+        Gauge.builder("tracing_tail_sampling_base_rate", this, TailSamplingSpanProcessor::getBaseRate)
+                .description("Current probability of exporting an unremarkable trace")
+                .register(registry);
+        Gauge.builder("tracing_tail_sampling_buffered_traces", buffers, Cache::estimatedSize)
+                .description("Traces waiting for their local root span to end")
+                .register(registry);
+    }
+
+    /**
+     * Спаны трейса до решения. Изменяется только внутри compute у ConcurrentMap, поэтому без своей синхронизации.
+     */
+    private static final class TraceBuffer {
+        private final List<ReadableSpan> spans = new ArrayList<>();
+        private boolean error;
+        private boolean keep;
+
+        private void add(ReadableSpan span, int limit) {
+            if (span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR
+                    || "SERVER_ERROR".equals(span.getAttribute(OUTCOME_ATTRIBUTE))) {
+                error = true;
+            }
+            if (span.getAttribute(KEEP_ATTRIBUTE) != null) {
+                keep = true;
+            }
+            if (spans.size() < limit) {
+                spans.add(span);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.shop.userservice.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.dto.ErrorResponse;
+import com.shop.userservice.ratelimit.RateLimitProperties.KeyType;
+import com.shop.userservice.ratelimit.RateLimitProperties.Route;
+import com.shop.userservice.ratelimit.TokenBucketTable.Limit;
+import com.shop.userservice.security.UserPrincipal;
+import com.shop.userservice.util.LogMarker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Ограничивает частоту запросов к маршрутам из {@link RateLimitProperties} по IP или пользователю.
+ * <p>
+ * Стоит после Spring Security, чтобы видеть {@link UserPrincipal}, но до контроллеров: отклоненный запрос
+ * не доходит ни до Keycloak, ни до БД. На превышение - 429 с Retry-After в секундах.
+ * <p>
+ * IP берется из X-Forwarded-For только за прокси из trusted-proxies, иначе клиент подставлял бы
+ * в заголовок новый адрес на каждый запрос и получал новый bucket.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final TokenBucketTable buckets;
+    private final ObjectMapper objectMapper;
+    private final List<LimitedRoute> routes;
+    private final List<IpAddressMatcher> trustedProxies;
+
+    public RateLimitFilter(RateLimitProperties properties, TokenBucketTable buckets,
+                           ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.buckets = buckets;
+        this.objectMapper = objectMapper;
+        this.routes = properties.routes().stream()
+                .map(route -> new LimitedRoute(route, limit(route),
+                        Counter.builder("http_rate_limited_requests")
+                                .description("Requests rejected by the rate limiter")
+                                .tag("route", route.name())
+                                .register(meterRegistry)))
+                .toList();
+        this.trustedProxies = properties.trustedProxies().stream()
+                .map(IpAddressMatcher::new)
+                .toList();
+    }
+
+    /**
+     * Ошибочный лимит останавливает запуск, а не отклоняет все запросы маршрута
+     */
+    private static Limit limit(Route route) {
+        try {
+            return Limit.of(route.capacity(), route.refillPeriod());
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid rate-limit route %s: %s".formatted(route.name(), exception.getMessage()), exception);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        LimitedRoute route = match(request);
+        if (route == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String key = route.route().name() + ":" + clientKey(route.route().key(), request);
+        Duration wait = buckets.tryAcquire(key, route.limit());
+        if (wait.isZero()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        route.rejected().increment();
+        log.warn(LogMarker.APP_CALL.getMarker(), "service=Rate-Limiter | REJECTED | route={} | key={} | retryAfterMs={}",
+                route.route().name(), key, wait.toMillis());
+        reject(response, wait);
+    }
+
+    private LimitedRoute match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (LimitedRoute route : routes) {
+            String method = route.route().method();
+            if ((method == null || method.equalsIgnoreCase(request.getMethod()))
+                    && PATH_MATCHER.match(route.route().pattern(), path)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private String clientKey(KeyType keyType, HttpServletRequest request) {
+        if (keyType == KeyType.USER) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+                return "user:" + principal.getUserUUID();
+            }
+        }
+        return "ip:" + clientIp(request);
+    }
+
+    /**
+     * Адреса X-Forwarded-For разбираются справа налево, пока их добавлял доверенный прокси: первый адрес
+     * не из trusted-proxies - клиент, все левее него клиент мог написать сам
+     */
+    private String clientIp(HttpServletRequest request) {
+        String ip = request.getRemoteAddr();
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor == null || !isTrustedProxy(ip)) {
+            return ip;
+        }
+
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0 && isTrustedProxy(ip); i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            ip = hop;
+        }
+        return ip;
+    }
+
+    private boolean isTrustedProxy(String ip) {
+        for (IpAddressMatcher proxy : trustedProxies) {
+            try {
+                if (proxy.matches(ip)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException exception) {
+                // не IP (мусор в заголовке) - точно не прокси
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void reject(HttpServletResponse response, Duration wait) throws IOException {
+        long retryAfterSeconds = Math.max(1, (wait.toMillis() + 999) / 1000);
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ErrorResponse.builder()
+                .messageCode("TOO_MANY_REQUESTS")
+                .httpCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                .message("Too many requests, retry after %d s".formatted(retryAfterSeconds))
+                .timestamp(Instant.now())
+                .build());
+    }
+
+    private record LimitedRoute(Route route, Limit limit, Counter rejected) {
+    }
+}
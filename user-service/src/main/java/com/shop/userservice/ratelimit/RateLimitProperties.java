@@ -0,0 +1,47 @@
+package com.shop.userservice.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Настройки rate limiter'а: общий размер таблицы bucket'ов и лимиты по маршрутам
+ *
+ * @param enabled выключенный лимитер пропускает все запросы
+ * @param maxKeys максимум ключей (IP/пользователей) в памяти на все маршруты
+ * @param sweepInterval период принудительного удаления пополненных bucket'ов
+ * @param trustedProxies адреса или CIDR прокси, от которых принимается X-Forwarded-For; пусто - ключ по remoteAddr
+ * @param routes маршруты, остальные запросы не ограничиваются
+ */
+@ConfigurationProperties(prefix = "rate-limit")
+public record RateLimitProperties(@DefaultValue("true") boolean enabled,
+                                  @DefaultValue("100000") int maxKeys,
+                                  @DefaultValue("1m") Duration sweepInterval,
+                                  @DefaultValue List<String> trustedProxies,
+                                  @DefaultValue List<Route> routes) {
+
+    /**
+     * @param name имя маршрута, часть ключа bucket'а и тег метрики
+     * @param method HTTP метод, null - любой
+     * @param pattern Ant шаблон пути
+     * @param key по чему считается лимит
+     * @param capacity запросов подряд (размер bucket'а)
+     * @param refillPeriod за сколько bucket пополняется полностью
+     */
+    public record Route(String name,
+                        String method,
+                        String pattern,
+                        @DefaultValue("IP") KeyType key,
+                        int capacity,
+                        Duration refillPeriod) {
+    }
+
+    public enum KeyType {
+        /** IP клиента */
+        IP,
+        /** UUID пользователя из {@link com.shop.userservice.security.UserPrincipal}, анонимные - по IP */
+        USER
+    }
+}
@@ -0,0 +1,131 @@
+package com.shop.userservice.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Таблица token bucket'ов без блокировок. Bucket хранится как одно число - теоретическое время прихода
+ * следующего запроса (GCRA): списание токена - CAS этого числа, refill получается из разницы с текущим временем.
+ * <p>
+ * Память ограничена maxKeys. Каждый bucket истекает в момент, когда полностью пополнится (после этого он неотличим
+ * от нового), поэтому при переполнении первыми уходят уже пополненные. Если места нет и среди ограниченных,
+ * Caffeine вытесняет давно и редко запрошенный ключ, а не произвольный - клиент, упершийся в лимит и продолжающий
+ * слать запросы, свой bucket не теряет.
+ */
+public class TokenBucketTable {
+    private final Cache<String, Bucket> buckets;
+    private final LongSupplier nanoClock;
+
+    public TokenBucketTable(int maxKeys) {
+        this(maxKeys, System::nanoTime);
+    }
+
+    TokenBucketTable(int maxKeys, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfter(new UntilRefilled())
+                .ticker(nanoClock::getAsLong)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * @param key ключ bucket'а
+     * @param limit емкость и скорость пополнения
+     * @return {@link Duration#ZERO}, если токен списан, иначе через сколько появится следующий
+     */
+    public Duration tryAcquire(String key, Limit limit) {
+        AtomicLong bucket = buckets.get(key, ignore -> new Bucket(nanoClock.getAsLong(), limit.emissionIntervalNanos())).tat();
+
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = bucket.get();
+            long tat = current - now > 0 ? current : now;
+            long wait = tat - limit.burstToleranceNanos() - now;
+
+            if (wait > 0) {
+                return Duration.ofNanos(wait);
+            }
+            if (bucket.compareAndSet(current, tat + limit.emissionIntervalNanos())) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    /**
+     * Удаляет полностью пополненные bucket'ы, не дожидаясь следующего обращения к таблице
+     */
+    public void evictIdle() {
+        buckets.cleanUp();
+    }
+
+    public long size() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+
+    /**
+     * @param tat теоретическое время прихода следующего запроса
+     * @param emissionIntervalNanos на сколько одно списание сдвигает tat
+     */
+    private record Bucket(AtomicLong tat, long emissionIntervalNanos) {
+        Bucket(long tat, long emissionIntervalNanos) {
+            this(new AtomicLong(tat), emissionIntervalNanos);
+        }
+    }
+
+    /**
+     * Срок считается при обращении, до CAS: списание сдвигает tat не дальше max(tat, now) + emissionInterval,
+     * так что bucket не истечет раньше, чем пополнится
+     */
+    private static final class UntilRefilled implements Expiry<String, Bucket> {
+        @Override
+        public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+            return untilRefilled(bucket, currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return untilRefilled(bucket, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return untilRefilled(bucket, currentTime);
+        }
+
+        private static long untilRefilled(Bucket bucket, long now) {
+            return Math.max(bucket.tat().get() - now, 0) + bucket.emissionIntervalNanos();
+        }
+    }
+
+    /**
+     * Лимит в терминах GCRA: capacity запросов подряд, далее один запрос на refillPeriod / capacity
+     */
+    public record Limit(long emissionIntervalNanos, long burstToleranceNanos) {
+        /**
+         * @throws IllegalArgumentException capacity или refillPeriod не положительны, либо refillPeriod
+         *                                  короче capacity наносекунд - такой лимит не ограничивает ничего
+         */
+        public static Limit of(int capacity, Duration refillPeriod) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Rate limit capacity must be positive: " + capacity);
+            }
+            if (refillPeriod == null || refillPeriod.isZero() || refillPeriod.isNegative()) {
+                throw new IllegalArgumentException("Rate limit refill period must be positive: " + refillPeriod);
+            }
+            long emissionInterval = refillPeriod.toNanos() / capacity;
+            if (emissionInterval == 0) {
+                throw new IllegalArgumentException("Rate limit refill period %s is too short for capacity %d"
+                        .formatted(refillPeriod, capacity));
+            }
+            return new Limit(emissionInterval, emissionInterval * (capacity - 1));
+        }
+    }
+}
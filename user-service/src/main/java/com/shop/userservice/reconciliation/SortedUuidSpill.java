@@ -0,0 +1,177 @@
+package com.shop.userservice.reconciliation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Внешняя сортировка UUID с ограниченной памятью: значения копятся в буфере на runSize элементов,
+ * заполненный буфер сортируется и сбрасывается во временный файл (run), итератор сливает run'ы
+ * через k-way merge. Порядок - беззнаковое побайтовое сравнение, как у типа uuid в PostgreSQL.
+ * <p>
+ * {@link #add(UUID)} потокобезопасен, итерация - после окончания записи.
+ */
+public class SortedUuidSpill implements Closeable {
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final UUID[] buffer;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<RunCursor> openCursors = new ArrayList<>();
+    private int size;
+    private long count;
+
+    public SortedUuidSpill(Path directory, int runSize) {
+        this.directory = directory;
+        this.buffer = new UUID[runSize];
+    }
+
+    /**
+     * Сравнение как у PostgreSQL uuid (memcmp 16 байт), {@link UUID#compareTo} сравнивает со знаком
+     */
+    public static int compare(UUID left, UUID right) {
+        int result = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return result != 0 ? result : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    }
+
+    public synchronized void add(UUID uuid) {
+        buffer[size++] = uuid;
+        count++;
+        if (size == buffer.length) {
+            spill();
+        }
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    private void spill() {
+        Arrays.sort(buffer, 0, size, SortedUuidSpill::compare);
+        try {
+            Path run = Files.createTempFile(directory, "uuid-run-", ".bin");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE))) {
+                for (int i = 0; i < size; i++) {
+                    output.writeLong(buffer[i].getMostSignificantBits());
+                    output.writeLong(buffer[i].getLeastSignificantBits());
+                }
+            }
+            runs.add(run);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        Arrays.fill(buffer, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return отсортированные UUID без дубликатов
+     */
+    public synchronized Iterator<UUID> sortedIterator() {
+        if (size > 0) {
+            spill();
+        }
+
+        PriorityQueue<RunCursor> cursors = new PriorityQueue<>((left, right) -> compare(left.current, right.current));
+        for (Path run : runs) {
+            RunCursor cursor = new RunCursor(run);
+            openCursors.add(cursor);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        return new Iterator<>() {
+            private UUID last;
+            private UUID next = fetch();
+
+            private UUID fetch() {
+                while (!cursors.isEmpty()) {
+                    RunCursor cursor = cursors.poll();
+                    UUID value = cursor.current;
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                    if (last == null || compare(last, value) != 0) {
+                        last = value;
+                        return value;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public UUID next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                UUID result = next;
+                next = fetch();
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        openCursors.forEach(RunCursor::closeQuietly);
+        openCursors.clear();
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignore) {}
+        }
+        runs.clear();
+    }
+
+    private static final class RunCursor {
+        private final DataInputStream input;
+        private UUID current;
+
+        private RunCursor(Path run) {
+            try {
+                this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private boolean advance() {
+            try {
+                current = new UUID(input.readLong(), input.readLong());
+                return true;
+            } catch (EOFException exception) {
+                closeQuietly();
+                return false;
+            } catch (IOException exception) {
+                closeQuietly();
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                input.close();
+            } catch (IOException ignore) {}
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.shop.userservice.reconciliation;
+
+import com.shop.userservice.cache.DistributedLoadLock;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
+import com.shop.userservice.repository.UserRepository;
+import com.shop.userservice.service.UserCacheService;
+import com.shop.userservice.util.LogMarker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Сверка пользователей Keycloak (участники роли {@link KeycloakService#USER_ROLE}) с таблицей users по user_uuid.
+ * <p>
+ * Обе стороны читаются параллельно страницами и складываются в {@link SortedUuidSpill}, затем
+ * отсортированные потоки сливаются merge join'ом - память ограничена размером run'а, а не числом пользователей.
+ * Расхождения исправляются пачками и только после повторной проверки:
+ * <ul>
+ *     <li>есть только в Keycloak - повторно ищется в users, затем ставится в очередь удаления keycloak_deletion_tasks;</li>
+ *     <li>есть только в users - проверяется в Keycloak (404), затем локальная запись удаляется вместе с кэшем.</li>
+ * </ul>
+ * Пользователи Keycloak моложе grace не считаются расхождением: регистрация или импорт могут быть еще не завершены.
+ * Их UUID тоже идут в свой {@link SortedUuidSpill} и исключаются при слиянии, а не держатся множеством в памяти.
+ * Одновременно сверку выполняет один инстанс (блокировка в Redis).
+ */
+@Slf4j
+@Component
+public class UserReconciliationJob {
+    private static final String LOCK_KEY = "users:reconciliation";
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final UserRepository userRepository;
+    private final KeycloakDeletionTaskRepository deletionTaskRepository;
+    private final KeycloakService keycloakService;
+    private final UserCacheService userCacheService;
+    private final Executor reconciliationExecutor;
+    private final DistributedLoadLock runLock;
+    private final int pageSize;
+    private final int parallelism;
+    private final int runSize;
+    private final int repairBatchSize;
+    private final long maxRepairs;
+    private final Duration grace;
+    private final boolean dryRun;
+    private final Path workDir;
+
+    private final Counter keycloakOnlyDrift;
+    private final Counter localOnlyDrift;
+    private final Counter keycloakOnlyRepaired;
+    private final Counter localOnlyRepaired;
+
+    public UserReconciliationJob(UserRepository userRepository,
+                                 KeycloakDeletionTaskRepository deletionTaskRepository,
+                                 KeycloakService keycloakService,
+                                 UserCacheService userCacheService,
+                                 @Qualifier("userReconciliationExecutor") Executor reconciliationExecutor,
+                                 StringRedisTemplate stringRedisTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${keycloak.reconciliation.page-size:500}") int pageSize,
+                                 @Value("${keycloak.reconciliation.parallelism:4}") int parallelism,
+                                 @Value("${keycloak.reconciliation.run-size:100000}") int runSize,
+                                 @Value("${keycloak.reconciliation.repair-batch-size:100}") int repairBatchSize,
+                                 @Value("${keycloak.reconciliation.max-repairs:1000}") long maxRepairs,
+                                 @Value("${keycloak.reconciliation.grace:1h}") Duration grace,
+                                 @Value("${keycloak.reconciliation.dry-run:false}") boolean dryRun,
+                                 @Value("${keycloak.reconciliation.lock-ttl:2h}") Duration lockTtl,
+                                 @Value("${keycloak.reconciliation.work-dir:${java.io.tmpdir}}") Path workDir) {
+        this.userRepository = userRepository;
+        this.deletionTaskRepository = deletionTaskRepository;
+        this.keycloakService = keycloakService;
+        this.userCacheService = userCacheService;
+        this.reconciliationExecutor = reconciliationExecutor;
+        this.runLock = new DistributedLoadLock(stringRedisTemplate, lockTtl, Duration.ZERO);
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        this.runSize = runSize;
+        this.repairBatchSize = repairBatchSize;
+        this.maxRepairs = maxRepairs;
+        this.grace = grace;
+        this.dryRun = dryRun;
+        this.workDir = workDir;
+
+        this.keycloakOnlyDrift = counter(meterRegistry, "users_reconciliation_drift", "keycloak_only");
+        this.localOnlyDrift = counter(meterRegistry, "users_reconciliation_drift", "local_only");
+        this.keycloakOnlyRepaired = counter(meterRegistry, "users_reconciliation_repairs", "keycloak_only");
+        this.localOnlyRepaired = counter(meterRegistry, "users_reconciliation_repairs", "local_only");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String side) {
+        return Counter.builder(name)
+                .description("Users found only on one side by the Keycloak reconciliation")
+                .tag("side", side)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${keycloak.reconciliation.cron:0 30 3 * * *}")
+    public void reconcile() {
+        String token = runLock.tryLock(LOCK_KEY);
+        if (token == null) {
+            log.info(LogMarker.APP_CALL.getMarker(), "service=User-Reconciliation | SKIPPED | reason=running on another instance");
+            return;
+        }
+
+        try {
+            run();
+        } catch (Exception exception) {
+            log.error(LogMarker.ERROR.getMarker(), "service=User-Reconciliation | RECONCILIATION FAILED | causer={}",
+                    exception.getMessage());
+        } finally {
+            runLock.unlock(LOCK_KEY, token);
+        }
+    }
+
+    Summary run() throws IOException {
+        long start = System.currentTimeMillis();
+        long youngAfter = start - grace.toMillis();
+
+        try (SortedUuidSpill keycloakUsers = new SortedUuidSpill(workDir, runSize);
+             SortedUuidSpill youngKeycloakUsers = new SortedUuidSpill(workDir, runSize);
+             SortedUuidSpill localUsers = new SortedUuidSpill(workDir, runSize)) {
+
+            CompletableFuture<Void> localScan = CompletableFuture.runAsync(() -> scanLocal(localUsers), reconciliationExecutor);
+            scanKeycloak(keycloakUsers, youngKeycloakUsers, youngAfter);
+            localScan.join();
+
+            Summary summary = new Summary(keycloakUsers.count(), localUsers.count());
+            merge(keycloakUsers.sortedIterator(), localUsers.sortedIterator(), youngKeycloakUsers.sortedIterator(), summary);
+
+            log.info(LogMarker.AUDIT.getMarker(), "service=User-Reconciliation | action=reconcile | keycloakUsers={} | localUsers={} | " +
+                            "keycloakOnly={} | localOnly={} | repaired={} | dryRun={} | ms={}",
+                    summary.keycloakUsers, summary.localUsers, summary.keycloakOnly, summary.localOnly,
+                    summary.repaired, dryRun, System.currentTimeMillis() - start);
+            return summary;
+        }
+    }
+
+    /**
+     * Страницы читаются волнами по parallelism штук, пока очередная волна не вернет неполную страницу.
+     * Сдвиги страниц при параллельных изменениях в Keycloak дают лишь ложные "только в users", их отсеивает проверка перед исправлением.
+     */
+    private void scanKeycloak(SortedUuidSpill keycloakUsers, SortedUuidSpill youngKeycloakUsers, long youngAfter) {
+        int first = 0;
+        boolean lastPage = false;
+
+        while (!lastPage) {
+            List<CompletableFuture<List<UserRepresentation>>> wave = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                int offset = first + i * pageSize;
+                wave.add(CompletableFuture.supplyAsync(() -> keycloakService.getShopUsersPage(offset, pageSize), reconciliationExecutor));
+            }
+            first += parallelism * pageSize;
+
+            for (CompletableFuture<List<UserRepresentation>> call : wave) {
+                List<UserRepresentation> page = call.join();
+                for (UserRepresentation user : page) {
+                    UUID uuid = UUID.fromString(user.getId());
+                    keycloakUsers.add(uuid);
+                    if (user.getCreatedTimestamp() == null || user.getCreatedTimestamp() > youngAfter) {
+                        youngKeycloakUsers.add(uuid);
+                    }
+                }
+                lastPage |= page.size() < pageSize;
+            }
+        }
+    }
+
+    private void scanLocal(SortedUuidSpill localUsers) {
+        UUID after = MIN_UUID;
+        List<UUID> page;
+        do {
+            page = userRepository.findPublicIdsAfter(after, Limit.of(pageSize));
+            page.forEach(localUsers::add);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1);
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * @param youngKeycloakUsers отсортированные UUID моложе grace - подмножество keycloakUsers, идет по нему вторым курсором
+     */
+    void merge(Iterator<UUID> keycloakUsers, Iterator<UUID> localUsers, Iterator<UUID> youngKeycloakUsers, Summary summary) {
+        List<UUID> keycloakOnly = new ArrayList<>(repairBatchSize);
+        List<UUID> localOnly = new ArrayList<>(repairBatchSize);
+
+        UUID keycloakUser = next(keycloakUsers);
+        UUID localUser = next(localUsers);
+        UUID youngUser = next(youngKeycloakUsers);
+
+        while (keycloakUser != null || localUser != null) {
+            int order = keycloakUser == null ? 1 : localUser == null ? -1 : SortedUuidSpill.compare(keycloakUser, localUser);
+
+            if (order == 0) {
+                keycloakUser = next(keycloakUsers);
+                localUser = next(localUsers);
+            } else if (order < 0) {
+                while (youngUser != null && SortedUuidSpill.compare(youngUser, keycloakUser) < 0) {
+                    youngUser = next(youngKeycloakUsers);
+                }
+                if (!keycloakUser.equals(youngUser)) {
+                    keycloakOnly.add(keycloakUser);
+                    if (keycloakOnly.size() == repairBatchSize) {
+                        repairKeycloakOnly(keycloakOnly, summary);
+                        keycloakOnly.clear();
+                    }
+                }
+                keycloakUser = next(keycloakUsers);
+            } else {
+                localOnly.add(localUser);
+                if (localOnly.size() == repairBatchSize) {
+                    repairLocalOnly(localOnly, summary);
+                    localOnly.clear();
+                }
+                localUser = next(localUsers);
+            }
+        }
+
+        if (!keycloakOnly.isEmpty()) {
+            repairKeycloakOnly(keycloakOnly, summary);
+        }
+        if (!localOnly.isEmpty()) {
+            repairLocalOnly(localOnly, summary);
+        }
+    }
+
+    private static UUID next(Iterator<UUID> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Пользователь мог появиться в users после чтения страницы - такие отбрасываются, остальные ставятся в очередь удаления
+     */
+    private void repairKeycloakOnly(List<UUID> candidates, Summary summary) {
+        Set<UUID> present = userRepository.findAllByPublicIdIn(candidates).stream()
+                .map(User::getPublicId)
+                .collect(Collectors.toSet());
+
+        List<UUID> orphans = candidates.stream()
+                .filter(uuid -> !present.contains(uuid))
+                .toList();
+        if (orphans.isEmpty()) {
+            return;
+        }
+
+        summary.keycloakOnly += orphans.size();
+        keycloakOnlyDrift.increment(orphans.size());
+
+        List<UUID> repair = orphans.subList(0, (int) Math.min(orphans.size(), summary.repairsLeft(maxRepairs)));
+        if (repair.isEmpty() || dryRun) {
+            log.warn(LogMarker.AUDIT.getMarker(), "service=User-Reconciliation | action=keycloakOnly | count={} | repaired=0 | userUUIDs={}",
+                    orphans.size(), orphans);
+            return;
+        }
+
+        deletionTaskRepository.enqueueAll(repair);
+        summary.repaired += repair.size();
+        keycloakOnlyRepaired.increment(repair.size());
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=User-Reconciliation | action=keycloakOnly | count={} | repaired={} | userUUIDs={}",
+                orphans.size(), repair.size(), repair);
+    }
+
+    /**
+     * Пропуск на странице Keycloak не означает отсутствие пользователя - удаляются только те, на кого Keycloak ответил 404
+     */
+    private void repairLocalOnly(List<UUID> candidates, Summary summary) {
+        List<CompletableFuture<Boolean>> checks = candidates.stream()
+                .map(uuid -> CompletableFuture.supplyAsync(() -> keycloakService.existsUserByUUID(uuid.toString()), reconciliationExecutor))
+                .toList();
+
+        List<UUID> orphans = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            try {
+                if (!checks.get(i).join()) {
+                    orphans.add(candidates.get(i));
+                }
+            } catch (RuntimeException exception) {
+                log.warn(LogMarker.APP_CALL.getMarker(), "service=User-Reconciliation | CHECK FAILED | userUUID={} | causer={}",
+                        candidates.get(i), exception.getMessage());
+            }
+        }
+        if (orphans.isEmpty()) {
+            return;
+        }
+
+        summary.localOnly += orphans.size();
+        localOnlyDrift.increment(orphans.size());
+
+        List<UUID> repair = orphans.subList(0, (int) Math.min(orphans.size(), summary.repairsLeft(maxRepairs)));
+        if (repair.isEmpty() || dryRun) {
+            log.warn(LogMarker.AUDIT.getMarker(), "service=User-Reconciliation | action=localOnly | count={} | repaired=0 | userUUIDs={}",
+                    orphans.size(), orphans);
+            return;
+        }
+
+        List<User> users = userRepository.findAllByPublicIdIn(repair);
+        userRepository.deleteAllInBatch(users);
+        userCacheService.evictUsersCaches(users);
+        summary.repaired += users.size();
+        localOnlyRepaired.increment(users.size());
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=User-Reconciliation | action=localOnly | count={} | repaired={} | userUUIDs={}",
+                orphans.size(), users.size(), repair);
+    }
+
+    static final class Summary {
+        final long keycloakUsers;
+        final long localUsers;
+        long keycloakOnly;
+        long localOnly;
+        long repaired;
+
+        Summary(long keycloakUsers, long localUsers) {
+            this.keycloakUsers = keycloakUsers;
+            this.localUsers = localUsers;
+        }
+
+        long repairsLeft(long maxRepairs) {
+            return Math.max(maxRepairs - repaired, 0);
+        }
+    }
+}
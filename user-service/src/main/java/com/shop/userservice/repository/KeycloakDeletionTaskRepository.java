@@ -0,0 +1,166 @@
+package com.shop.userservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Очередь удаления пользователей в Keycloak (таблица keycloak_deletion_tasks).
+ * <p>
+ * Кроме {@link #enqueue(UUID)} методы рассчитаны на вызов вне транзакции: каждый - один SQL в autocommit,
+ * соединение с БД не удерживается на время HTTP вызовов в Keycloak.
+ */
+@Repository
+@RequiredArgsConstructor
+public class KeycloakDeletionTaskRepository {
+    private static final String ENQUEUE = """
+            INSERT INTO keycloak_deletion_tasks (user_uuid)
+            VALUES (:userUUID)
+            ON CONFLICT (user_uuid) DO UPDATE
+            SET status = 'PENDING', attempts = 0, next_attempt_at = now(), locked_until = NULL
+            WHERE keycloak_deletion_tasks.status = 'FAILED'
+            """;
+
+    /*
+     * Забирает готовые задачи и сразу продлевает lease: параллельные воркеры (SKIP LOCKED)
+     * и другие инстансы не получат те же строки, пока lease не истечет.
+     */
+    private static final String CLAIM = """
+            UPDATE keycloak_deletion_tasks
+            SET locked_until = now() + :leaseMs * interval '1 millisecond',
+                attempts = attempts + 1
+            WHERE id IN (
+                SELECT id FROM keycloak_deletion_tasks
+                WHERE status = 'PENDING'
+                  AND next_attempt_at <= now()
+                  AND (locked_until IS NULL OR locked_until < now())
+                ORDER BY next_attempt_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id, user_uuid, attempts
+            """;
+
+    private static final String COMPLETE = "DELETE FROM keycloak_deletion_tasks WHERE id IN (:ids)";
+
+    private static final String RESCHEDULE = """
+            UPDATE keycloak_deletion_tasks
+            SET next_attempt_at = now() + :delayMs * interval '1 millisecond',
+                locked_until = NULL,
+                last_error = :lastError
+            WHERE id = :id
+            """;
+
+    private static final String FAIL = """
+            UPDATE keycloak_deletion_tasks
+            SET status = 'FAILED',
+                locked_until = NULL,
+                last_error = :lastError
+            WHERE id = :id
+            """;
+
+    private static final int LAST_ERROR_LENGTH = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Ставит удаление в очередь в текущей транзакции. Повторная постановка того же UUID игнорируется,
+     * FAILED задача возвращается в очередь со сброшенным счетчиком попыток
+     */
+    public void enqueue(UUID userUUID) {
+        jdbcTemplate.update(ENQUEUE, new MapSqlParameterSource("userUUID", userUUID));
+    }
+
+    /**
+     * Пакетная постановка в очередь одним batch запросом
+     */
+    public void enqueueAll(Collection<UUID> userUUIDs) {
+        if (userUUIDs.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] parameters = userUUIDs.stream()
+                .map(userUUID -> new MapSqlParameterSource("userUUID", userUUID))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(ENQUEUE, parameters);
+    }
+
+    /**
+     * @param limit максимум задач
+     * @param lease на сколько задачи закрепляются за вызывающим
+     * @return задачи, у которых подошло время попытки; attempts уже учитывает текущую попытку
+     */
+    public List<KeycloakDeletionTask> claim(int limit, Duration lease) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("limit", limit)
+                .addValue("leaseMs", lease.toMillis());
+
+        return jdbcTemplate.query(CLAIM, parameters, (resultSet, rowNum) -> new KeycloakDeletionTask(
+                resultSet.getLong("id"),
+                resultSet.getObject("user_uuid", UUID.class),
+                resultSet.getInt("attempts")
+        ));
+    }
+
+    public void complete(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbcTemplate.update(COMPLETE, new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    /**
+     * Откладывает неудачные задачи одним batch запросом
+     */
+    public void reschedule(Collection<Retry> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] parameters = retries.stream()
+                .map(retry -> new MapSqlParameterSource()
+                        .addValue("id", retry.id())
+                        .addValue("delayMs", retry.delay().toMillis())
+                        .addValue("lastError", truncate(retry.lastError())))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(RESCHEDULE, parameters);
+    }
+
+    /**
+     * Переводит задачи, исчерпавшие попытки, в FAILED: воркер их больше не забирает, строка с last_error
+     * остается для разбора
+     */
+    public void fail(Collection<Failure> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] parameters = failures.stream()
+                .map(failure -> new MapSqlParameterSource()
+                        .addValue("id", failure.id())
+                        .addValue("lastError", truncate(failure.lastError())))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(FAIL, parameters);
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= LAST_ERROR_LENGTH ? value : value.substring(0, LAST_ERROR_LENGTH);
+    }
+
+    public record KeycloakDeletionTask(long id, UUID userUUID, int attempts) {
+    }
+
+    public record Retry(long id, Duration delay, String lastError) {
+    }
+
+    public record Failure(long id, String lastError) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.shop.userservice.repository;
+
+import com.shop.userservice.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Чтение всей таблицы users одним проходом для выгрузки.
+ * <p>
+ * PostgreSQL JDBC отдает строки порциями (server-side cursor) только при fetchSize > 0 и autocommit = false,
+ * поэтому чтение идет в read-only транзакции. JPA не используется - persistence context не растет.
+ */
+@Repository
+public class UserExportRepository {
+    private static final String SELECT_ALL = """
+            SELECT id, user_uuid, first_name, last_name, patronymic, phone_number, email, created_at
+            FROM users
+            ORDER BY id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public UserExportRepository(DataSource dataSource,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${users.export.fetch-size:2000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Передает пользователей в порядке id по одному, в памяти держится не больше fetchSize строк
+     *
+     * @param consumer получатель строки, объект после вызова не переиспользуется и может быть собран GC
+     */
+    public void forEachUser(Consumer<User> consumer) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(SELECT_ALL, resultSet -> {
+            consumer.accept(User.builder()
+                    .id(resultSet.getLong("id"))
+                    .publicId(resultSet.getObject("user_uuid", UUID.class))
+                    .firstName(resultSet.getString("first_name"))
+                    .lastName(resultSet.getString("last_name"))
+                    .patronymic(resultSet.getString("patronymic"))
+                    .phoneNumber(resultSet.getString("phone_number"))
+                    .email(resultSet.getString("email"))
+                    .createdAt(resultSet.getObject("created_at", OffsetDateTime.class))
+                    .build());
+        }));
+    }
+}
@@ -0,0 +1,280 @@
+package com.shop.userservice.repository;
+
+import com.shop.userservice.dto.UserImportStatusDto;
+import com.shop.userservice.entity.User;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * JDBC доступ для массового импорта: чекпоинты (user_import_checkpoints), вставка users пачкой
+ * и проверка занятых email/телефонов пачки
+ */
+@Repository
+public class UserImportRepository {
+    private static final String SELECT_CHECKPOINT = """
+            SELECT import_id, status, processed_lines, imported, skipped, failed, last_error, started_at, updated_at
+            FROM user_import_checkpoints
+            WHERE import_id = ?
+            """;
+
+    /*
+     * Существующий чекпоинт перехватывается, только если он не RUNNING или его владелец не продвигал его дольше lease.
+     * Файл запоминается при первом запуске и дальше не меняется
+     */
+    private static final String START_CHECKPOINT = """
+            INSERT INTO user_import_checkpoints (import_id, status, run_id, file_size, file_sha256)
+            VALUES (?, 'RUNNING', ?, ?, ?)
+            ON CONFLICT (import_id) DO UPDATE
+            SET status = 'RUNNING',
+                run_id = EXCLUDED.run_id,
+                file_size = coalesce(user_import_checkpoints.file_size, EXCLUDED.file_size),
+                file_sha256 = coalesce(user_import_checkpoints.file_sha256, EXCLUDED.file_sha256),
+                last_error = NULL,
+                updated_at = now()
+            WHERE user_import_checkpoints.status <> 'RUNNING'
+               OR user_import_checkpoints.updated_at < now() - ? * interval '1 millisecond'
+            RETURNING import_id, status, processed_lines, imported, skipped, failed, last_error, started_at, updated_at
+            """;
+
+    private static final String SELECT_INPUT_FILE = """
+            SELECT file_size, file_sha256
+            FROM user_import_checkpoints
+            WHERE import_id = ? AND file_sha256 IS NOT NULL
+            """;
+
+    private static final String ADVANCE_CHECKPOINT = """
+            UPDATE user_import_checkpoints
+            SET processed_lines = processed_lines + ?,
+                imported = imported + ?,
+                skipped = skipped + ?,
+                failed = failed + ?,
+                updated_at = now()
+            WHERE import_id = ? AND run_id = ?
+            """;
+
+    private static final String TOUCH_CHECKPOINT = """
+            UPDATE user_import_checkpoints
+            SET updated_at = now()
+            WHERE import_id = ? AND run_id = ? AND status = 'RUNNING'
+            """;
+
+    private static final String FINISH_CHECKPOINT = """
+            UPDATE user_import_checkpoints
+            SET status = ?, last_error = ?, updated_at = now()
+            WHERE import_id = ? AND run_id = ?
+            """;
+
+    /*
+     * Вся пачка одним INSERT из массивов: RETURNING показывает, какие строки вставлены, а какие отброшены
+     * ON CONFLICT (счетчики JDBC batch при reWriteBatchedInserts этого не дают).
+     */
+    private static final String INSERT_USERS = """
+            INSERT INTO users (user_uuid, first_name, last_name, patronymic, phone_number, email, created_at)
+            SELECT user_uuid, first_name, last_name, patronymic, phone_number, email, now()
+            FROM unnest(?::uuid[], ?::varchar[], ?::varchar[], ?::varchar[], ?::varchar[], ?::varchar[])
+                AS chunk (user_uuid, first_name, last_name, patronymic, phone_number, email)
+            ON CONFLICT DO NOTHING
+            RETURNING user_uuid
+            """;
+
+    private static final String SELECT_EXISTING_UUIDS = "SELECT user_uuid FROM users WHERE user_uuid = ANY(?)";
+
+    private static final String SELECT_TAKEN_CONTACTS = """
+            SELECT email, phone_number
+            FROM users
+            WHERE email = ANY(?) OR phone_number = ANY(?)
+            """;
+
+    private static final int LAST_ERROR_LENGTH = 500;
+
+    private static final RowMapper<UserImportStatusDto> STATUS_MAPPER = (resultSet, rowNum) -> new UserImportStatusDto(
+            resultSet.getString("import_id"),
+            resultSet.getString("status"),
+            resultSet.getLong("processed_lines"),
+            resultSet.getLong("imported"),
+            resultSet.getLong("skipped"),
+            resultSet.getLong("failed"),
+            resultSet.getString("last_error"),
+            resultSet.getObject("started_at", OffsetDateTime.class),
+            resultSet.getObject("updated_at", OffsetDateTime.class)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final KeycloakDeletionTaskRepository keycloakDeletionTaskRepository;
+
+    public UserImportRepository(DataSource dataSource,
+                                PlatformTransactionManager transactionManager,
+                                KeycloakDeletionTaskRepository keycloakDeletionTaskRepository) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.keycloakDeletionTaskRepository = keycloakDeletionTaskRepository;
+    }
+
+    public Optional<UserImportStatusDto> findCheckpoint(String importId) {
+        return jdbcTemplate.query(SELECT_CHECKPOINT, STATUS_MAPPER, importId).stream().findFirst();
+    }
+
+    /**
+     * Файл, с которым импорт был запущен впервые
+     */
+    public Optional<InputFile> findInputFile(String importId) {
+        return jdbcTemplate.query(SELECT_INPUT_FILE, (resultSet, rowNum) -> new InputFile(
+                resultSet.getLong("file_size"),
+                resultSet.getString("file_sha256")
+        ), importId).stream().findFirst();
+    }
+
+    /**
+     * Создает чекпоинт или переводит существующий в RUNNING за новым владельцем, счетчики существующего сохраняются
+     *
+     * @param runId владелец запуска, с ним сдвигаются пачки и завершается импорт
+     * @param lease сколько RUNNING чекпоинт может не продвигаться, прежде чем его можно перехватить
+     * @return empty, если импорт выполняется другим запуском
+     */
+    public Optional<UserImportStatusDto> startCheckpoint(String importId, UUID runId, InputFile file, Duration lease) {
+        return jdbcTemplate.query(START_CHECKPOINT, STATUS_MAPPER, importId, runId, file.size(), file.sha256(), lease.toMillis())
+                .stream().findFirst();
+    }
+
+    /**
+     * Продлевает lease перед началом работы запуска
+     *
+     * @return false, если чекпоинт уже перехвачен другим запуском
+     */
+    public boolean touchCheckpoint(String importId, UUID runId) {
+        return jdbcTemplate.update(TOUCH_CHECKPOINT, importId, runId) > 0;
+    }
+
+    /**
+     * Вставляет пачку пользователей и сдвигает чекпоинт в одной транзакции: после падения пачка либо целиком
+     * учтена, либо будет обработана заново.
+     * <p>
+     * Строки, отброшенные ON CONFLICT (email/телефон занят параллельной регистрацией), считаются пропущенными,
+     * а их аккаунты в Keycloak, не привязанные ни к одной строке users, ставятся в очередь удаления.
+     * <p>
+     * Если чекпоинт перехвачен другим запуском, пачка откатывается целиком; созданные ею аккаунты Keycloak
+     * без строк users удалит ночная сверка.
+     *
+     * @param progress счетчики пачки, imported - сколько пользователей создано в Keycloak
+     * @return сохраненные счетчики с учетом отброшенных строк
+     * @throws IllegalStateException чекпоинт принадлежит другому запуску
+     */
+    public ChunkProgress saveChunk(String importId, UUID runId, List<User> users, ChunkProgress progress) {
+        return transactionTemplate.execute(status -> {
+            ChunkProgress saved = progress;
+            if (!users.isEmpty()) {
+                Set<UUID> inserted = new HashSet<>(jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(INSERT_USERS);
+                    statement.setArray(1, connection.createArrayOf("uuid", users.stream().map(User::getPublicId).toArray()));
+                    statement.setArray(2, varchars(connection, users, User::getFirstName));
+                    statement.setArray(3, varchars(connection, users, User::getLastName));
+                    statement.setArray(4, varchars(connection, users, User::getPatronymic));
+                    statement.setArray(5, varchars(connection, users, User::getPhoneNumber));
+                    statement.setArray(6, varchars(connection, users, User::getEmail));
+                    return statement;
+                }, (resultSet, rowNum) -> resultSet.getObject(1, UUID.class)));
+
+                List<UUID> dropped = users.stream()
+                        .map(User::getPublicId)
+                        .filter(userUUID -> !inserted.contains(userUUID))
+                        .toList();
+                if (!dropped.isEmpty()) {
+                    enqueueOrphans(dropped);
+                    saved = new ChunkProgress(progress.lines(), progress.imported() - dropped.size(),
+                            progress.skipped() + dropped.size(), progress.failed());
+                }
+            }
+            int advanced = jdbcTemplate.update(ADVANCE_CHECKPOINT, saved.lines(), saved.imported(), saved.skipped(),
+                    saved.failed(), importId, runId);
+            if (advanced == 0) {
+                throw new IllegalStateException("The import %s was taken over by another run".formatted(importId));
+            }
+            return saved;
+        });
+    }
+
+    /**
+     * Отброшенная строка могла совпасть по user_uuid с уже существующей (аккаунт взят из прерванного запуска) -
+     * такой аккаунт не сирота
+     */
+    private void enqueueOrphans(List<UUID> dropped) {
+        Set<UUID> existing = new HashSet<>(jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_EXISTING_UUIDS);
+            statement.setArray(1, connection.createArrayOf("uuid", dropped.toArray()));
+            return statement;
+        }, (resultSet, rowNum) -> resultSet.getObject(1, UUID.class)));
+
+        keycloakDeletionTaskRepository.enqueueAll(dropped.stream()
+                .filter(userUUID -> !existing.contains(userUUID))
+                .toList());
+    }
+
+    private static Array varchars(Connection connection, List<User> users, Function<User, String> column) throws SQLException {
+        return connection.createArrayOf("varchar", users.stream().map(column).toArray());
+    }
+
+    /**
+     * Завершает импорт, если чекпоинт все еще принадлежит runId
+     */
+    public void finishCheckpoint(String importId, UUID runId, String status, String lastError) {
+        jdbcTemplate.update(FINISH_CHECKPOINT, status, truncate(lastError), importId, runId);
+    }
+
+    /**
+     * Какие из переданных email и телефонов уже заняты: один запрос на пачку по индексам email и phone_number,
+     * память не зависит от размера таблицы users
+     */
+    public TakenContacts findTakenContacts(Collection<String> emails, Collection<String> phones) {
+        Set<String> takenEmails = new HashSet<>();
+        Set<String> takenPhones = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_TAKEN_CONTACTS);
+            statement.setArray(1, connection.createArrayOf("varchar", emails.toArray()));
+            statement.setArray(2, connection.createArrayOf("varchar", phones.toArray()));
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            takenEmails.add(resultSet.getString("email"));
+            takenPhones.add(resultSet.getString("phone_number"));
+        });
+        return new TakenContacts(takenEmails, takenPhones);
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= LAST_ERROR_LENGTH ? value : value.substring(0, LAST_ERROR_LENGTH);
+    }
+
+    public record TakenContacts(Set<String> emails, Set<String> phones) {
+    }
+
+    /**
+     * @param sha256 hex
+     */
+    public record InputFile(long size, String sha256) {
+    }
+
+    /**
+     * @param lines обработано строк входа в пачке
+     */
+    public record ChunkProgress(long lines, long imported, long skipped, long failed) {
+    }
+}
@@ -2,28 +2,56 @@ package com.shop.userservice.repository;
 
 import com.shop.userservice.dto.UserSearchDto;
 import com.shop.userservice.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
-    Optional<User> findByUserUUID(UUID userUUID);
+    Optional<User> findByPublicId(UUID publicId);
     Optional<User> findByEmail(String email);
     Optional<User> findByPhoneNumber(String phoneNumber);
+    List<User> findAllByPublicIdIn(Collection<UUID> publicIds);
 
     Boolean existsByPhoneNumber(String phoneNumber);
     Boolean existsByEmail(String email);
-    Boolean existsByUserUUID(UUID userUUID);
+    Boolean existsByPublicId(UUID publicId);
+
+    /**
+     * Keyset страница UUID в порядке uuid PostgreSQL, каждая страница - отдельный короткий запрос по индексу
+     */
+    @Query("select u.publicId from User u where u.publicId > :after order by u.publicId")
+    List<UUID> findPublicIdsAfter(@Param("after") UUID after, Limit limit);
 
 
     default Page<User> searchUser(UserSearchDto request, Pageable pageable) {
+        return findAll(searchSpecification(request), pageable);
+    }
+
+    /**
+     * Поиск с ранжированием по pg_trgm similarity. Сортировка из pageable игнорируется,
+     * порядок задает {@link UserSpecification#orderBySimilarity(UserSearchDto)}
+     */
+    default Page<User> searchUserRankedBySimilarity(UserSearchDto request, Pageable pageable) {
+        Specification<User> specification = searchSpecification(request)
+                .and(UserSpecification.orderBySimilarity(request));
+
+        return findAll(specification, PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    private static Specification<User> searchSpecification(UserSearchDto request) {
         Specification<User> specification = Specification.unrestricted();
 
         if (request != null) {
@@ -35,6 +63,6 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
                     .and(UserSpecification.createdBetween(request.createdFrom(), request.createdTo()));
         }
 
-        return findAll(specification, pageable);
+        return specification;
     }
 }
@@ -1,30 +1,41 @@
 package com.shop.userservice.repository;
 
+import com.shop.userservice.dto.UserSearchDto;
 import com.shop.userservice.entity.User;
 import com.shop.userservice.util.NormalizerPhoneNumber;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class UserSpecification {
+    private static final char LIKE_ESCAPE = '\\';
+
+    /*
+     * Выражения lower(first_name), lower(patronymic), lower(email) должны совпадать с выражениями
+     * GIN индексов pg_trgm (V2__Users_search_trgm_indexes.yaml), иначе планировщик уйдет в seq scan.
+     */
     public static Specification<User> hasFirstName(String firstName) {
         return (root, query, cb) ->
-                firstName == null ? null : cb.like(cb.lower(root.get("firstName")), "%" +
-                        firstName.toLowerCase() + "%");
+                firstName == null ? null : cb.like(lowerOf(root, cb, "firstName"), containsPattern(firstName), LIKE_ESCAPE);
     }
 
     public static Specification<User> hasPatronymic(String patronymic) {
         return (root, query, cb) ->
-                patronymic == null ? null : cb.like(cb.lower(root.get("patronymic")), "%" +
-                        patronymic.toLowerCase() + "%");
+                patronymic == null ? null : cb.like(lowerOf(root, cb, "patronymic"), containsPattern(patronymic), LIKE_ESCAPE);
     }
 
     public static Specification<User> hasLastName(String lastName) {
         return (root, query, cb) ->
-                lastName == null ? null : cb.equal(cb.lower(root.get("lastName")), lastName.toLowerCase());
+                lastName == null ? null : cb.equal(lowerOf(root, cb, "lastName"), normalize(lastName));
     }
 
     public static Specification<User> hasPhoneNumber(String phoneNumber) {
@@ -34,7 +45,7 @@ public class UserSpecification {
 
     public static Specification<User> hasEmail(String email) {
         return (root, query, cb) ->
-                email == null ? null : cb.like(cb.lower(root.get("email")), "%" + email.toLowerCase() + "%");
+                email == null ? null : cb.like(lowerOf(root, cb, "email"), containsPattern(email), LIKE_ESCAPE);
     }
 
     public static Specification<User> createdBetween(LocalDate from, LocalDate to) {
@@ -57,4 +68,63 @@ public class UserSpecification {
             }
         };
     }
+
+    /**
+     * Сортирует результат по сумме pg_trgm similarity() для переданных текстовых фильтров,
+     * при равенстве - по id. Предикат не добавляет, в count запрос сортировку не вносит.
+     *
+     * @param request фильтры поиска
+     */
+    public static Specification<User> orderBySimilarity(UserSearchDto request) {
+        return (root, query, cb) -> {
+            if (request == null || Long.class == query.getResultType()) return null;
+
+            List<Expression<Double>> scores = new ArrayList<>();
+            addSimilarity(scores, root, cb, "firstName", request.firstName());
+            addSimilarity(scores, root, cb, "patronymic", request.patronymic());
+            addSimilarity(scores, root, cb, "email", request.email());
+
+            if (scores.isEmpty()) {
+                query.orderBy(cb.asc(root.get("id")));
+                return null;
+            }
+
+            Expression<Double> rank = scores.get(0);
+            for (int i = 1; i < scores.size(); i++) {
+                rank = cb.sum(rank, scores.get(i));
+            }
+
+            query.orderBy(cb.desc(rank), cb.asc(root.get("id")));
+            return null;
+        };
+    }
+
+    private static void addSimilarity(List<Expression<Double>> scores, Root<User> root, CriteriaBuilder cb,
+                                      String attribute, String value) {
+        if (value != null) {
+            scores.add(cb.function("similarity", Double.class, lowerOf(root, cb, attribute), cb.literal(normalize(value))));
+        }
+    }
+
+    private static Expression<String> lowerOf(Root<User> root, CriteriaBuilder cb, String attribute) {
+        return cb.lower(root.get(attribute));
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Экранирует спецсимволы LIKE, чтобы пользовательский ввод не превращался в шаблон
+     */
+    private static String containsPattern(String value) {
+        StringBuilder pattern = new StringBuilder(value.length() + 2).append('%');
+        for (char symbol : normalize(value).toCharArray()) {
+            if (symbol == '%' || symbol == '_' || symbol == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(symbol);
+        }
+        return pattern.append('%').toString();
+    }
 }
@@ -0,0 +1,146 @@
+package com.shop.userservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Очередь писем подтверждения email (таблица verify_email_tasks).
+ * Все методы - один SQL в autocommit, соединение не удерживается на время вызовов Keycloak.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VerifyEmailTaskRepository {
+    private static final String ENQUEUE = """
+            INSERT INTO verify_email_tasks (user_uuid, username, email)
+            VALUES (:userUUID, :username, :email)
+            ON CONFLICT (user_uuid) DO NOTHING
+            """;
+
+    private static final String CLAIM = """
+            UPDATE verify_email_tasks
+            SET locked_until = now() + :leaseMs * interval '1 millisecond',
+                attempts = attempts + 1
+            WHERE id IN (
+                SELECT id FROM verify_email_tasks
+                WHERE next_attempt_at <= now()
+                  AND (locked_until IS NULL OR locked_until < now())
+                ORDER BY next_attempt_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id, user_uuid, username, email, attempts
+            """;
+
+    private static final String COMPLETE = "DELETE FROM verify_email_tasks WHERE id IN (:ids)";
+
+    private static final String DELETE_BY_USER = "DELETE FROM verify_email_tasks WHERE user_uuid = :userUUID";
+
+    private static final String RESCHEDULE = """
+            UPDATE verify_email_tasks
+            SET next_attempt_at = now() + :delayMs * interval '1 millisecond',
+                locked_until = NULL,
+                last_error = :lastError
+            WHERE id = :id
+            """;
+
+    /*
+     * Лаг - сколько ждет самая старая задача, время попытки которой уже подошло
+     */
+    private static final String STATS = """
+            SELECT count(*) AS depth,
+                   coalesce(extract(epoch FROM now() - min(next_attempt_at) FILTER (WHERE next_attempt_at <= now())), 0) AS lag_seconds
+            FROM verify_email_tasks
+            """;
+
+    private static final int LAST_ERROR_LENGTH = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Повторная постановка письма тому же пользователю игнорируется
+     */
+    public void enqueue(UUID userUUID, String username, String email) {
+        jdbcTemplate.update(ENQUEUE, new MapSqlParameterSource()
+                .addValue("userUUID", userUUID)
+                .addValue("username", username)
+                .addValue("email", email));
+    }
+
+    /**
+     * @param limit максимум задач
+     * @param lease на сколько задачи закрепляются за вызывающим
+     * @return задачи, у которых подошло время попытки; attempts уже учитывает текущую попытку
+     */
+    public List<VerifyEmailTask> claim(int limit, Duration lease) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("limit", limit)
+                .addValue("leaseMs", lease.toMillis());
+
+        return jdbcTemplate.query(CLAIM, parameters, (resultSet, rowNum) -> new VerifyEmailTask(
+                resultSet.getLong("id"),
+                resultSet.getObject("user_uuid", UUID.class),
+                resultSet.getString("username"),
+                resultSet.getString("email"),
+                resultSet.getInt("attempts")
+        ));
+    }
+
+    public void complete(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbcTemplate.update(COMPLETE, new MapSqlParameterSource("ids", ids));
+        }
+    }
+
+    /**
+     * Снимает письмо удаленного пользователя: Keycloak на него ответит только 404.
+     * Внутри транзакции вызывающего удаляется вместе с пользователем
+     */
+    public void deleteByUserUUID(UUID userUUID) {
+        jdbcTemplate.update(DELETE_BY_USER, new MapSqlParameterSource("userUUID", userUUID));
+    }
+
+    /**
+     * Откладывает неудачные задачи одним batch запросом
+     */
+    public void reschedule(Collection<Retry> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] parameters = retries.stream()
+                .map(retry -> new MapSqlParameterSource()
+                        .addValue("id", retry.id())
+                        .addValue("delayMs", retry.delay().toMillis())
+                        .addValue("lastError", truncate(retry.lastError())))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(RESCHEDULE, parameters);
+    }
+
+    public QueueStats stats() {
+        return jdbcTemplate.queryForObject(STATS, new MapSqlParameterSource(), (resultSet, rowNum) -> new QueueStats(
+                resultSet.getLong("depth"),
+                resultSet.getDouble("lag_seconds")
+        ));
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= LAST_ERROR_LENGTH ? value : value.substring(0, LAST_ERROR_LENGTH);
+    }
+
+    public record VerifyEmailTask(long id, UUID userUUID, String username, String email, int attempts) {
+    }
+
+    public record Retry(long id, Duration delay, String lastError) {
+    }
+
+    public record QueueStats(long depth, double lagSeconds) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.shop.userservice.security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * {@link JwtDecoder}, который проверяет подпись и claims токена один раз за время его жизни,
+ * повторные запросы с тем же токеном получают Jwt из {@link VerifiedTokenCache}.
+ * Ошибки проверки не кэшируются.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+    private final JwtDecoder delegate;
+    private final VerifiedTokenCache cache;
+
+    public CachingJwtDecoder(JwtDecoder delegate, VerifiedTokenCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        return cache.getOrVerify(token, delegate::decode);
+    }
+}
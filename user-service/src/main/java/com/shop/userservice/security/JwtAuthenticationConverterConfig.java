@@ -19,7 +19,7 @@ public class JwtAuthenticationConverterConfig {
     }
 
     @Bean
-    public Converter<Jwt, ? extends AbstractAuthenticationToken> jwtAuthenticationConverterCustom() {
-        return new UserJwtConverter();
+    public Converter<Jwt, ? extends AbstractAuthenticationToken> jwtAuthenticationConverterCustom(VerifiedTokenCache verifiedTokenCache) {
+        return new UserJwtConverter(verifiedTokenCache);
     }
 }
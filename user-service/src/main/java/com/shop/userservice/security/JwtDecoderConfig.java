@@ -0,0 +1,29 @@
+package com.shop.userservice.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoders;
+import org.springframework.security.oauth2.jwt.SupplierJwtDecoder;
+
+import java.time.Duration;
+
+@Configuration
+public class JwtDecoderConfig {
+
+    @Bean
+    public VerifiedTokenCache verifiedTokenCache(@Value("${security.jwt.cache.max-size:10000}") long maxSize,
+                                                 @Value("${security.jwt.cache.max-ttl:5m}") Duration maxTtl) {
+        return new VerifiedTokenCache(maxSize, maxTtl);
+    }
+
+    /**
+     * Заменяет декодер Spring Boot: тот же issuer-uri (ключи загружаются при первом запросе), но с кэшем проверенных токенов
+     */
+    @Bean
+    public JwtDecoder jwtDecoder(@Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+                                 VerifiedTokenCache verifiedTokenCache) {
+        return new CachingJwtDecoder(new SupplierJwtDecoder(() -> JwtDecoders.fromIssuerLocation(issuerUri)), verifiedTokenCache);
+    }
+}
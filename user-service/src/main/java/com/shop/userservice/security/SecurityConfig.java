@@ -40,6 +40,9 @@ public class SecurityConfig {
                                 "/webjars/**",
                                 "/error").permitAll()
                         .requestMatchers("/api/v1/registration").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/v1/export").hasRole("ADMIN")
+                        .requestMatchers("/api/v1/import", "/api/v1/import/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.POST, "/api/v1/by-uuids").hasAnyRole("USER", "ADMIN")
                         .requestMatchers("/api/v1/{id}", "/api/v1/by-uuid/{uuid}").hasAnyRole("USER", "ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/api/v1/**").hasAnyRole("USER", "ADMIN")
                         .requestMatchers("/api/v1", "/api/v1/search").hasRole("ADMIN"))
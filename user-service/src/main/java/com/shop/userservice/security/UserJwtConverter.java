@@ -1,5 +1,6 @@
 package com.shop.userservice.security;
 
+import com.shop.userservice.security.VerifiedTokenCache.ConvertedPrincipal;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -10,15 +11,31 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtGra
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Component
 public class UserJwtConverter implements Converter<Jwt, AbstractAuthenticationToken> {
 
     private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+    private final VerifiedTokenCache verifiedTokenCache;
 
+    public UserJwtConverter(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
+    /**
+     * Принципал берется из кэша, токен аутентификации создается на каждый запрос:
+     * Spring Security записывает в него детали конкретного запроса
+     */
     @Override
     public AbstractAuthenticationToken convert(Jwt source) {
+        ConvertedPrincipal converted = verifiedTokenCache.getOrConvert(source, this::toPrincipal);
+
+        return new UsernamePasswordAuthenticationToken(converted.principal(), "n/a", converted.authorities());
+    }
+
+    private ConvertedPrincipal toPrincipal(Jwt source) {
         Collection<GrantedAuthority> authorities = jwtGrantedAuthoritiesConverter.convert(source);
 
         var roles = source.getClaimAsStringList("spring_sec_roles");
@@ -30,13 +47,14 @@ public class UserJwtConverter implements Converter<Jwt, AbstractAuthenticationTo
                     .forEach(authorities::add);
         }
 
+        List<GrantedAuthority> immutableAuthorities = List.copyOf(authorities);
         UserPrincipal userPrincipal = new UserPrincipal(
                 UUID.fromString(source.getClaim("sub")),
                 source.getClaim("preferred_username"),
                 source.getClaim("email"),
-                authorities
+                immutableAuthorities
         );
 
-        return new UsernamePasswordAuthenticationToken(userPrincipal, "n/a", authorities);
+        return new ConvertedPrincipal(userPrincipal, immutableAuthorities);
     }
 }
@@ -0,0 +1,96 @@
+package com.shop.userservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Кэш проверенных токенов: SHA-256 токена -> {@link Jwt} после проверки подписи и валидаторов,
+ * Jwt -> {@link UserPrincipal} с authorities после конвертации.
+ * <p>
+ * Запись живет до exp токена, но не дольше maxTtl. Принципалы привязаны к экземпляру Jwt (weak keys):
+ * из кэша декодера приходит один и тот же Jwt, поэтому повторная конвертация не нужна и хэш не считается второй раз,
+ * а вытесненный Jwt уносит с собой и принципала.
+ */
+public class VerifiedTokenCache {
+    private final Cache<String, Jwt> tokens;
+    private final Cache<Jwt, ConvertedPrincipal> principals;
+
+    public VerifiedTokenCache(long maxSize, Duration maxTtl) {
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(maxTtl))
+                .build();
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .weakKeys()
+                .build();
+    }
+
+    /**
+     * @param verifier проверка подписи и claims, вызывается только на промах
+     */
+    public Jwt getOrVerify(String token, Function<String, Jwt> verifier) {
+        String key = sha256(token);
+
+        Jwt jwt = tokens.getIfPresent(key);
+        if (jwt != null && isActive(jwt)) {
+            return jwt;
+        }
+
+        jwt = verifier.apply(token);
+        if (jwt.getExpiresAt() != null) {
+            tokens.put(key, jwt);
+        }
+        return jwt;
+    }
+
+    public ConvertedPrincipal getOrConvert(Jwt jwt, Function<Jwt, ConvertedPrincipal> converter) {
+        return principals.get(jwt, converter);
+    }
+
+    private static boolean isActive(Jwt jwt) {
+        return jwt.getExpiresAt().isAfter(Instant.now());
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    public record ConvertedPrincipal(UserPrincipal principal, Collection<GrantedAuthority> authorities) {
+    }
+
+    private record TokenExpiry(Duration maxTtl) implements Expiry<String, Jwt> {
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            long untilExp = Duration.between(Instant.now(), jwt.getExpiresAt()).toNanos();
+            return Math.max(0, Math.min(untilExp, maxTtl.toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, jwt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
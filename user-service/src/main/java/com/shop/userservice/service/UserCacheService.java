@@ -1,19 +1,35 @@
 package com.shop.userservice.service;
 
+import com.shop.userservice.cache.NegativeCacheEntry;
+import com.shop.userservice.cache.TwoLevelCache;
+import com.shop.userservice.cache.TwoLevelCacheManager;
+import com.shop.userservice.cache.UserCacheNames;
 import com.shop.userservice.entity.User;
 import com.shop.userservice.util.LogMarker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.CacheManager;
+import org.springframework.cache.Cache;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserCacheService {
-    private final CacheManager cacheManager;
+    private static final int EVICT_BATCH_SIZE = 200;
+
+    private final TwoLevelCacheManager cacheManager;
 
     public void evictUserCaches(User user) {
         evictUserCaches(
@@ -24,23 +40,142 @@ public class UserCacheService {
         );
     }
 
-    public void evictUserCaches(Long id, UUID uuid, String email, String phoneNumber) {
-        try {
-            if (cacheManager.getCache("users:byId") != null) {
-                cacheManager.getCache("users:byId").evict(id);
+    /**
+     * Сбрасывает кэши после коммита текущей транзакции (в т.ч. негативные записи "не найден"),
+     * без активной транзакции - сразу
+     */
+    public void evictUserCachesAfterCommit(User user) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictUserCaches(user);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictUserCaches(user);
             }
-            if (cacheManager.getCache("users:byUUID") != null) {
-                cacheManager.getCache("users:byUUID").evict(uuid);
+        });
+    }
+
+    public void evictUserCaches(Long id, UUID uuid, String email, String phoneNumber) {
+        evictUsersCaches(List.of(new CachedUserKeys(id, uuid, email, phoneNumber)));
+    }
+
+    /**
+     * Bulk eviction: записи всех переданных пользователей во всех users:* кэшах удаляются
+     * одним Lua вызовом на пачку - по тегу пользователя и по ключам из его текущих данных
+     */
+    public void evictUsersCaches(Collection<User> users) {
+        evictUsersCaches(users.stream()
+                .map(user -> new CachedUserKeys(user.getId(), user.getPublicId(), user.getEmail(), user.getPhoneNumber()))
+                .toList());
+    }
+
+    private void evictUsersCaches(List<CachedUserKeys> users) {
+        for (int from = 0; from < users.size(); from += EVICT_BATCH_SIZE) {
+            List<CachedUserKeys> batch = users.subList(from, Math.min(from + EVICT_BATCH_SIZE, users.size()));
+            try {
+                List<String> tags = new ArrayList<>(batch.size());
+                List<String> redisKeys = new ArrayList<>(batch.size() * UserCacheNames.ALL.size());
+
+                for (CachedUserKeys user : batch) {
+                    if (user.id() != null) {
+                        tags.add(UserCacheNames.userTag(user.id()));
+                    }
+                    addRedisKey(redisKeys, UserCacheNames.BY_ID, user.id());
+                    addRedisKey(redisKeys, UserCacheNames.BY_UUID, user.uuid());
+                    addRedisKey(redisKeys, UserCacheNames.BY_EMAIL, user.email());
+                    addRedisKey(redisKeys, UserCacheNames.BY_PHONE, user.phoneNumber());
+                }
+
+                cacheManager.evictTagged(tags, redisKeys);
+            } catch (Exception exception) {
+                log.error(LogMarker.ERROR.getMarker(), "service=User-Cache-Service | EVICT CACHE ERROR | users={} | causer={}",
+                        batch.size(), exception.getMessage());
             }
-            if (cacheManager.getCache("users:byEmail") != null) {
-                cacheManager.getCache("users:byEmail").evict(email);
+        }
+    }
+
+    private void addRedisKey(List<String> redisKeys, String cacheName, Object key) {
+        if (key != null) {
+            redisKeys.add(cacheManager.redisKey(cacheName, key));
+        }
+    }
+
+    /**
+     * Пакетное чтение {@link UserCacheNames#BY_UUID} (L1 + один MGET). При ошибке Redis все ключи считаются промахами.
+     *
+     * @return найденные пользователи и UUID, которых нет в кэше; UUID с негативной записью
+     * ("не найден") не попадают ни туда, ни туда
+     */
+    public CachedUsers getCachedUsersByUUID(Collection<UUID> uuids) {
+        Map<UUID, User> found = new LinkedHashMap<>();
+        Set<UUID> misses = new LinkedHashSet<>(uuids);
+
+        try {
+            Cache cache = cacheManager.getCache(UserCacheNames.BY_UUID);
+            if (cache instanceof TwoLevelCache twoLevelCache) {
+                twoLevelCache.getAll(uuids).forEach((key, value) -> {
+                    if (value instanceof User user) {
+                        found.put((UUID) key, user);
+                    }
+                    misses.remove((UUID) key);
+                });
+            } else if (cache != null) {
+                for (UUID uuid : uuids) {
+                    User user = cache.get(uuid, User.class);
+                    if (user != null) {
+                        found.put(uuid, user);
+                        misses.remove(uuid);
+                    }
+                }
             }
-            if (cacheManager.getCache("users:byPhone") != null) {
-                cacheManager.getCache("users:byPhone").evict(phoneNumber);
+        } catch (Exception exception) {
+            log.error(LogMarker.ERROR.getMarker(), "service=User-Cache-Service | BATCH READ CACHE ERROR | causer={}",
+                    exception.getMessage());
+            return new CachedUsers(Map.of(), new LinkedHashSet<>(uuids));
+        }
+
+        return new CachedUsers(found, misses);
+    }
+
+    /**
+     * Дозаполняет {@link UserCacheNames#BY_UUID} после пакетной загрузки из БД: найденные пользователи
+     * и негативные записи для UUID, которых в БД нет
+     *
+     * @param requested UUID, которые искали в БД
+     * @param loaded пользователи, найденные в БД
+     */
+    public void cacheUsersByUUID(Collection<UUID> requested, Collection<User> loaded) {
+        Map<UUID, Object> values = new HashMap<>();
+        for (UUID uuid : requested) {
+            values.put(uuid, new NegativeCacheEntry("User by uuid: %s not found".formatted(uuid)));
+        }
+        for (User user : loaded) {
+            values.put(user.getPublicId(), user);
+        }
+
+        try {
+            Cache cache = cacheManager.getCache(UserCacheNames.BY_UUID);
+            if (cache instanceof TwoLevelCache twoLevelCache) {
+                twoLevelCache.putAll(values);
+            } else if (cache != null) {
+                loaded.forEach(user -> cache.put(user.getPublicId(), user));
             }
         } catch (Exception exception) {
-            log.error(LogMarker.ERROR.getMarker(), "service=User-Cache-Service | EVICT CACHE ERROR | causer={}",
+            log.error(LogMarker.ERROR.getMarker(), "service=User-Cache-Service | BATCH PUT CACHE ERROR | causer={}",
                     exception.getMessage());
         }
     }
+
+    /**
+     * @param found пользователи из кэша
+     * @param misses UUID, которые нужно искать в БД
+     */
+    public record CachedUsers(Map<UUID, User> found, Set<UUID> misses) {
+    }
+
+    private record CachedUserKeys(Long id, UUID uuid, String email, String phoneNumber) {
+    }
 }
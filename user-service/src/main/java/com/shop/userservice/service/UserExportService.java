@@ -0,0 +1,149 @@
+package com.shop.userservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.shop.userservice.dto.UserDto;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.repository.UserExportRepository;
+import com.shop.userservice.util.LogMarker;
+import com.shop.userservice.util.factory.UserDtoFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Потоковая выгрузка всех пользователей за один проход по таблице, память не зависит от числа строк
+ */
+@Slf4j
+@Service
+public class UserExportService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "id,userUUID,lastName,firstName,patronymic,phoneNumber,email,createdAt";
+
+    private final UserExportRepository userExportRepository;
+    private final ObjectWriter userWriter;
+
+    public UserExportService(UserExportRepository userExportRepository, ObjectMapper objectMapper) {
+        this.userExportRepository = userExportRepository;
+        this.userWriter = objectMapper.writerFor(UserDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * NDJSON: один {@link UserDto} на строку
+     */
+    public void exportNdjson(OutputStream outputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] rows = {0};
+
+        try (JsonGenerator generator = userWriter.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            userExportRepository.forEachUser(user -> {
+                try {
+                    userWriter.writeValue(generator, UserDtoFactory.createUserDto(user));
+                    generator.writeRaw('\n');
+                    rows[0]++;
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+
+        logExport("ndjson", rows[0], start);
+    }
+
+    /**
+     * CSV (RFC 4180) с заголовком, сжатый gzip
+     */
+    public void exportCsvGzip(OutputStream outputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] rows = {0};
+
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            writer.write(CSV_HEADER);
+            writer.write("\r\n");
+
+            userExportRepository.forEachUser(user -> {
+                try {
+                    writeCsvRow(writer, user);
+                    rows[0]++;
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+
+            writer.flush();
+            gzip.finish();
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+
+        logExport("csv.gz", rows[0], start);
+    }
+
+    private static void writeCsvRow(Writer writer, User user) throws IOException {
+        writer.write(String.valueOf(user.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(user.getPublicId()));
+        writer.write(',');
+        writeCsvText(writer, user.getLastName());
+        writer.write(',');
+        writeCsvText(writer, user.getFirstName());
+        writer.write(',');
+        writeCsvText(writer, user.getPatronymic());
+        writer.write(',');
+        writeCsvField(writer, user.getPhoneNumber());
+        writer.write(',');
+        writeCsvText(writer, user.getEmail());
+        writer.write(',');
+        writer.write(user.getCreatedAt() == null ? "" : user.getCreatedAt().toString());
+        writer.write("\r\n");
+    }
+
+    /**
+     * Текст, введенный пользователем: значение, начинающееся с =, +, -, @, табуляции или CR, табличный редактор
+     * выполнит как формулу, поэтому перед ним ставится ' (правило OWASP CSV Injection).
+     * Телефон пишется через {@link #writeCsvField} как есть: формат проверяется при регистрации, а ведущий + - часть номера
+     */
+    private static void writeCsvText(Writer writer, String value) throws IOException {
+        if (value != null && !value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        writeCsvField(writer, value);
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void logExport(String format, long rows, long start) {
+        log.info(LogMarker.AUDIT.getMarker(), "service=User-Export | action=exportUsers | format={} | rows={} | ms={}",
+                format, rows, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,316 @@
+package com.shop.userservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.dto.UserImportStatusDto;
+import com.shop.userservice.dto.UserRegistrationDto;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.exception.UserDuplicateException;
+import com.shop.userservice.exception.ValidationException;
+import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.UserImportRepository;
+import com.shop.userservice.repository.UserImportRepository.ChunkProgress;
+import com.shop.userservice.repository.UserImportRepository.InputFile;
+import com.shop.userservice.repository.UserImportRepository.TakenContacts;
+import com.shop.userservice.util.LogMarker;
+import com.shop.userservice.util.NormalizerPhoneNumber;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Массовый импорт пользователей из NDJSON (одна {@link UserRegistrationDto} на строку).
+ * <p>
+ * Вход сохраняется во временный файл, импорт идет в фоне пачками: нормализация телефона, валидация,
+ * дедупликация по email/телефонам внутри пачки и одним запросом к users на пачку, создание в Keycloak
+ * с ограниченным параллелизмом (свои ретраи и bulkhead {@code keycloakImportUser}, письмо подтверждения только при
+ * {@code users.import.send-verify-email}), вставка пачки в users одним INSERT вместе со сдвигом чекпоинта.
+ * Повторный запуск с тем же importId и тем же файлом (размер и SHA-256 запоминаются в чекпоинте) продолжает
+ * с последней сохраненной пачки, другой файл отклоняется. Импорт выполняет один запуск на все инстансы:
+ * RUNNING чекпоинт принадлежит своему runId и перехватывается, только если не продвигался дольше
+ * {@code users.import.lease}.
+ */
+@Slf4j
+@Service
+public class UserImportService {
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final UserImportRepository userImportRepository;
+    private final KeycloakService keycloakService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final Executor importExecutor;
+    private final Executor provisioningExecutor;
+    private final int chunkSize;
+    private final boolean sendVerifyEmail;
+    private final Path workDir;
+    private final Duration lease;
+
+    public UserImportService(UserImportRepository userImportRepository,
+                             KeycloakService keycloakService,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             @Qualifier("userImportExecutor") Executor importExecutor,
+                             @Qualifier("userImportProvisioningExecutor") Executor provisioningExecutor,
+                             @Value("${users.import.chunk-size:500}") int chunkSize,
+                             @Value("${users.import.send-verify-email:false}") boolean sendVerifyEmail,
+                             @Value("${users.import.work-dir:${java.io.tmpdir}}") Path workDir,
+                             @Value("${users.import.lease:15m}") Duration lease) {
+        this.userImportRepository = userImportRepository;
+        this.keycloakService = keycloakService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.importExecutor = importExecutor;
+        this.provisioningExecutor = provisioningExecutor;
+        this.chunkSize = chunkSize;
+        this.sendVerifyEmail = sendVerifyEmail;
+        this.workDir = workDir;
+        this.lease = lease;
+    }
+
+    /**
+     * Сохраняет вход и запускает импорт в фоне
+     *
+     * @param importId идентификатор импорта, по нему хранится чекпоинт
+     * @param body NDJSON
+     * @return состояние чекпоинта на момент запуска
+     */
+    public UserImportStatusDto startImport(String importId, InputStream body) throws IOException {
+        Path file = Files.createTempFile(workDir, "user-import-", ".ndjson");
+        UUID runId = UUID.randomUUID();
+        boolean started = false;
+        try {
+            InputFile input = copy(body, file);
+            Optional<InputFile> firstRun = userImportRepository.findInputFile(importId);
+            if (firstRun.isPresent() && !firstRun.get().equals(input)) {
+                throw new ValidationException(Map.of("importId", "The import with this id was started with another file"));
+            }
+
+            UserImportStatusDto status = userImportRepository.startCheckpoint(importId, runId, input, lease)
+                    .orElseThrow(() -> new ValidationException(Map.of("importId", "The import with this id is already running")));
+            started = true;
+
+            importExecutor.execute(() -> runImport(importId, runId, file));
+
+            log.info(LogMarker.AUDIT.getMarker(), "service=User-Import | action=startImport | importId={} | resumeFromLine={} | sha256={}",
+                    importId, status.processedLines(), input.sha256());
+            return status;
+        } catch (IOException | RuntimeException exception) {
+            // иначе чекпоинт остался бы RUNNING без исполнителя до истечения lease
+            if (started) {
+                userImportRepository.finishCheckpoint(importId, runId, STATUS_FAILED, exception.getMessage());
+            }
+            Files.deleteIfExists(file);
+            throw exception;
+        }
+    }
+
+    /**
+     * Сохраняет вход в файл, считая размер и SHA-256 по пути
+     */
+    private static InputFile copy(InputStream body, Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+        long size = Files.copy(new DigestInputStream(body, digest), file, StandardCopyOption.REPLACE_EXISTING);
+        return new InputFile(size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    public Optional<UserImportStatusDto> getStatus(String importId) {
+        return userImportRepository.findCheckpoint(importId);
+    }
+
+    void runImport(String importId, UUID runId, Path file) {
+        long start = System.currentTimeMillis();
+        try {
+            // пока запуск ждал в очереди пула, чекпоинт мог быть перехвачен повторным запуском
+            if (!userImportRepository.touchCheckpoint(importId, runId)) {
+                log.warn(LogMarker.APP_CALL.getMarker(), "service=User-Import | RUN SUPERSEDED | importId={} | runId={}",
+                        importId, runId);
+                return;
+            }
+            importFile(importId, runId, file);
+            userImportRepository.finishCheckpoint(importId, runId, STATUS_COMPLETED, null);
+
+            log.info(LogMarker.AUDIT.getMarker(), "service=User-Import | action=finishImport | importId={} | status={} | ms={}",
+                    importId, STATUS_COMPLETED, System.currentTimeMillis() - start);
+        } catch (Exception exception) {
+            log.error(LogMarker.ERROR.getMarker(), "service=User-Import | IMPORT FAILED | importId={} | causer={}",
+                    importId, exception.getMessage());
+            try {
+                userImportRepository.finishCheckpoint(importId, runId, STATUS_FAILED, exception.getMessage());
+            } catch (Exception ignore) {}
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignore) {}
+        }
+    }
+
+    private void importFile(String importId, UUID runId, Path file) throws IOException {
+        long resumeFrom = userImportRepository.findCheckpoint(importId)
+                .map(UserImportStatusDto::processedLines)
+                .orElse(0L);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (long skipped = 0; skipped < resumeFrom; skipped++) {
+                if (reader.readLine() == null) {
+                    return;
+                }
+            }
+
+            List<String> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    importChunk(importId, runId, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(importId, runId, chunk);
+            }
+        }
+    }
+
+    void importChunk(String importId, UUID runId, List<String> lines) {
+        long skipped = 0;
+        long failed = 0;
+        List<UserRegistrationDto> candidates = new ArrayList<>(lines.size());
+        Set<String> emails = new HashSet<>();
+        Set<String> phones = new HashSet<>();
+
+        for (String line : lines) {
+            if (line.isBlank()) {
+                skipped++;
+                continue;
+            }
+
+            UserRegistrationDto dto;
+            try {
+                dto = objectMapper.readValue(line, UserRegistrationDto.class);
+            } catch (JsonProcessingException exception) {
+                failed++;
+                continue;
+            }
+            if (dto.getPhoneNumber() != null) {
+                dto.setPhoneNumber(NormalizerPhoneNumber.normalizerPhone(dto.getPhoneNumber()));
+            }
+            if (!validator.validate(dto).isEmpty()) {
+                failed++;
+                continue;
+            }
+            // Повтор внутри пачки; с уже сохраненными пользователями (и прошлыми пачками) сверяется БД ниже
+            if (emails.contains(dto.getEmail()) || phones.contains(dto.getPhoneNumber())) {
+                skipped++;
+                continue;
+            }
+
+            emails.add(dto.getEmail());
+            phones.add(dto.getPhoneNumber());
+            candidates.add(dto);
+        }
+
+        if (!candidates.isEmpty()) {
+            TakenContacts taken = userImportRepository.findTakenContacts(emails, phones);
+            int before = candidates.size();
+            candidates.removeIf(dto -> taken.emails().contains(dto.getEmail())
+                    || taken.phones().contains(dto.getPhoneNumber()));
+            skipped += before - candidates.size();
+        }
+
+        List<CompletableFuture<User>> provisioning = candidates.stream()
+                .map(dto -> CompletableFuture.supplyAsync(() -> provision(dto), provisioningExecutor))
+                .toList();
+
+        List<User> users = new ArrayList<>(candidates.size());
+        for (int i = 0; i < provisioning.size(); i++) {
+            try {
+                User user = provisioning.get(i).join();
+                if (user == null) {
+                    failed++;
+                } else {
+                    users.add(user);
+                }
+            } catch (CompletionException exception) {
+                if (exception.getCause() instanceof UserDuplicateException) {
+                    skipped++;
+                } else {
+                    failed++;
+                    log.warn(LogMarker.APP_CALL.getMarker(), "service=User-Import | PROVISIONING FAILED | importId={} | username={} | causer={}",
+                            importId, candidates.get(i).getUsername(), exception.getCause().getMessage());
+                }
+            }
+        }
+
+        ChunkProgress saved = userImportRepository.saveChunk(importId, runId, users, new ChunkProgress(lines.size(), users.size(), skipped, failed));
+        if (saved.imported() < users.size()) {
+            log.warn(LogMarker.APP_CALL.getMarker(), "service=User-Import | ROWS DROPPED ON CONFLICT | importId={} | dropped={}",
+                    importId, users.size() - saved.imported());
+        }
+    }
+
+    /**
+     * Если username уже занят тем же пользователем (пачка была создана в Keycloak, но не закоммичена до падения),
+     * берется его UUID - иначе локальная строка не появится, а сверка удалит аккаунт как сироту.
+     *
+     * @return пользователь для вставки или null, если Keycloak вернул неожиданный статус
+     * @throws UserDuplicateException username/email заняты другим пользователем
+     */
+    private User provision(UserRegistrationDto dto) {
+        String userUUID;
+        try {
+            userUUID = keycloakService.importUser(dto.getUsername(), dto.getFirstName(), dto.getLastName(),
+                    dto.getEmail(), dto.getPassword(), sendVerifyEmail);
+        } catch (UserDuplicateException exception) {
+            userUUID = keycloakService.findImportedUser(dto.getUsername(), dto.getEmail())
+                    .orElseThrow(() -> exception);
+
+            log.info(LogMarker.AUDIT.getMarker(), "service=User-Import | action=adoptKeycloakUser | username={} | userUUID={}",
+                    dto.getUsername(), userUUID);
+        }
+        if (userUUID == null) {
+            return null;
+        }
+
+        return User.builder()
+                .publicId(UUID.fromString(userUUID))
+                .firstName(dto.getFirstName())
+                .lastName(dto.getLastName())
+                .patronymic(dto.getPatronymic())
+                .phoneNumber(dto.getPhoneNumber())
+                .email(dto.getEmail())
+                .build();
+    }
+}
@@ -1,7 +1,9 @@
 package com.shop.userservice.service;
 
+import com.shop.userservice.cache.UserCacheNames;
 import com.shop.userservice.dto.UserDeleteEvent;
 import com.shop.userservice.dto.UserRegistrationDto;
+import com.shop.userservice.dto.UserRegistrationRollbackEvent;
 import com.shop.userservice.dto.UserSearchDto;
 import com.shop.userservice.entity.User;
 import com.shop.userservice.exception.ExternalServiceUnavailableException;
@@ -9,12 +11,15 @@ import com.shop.userservice.exception.IternalServerError;
 import com.shop.userservice.exception.UserDuplicateException;
 import com.shop.userservice.exception.UserNotFoundException;
 import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
 import com.shop.userservice.repository.UserRepository;
+import com.shop.userservice.repository.VerifyEmailTaskRepository;
 import com.shop.userservice.util.LogMarker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -23,6 +28,12 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Slf4j
@@ -32,6 +43,8 @@ public class UserService {
     private final UserRepository userRepository;
     private final KeycloakService keycloakService;
     private final UserCacheService userCacheService;
+    private final KeycloakDeletionTaskRepository keycloakDeletionTaskRepository;
+    private final VerifyEmailTaskRepository verifyEmailTaskRepository;
     private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
@@ -49,7 +62,7 @@ public class UserService {
                 userRegistrationDto.getLastName(), userRegistrationDto.getEmail(), userRegistrationDto.getPassword());
 
         User user = User.builder()
-                .userUUID(UUID.fromString(userUUID))
+                .publicId(UUID.fromString(userUUID))
                 .firstName(userRegistrationDto.getFirstName())
                 .lastName(userRegistrationDto.getLastName())
                 .patronymic(userRegistrationDto.getPatronymic())
@@ -59,10 +72,10 @@ public class UserService {
 
         try {
             userRepository.save(user);
+            userCacheService.evictUserCachesAfterCommit(user);
         } catch (DataIntegrityViolationException exception) {
-            try {
-                keycloakService.deleteUserByUUID(userUUID);
-            } catch (UserNotFoundException ignore) {}
+            // Транзакция откатывается, аккаунт в Keycloak ставится в очередь удаления уже после отката
+            eventPublisher.publishEvent(new UserRegistrationRollbackEvent(user.getPublicId(), userRegistrationDto.getUsername()));
 
             log.error(LogMarker.ERROR.getMarker(), "service=UserService | error SAVING the user | username={} | message={}",
                     userRegistrationDto.getUsername(), exception.getMessage());
@@ -72,32 +85,83 @@ public class UserService {
     }
 
 
-    @Cacheable(value = "users:byUUID", key = "#uuid")
+    /**
+     * Ставит в очередь удаления аккаунт Keycloak, созданный регистрацией, транзакция которой откатилась.
+     * Выполняется вне транзакции регистрации: после ошибки ограничения она уже не принимает запросы,
+     * а постановка в ней откатилась бы вместе с ней
+     *
+     * @param event UUID созданного в Keycloak пользователя
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_ROLLBACK)
+    public void handleUserRegistrationRollbackEvent(UserRegistrationRollbackEvent event) {
+        try {
+            keycloakDeletionTaskRepository.enqueue(event.uuid());
+
+            log.info(LogMarker.AUDIT.getMarker(), "service=UserService | action=enqueueKeycloakDeletion | username={} | userUUID={}",
+                    event.username(), event.uuid());
+        } catch (DataAccessException exception) {
+            // аккаунт без строки users найдет и удалит ночная сверка
+            log.error(LogMarker.INFRA_ERROR.getMarker(), "service=UserService | ENQUEUE KEYCLOAK DELETION ERROR | userUUID={} | causer={}",
+                    event.uuid(), exception.getMessage());
+        }
+    }
+
+    @Cacheable(value = UserCacheNames.BY_UUID, sync = true, key = "#uuid")
     public User getUserByUUID(UUID uuid) {
-        return userRepository.findByUserUUID(uuid).orElseThrow(
+        return userRepository.findByPublicId(uuid).orElseThrow(
                 () -> new UserNotFoundException("User by uuid: %s not found".formatted(uuid)));
     }
 
-    @Cacheable(value = "users:byId", key = "#id")
+    /**
+     * Пакетный поиск пользователей по UUID: сначала кэш (L1 + один MGET), промахи одним запросом IN,
+     * загруженное из БД дозаполняет кэш
+     *
+     * @param uuids UUID пользователей, дубликаты игнорируются
+     * @return найденные пользователи по UUID в порядке запроса, ненайденных в карте нет
+     */
+    public Map<UUID, User> getUsersByUUIDs(Collection<UUID> uuids) {
+        Set<UUID> requested = new LinkedHashSet<>(uuids);
+        UserCacheService.CachedUsers cached = userCacheService.getCachedUsersByUUID(requested);
+
+        Map<UUID, User> loaded = new LinkedHashMap<>();
+        if (!cached.misses().isEmpty()) {
+            List<User> users = userRepository.findAllByPublicIdIn(cached.misses());
+            users.forEach(user -> loaded.put(user.getPublicId(), user));
+            userCacheService.cacheUsersByUUID(cached.misses(), users);
+        }
+
+        Map<UUID, User> result = new LinkedHashMap<>();
+        for (UUID uuid : requested) {
+            User user = cached.found().containsKey(uuid) ? cached.found().get(uuid) : loaded.get(uuid);
+            if (user != null) {
+                result.put(uuid, user);
+            }
+        }
+        return result;
+    }
+
+    @Cacheable(value = UserCacheNames.BY_ID, sync = true, key = "#id")
     public User getUserById(Long id) {
         return userRepository.findById(id).orElseThrow(
                 () -> new UserNotFoundException("User by id: %s not found".formatted(id)));
     }
 
-    @Cacheable(value = "users:byEmail", key = "#email")
+    @Cacheable(value = UserCacheNames.BY_EMAIL, sync = true, key = "#email")
     public User getUserByEmail(String email) {
         return userRepository.findByEmail(email).orElseThrow(
                 () -> new UserNotFoundException("User by email: %s not found".formatted(email)));
     }
 
-    @Cacheable(value = "users:ByPhone", key = "#phoneNumber")
+    @Cacheable(value = UserCacheNames.BY_PHONE, sync = true, key = "#phoneNumber")
     public User getUserByPhoneNumber(String phoneNumber) {
         return userRepository.findByPhoneNumber(phoneNumber).orElseThrow(
                 () -> new UserNotFoundException("User by phone number: %s not found".formatted(phoneNumber)));
     }
 
     /**
-     * Удаляет пользователя по id
+     * Удаляет пользователя по id. Удаление в Keycloak ставится в очередь в той же транзакции
+     * и выполняется {@link com.shop.userservice.keycloak.KeycloakDeletionWorker} после коммита,
+     * неотправленное письмо подтверждения email снимается с очереди там же
      *
      * @param id пользователя которого нужно удалить
      * @param adminName имя администратора который удалил пользователя
@@ -108,6 +172,8 @@ public class UserService {
                 () -> new UserNotFoundException("User by id: %s not found".formatted(id)));
 
         userRepository.delete(user);
+        keycloakDeletionTaskRepository.enqueue(user.getPublicId());
+        verifyEmailTaskRepository.deleteByUserUUID(user.getPublicId());
 
         eventPublisher.publishEvent(new UserDeleteEvent(
                 user.getId(),
@@ -123,24 +189,17 @@ public class UserService {
      *
      * @param event данные удаленного пользователя
      */
-    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
     public void handleUserDeletedEvent(UserDeleteEvent event) {
-        try {
-            userCacheService.evictUserCaches(
-                    event.id(),
-                    event.uuid(),
-                    event.email(),
-                    event.phoneNumber()
-            );
-
-            keycloakService.deleteUserByUUID(event.uuid().toString());
-
-            log.info(LogMarker.AUDIT.getMarker(), "service=UserService | action=deleteUser | deletedUserId={} | performedBy={}",
-                    event.id(), event.adminName());
-        } catch (Exception exception) {
-            log.error(LogMarker.ERROR.getMarker(), "service=UserService | DELETION ERROR | userId={} | adminName={} | causer={}",
-                    event.id(), event.adminName(), exception.getMessage());
-        }
+        userCacheService.evictUserCaches(
+                event.id(),
+                event.uuid(),
+                event.email(),
+                event.phoneNumber()
+        );
+
+        log.info(LogMarker.AUDIT.getMarker(), "service=UserService | action=deleteUser | deletedUserId={} | performedBy={}",
+                event.id(), event.adminName());
     }
 
     @Transactional(readOnly = true)
@@ -150,6 +209,19 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Page<User> searchUserByFilter(UserSearchDto userSearchDto, Pageable pageable) {
+        return searchUserByFilter(userSearchDto, pageable, false);
+    }
+
+    /**
+     * Поиск пользователей по фильтрам
+     *
+     * @param rankBySimilarity сортировать по схожести с фильтрами (pg_trgm) вместо сортировки из pageable
+     */
+    @Transactional(readOnly = true)
+    public Page<User> searchUserByFilter(UserSearchDto userSearchDto, Pageable pageable, boolean rankBySimilarity) {
+        if (rankBySimilarity) {
+            return userRepository.searchUserRankedBySimilarity(userSearchDto, pageable);
+        }
         return userRepository.searchUser(userSearchDto, pageable);
     }
 }
@@ -0,0 +1,151 @@
+package com.shop.userservice.benchmark;
+
+import com.shop.userservice.benchmark.BenchmarkResults.Result;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Сравнивает прогон JMH с базовой линией и пишет Markdown отчет в {@code benchmarks/reports}:
+ * <pre>
+ * java -cp ... com.shop.userservice.benchmark.BaselineComparison &lt;baseline&gt; [candidate] [--threshold=5]
+ * </pre>
+ * baseline и candidate - префикс коммита, {@code latest} или путь к JSON, candidate по умолчанию {@code latest}.
+ * <p>
+ * Изменение значимо, только если доверительные интервалы JMH (99.9%) двух прогонов не пересекаются, - иначе
+ * разница в пределах шума, какой бы большой она ни была в процентах. Регрессия - значимое ухудшение больше
+ * порога (по умолчанию 5%). Если регрессии есть, процесс завершается с кодом 1, чтобы сравнение можно было
+ * вставить в скрипт перед push.
+ */
+public final class BaselineComparison {
+    static final double DEFAULT_THRESHOLD_PERCENT = 5;
+
+    private BaselineComparison() {
+    }
+
+    enum Verdict {
+        REGRESSION, IMPROVEMENT, WITHIN_THRESHOLD, NOISE, NO_CONFIDENCE, ADDED, REMOVED
+    }
+
+    /**
+     * @param changePercent изменение score в процентах, со знаком "плюс - хуже"
+     */
+    record Row(String key, Result baseline, Result candidate, double changePercent, Verdict verdict) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        double threshold = DEFAULT_THRESHOLD_PERCENT;
+        List<String> refs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+            } else {
+                refs.add(arg);
+            }
+        }
+        if (refs.isEmpty() || refs.size() > 2) {
+            System.err.println("Usage: BaselineComparison <baseline> [candidate] [--threshold=percent]");
+            System.exit(2);
+        }
+
+        Path baselineFile = BenchmarkResults.resolve(refs.get(0));
+        Path candidateFile = BenchmarkResults.resolve(refs.size() == 2 ? refs.get(1) : "latest");
+        List<Row> rows = compare(BenchmarkResults.load(baselineFile), BenchmarkResults.load(candidateFile), threshold);
+        String report = report(name(baselineFile), name(candidateFile), threshold, rows);
+
+        Path reportFile = BenchmarkResults.resultsDir().resolveSibling("reports")
+                .resolve(name(baselineFile) + "..." + name(candidateFile) + ".md");
+        Files.createDirectories(reportFile.getParent());
+        Files.writeString(reportFile, report, StandardCharsets.UTF_8);
+
+        System.out.println(report);
+        System.out.println("Report saved to " + reportFile.toAbsolutePath());
+        if (rows.stream().anyMatch(row -> row.verdict() == Verdict.REGRESSION)) {
+            System.exit(1);
+        }
+    }
+
+    static List<Row> compare(Map<String, Result> baseline, Map<String, Result> candidate, double thresholdPercent) {
+        List<Row> rows = new ArrayList<>();
+        for (String key : union(baseline, candidate)) {
+            Result before = baseline.get(key);
+            Result after = candidate.get(key);
+            if (before == null) {
+                rows.add(new Row(key, null, after, Double.NaN, Verdict.ADDED));
+            } else if (after == null) {
+                rows.add(new Row(key, before, null, Double.NaN, Verdict.REMOVED));
+            } else {
+                double change = (after.score() - before.score()) / before.score() * 100;
+                double worse = before.higherIsBetter() ? -change : change;
+                rows.add(new Row(key, before, after, worse, verdict(before, after, worse, thresholdPercent)));
+            }
+        }
+        return rows;
+    }
+
+    private static Verdict verdict(Result before, Result after, double worsePercent, double thresholdPercent) {
+        if (!before.hasConfidence() || !after.hasConfidence()) {
+            return Verdict.NO_CONFIDENCE;
+        }
+        boolean overlap = before.low() <= after.high() && after.low() <= before.high();
+        if (overlap) {
+            return Verdict.NOISE;
+        }
+        if (Math.abs(worsePercent) <= thresholdPercent) {
+            return Verdict.WITHIN_THRESHOLD;
+        }
+        return worsePercent > 0 ? Verdict.REGRESSION : Verdict.IMPROVEMENT;
+    }
+
+    static String report(String baselineName, String candidateName, double thresholdPercent, List<Row> rows) {
+        StringBuilder report = new StringBuilder()
+                .append("# JMH: ").append(baselineName).append(" -> ").append(candidateName).append("\n\n")
+                .append(String.format(Locale.ROOT, "Regression threshold: %.1f%%, significance: non-overlapping 99.9%% confidence intervals%n%n", thresholdPercent));
+
+        for (Verdict verdict : Verdict.values()) {
+            long count = rows.stream().filter(row -> row.verdict() == verdict).count();
+            if (count > 0) {
+                report.append("- ").append(verdict).append(": ").append(count).append('\n');
+            }
+        }
+
+        report.append("\n| Benchmark | Baseline | Candidate | Change (+ worse) | Verdict |\n")
+                .append("|---|---|---|---|---|\n");
+        rows.stream()
+                .sorted((left, right) -> Integer.compare(left.verdict().ordinal(), right.verdict().ordinal()))
+                .forEach(row -> report.append("| ").append(row.key())
+                        .append(" | ").append(format(row.baseline()))
+                        .append(" | ").append(format(row.candidate()))
+                        .append(" | ").append(Double.isNaN(row.changePercent()) ? "" : String.format(Locale.ROOT, "%+.1f%%", row.changePercent()))
+                        .append(" | ").append(row.verdict() == Verdict.REGRESSION ? "**REGRESSION**" : row.verdict())
+                        .append(" |\n"));
+        return report.toString();
+    }
+
+    private static String format(Result result) {
+        if (result == null) {
+            return "-";
+        }
+        return Double.isNaN(result.error())
+                ? String.format(Locale.ROOT, "%.3f %s", result.score(), result.unit())
+                : String.format(Locale.ROOT, "%.3f ± %.3f %s", result.score(), result.error(), result.unit());
+    }
+
+    private static String name(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+
+    private static TreeSet<String> union(Map<String, Result> baseline, Map<String, Result> candidate) {
+        TreeSet<String> keys = new TreeSet<>(baseline.keySet());
+        keys.addAll(candidate.keySet());
+        return keys;
+    }
+}
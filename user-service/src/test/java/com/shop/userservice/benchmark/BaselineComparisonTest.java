@@ -0,0 +1,109 @@
+package com.shop.userservice.benchmark;
+
+import com.shop.userservice.benchmark.BaselineComparison.Row;
+import com.shop.userservice.benchmark.BaselineComparison.Verdict;
+import com.shop.userservice.benchmark.BenchmarkResults.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BaselineComparisonTest {
+
+    @Test
+    void compareWhenIntervalsDoNotOverlapAndChangeAboveThresholdThenRegression() {
+        List<Row> rows = BaselineComparison.compare(
+                results(avgt("decode", 10.0, 9.8, 10.2)),
+                results(avgt("decode", 12.0, 11.8, 12.2)), 5);
+
+        assertEquals(Verdict.REGRESSION, rows.get(0).verdict());
+        assertEquals(20.0, rows.get(0).changePercent(), 1e-9);
+    }
+
+    @Test
+    void compareWhenIntervalsOverlapThenNoiseEvenForLargeChange() {
+        List<Row> rows = BaselineComparison.compare(
+                results(avgt("decode", 10.0, 5.0, 15.0)),
+                results(avgt("decode", 12.0, 7.0, 17.0)), 5);
+
+        assertEquals(Verdict.NOISE, rows.get(0).verdict());
+    }
+
+    @Test
+    void compareWhenThroughputGrowsThenImprovement() {
+        List<Row> rows = BaselineComparison.compare(
+                results(new Result("log [thrpt]", "thrpt", 100, 1, 99, 101, "ops/ms")),
+                results(new Result("log [thrpt]", "thrpt", 150, 1, 149, 151, "ops/ms")), 5);
+
+        assertEquals(Verdict.IMPROVEMENT, rows.get(0).verdict());
+        assertEquals(-50.0, rows.get(0).changePercent(), 1e-9);
+    }
+
+    @Test
+    void compareWhenSignificantChangeBelowThresholdThenWithinThreshold() {
+        List<Row> rows = BaselineComparison.compare(
+                results(avgt("decode", 10.0, 9.99, 10.01)),
+                results(avgt("decode", 10.2, 10.19, 10.21)), 5);
+
+        assertEquals(Verdict.WITHIN_THRESHOLD, rows.get(0).verdict());
+    }
+
+    @Test
+    void compareWhenBenchmarkOnlyInOneRunThenAddedOrRemoved() {
+        List<Row> rows = BaselineComparison.compare(
+                results(avgt("old", 1, 0.9, 1.1)),
+                results(avgt("new", 1, 0.9, 1.1)), 5);
+
+        assertEquals(Verdict.ADDED, rows.get(0).verdict());
+        assertEquals(Verdict.REMOVED, rows.get(1).verdict());
+    }
+
+    @Test
+    void loadWhenJmhJsonHasParamsAndNanConfidenceThenKeyIncludesParamsAndNoConfidence(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("abc1234-1700000000.json");
+        Files.writeString(file, """
+                [{"benchmark": "com.shop.userservice.benchmark.LoggingThroughputBenchmark.log", "mode": "avgt",
+                  "params": {"appender": "async"},
+                  "primaryMetric": {"score": 1.5, "scoreError": "NaN", "scoreConfidence": ["NaN", "NaN"], "scoreUnit": "us/op"}}]
+                """);
+
+        Map<String, Result> results = BenchmarkResults.load(file);
+        Result result = results.values().iterator().next();
+
+        assertEquals("com.shop.userservice.benchmark.LoggingThroughputBenchmark.log [avgt] {appender=async}", result.key());
+        assertEquals(1.5, result.score());
+        assertEquals(Verdict.NO_CONFIDENCE, BaselineComparison.compare(results, results, 5).get(0).verdict());
+    }
+
+    @Test
+    void reportWhenRegressionThenHighlightedFirst() {
+        List<Row> rows = BaselineComparison.compare(
+                results(avgt("a", 10.0, 9.9, 10.1), avgt("b", 10.0, 9.8, 10.2)),
+                results(avgt("a", 10.0, 9.9, 10.1), avgt("b", 13.0, 12.8, 13.2)), 5);
+
+        String report = BaselineComparison.report("base", "head", 5, rows);
+
+        assertTrue(report.contains("- REGRESSION: 1"), report);
+        assertTrue(report.indexOf("**REGRESSION**") < report.indexOf("NOISE |"), report);
+        assertTrue(report.contains("+30.0%"), report);
+    }
+
+    private static Result avgt(String name, double score, double low, double high) {
+        return new Result(name + " [avgt]", "avgt", score, (high - low) / 2, low, high, "us/op");
+    }
+
+    private static Map<String, Result> results(Result... results) {
+        Map<String, Result> map = new LinkedHashMap<>();
+        for (Result result : results) {
+            map.put(result.key(), result);
+        }
+        return map;
+    }
+}
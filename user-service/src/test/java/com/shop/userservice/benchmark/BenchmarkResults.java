@@ -0,0 +1,165 @@
+package com.shop.userservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище результатов JMH: один JSON ({@code -rf json}) на коммит в {@link #resultsDir()}, по умолчанию
+ * {@code benchmarks/results} модуля (в .gitignore - цифры зависят от машины, сравнивать имеет смысл только
+ * прогоны на одном и том же железе). Каталог переопределяется {@code -Dbenchmark.results.dir}.
+ */
+public final class BenchmarkResults {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private BenchmarkResults() {
+    }
+
+    /**
+     * Одна строка результата JMH.
+     *
+     * @param key benchmark, режим и параметры - по нему сопоставляются прогоны
+     * @param low нижняя граница доверительного интервала JMH (99.9%), NaN если итераций было мало
+     * @param high верхняя граница
+     */
+    public record Result(String key, String mode, double score, double error, double low, double high, String unit) {
+
+        public boolean hasConfidence() {
+            return !Double.isNaN(low) && !Double.isNaN(high);
+        }
+
+        /**
+         * В режиме thrpt больше - лучше, в avgt/sample/ss - наоборот
+         */
+        public boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    public static Path resultsDir() {
+        return Path.of(System.getProperty("benchmark.results.dir", "benchmarks/results"));
+    }
+
+    public static Map<String, Result> load(Path file) {
+        try {
+            JsonNode root = OBJECT_MAPPER.readTree(file.toFile());
+            Map<String, Result> results = new LinkedHashMap<>();
+            for (JsonNode node : root) {
+                Result result = parse(node);
+                results.put(result.key(), result);
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read JMH results " + file, e);
+        }
+    }
+
+    static Result parse(JsonNode node) {
+        String benchmark = node.path("benchmark").asText();
+        String mode = node.path("mode").asText();
+        Map<String, String> params = new TreeMap<>();
+        node.path("params").properties().forEach(param -> params.put(param.getKey(), param.getValue().asText()));
+        String key = benchmark + " [" + mode + "]" + (params.isEmpty() ? "" : " " + params);
+
+        JsonNode metric = node.path("primaryMetric");
+        JsonNode confidence = metric.path("scoreConfidence");
+        return new Result(key, mode,
+                number(metric.path("score")),
+                number(metric.path("scoreError")),
+                number(confidence.path(0)),
+                number(confidence.path(1)),
+                metric.path("scoreUnit").asText());
+    }
+
+    /**
+     * JMH пишет "NaN" строкой, когда интервал посчитать не из чего
+     */
+    private static double number(JsonNode node) {
+        return node.isNumber() ? node.asDouble() : Double.NaN;
+    }
+
+    /**
+     * Файл прогона по ссылке: путь к файлу, {@code latest} (последний сохраненный) или префикс коммита.
+     * Для коммита с несколькими прогонами берется последний.
+     */
+    public static Path resolve(String ref) {
+        Path path = Path.of(ref);
+        if (Files.isRegularFile(path)) {
+            return path;
+        }
+        List<Path> runs = runs().stream()
+                .filter(run -> "latest".equals(ref) || run.getFileName().toString().startsWith(ref))
+                .toList();
+        if (runs.isEmpty()) {
+            throw new IllegalArgumentException("No JMH results for '" + ref + "' in " + resultsDir().toAbsolutePath());
+        }
+        return runs.get(runs.size() - 1);
+    }
+
+    /**
+     * Сохраненные прогоны от старых к новым
+     */
+    public static List<Path> runs() {
+        if (!Files.isDirectory(resultsDir())) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(resultsDir())) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(BenchmarkResults::runEpoch))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Имя файла для нового прогона: {@code <short sha>[-dirty]-<epoch seconds>.json}. Без git - {@code local-...}
+     */
+    public static Path newResultFile() {
+        String commit = git("rev-parse", "--short", "HEAD");
+        if (commit.isEmpty()) {
+            commit = "local";
+        } else if (!git("status", "--porcelain", "--untracked-files=no").isEmpty()) {
+            commit += "-dirty";
+        }
+        return resultsDir().resolve(commit + "-" + System.currentTimeMillis() / 1000 + ".json");
+    }
+
+    private static String git(String... args) {
+        List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0 ? output : "";
+        } catch (IOException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    /**
+     * Время прогона из имени файла, у положенных руками файлов без суффикса - 0
+     */
+    private static long runEpoch(Path file) {
+        String name = file.getFileName().toString();
+        String epoch = name.substring(name.lastIndexOf('-') + 1, name.length() - ".json".length());
+        return epoch.chars().allMatch(Character::isDigit) && !epoch.isEmpty() ? Long.parseLong(epoch) : 0;
+    }
+}
@@ -0,0 +1,47 @@
+package com.shop.userservice.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Прогоняет бенчмарки модуля и сохраняет JSON результат в {@link BenchmarkResults#resultsDir()} под текущим
+ * коммитом, затем сравнить с базовой линией можно {@link BaselineComparison}. Запуск из каталога модуля:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.shop.userservice.benchmark.BenchmarkRunner [regexp...]
+ * </pre>
+ * ({@code cp.txt} - {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}). Без аргументов запускаются
+ * все бенчмарки пакета, аргументы - регулярные выражения JMH include, например {@code JwtAuthentication}.
+ * Параметры прогонов (итерации, форки) берутся из аннотаций бенчмарков, чтобы результаты разных коммитов
+ * были сравнимы.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Path resultFile = BenchmarkResults.newResultFile();
+        Files.createDirectories(resultFile.getParent());
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.toString());
+        if (args.length == 0) {
+            options.include(BenchmarkRunner.class.getPackageName() + "\\..*Benchmark");
+        }
+        for (String include : args) {
+            options.include(include);
+        }
+        new Runner(options.build()).run();
+
+        System.out.println("JMH results saved to " + resultFile.toAbsolutePath());
+    }
+}
@@ -0,0 +1,137 @@
+package com.shop.userservice.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.shop.userservice.logging.BoundedAsyncAppender;
+import com.shop.userservice.logging.SamplingTurboFilter;
+import com.shop.userservice.util.LogMarker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность "запроса", который пишет логи как вызов Keycloak: два APP_CALL и AUDIT.
+ * Сравнивается логирование выключено, синхронный файловый appender, {@link BoundedAsyncAppender}
+ * и он же с {@link SamplingTurboFilter} на APP_CALL. Несколько потоков - чтобы была видна конкуренция за файл.
+ * <p>
+ * Запуск: {@code mvn test-compile}, затем {@link #main(String[])} с test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoggingThroughputBenchmark {
+    private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss} %-5level | %logger{36} | ip=%X{ip} | %msg%n";
+
+    @Param({"OFF", "SYNC", "ASYNC", "ASYNC_SAMPLED"})
+    public String mode;
+
+    private LoggerContext context;
+    private Logger logger;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("logging-benchmark-");
+        context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        logger = context.getLogger(LoggingThroughputBenchmark.class);
+
+        if ("OFF".equals(mode)) {
+            logger.setLevel(Level.OFF);
+            return;
+        }
+        logger.setLevel(Level.INFO);
+
+        Appender<ILoggingEvent> appender = fileAppender();
+        if (!"SYNC".equals(mode)) {
+            BoundedAsyncAppender async = new BoundedAsyncAppender();
+            async.setContext(context);
+            async.setName("ASYNC_FILE");
+            async.setQueueSize(8192);
+            async.setCriticalReserve(1024);
+            async.addAppender(appender);
+            async.start();
+            appender = async;
+        }
+        if ("ASYNC_SAMPLED".equals(mode)) {
+            SamplingTurboFilter sampling = new SamplingTurboFilter();
+            sampling.setContext(context);
+            sampling.setMarker(LogMarker.APP_CALL.name());
+            sampling.setRatePerSecond(200);
+            sampling.start();
+            context.addTurboFilter(sampling);
+        }
+        logger.addAppender(appender);
+    }
+
+    private Appender<ILoggingEvent> fileAppender() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setName("FILE");
+        appender.setFile(directory.resolve("benchmark.log").toString());
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.stop();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void request(Blackhole blackhole) {
+        String userUUID = UUID.randomUUID().toString();
+        logger.info(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action=getUser | userUUID={}", userUUID);
+        blackhole.consume(userUUID.hashCode());
+        logger.info(LogMarker.APP_CALL.getMarker(), "service=Keycloak | action=getUser | userUUID={} | status={}", userUUID, 200);
+        logger.info(LogMarker.AUDIT.getMarker(), "service=User | action=read | userUUID={}", userUUID);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoggingThroughputBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
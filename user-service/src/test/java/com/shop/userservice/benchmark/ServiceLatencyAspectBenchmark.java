@@ -0,0 +1,85 @@
+package com.shop.userservice.benchmark;
+
+import com.shop.userservice.observability.ServiceLatencyAspect;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накладные расходы {@link ServiceLatencyAspect} на вызов: прямой вызов, CGLIB прокси без советов
+ * (так вызываются бины с @Transactional и т.п.) и прокси с аспектом и Prometheus реестром. Цель - меньше 1 мкс.
+ * <p>
+ * Запуск: {@code mvn test-compile}, затем {@link #main(String[])} с test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceLatencyAspectBenchmark {
+    private SampleService direct;
+    private SampleService plainProxy;
+    private SampleService timedProxy;
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        direct = new SampleService();
+
+        ProxyFactory proxyFactory = new ProxyFactory(new SampleService());
+        proxyFactory.setProxyTargetClass(true);
+        plainProxy = (SampleService) proxyFactory.getProxy();
+
+        AspectJProxyFactory aspectFactory = new AspectJProxyFactory(new SampleService());
+        aspectFactory.setProxyTargetClass(true);
+        aspectFactory.addAspect(new ServiceLatencyAspect(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), Duration.ofMillis(500)));
+        timedProxy = aspectFactory.getProxy();
+    }
+
+    @Benchmark
+    public long direct() {
+        return direct.next(counter++);
+    }
+
+    @Benchmark
+    public long plainProxy() {
+        return plainProxy.next(counter++);
+    }
+
+    @Benchmark
+    public long timedProxy() {
+        return timedProxy.next(counter++);
+    }
+
+    @Service
+    public static class SampleService {
+        public long next(long value) {
+            return value * 31 + 7;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ServiceLatencyAspectBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,342 @@
+package com.shop.userservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.exception.UserNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.function.Executable;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TwoLevelCacheTest {
+    @Mock
+    private RedisCache remote;
+
+    @Mock
+    private NearCacheInvalidationPublisher invalidationPublisher;
+
+    @Mock
+    private DistributedLoadLock loadLock;
+
+    @Mock
+    private RedisBatchOperations batchOperations;
+
+    @Mock
+    private CacheTagIndex tagIndex;
+
+    private final GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(remote.getName()).thenReturn("users:byUUID");
+        when(remote.getCacheConfiguration()).thenReturn(RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer)));
+
+        meterRegistry = new SimpleMeterRegistry();
+        CacheLoadSettings loadSettings = new CacheLoadSettings(
+                new NegativeCachePolicy(UserNotFoundException.class, UserNotFoundException::new),
+                Duration.ofSeconds(30), null, Runnable::run,
+                value -> value instanceof User user ? user.toBuilder().build() : value);
+
+        cache = new TwoLevelCache(remote, Caffeine.newBuilder().maximumSize(10).build(),
+                invalidationPublisher, loadLock, loadSettings, batchOperations,
+                tagIndex, meterRegistry);
+    }
+
+    @Test
+    void getWhenValueInRedisThenSecondReadServedFromLocal() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(new SimpleValueWrapper("user"));
+
+        assertEquals("user", cache.get(uuid).get());
+        assertEquals("user", cache.get(uuid).get());
+
+        verify(remote, times(1)).get(uuid);
+        assertEquals(1.0, meterRegistry.get("cache_requests").tags("level", "l1", "result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache_requests").tags("level", "l2", "result", "hit").counter().count());
+    }
+
+    @Test
+    void getWhenValueMissingInBothLevelsThenReturnNull() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(null);
+
+        assertNull(cache.get(uuid));
+        assertEquals(1.0, meterRegistry.get("cache_requests").tags("level", "l2", "result", "miss").counter().count());
+    }
+
+    @Test
+    void evictThenRemoveLocalEntryAndPublishInvalidation() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(new SimpleValueWrapper("user"));
+        cache.get(uuid);
+
+        cache.evict(uuid);
+        cache.get(uuid);
+
+        verify(remote).evict(uuid);
+        verify(invalidationPublisher).publishEvict("users:byUUID::" + uuid);
+        verify(remote, times(2)).get(uuid);
+    }
+
+    @Test
+    void evictIfPresentThenReportWhetherEitherLevelHeldKey() {
+        UUID local = UUID.randomUUID();
+        UUID remoteOnly = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        cache.put(local, "user");
+        byte[] remoteOnlyKey = cache.redisKey(remoteOnly).getBytes();
+        when(batchOperations.delete(any())).thenAnswer(invocation ->
+                Arrays.equals(invocation.<List<byte[]>>getArgument(0).get(0), remoteOnlyKey) ? 1L : 0L);
+
+        assertTrue(cache.evictIfPresent(local));
+        assertTrue(cache.evictIfPresent(remoteOnly));
+        assertFalse(cache.evictIfPresent(missing));
+        verify(invalidationPublisher).publishEvict(cache.redisKey(missing));
+    }
+
+    @Test
+    void getWhenCallerMutatesReturnedValueThenLocalEntryUnchanged() {
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, User.builder().publicId(uuid).firstName("Ivan").build());
+
+        User first = (User) cache.get(uuid).get();
+        first.setFirstName("Changed");
+        User second = (User) cache.get(uuid).get();
+
+        assertNotSame(first, second);
+        assertEquals("Ivan", second.getFirstName());
+    }
+
+    @Test
+    void getWhenLocalHitOnImmutableValueThenReturnStoredInstance() {
+        UUID uuid = UUID.randomUUID();
+        List<String> value = List.of("Ivan");
+        cache.put(uuid, value);
+
+        assertSame(value, cache.get(uuid).get());
+        verify(remote, never()).get(uuid);
+    }
+
+    @Test
+    void getWhenEvictedWhileReadingRedisThenStaleValueNotKeptInLocal() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid))
+                .thenAnswer(invocation -> {
+                    cache.evict(uuid);
+                    return new SimpleValueWrapper("stale");
+                })
+                .thenReturn(new SimpleValueWrapper("fresh"));
+
+        assertEquals("stale", cache.get(uuid).get());
+        assertEquals("fresh", cache.get(uuid).get());
+        assertEquals("fresh", cache.get(uuid).get());
+
+        verify(remote, times(2)).get(uuid);
+    }
+
+    @Test
+    void invalidateLocalThenNextReadGoesToRedis() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(new SimpleValueWrapper("user"));
+        cache.get(uuid);
+
+        cache.invalidateLocal(cache.redisKey(uuid));
+        cache.get(uuid);
+
+        verify(remote, times(2)).get(uuid);
+        verify(remote, never()).evict(any());
+    }
+
+    @Test
+    void getWithLoaderWhenConcurrentMissesThenLoadOnce() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(null);
+        when(loadLock.tryLock(cache.redisKey(uuid))).thenReturn("token");
+
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get(uuid, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "user";
+            })));
+            loading.await(5, TimeUnit.SECONDS);
+
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.get(uuid, () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("user", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        verify(remote).put(uuid, "user");
+        verify(loadLock).unlock(cache.redisKey(uuid), "token");
+    }
+
+    @Test
+    void getWithLoaderWhenUserNotFoundThenCacheNegativeEntryAndRethrow() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(null);
+        when(loadLock.tryLock(cache.redisKey(uuid))).thenReturn("token");
+
+        AtomicInteger loads = new AtomicInteger();
+        Executable lookup = () -> cache.get(uuid, () -> {
+            loads.incrementAndGet();
+            throw new UserNotFoundException("User by uuid: %s not found".formatted(uuid));
+        });
+
+        Cache.ValueRetrievalException first = assertThrows(Cache.ValueRetrievalException.class, lookup);
+        Cache.ValueRetrievalException second = assertThrows(Cache.ValueRetrievalException.class, lookup);
+
+        assertEquals(1, loads.get());
+        assertInstanceOf(UserNotFoundException.class, second.getCause());
+        assertEquals(first.getCause().getMessage(), second.getCause().getMessage());
+        verify(remote).put(uuid, new NegativeCacheEntry("User by uuid: %s not found".formatted(uuid)));
+        assertNull(cache.get(uuid));
+    }
+
+    @Test
+    void getWithLoaderWhenLockHeldByOtherInstanceThenWaitForItsValue() {
+        UUID uuid = UUID.randomUUID();
+        when(remote.get(uuid)).thenReturn(null);
+        when(loadLock.tryLock(cache.redisKey(uuid))).thenReturn(null);
+        when(loadLock.awaitValue(any())).thenReturn(new SimpleValueWrapper("user"));
+
+        String result = cache.get(uuid, () -> {
+            throw new IllegalStateException("must not be called");
+        });
+
+        assertEquals("user", result);
+        verify(remote, never()).put(any(), any());
+    }
+
+    @Test
+    void getWithLoaderWhenRedisEntryFarFromExpiryThenNoRefreshSubmitted() {
+        List<Runnable> submitted = new ArrayList<>();
+        TwoLevelCache refreshing = refreshAheadCache(submitted::add);
+        UUID uuid = UUID.randomUUID();
+        when(batchOperations.getWithTtl(any()))
+                .thenReturn(new RedisBatchOperations.ExpiringValue(serializer.serialize("user"), Duration.ofMinutes(10).toMillis()));
+
+        String result = refreshing.get(uuid, () -> {
+            throw new IllegalStateException("must not be called");
+        });
+
+        assertEquals("user", result);
+        assertTrue(submitted.isEmpty());
+        verify(remote, never()).get(uuid);
+        verifyNoInteractions(loadLock);
+    }
+
+    @Test
+    void getWithLoaderWhenRedisEntryNearExpiryThenRefreshInBackground() {
+        TwoLevelCache refreshing = refreshAheadCache(Runnable::run);
+        UUID uuid = UUID.randomUUID();
+        when(batchOperations.getWithTtl(any()))
+                .thenReturn(new RedisBatchOperations.ExpiringValue(serializer.serialize("user"), Duration.ofSeconds(30).toMillis()));
+        when(loadLock.tryLock(refreshing.redisKey(uuid))).thenReturn("token");
+
+        String result = refreshing.get(uuid, () -> "fresh-user");
+
+        assertEquals("user", result);
+        verify(remote).put(uuid, "fresh-user");
+        verify(loadLock).unlock(refreshing.redisKey(uuid), "token");
+        assertEquals(1.0, meterRegistry.get("cache_loads").tag("type", "refresh_ahead").counter().count());
+    }
+
+    private TwoLevelCache refreshAheadCache(Executor refreshExecutor) {
+        CacheLoadSettings loadSettings = new CacheLoadSettings(null, Duration.ofSeconds(30), Duration.ofMinutes(2),
+                refreshExecutor, null);
+        return new TwoLevelCache(remote, Caffeine.newBuilder().maximumSize(10).build(),
+                invalidationPublisher, loadLock, loadSettings, batchOperations, tagIndex, meterRegistry);
+    }
+
+    @Test
+    void getAllWhenPartiallyCachedThenSingleMgetForLocalMisses() {
+        UUID local = UUID.randomUUID();
+        UUID remoteHit = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        cache.put(local, "local-user");
+
+        when(batchOperations.mget(argThat(keys -> keys.size() == 2)))
+                .thenReturn(Arrays.asList(serializer.serialize("remote-user"), null));
+
+        Map<Object, Object> result = cache.getAll(List.of(local, remoteHit, missing));
+
+        assertEquals(Map.of(local, "local-user", remoteHit, "remote-user"), result);
+        verify(batchOperations, times(1)).mget(any());
+        assertEquals("remote-user", cache.get(remoteHit).get());
+        verify(remote, never()).get(remoteHit);
+    }
+
+    @Test
+    void putAllThenWriteBothLevelsWithSinglePipeline() {
+        UUID uuid = UUID.randomUUID();
+        NegativeCacheEntry negative = new NegativeCacheEntry("not found");
+        UUID missing = UUID.randomUUID();
+
+        cache.putAll(Map.of(uuid, "user", missing, negative));
+
+        verify(batchOperations).setAllIfAbsent(argThat(entries -> entries.size() == 2 && entries.stream()
+                .anyMatch(entry -> Arrays.equals(entry.key(), cache.redisKey(uuid).getBytes()))));
+        assertEquals("user", cache.get(uuid).get());
+        assertNull(cache.get(missing));
+        assertArrayEquals(new Object[]{negative}, cache.getAll(List.of(missing)).values().toArray());
+        verify(tagIndex).tag(Map.of(cache.redisKey(uuid), "user", cache.redisKey(missing), negative));
+    }
+}
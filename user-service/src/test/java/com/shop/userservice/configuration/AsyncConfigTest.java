@@ -0,0 +1,85 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.observability.RequestTimings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncConfigTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void executorMetricsWhenSpringInitializesBeanThenBoundToPoolRunningTasks() throws Exception {
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) new AsyncConfig(meterRegistry).keycloakDeletionExecutor(2);
+        // Как Spring: BeanNameAware, затем InitializingBean
+        executor.setBeanName("keycloakDeletionExecutor");
+        executor.afterPropertiesSet();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertEquals(1, meterRegistry.get("executor.active").tag("name", "keycloakDeletionExecutor").gauge().value());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(1, meterRegistry.get("executor.completed").tag("name", "keycloakDeletionExecutor").functionCounter().count());
+    }
+
+    @Test
+    void mdcTaskDecoratorWhenTaskSubmittedFromRequestThenRequestTimingsNotPropagated() throws Exception {
+        AtomicReference<RequestTimings> inTask = new AtomicReference<>(RequestTimings.start());
+        Thread worker;
+        try {
+            worker = new Thread(new AsyncConfig.MdcTaskDecorator().decorate(() -> inTask.set(RequestTimings.current())));
+        } finally {
+            RequestTimings.bind(null);
+        }
+
+        worker.start();
+        worker.join();
+
+        assertNull(inTask.get());
+    }
+
+    @Test
+    void mdcTaskDecoratorWhenTaskRunsOnCallerThreadThenCallerMdcRestored() {
+        MDC.put("ip", "10.0.0.1");
+        try {
+            Runnable task = new AsyncConfig.MdcTaskDecorator().decorate(() -> MDC.put("ip", "changed"));
+            MDC.put("traceId", "abc");
+
+            task.run();
+
+            assertEquals("10.0.0.1", MDC.get("ip"));
+            assertEquals("abc", MDC.get("traceId"));
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.shop.userservice.configuration;
+
+import com.shop.userservice.configuration.AsyncExecutorProperties.OverloadPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncExecutorTunerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private OverloadRejectionHandler overloadHandler;
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        overloadHandler = new OverloadRejectionHandler("taskExecutor", OverloadPolicy.SHED, Duration.ofMillis(50), meterRegistry);
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectedExecutionHandler(overloadHandler);
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private void saturate() {
+        executor.execute(this::block);
+        executor.execute(this::block);
+    }
+
+    private void block() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private double overload(String action) {
+        return meterRegistry.get("executor_overload").tag("action", action).counter().count();
+    }
+
+    @Test
+    void rejectedExecutionFollowsCurrentPolicy() {
+        saturate();
+
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> {}));
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> {}));
+
+        overloadHandler.update(OverloadPolicy.CALLER_RUNS, Duration.ZERO);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        assertEquals(Thread.currentThread(), ranOn.get());
+        assertEquals(2.0, overload("shed"));
+        assertEquals(1.0, overload("caller_runs"));
+    }
+
+    @Test
+    void onEnvironmentChangeThenResizePoolAndSwitchPolicy() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("async.executor.core-pool-size", "4")
+                .withProperty("async.executor.max-pool-size", "8")
+                .withProperty("async.executor.overload-policy", "BOUNDED_WAIT");
+        AsyncExecutorTuner tuner = new AsyncExecutorTuner(environment, executor, overloadHandler);
+
+        tuner.onEnvironmentChange(new EnvironmentChangeEvent(Set.of("async.executor.core-pool-size")));
+
+        assertEquals(4, executor.getCorePoolSize());
+        assertEquals(8, executor.getMaxPoolSize());
+
+        saturate();
+        executor.execute(() -> {});
+        assertEquals(0.0, overload("shed"));
+    }
+
+    @Test
+    void applyWhenMaxBelowCoreThenKeepCurrentSizes() {
+        AsyncExecutorTuner tuner = new AsyncExecutorTuner(new MockEnvironment(), executor, overloadHandler);
+
+        tuner.apply(new AsyncExecutorProperties(10, 5, 100, OverloadPolicy.SHED, Duration.ZERO));
+
+        assertEquals(1, executor.getCorePoolSize());
+        assertEquals(1, executor.getMaxPoolSize());
+    }
+}
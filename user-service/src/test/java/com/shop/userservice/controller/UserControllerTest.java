@@ -7,6 +7,8 @@ import com.shop.userservice.entity.User;
 import com.shop.userservice.exception.UserDuplicateException;
 import com.shop.userservice.exception.UserNotFoundException;
 import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.service.UserExportService;
+import com.shop.userservice.service.UserImportService;
 import com.shop.userservice.service.UserService;
 import jakarta.ws.rs.core.MediaType;
 import lombok.val;
@@ -44,6 +46,12 @@ class UserControllerTest {
     @MockitoBean
     private KeycloakService keycloakService;
 
+    @MockitoBean
+    private UserExportService userExportService;
+
+    @MockitoBean
+    private UserImportService userImportService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -167,7 +175,7 @@ class UserControllerTest {
 
         when(userService.getUserByUUID(uuid)).thenReturn(User.builder()
                 .id(id)
-                .userUUID(uuid)
+                .publicId(uuid)
                 .build());
 
         mockMvc.perform(get("/api/v1/by-uuid/{uuid}", uuid.toString())
@@ -228,7 +236,7 @@ class UserControllerTest {
         UserSearchDto userSearchDto = new UserSearchDto(null, "test1", null, null,
                 "user1@gmail.com", null, null);
 
-        when(userService.searchUserByFilter(eq(userSearchDto), any(Pageable.class))).thenReturn(page);
+        when(userService.searchUserByFilter(eq(userSearchDto), any(Pageable.class), eq(false))).thenReturn(page);
 
         mockMvc.perform(post("/api/v1/search")
                         .param("page", "0")
@@ -113,7 +113,7 @@ public class UserControllerIntegrationTest extends BasePostgresIntegrationTest {
     void registrationUser_ShouldReturnSuccessResponse_WhenDuplicateUserDoesNotExist() {
         when(keycloakService.createUser(anyString(), anyString(), anyString(), anyString(), anyString()))
                 .thenReturn("11111111-1111-1111-1111-111111111111");
-        doNothing().when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+        doNothing().when(keycloakEmailService).enqueueVerifyEmail(anyString(), anyString(), anyString());
 
 
         String email = "userTest@gmail.com";
@@ -106,7 +106,7 @@ class KeycloakServiceIntegrationTest {
     @Test
     @DisplayName("createUser: возвращает UUID и вызывает отправку письма при валидных данных")
     void createUser_ShouldReturnUserUUID_AndSendVerifyEmail_WhenDataValid() {
-        doNothing().when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+        doNothing().when(keycloakEmailService).enqueueVerifyEmail(anyString(), anyString(), anyString());
 
         String unique = UUID.randomUUID().toString().substring(0, 8);
         String username = "user_" + unique;
@@ -124,7 +124,7 @@ class KeycloakServiceIntegrationTest {
                 .hasSize(36);
 
         verify(keycloakEmailService, times(1))
-                .sendVerifyEmail(eq(userId), eq(username), eq(email));
+                .enqueueVerifyEmail(eq(userId), eq(username), eq(email));
 
         var userRep = keycloakAdmin.realm(REALM).users().get(userId).toRepresentation();
 
@@ -145,7 +145,7 @@ class KeycloakServiceIntegrationTest {
     @Test
     @DisplayName("createUser: выбрасывает UserDuplicateException при конфликте username/email")
     void createUser_ShouldThrowUserDuplicateException_WhenUserAlreadyExists() {
-        doNothing().when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+        doNothing().when(keycloakEmailService).enqueueVerifyEmail(anyString(), anyString(), anyString());
 
         String unique = UUID.randomUUID().toString().substring(0, 8);
         String username = "dup_" + unique;
@@ -0,0 +1,100 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository.KeycloakDeletionTask;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.ProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KeycloakDeletionWorkerTest {
+    @Mock
+    private KeycloakDeletionTaskRepository taskRepository;
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private KeycloakDeletionWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        worker = new KeycloakDeletionWorker(taskRepository, keycloakService, Runnable::run, meterRegistry,
+                2, 10, 5, Duration.ofMinutes(2), Duration.ofSeconds(5), Duration.ofMinutes(30));
+    }
+
+    @Test
+    void processPendingThenCompleteRemovedAndRescheduleFailed() {
+        UUID removed = UUID.randomUUID();
+        UUID absent = UUID.randomUUID();
+        UUID failing = UUID.randomUUID();
+
+        when(taskRepository.claim(2, Duration.ofMinutes(2)))
+                .thenReturn(List.of(new KeycloakDeletionTask(1L, removed, 1), new KeycloakDeletionTask(2L, absent, 1)))
+                .thenReturn(List.of(new KeycloakDeletionTask(3L, failing, 3)));
+        when(keycloakService.removeUserByUUID(removed.toString())).thenReturn(true);
+        when(keycloakService.removeUserByUUID(absent.toString())).thenReturn(false);
+        when(keycloakService.removeUserByUUID(failing.toString())).thenThrow(new ProcessingException("connection refused"));
+
+        worker.processPending();
+
+        verify(taskRepository).complete(List.of(1L, 2L));
+        verify(taskRepository).reschedule(argThat(retries -> retries.size() == 1
+                && retries.iterator().next().id() == 3L
+                && retries.iterator().next().lastError().contains("connection refused")));
+        verify(taskRepository, times(2)).claim(anyInt(), any());
+        assertEquals(1.0, meterRegistry.get("keycloak_deletion_tasks").tag("result", "failed").counter().count());
+    }
+
+    @Test
+    void processBatchWhenAttemptsExhaustedThenFailTaskInsteadOfRescheduling() {
+        UUID failing = UUID.randomUUID();
+        when(keycloakService.removeUserByUUID(failing.toString())).thenThrow(new ProcessingException("connection refused"));
+
+        worker.processBatch(List.of(new KeycloakDeletionTask(7L, failing, 5)));
+
+        verify(taskRepository).fail(argThat(failures -> failures.size() == 1
+                && failures.iterator().next().id() == 7L
+                && failures.iterator().next().lastError().contains("connection refused")));
+        verify(taskRepository).reschedule(List.of());
+        assertEquals(1.0, meterRegistry.get("keycloak_deletion_tasks").tag("result", "exhausted").counter().count());
+        assertEquals(0.0, meterRegistry.get("keycloak_deletion_tasks").tag("result", "failed").counter().count());
+    }
+
+    @Test
+    void processPendingWhenQueueEmptyThenDoNothing() {
+        when(taskRepository.claim(anyInt(), any())).thenReturn(List.of());
+
+        worker.processPending();
+
+        verifyNoInteractions(keycloakService);
+        verify(taskRepository, never()).complete(any());
+    }
+
+    @Test
+    void backoffGrowsExponentiallyUpToMax() {
+        Duration first = worker.backoff(1);
+        Duration third = worker.backoff(3);
+        Duration capped = worker.backoff(40);
+
+        assertTrue(first.toMillis() >= 4_000 && first.toMillis() <= 6_000);
+        assertTrue(third.toMillis() >= 16_000 && third.toMillis() <= 24_000);
+        assertTrue(capped.toMillis() <= Duration.ofMinutes(36).toMillis());
+    }
+}
@@ -0,0 +1,94 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.exception.ExternalServiceUnavailableException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.springboot3.bulkhead.autoconfigure.BulkheadAutoConfiguration;
+import io.github.resilience4j.springboot3.circuitbreaker.autoconfigure.CircuitBreakerAutoConfiguration;
+import io.github.resilience4j.springboot3.retry.autoconfigure.RetryAutoConfiguration;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * Аннотации resilience4j на {@link KeycloakService} работают только через прокси, поэтому проверяются в контексте
+ * с автоконфигурацией resilience4j, а не на голом экземпляре, как в {@link KeycloakServiceTest}
+ */
+class KeycloakServiceResilienceTest {
+    private final Keycloak keycloak = mock(Keycloak.class, RETURNS_DEEP_STUBS);
+    private final KeycloakEmailService keycloakEmailService = mock(KeycloakEmailService.class);
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(AopAutoConfiguration.class, CircuitBreakerAutoConfiguration.class,
+                    BulkheadAutoConfiguration.class, RetryAutoConfiguration.class))
+            .withBean(KeycloakService.class, () -> new KeycloakService(keycloak, "shop", keycloakEmailService))
+            .withPropertyValues(
+                    "resilience4j.bulkhead.instances.keycloakReadUsers.max-concurrent-calls=1",
+                    "resilience4j.bulkhead.instances.keycloakReadUsers.max-wait-duration=0");
+
+    @Test
+    void getShopUsersPageWhenCircuitOpenThenFailFastWithoutCallingKeycloak() {
+        contextRunner.run(context -> {
+            context.getBean(CircuitBreakerRegistry.class).circuitBreaker("keycloakReadUsers").transitionToOpenState();
+
+            assertThrows(CallNotPermittedException.class, () -> context.getBean(KeycloakService.class).getShopUsersPage(0, 10));
+
+            verifyNoInteractions(keycloak);
+        });
+    }
+
+    @Test
+    void createUserWhenCircuitOpenThenFallbackWithoutCallingKeycloak() {
+        contextRunner.run(context -> {
+            context.getBean(CircuitBreakerRegistry.class).circuitBreaker("keycloakCreateUser").transitionToOpenState();
+
+            assertThrows(ExternalServiceUnavailableException.class, () -> context.getBean(KeycloakService.class)
+                    .createUser("user", "Ivan", "Ivanov", "user@mail.com", "password"));
+
+            verifyNoInteractions(keycloak, keycloakEmailService);
+        });
+    }
+
+    @Test
+    void getShopUsersPageWhenBulkheadFullThenRejectCallPastConcurrencyLimit() {
+        CountDownLatch inKeycloak = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(keycloak.realm("shop").roles().get(KeycloakService.USER_ROLE).getUserMembers(anyBoolean(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> {
+                    inKeycloak.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.<UserRepresentation>of();
+                });
+
+        contextRunner.run(context -> {
+            KeycloakService keycloakService = context.getBean(KeycloakService.class);
+            CompletableFuture<List<UserRepresentation>> first = CompletableFuture.supplyAsync(() -> keycloakService.getShopUsersPage(0, 10));
+            try {
+                assertTrue(inKeycloak.await(5, TimeUnit.SECONDS));
+
+                assertThrows(BulkheadFullException.class, () -> keycloakService.getShopUsersPage(10, 10));
+            } finally {
+                release.countDown();
+            }
+
+            assertEquals(List.of(), first.get(5, TimeUnit.SECONDS));
+            verify(keycloak.realm("shop").roles().get(KeycloakService.USER_ROLE), times(1))
+                    .getUserMembers(anyBoolean(), anyInt(), anyInt());
+        });
+    }
+}
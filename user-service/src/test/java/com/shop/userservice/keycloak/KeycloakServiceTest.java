@@ -3,12 +3,15 @@ package com.shop.userservice.keycloak;
 import com.shop.userservice.exception.UserDuplicateException;
 import com.shop.userservice.exception.UserNotFoundException;
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.RolesResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
 import org.keycloak.representations.idm.ErrorRepresentation;
@@ -21,7 +24,9 @@ import java.net.URISyntaxException;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -81,11 +86,30 @@ class KeycloakServiceTest {
                 user.getLastName().equals(lastName) &&
                 user.getEmail().equals(email)));
 
-        verify(keycloakEmailService).sendVerifyEmail("123", username, email);
+        verify(keycloakEmailService).enqueueVerifyEmail("123", username, email);
 
         assertEquals("123", userId);
     }
 
+    @Test
+    void importUserWhenVerifyEmailDisabledThenCreateWithoutEnqueueingEmail() throws URISyntaxException {
+        when(response.getStatus()).thenReturn(201);
+        when(response.getLocation()).thenReturn(new URI("/user/123"));
+        when(usersResource.create(any(UserRepresentation.class))).thenReturn(response);
+        RolesResource roles = mock(RolesResource.class, RETURNS_DEEP_STUBS);
+        when(resource.roles()).thenReturn(roles);
+        when(usersResource.get("123")).thenReturn(userResource);
+        RoleMappingResource roleMapping = mock(RoleMappingResource.class, RETURNS_DEEP_STUBS);
+        when(userResource.roles()).thenReturn(roleMapping);
+
+        String userId = keycloakService.importUser(username, firstName, lastName, email, password, false);
+
+        assertEquals("123", userId);
+        verify(usersResource).create(argThat(user -> user.getRequiredActions().contains("VERIFY_EMAIL")));
+        verifyNoInteractions(keycloakEmailService);
+        verify(roleMapping.realmLevel()).add(any());
+    }
+
     @Test
     void createUserWhenDuplicateUserExistThenThrowUserDuplicateException() {
 
@@ -125,14 +149,32 @@ class KeycloakServiceTest {
         assertEquals("User by uuid: 123 not found", exception.getMessage());
         verify(userResource, never()).remove();
     }
-}
-
-
-
 
+    @Test
+    void removeUserByUUIDWhenUserExistThenSingleDeleteWithoutPreCheck() {
+        when(response.getStatus()).thenReturn(204);
+        when(response.getStatusInfo()).thenReturn(Response.Status.NO_CONTENT);
+        when(usersResource.delete("123")).thenReturn(response);
 
+        assertTrue(keycloakService.removeUserByUUID("123"));
 
+        verify(usersResource, never()).get(anyString());
+    }
 
+    @Test
+    void removeUserByUUIDWhenUserNotFoundThenReturnFalse() {
+        when(response.getStatus()).thenReturn(404);
+        when(usersResource.delete("123")).thenReturn(response);
 
+        assertFalse(keycloakService.removeUserByUUID("123"));
+    }
 
+    @Test
+    void removeUserByUUIDWhenKeycloakFailsThenThrowWebApplicationException() {
+        when(response.getStatus()).thenReturn(503);
+        when(response.getStatusInfo()).thenReturn(Response.Status.SERVICE_UNAVAILABLE);
+        when(usersResource.delete("123")).thenReturn(response);
 
+        assertThrows(WebApplicationException.class, () -> keycloakService.removeUserByUUID("123"));
+    }
+}
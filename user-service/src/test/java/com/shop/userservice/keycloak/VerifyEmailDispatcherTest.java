@@ -0,0 +1,122 @@
+package com.shop.userservice.keycloak;
+
+import com.shop.userservice.repository.VerifyEmailTaskRepository;
+import com.shop.userservice.repository.VerifyEmailTaskRepository.QueueStats;
+import com.shop.userservice.repository.VerifyEmailTaskRepository.VerifyEmailTask;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VerifyEmailDispatcherTest {
+    @Mock
+    private VerifyEmailTaskRepository taskRepository;
+
+    @Mock
+    private KeycloakEmailService keycloakEmailService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private VerifyEmailDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dispatcher = new VerifyEmailDispatcher(taskRepository, keycloakEmailService, meterRegistry,
+                3, 10, 3, 1000, Duration.ofSeconds(5), Duration.ofMinutes(2), Duration.ofSeconds(10), Duration.ofMinutes(30), Duration.ofSeconds(30));
+    }
+
+    private static VerifyEmailTask task(long id, int attempts) {
+        return new VerifyEmailTask(id, UUID.randomUUID(), "user" + id, "user" + id + "@mail.com", attempts);
+    }
+
+    @Test
+    void dispatchPendingThenCompleteSentAndDroppedAndRescheduleFailed() {
+        VerifyEmailTask ok = task(1, 1);
+        VerifyEmailTask failing = task(2, 1);
+        VerifyEmailTask exhausted = task(3, 3);
+        when(taskRepository.claim(3, Duration.ofMinutes(2))).thenReturn(List.of(ok, failing, exhausted)).thenReturn(List.of());
+        doAnswer(invocation -> {
+            if (!invocation.getArgument(0).equals(ok.userUUID().toString())) {
+                throw new ProcessingException("smtp down");
+            }
+            return null;
+        }).when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+        when(taskRepository.stats()).thenReturn(new QueueStats(1, 12.5));
+
+        dispatcher.dispatchPending();
+
+        verify(taskRepository).complete(List.of(1L, 3L));
+        verify(taskRepository).reschedule(argThat(retries -> retries.size() == 1
+                && retries.iterator().next().id() == 2L
+                && retries.iterator().next().lastError().contains("smtp down")));
+        assertEquals(1.0, meterRegistry.get("verify_email_tasks").tag("result", "dropped").counter().count());
+        assertEquals(1.0, meterRegistry.get("verify_email_queue_depth").gauge().value());
+        assertEquals(12.5, meterRegistry.get("verify_email_queue_lag_seconds").gauge().value());
+    }
+
+    @Test
+    void dispatchBatchWhenUserNotFoundInKeycloakThenCompleteWithoutRetry() {
+        VerifyEmailTask deleted = task(1, 1);
+        doThrow(new NotFoundException("HTTP 404 Not Found"))
+                .when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+
+        assertTrue(dispatcher.dispatchBatch(List.of(deleted)));
+
+        verify(taskRepository).complete(List.of(1L));
+        verify(taskRepository).reschedule(List.of());
+        assertEquals(1.0, meterRegistry.get("verify_email_tasks").tag("result", "dropped").counter().count());
+        assertEquals(0.0, meterRegistry.get("verify_email_tasks").tag("result", "failed").counter().count());
+    }
+
+    @Test
+    void dispatchBatchWhenCircuitOpenThenPostponeRestWithoutCalls() {
+        VerifyEmailTask first = task(1, 1);
+        VerifyEmailTask second = task(2, 1);
+        doThrow(CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("keycloakVerifyEmail")))
+                .when(keycloakEmailService).sendVerifyEmail(anyString(), anyString(), anyString());
+
+        assertFalse(dispatcher.dispatchBatch(List.of(first, second)));
+
+        verify(keycloakEmailService, times(1)).sendVerifyEmail(anyString(), anyString(), anyString());
+        verify(taskRepository).reschedule(argThat(retries -> retries.size() == 2
+                && retries.stream().allMatch(retry -> retry.delay().equals(Duration.ofSeconds(30)))));
+    }
+
+    @Test
+    void dispatchPendingWhenSendBurstSpentThenStopUntilNextRunWithoutWaiting() {
+        VerifyEmailDispatcher slow = new VerifyEmailDispatcher(taskRepository, keycloakEmailService, meterRegistry,
+                3, 10, 3, 1, Duration.ofSeconds(1), Duration.ofMinutes(2), Duration.ofSeconds(10), Duration.ofMinutes(30), Duration.ofSeconds(30));
+        when(taskRepository.claim(2, Duration.ofMinutes(2))).thenReturn(List.of(task(1, 1), task(2, 1)));
+        when(taskRepository.stats()).thenReturn(new QueueStats(5, 1));
+
+        long start = System.nanoTime();
+        slow.dispatchPending();
+        slow.dispatchPending();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMs < 500, "elapsedMs=" + elapsedMs);
+        verify(taskRepository, times(1)).claim(anyInt(), any());
+        verify(taskRepository).complete(List.of(1L, 2L));
+    }
+}
@@ -0,0 +1,221 @@
+package com.shop.userservice.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Заглушка Keycloak для нагрузочных тестов: Admin API в объеме, который вызывает сервис (создание пользователя,
+ * роль, письмо подтверждения, чтение и удаление), OIDC discovery и JWKS realm'а shop.
+ * Токены для клиентов нагрузки подписываются ключом из JWKS, поэтому сервис проверяет их своим обычным декодером.
+ * <p>
+ * Каждый ответ Admin API задерживается на {@code latency} плюс равномерный разброс до {@code jitter} -
+ * так моделируется реальный Keycloak, не упираясь в его собственную производительность.
+ */
+public class KeycloakStubServer implements AutoCloseable {
+    public static final String REALM = "shop";
+
+    private static final Pattern USER_PATH = Pattern.compile("^/admin/realms/" + REALM + "/users/([^/]+)(/.*)?$");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final RSAKey signingKey;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final List<UUID> createdUsers = Collections.synchronizedList(new ArrayList<>());
+
+    private KeycloakStubServer(Duration latency, Duration jitter, int threads) throws IOException, JOSEException {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.signingKey = new RSAKeyGenerator(2048)
+                .keyID("load-test")
+                .keyUse(KeyUse.SIGNATURE)
+                .algorithm(JWSAlgorithm.RS256)
+                .generate();
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * @param latency задержка каждого ответа Admin API
+     * @param jitter верхняя граница случайной добавки к задержке
+     * @param threads сколько запросов обслуживается одновременно, с задержкой каждый держит поток
+     */
+    public static KeycloakStubServer start(Duration latency, Duration jitter, int threads) {
+        try {
+            return new KeycloakStubServer(latency, jitter, threads);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        } catch (JOSEException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String issuer() {
+        return baseUrl() + "/realms/" + REALM;
+    }
+
+    /**
+     * UUID пользователей, созданных через Admin API, в порядке создания
+     */
+    public List<UUID> createdUsers() {
+        synchronized (createdUsers) {
+            return List.copyOf(createdUsers);
+        }
+    }
+
+    /**
+     * Access token realm'а shop с ролями в claim spring_sec_roles, как у настоящего Keycloak
+     *
+     * @param roles роли с префиксом app-, например app-user
+     */
+    public String token(UUID subject, String... roles) {
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject(subject.toString())
+                .audience("account")
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(Duration.ofHours(1))))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("preferred_username", "load-" + subject.toString().substring(0, 8))
+                .claim("email", "load-" + subject.toString().substring(0, 8) + "@example.com")
+                .claim("scope", "openid profile email")
+                .claim("spring_sec_roles", List.of(roles))
+                .build();
+        try {
+            SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+            jwt.sign(new RSASSASigner(signingKey));
+            return jwt.serialize();
+        } catch (JOSEException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            exchange.getRequestBody().readAllBytes();
+
+            if (path.equals("/realms/" + REALM + "/.well-known/openid-configuration")) {
+                respond(exchange, 200, """
+                        {"issuer":"%1$s","jwks_uri":"%1$s/protocol/openid-connect/certs",\
+                        "token_endpoint":"%1$s/protocol/openid-connect/token",\
+                        "authorization_endpoint":"%1$s/protocol/openid-connect/auth",\
+                        "subject_types_supported":["public"],"id_token_signing_alg_values_supported":["RS256"]}"""
+                        .formatted(issuer()));
+                return;
+            }
+            if (path.equals("/realms/" + REALM + "/protocol/openid-connect/certs")) {
+                respond(exchange, 200, new JWKSet(signingKey.toPublicJWK()).toString());
+                return;
+            }
+            if (path.endsWith("/protocol/openid-connect/token")) {
+                respond(exchange, 200, """
+                        {"access_token":"%s","expires_in":3600,"refresh_expires_in":0,"token_type":"Bearer"}"""
+                        .formatted(token(UUID.randomUUID(), "app-admin")));
+                return;
+            }
+
+            simulateLatency();
+            adminApi(exchange, method, path);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void adminApi(HttpExchange exchange, String method, String path) throws IOException {
+        String users = "/admin/realms/" + REALM + "/users";
+        if (method.equals("POST") && path.equals(users)) {
+            UUID userUUID = UUID.randomUUID();
+            createdUsers.add(userUUID);
+            exchange.getResponseHeaders().add("Location", baseUrl() + users + "/" + userUUID);
+            respond(exchange, 201, null);
+            return;
+        }
+        if (method.equals("GET") && path.startsWith("/admin/realms/" + REALM + "/roles/")) {
+            String role = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, 200, path.endsWith("/users") ? "[]" : """
+                    {"id":"%s","name":"%s","composite":false,"clientRole":false}"""
+                    .formatted(UUID.nameUUIDFromBytes(role.getBytes(StandardCharsets.UTF_8)), role));
+            return;
+        }
+
+        Matcher user = USER_PATH.matcher(path);
+        if (user.matches()) {
+            String tail = user.group(2);
+            if (method.equals("GET") && tail == null) {
+                respond(exchange, 200, """
+                        {"id":"%s","username":"load-user","enabled":true}""".formatted(user.group(1)));
+            } else {
+                // role-mappings, send-verify-email/execute-actions-email, DELETE
+                respond(exchange, 204, null);
+            }
+            return;
+        }
+
+        respond(exchange, 404, """
+                {"error":"Not stubbed: %s %s"}""".formatted(method, path));
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        long delay = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
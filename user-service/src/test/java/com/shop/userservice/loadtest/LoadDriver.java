@@ -0,0 +1,102 @@
+package com.shop.userservice.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Закрытая модель нагрузки: {@code users} виртуальных пользователей без пауз выполняют сценарии, выбранные
+ * случайно по весам. Сначала прогрев (результаты не пишутся), затем замер: задержки каждого сценария
+ * копятся в HdrHistogram, ошибкой считается исключение или false из сценария.
+ * <p>
+ * В закрытой модели медленный ответ задерживает следующий запрос того же пользователя, поэтому хвост задержек
+ * занижен (coordinated omission) - сравнивать имеет смысл прогоны с одинаковыми users и смесью.
+ */
+public final class LoadDriver {
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * @param name имя сценария в отчете
+     * @param weight относительная частота
+     * @param call один запрос; false или исключение - ошибка
+     */
+    public record Scenario(String name, int weight, Callable<Boolean> call) {
+    }
+
+    private LoadDriver() {
+    }
+
+    public static LoadReport run(String title, List<Scenario> scenarios, int users, Duration warmup, Duration duration)
+            throws InterruptedException {
+        int totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        List<Recorder> recorders = new ArrayList<>(scenarios.size());
+        List<LongAdder> errors = new ArrayList<>(scenarios.size());
+        for (int i = 0; i < scenarios.size(); i++) {
+            recorders.add(new Recorder(MAX_LATENCY_NANOS, 3));
+            errors.add(new LongAdder());
+        }
+
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long stopAt = measureFrom + duration.toNanos();
+        CountDownLatch finished = new CountDownLatch(users);
+        ExecutorService workers = Executors.newFixedThreadPool(users);
+
+        for (int user = 0; user < users; user++) {
+            workers.execute(() -> {
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < stopAt && !Thread.currentThread().isInterrupted()) {
+                        int index = pick(scenarios, totalWeight);
+                        boolean success;
+                        try {
+                            success = scenarios.get(index).call().call();
+                        } catch (Exception exception) {
+                            success = false;
+                        }
+                        long latency = System.nanoTime() - now;
+
+                        if (now >= measureFrom) {
+                            recorders.get(index).recordValue(Math.min(latency, MAX_LATENCY_NANOS));
+                            if (!success) {
+                                errors.get(index).increment();
+                            }
+                        }
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        finished.await();
+        workers.shutdownNow();
+
+        List<LoadReport.Row> rows = new ArrayList<>(scenarios.size());
+        for (int i = 0; i < scenarios.size(); i++) {
+            Histogram histogram = recorders.get(i).getIntervalHistogram();
+            rows.add(LoadReport.Row.of(scenarios.get(i).name(), histogram, errors.get(i).sum(), duration));
+        }
+        return new LoadReport(title, users, duration, rows);
+    }
+
+    private static int pick(List<Scenario> scenarios, int totalWeight) {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < scenarios.size(); i++) {
+            point -= scenarios.get(i).weight();
+            if (point < 0) {
+                return i;
+            }
+        }
+        return scenarios.size() - 1;
+    }
+}
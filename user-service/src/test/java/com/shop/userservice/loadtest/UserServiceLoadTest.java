@@ -0,0 +1,172 @@
+package com.shop.userservice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.dto.UserRegistrationDto;
+import com.shop.userservice.loadtest.LoadDriver.Scenario;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пропускная способность и задержки user-service на смеси запросов: регистрация, поиск по UUID,
+ * пакетный поиск и фильтр. Postgres и Redis - Testcontainers, Keycloak - {@link KeycloakStubServer}.
+ * <p>
+ * Запуск: {@code mvn test -Pload-test}, параметры через -D: load.users, load.warmup, load.duration,
+ * load.seed-users, load.keycloak-latency, load.keycloak-jitter. Отчет - target/load-test/user-service.txt.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+@ActiveProfiles({"integration", "load-test"})
+class UserServiceLoadTest {
+    private static final int USERS = Integer.getInteger("load.users", 16);
+    private static final int SEED_USERS = Integer.getInteger("load.seed-users", 500);
+    private static final Duration WARMUP = duration("load.warmup", "10s");
+    private static final Duration DURATION = duration("load.duration", "30s");
+
+    static final KeycloakStubServer keycloak = KeycloakStubServer.start(
+            duration("load.keycloak-latency", "20ms"), duration("load.keycloak-jitter", "10ms"), 64);
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @Container
+    @ServiceConnection(name = "redis")
+    static final GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine")
+            .withExposedPorts(6379);
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.server-url", keycloak::baseUrl);
+        registry.add("spring.security.oauth2.resourceserver.jwt.issuer-uri", keycloak::issuer);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @Test
+    void mixedWorkload() throws Exception {
+        IntStream.range(0, SEED_USERS).parallel().forEach(i -> seed());
+        List<UUID> userUUIDs = keycloak.createdUsers();
+        assertThat(userUUIDs).hasSizeGreaterThanOrEqualTo(SEED_USERS);
+
+        String userToken = keycloak.token(UUID.randomUUID(), "app-user");
+        String adminToken = keycloak.token(UUID.randomUUID(), "app-admin");
+
+        List<Scenario> scenarios = List.of(
+                new Scenario("registration", 10, this::register),
+                new Scenario("lookup-by-uuid", 50, () -> {
+                    UUID uuid = userUUIDs.get(ThreadLocalRandom.current().nextInt(userUUIDs.size()));
+                    return send(get("/api/v1/by-uuid/" + uuid, userToken)) == 200;
+                }),
+                new Scenario("lookup-by-uuids", 15, () -> {
+                    List<UUID> batch = ThreadLocalRandom.current().ints(20, 0, userUUIDs.size())
+                            .mapToObj(userUUIDs::get)
+                            .toList();
+                    return send(post("/api/v1/by-uuids", Map.of("uuids", batch), userToken)) == 200;
+                }),
+                new Scenario("search", 15, () -> {
+                    String lastName = "Load" + ThreadLocalRandom.current().nextInt(100);
+                    return send(post("/api/v1/search?size=20", Map.of("lastName", lastName), adminToken)) == 200;
+                })
+        );
+
+        LoadReport report = LoadDriver.run("user-service", scenarios, USERS, WARMUP, DURATION);
+        System.out.println(report.format());
+        report.writeTo(Path.of("target", "load-test"));
+
+        assertThat(report.errorRate()).isLessThan(0.01);
+    }
+
+    private void seed() {
+        try {
+            assertThat(register()).isTrue();
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private boolean register() throws Exception {
+        long id = sequence.incrementAndGet();
+        UserRegistrationDto dto = UserRegistrationDto.builder()
+                .username("load_" + id)
+                .firstName("Load")
+                .lastName("Load" + id % 100)
+                .patronymic("Testovich")
+                .phoneNumber("+7%010d".formatted(id))
+                .email("load_" + id + "@example.com")
+                .password("Password1!")
+                .build();
+        return send(post("/api/v1/registration", dto, null)) == 201;
+    }
+
+    private HttpRequest get(String path, String token) {
+        return request(path, token).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body, String token) throws Exception {
+        return request(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .timeout(Duration.ofSeconds(30));
+        return token == null ? builder : builder.header("Authorization", "Bearer " + token);
+    }
+
+    private int send(HttpRequest request) throws Exception {
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
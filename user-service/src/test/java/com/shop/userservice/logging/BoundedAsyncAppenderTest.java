@@ -0,0 +1,124 @@
+package com.shop.userservice.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.boolex.OnMarkerEvaluator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.filter.EvaluatorFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import com.shop.userservice.util.LogMarker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedAsyncAppenderTest {
+    private final LoggerContext context = new LoggerContext();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<ILoggingEvent> written = new CopyOnWriteArrayList<>();
+
+    private BoundedAsyncAppender appender;
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        AppenderBase<ILoggingEvent> slowAppender = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(event);
+            }
+        };
+        slowAppender.setContext(context);
+        slowAppender.start();
+
+        appender = new BoundedAsyncAppender();
+        appender.setContext(context);
+        appender.setName("ASYNC_TEST");
+        appender.setQueueSize(4);
+        appender.setCriticalReserve(2);
+        appender.addAppender(slowAppender);
+        appender.start();
+
+        logger = context.getLogger(BoundedAsyncAppenderTest.class);
+        logger.setLevel(Level.INFO);
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        context.stop();
+    }
+
+    @Test
+    void appendWhenQueueReachesReserveThenDropRegularAndKeepCritical() {
+        for (int i = 0; i < 10; i++) {
+            logger.info(LogMarker.APP_CALL.getMarker(), "service=Test | call={}", i);
+        }
+        logger.info(LogMarker.AUDIT.getMarker(), "service=Test | action=audit");
+        logger.warn(LogMarker.ERROR.getMarker(), "service=Test | ERROR");
+
+        assertTrue(appender.getDroppedCount() >= 6);
+
+        release.countDown();
+        appender.stop();
+
+        assertEquals(10 - appender.getDroppedCount() + 2, written.size());
+        assertTrue(written.stream().anyMatch(event -> event.getMarkerList().contains(LogMarker.AUDIT.getMarker())));
+        assertTrue(written.stream().anyMatch(event -> event.getMarkerList().contains(LogMarker.ERROR.getMarker())));
+    }
+
+    @Test
+    void appendWhenMarkerFilterOnWrapperThenForeignEventsNeitherQueuedNorCountedAsDropped() {
+        OnMarkerEvaluator evaluator = new OnMarkerEvaluator();
+        evaluator.setContext(context);
+        evaluator.addMarker(LogMarker.APP_CALL.name());
+        evaluator.start();
+        EvaluatorFilter<ILoggingEvent> filter = new EvaluatorFilter<>();
+        filter.setContext(context);
+        filter.setEvaluator(evaluator);
+        filter.setOnMatch(FilterReply.ACCEPT);
+        filter.setOnMismatch(FilterReply.DENY);
+        filter.start();
+        appender.addFilter(filter);
+
+        // очередь на 4 места, поток записи стоит: без фильтра на обертке AUDIT ждал бы место в очереди
+        for (int i = 0; i < 10; i++) {
+            logger.info(LogMarker.AUDIT.getMarker(), "service=Test | action=audit | n={}", i);
+        }
+        logger.info(LogMarker.APP_CALL.getMarker(), "service=Test | call");
+
+        assertEquals(0, appender.getDroppedCount());
+
+        release.countDown();
+        appender.stop();
+
+        assertEquals(1, written.size());
+        assertTrue(written.get(0).getMarkerList().contains(LogMarker.APP_CALL.getMarker()));
+    }
+
+    @Test
+    void isCriticalForAuditErrorMarkersAndErrorLevel() {
+        logger.error("service=Test | plain error");
+        release.countDown();
+        appender.stop();
+
+        assertTrue(BoundedAsyncAppender.isCritical(written.get(0)));
+    }
+}
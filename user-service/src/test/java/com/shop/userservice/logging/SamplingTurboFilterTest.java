@@ -0,0 +1,74 @@
+package com.shop.userservice.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import com.shop.userservice.util.LogMarker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SamplingTurboFilterTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final Logger logger = new LoggerContext().getLogger(SamplingTurboFilterTest.class);
+
+    private SamplingTurboFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        logger.setLevel(Level.DEBUG);
+        filter = new SamplingTurboFilter(nanos::get);
+        filter.setMarker(LogMarker.APP_CALL.name());
+        filter.setRatePerSecond(2);
+        filter.start();
+    }
+
+    private FilterReply appCall() {
+        return filter.decide(LogMarker.APP_CALL.getMarker(), logger, Level.INFO, "service=Test | call", null, null);
+    }
+
+    @Test
+    void decideWhenRateExceededThenDenyUntilNextSecond() {
+        assertEquals(FilterReply.NEUTRAL, appCall());
+        assertEquals(FilterReply.NEUTRAL, appCall());
+        assertEquals(FilterReply.DENY, appCall());
+        assertEquals(1, filter.getSampledOutCount());
+
+        nanos.set(1_000_000_000L);
+
+        assertEquals(FilterReply.NEUTRAL, appCall());
+    }
+
+    @Test
+    void decideNeverSamplesAuditErrorOrOtherMarkers() {
+        appCall();
+        appCall();
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(LogMarker.AUDIT.getMarker(), logger, Level.INFO, "audit", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(LogMarker.ERROR.getMarker(), logger, Level.WARN, "error", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(LogMarker.NOTIFY.getMarker(), logger, Level.INFO, "notify", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(LogMarker.APP_CALL.getMarker(), logger, Level.ERROR, "failed", null, null));
+        assertEquals(0, filter.getSampledOutCount());
+    }
+
+    @Test
+    void decideByLevelSkipsEnabledChecksAndDisabledLevels() {
+        SamplingTurboFilter debugFilter = new SamplingTurboFilter(nanos::get);
+        debugFilter.setLevel("DEBUG");
+        debugFilter.setRatePerSecond(1);
+        debugFilter.start();
+
+        assertEquals(FilterReply.NEUTRAL, debugFilter.decide(null, logger, Level.DEBUG, null, null, null));
+        assertEquals(FilterReply.NEUTRAL, debugFilter.decide(null, logger, Level.DEBUG, "first", null, null));
+        assertEquals(FilterReply.NEUTRAL, debugFilter.decide(null, logger, Level.INFO, "info", null, null));
+        assertEquals(FilterReply.DENY, debugFilter.decide(null, logger, Level.DEBUG, "second", null, null));
+
+        logger.setLevel(Level.INFO);
+        assertEquals(FilterReply.NEUTRAL, debugFilter.decide(null, logger, Level.DEBUG, "disabled", null, null));
+        assertEquals(1, debugFilter.getSampledOutCount());
+    }
+}
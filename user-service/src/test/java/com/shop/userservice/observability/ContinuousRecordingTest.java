@@ -0,0 +1,55 @@
+package com.shop.userservice.observability;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContinuousRecordingTest {
+    private final ContinuousRecording recording = new ContinuousRecording(Duration.ofMinutes(5), DataSize.ofMegabytes(16));
+    private Path dump;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        recording.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        recording.stop();
+        if (dump != null) {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    void dumpContainsCustomEvents() throws Exception {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.begin();
+        Thread.sleep(5);
+        event.end();
+        event.repository = "UserRepository";
+        event.method = "findByPublicId";
+        event.outcome = "success";
+        event.commit();
+
+        dump = recording.dump(Duration.ofMinutes(1));
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(recorded -> recorded.getEventType().getName().equals("com.shop.userservice.RepositoryCall"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals("findByPublicId", events.get(0).getString("method"));
+        assertTrue(events.get(0).getDuration().toMillis() >= 5);
+    }
+}
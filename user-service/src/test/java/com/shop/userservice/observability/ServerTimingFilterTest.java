@@ -0,0 +1,104 @@
+package com.shop.userservice.observability;
+
+import com.shop.userservice.observability.RequestTimings.Category;
+import com.shop.userservice.observability.RequestTimings.Stopwatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerTimingFilterTest {
+    private final ServerTimingFilter filter = new ServerTimingFilter();
+
+    @Test
+    void doFilterWritesBreakdownBeforeBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/by-uuid/1"), response, (req, res) -> {
+            Stopwatch cache = RequestTimings.begin(Category.CACHE);
+            Stopwatch db = RequestTimings.begin(Category.DB);
+            sleep(20);
+            db.stop();
+            cache.stop();
+
+            Stopwatch serialization = RequestTimings.begin(Category.SERIALIZATION);
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+            serialization.stop();
+            res.getOutputStream().write("\n".getBytes(StandardCharsets.UTF_8));
+        });
+
+        String header = response.getHeader(ServerTimingFilter.HEADER);
+        assertTrue(header.startsWith("db;dur="), header);
+        assertTrue(header.contains("cache;dur="), header);
+        assertTrue(header.contains("ser;dur="), header);
+        assertTrue(header.contains("app;dur="), header);
+        assertTrue(duration(header, "db") >= 20, header);
+        assertTrue(duration(header, "cache") < 20, header);
+        assertEquals("{}\n", response.getContentAsString());
+        assertNull(RequestTimings.current());
+    }
+
+    @Test
+    void doFilterWhenNoCallsThenOnlyAppTime() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("DELETE", "/api/v1/1"), response, (req, res) -> {});
+
+        assertTrue(response.getHeader(ServerTimingFilter.HEADER).startsWith("app;dur="));
+    }
+
+    @Test
+    void stopWhenOtherThreadMeasuredConcurrentlyThenNotSubtractedFromExclusiveTime() throws Exception {
+        RequestTimings timings = RequestTimings.start();
+        try {
+            Stopwatch cache = RequestTimings.begin(Category.CACHE);
+            Thread other = new Thread(() -> {
+                RequestTimings.bind(timings);
+                Stopwatch db = RequestTimings.begin(Category.DB);
+                sleep(30);
+                db.stop();
+                RequestTimings.bind(null);
+            });
+            other.start();
+            other.join();
+            cache.stop();
+
+            String header = timings.header();
+            assertTrue(duration(header, "db") >= 30, header);
+            assertTrue(duration(header, "cache") >= 30, header);
+        } finally {
+            RequestTimings.bind(null);
+        }
+    }
+
+    @Test
+    void beginOutsideRequestIsNoop() {
+        RequestTimings.begin(Category.DB).stop();
+
+        assertNull(RequestTimings.current());
+    }
+
+    private static double duration(String header, String metric) {
+        for (String entry : header.split(", ")) {
+            if (entry.startsWith(metric + ";")) {
+                String dur = entry.substring(entry.indexOf("dur=") + 4);
+                int end = dur.indexOf(';');
+                return Double.parseDouble(end < 0 ? dur : dur.substring(0, end));
+            }
+        }
+        throw new AssertionError(metric + " not found in " + header);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.shop.userservice.observability;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceLatencyAspectTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SampleService service;
+
+    @BeforeEach
+    void setUp() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new SampleService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ServiceLatencyAspect(meterRegistry, Duration.ofMillis(500)));
+        service = factory.getProxy();
+    }
+
+    private Timer timer(String method, String outcome) {
+        return meterRegistry.get("service_method_duration")
+                .tags("service", "SampleService", "method", method, "outcome", outcome)
+                .timer();
+    }
+
+    @Test
+    void timeWhenMethodSucceedsThenRecordSuccess() {
+        assertEquals("user", service.find("user"));
+        assertEquals("user", service.find("user"));
+
+        assertEquals(2, timer("find", "success").count());
+        assertEquals(0, timer("find", "error").count());
+    }
+
+    @Test
+    void timeWhenMethodThrowsThenRecordErrorAndRethrow() {
+        assertThrows(IllegalStateException.class, () -> service.fail());
+
+        assertEquals(1, timer("fail", "error").count());
+    }
+
+    @Test
+    void timeSkipsNonPublicMethods() {
+        service.internal();
+
+        assertEquals(0, meterRegistry.find("service_method_duration").tag("method", "internal").timers().size());
+    }
+
+    @Service
+    static class SampleService {
+        public String find(String username) {
+            return username;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("boom");
+        }
+
+        void internal() {
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.shop.userservice.observability;
+
+import com.shop.userservice.observability.TailSamplingSpanProcessor.Decision;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TailSamplingSpanProcessorTest {
+    // 0 у SDK означает "взять текущее время", поэтому явный старт корня не нулевой
+    private static final long START_MILLIS = 1_000;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final SpanProcessor exporter = mock(SpanProcessor.class);
+
+    private SdkTracerProvider tracerProvider;
+
+    @BeforeEach
+    void setUp() {
+        when(exporter.shutdown()).thenReturn(CompletableResultCode.ofSuccess());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (tracerProvider != null) {
+            tracerProvider.close();
+        }
+    }
+
+    private Tracer tracer(TailSamplingSpanProcessor processor) {
+        tracerProvider = SdkTracerProvider.builder()
+                .setSampler(new TailSamplingSampler())
+                .addSpanProcessor(processor)
+                .build();
+        return tracerProvider.get("test");
+    }
+
+    /**
+     * Базовая вероятность фиксирована в rate, при 0 экспортируются только обязательные трейсы
+     */
+    private TailSamplingSpanProcessor processor(double rate) {
+        return new TailSamplingSpanProcessor(exporter, Duration.ofSeconds(1), 10, rate, rate, 100, 10,
+                Duration.ofMinutes(1), nanos::get, () -> 0.5);
+    }
+
+    private void trace(Tracer tracer, long rootMillis, Consumer<Span> child) {
+        Span root = tracer.spanBuilder("root").setStartTimestamp(START_MILLIS, TimeUnit.MILLISECONDS).startSpan();
+        try (Scope ignored = root.makeCurrent()) {
+            Span span = tracer.spanBuilder("child").startSpan();
+            try (Scope ignoredChild = span.makeCurrent()) {
+                child.accept(span);
+            }
+            span.end();
+        }
+        root.end(START_MILLIS + rootMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void onEndWhenTraceIsUnremarkableThenDropWholeTrace() {
+        TailSamplingSpanProcessor processor = processor(0);
+
+        trace(tracer(processor), 10, span -> {});
+
+        verify(exporter, never()).onEnd(any());
+        assertEquals(1, processor.getDecisionCount(Decision.DROPPED));
+    }
+
+    @Test
+    void onEndWhenRootIsSlowThenExportChildAndRoot() {
+        TailSamplingSpanProcessor processor = processor(0);
+
+        trace(tracer(processor), 1500, span -> {});
+
+        ArgumentCaptor<ReadableSpan> exported = ArgumentCaptor.forClass(ReadableSpan.class);
+        verify(exporter, times(2)).onEnd(exported.capture());
+        assertEquals("child", exported.getAllValues().get(0).getName());
+        assertEquals("root", exported.getAllValues().get(1).getName());
+        assertEquals(1, processor.getDecisionCount(Decision.SLOW));
+    }
+
+    @Test
+    void onEndWhenChildFailedOrMarkedThenExport() {
+        TailSamplingSpanProcessor processor = processor(0);
+        Tracer tracer = tracer(processor);
+
+        trace(tracer, 10, span -> span.setStatus(StatusCode.ERROR));
+        trace(tracer, 10, span -> TailSamplingSpanProcessor.keep("keycloak_retry"));
+
+        verify(exporter, times(4)).onEnd(any());
+        assertEquals(1, processor.getDecisionCount(Decision.ERROR));
+        assertEquals(1, processor.getDecisionCount(Decision.KEEP));
+    }
+
+    @Test
+    void onEndWhenSpanEndsAfterDecisionThenFollowDecision() {
+        TailSamplingSpanProcessor processor = processor(0);
+        Tracer tracer = tracer(processor);
+
+        Span root = tracer.spanBuilder("root").setStartTimestamp(START_MILLIS, TimeUnit.MILLISECONDS).startSpan();
+        Span async = tracer.spanBuilder("async").setParent(Context.current().with(root)).startSpan();
+        root.end(START_MILLIS + 2000, TimeUnit.MILLISECONDS);
+        async.end();
+
+        verify(exporter, times(2)).onEnd(any());
+    }
+
+    @Test
+    void onEndWhenParentAlreadySampledThenLeaveToDefaultExporter() {
+        TailSamplingSpanProcessor processor = processor(0);
+        SpanContext remote = SpanContext.createFromRemoteParent("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331",
+                TraceFlags.getSampled(), TraceState.getDefault());
+
+        Span span = tracer(processor).spanBuilder("server").setParent(Context.root().with(Span.wrap(remote))).startSpan();
+        span.end();
+
+        assertTrue(span.getSpanContext().isSampled());
+        verify(exporter, never()).onEnd(any());
+    }
+
+    @Test
+    void baseRateWhenCandidatesExceedBudgetThenDecrease() {
+        TailSamplingSpanProcessor processor = new TailSamplingSpanProcessor(exporter, Duration.ofSeconds(1), 10, 0.01, 1.0,
+                1000, 10, Duration.ofMinutes(1), nanos::get, () -> 0.5);
+        Tracer tracer = tracer(processor);
+
+        for (int i = 0; i < 50; i++) {
+            trace(tracer, 10, span -> {});
+        }
+        nanos.set(1_000_000_000L);
+        trace(tracer, 10, span -> {});
+
+        // 100 спанов в секунду при бюджете 10: цель 0.1, среднее с прежней 1.0
+        assertEquals(0.55, processor.getBaseRate(), 1e-9);
+        assertEquals(51, processor.getDecisionCount(Decision.BASE));
+    }
+}
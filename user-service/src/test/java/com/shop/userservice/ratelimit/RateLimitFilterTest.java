@@ -0,0 +1,118 @@
+package com.shop.userservice.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.shop.userservice.ratelimit.RateLimitProperties.KeyType;
+import com.shop.userservice.ratelimit.RateLimitProperties.Route;
+import com.shop.userservice.security.UserPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RateLimitFilter filter = new RateLimitFilter(
+            new RateLimitProperties(true, 1000, Duration.ofMinutes(1), List.of("192.168.0.0/24"), List.of(
+                    new Route("registration", "POST", "/api/v1/registration", KeyType.IP, 1, Duration.ofMinutes(1)),
+                    new Route("search", "POST", "/api/v1/search", KeyType.USER, 1, Duration.ofMinutes(1)))),
+            new TokenBucketTable(1000),
+            new ObjectMapper().registerModule(new JavaTimeModule()),
+            meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private MockHttpServletResponse call(String method, String path, String ip) throws Exception {
+        return call(method, path, ip, null);
+    }
+
+    private MockHttpServletResponse call(String method, String path, String remoteAddr, String forwardedFor) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    void doFilterWhenIpLimitExceededThen429WithRetryAfter() throws Exception {
+        assertEquals(200, call("POST", "/api/v1/registration", "10.0.0.1").getStatus());
+
+        MockHttpServletResponse rejected = call("POST", "/api/v1/registration", "10.0.0.1");
+
+        assertEquals(429, rejected.getStatus());
+        assertEquals("60", rejected.getHeader("Retry-After"));
+        assertEquals(200, call("POST", "/api/v1/registration", "10.0.0.2").getStatus());
+        assertEquals(1.0, meterRegistry.get("http_rate_limited_requests").tag("route", "registration").counter().count());
+    }
+
+    @Test
+    void doFilterWhenForwardedForFromUntrustedAddressThenLimitByRemoteAddr() throws Exception {
+        assertEquals(200, call("POST", "/api/v1/registration", "10.0.0.1", "1.1.1.1").getStatus());
+
+        assertEquals(429, call("POST", "/api/v1/registration", "10.0.0.1", "2.2.2.2").getStatus());
+    }
+
+    @Test
+    void doFilterWhenForwardedForFromTrustedProxyThenLimitByFirstUntrustedHopFromRight() throws Exception {
+        assertEquals(200, call("POST", "/api/v1/registration", "192.168.0.10", "1.1.1.1, 10.0.0.1, 192.168.0.11").getStatus());
+
+        // подмененный клиентом левый адрес не меняет ключ
+        assertEquals(429, call("POST", "/api/v1/registration", "192.168.0.10", "2.2.2.2, 10.0.0.1").getStatus());
+        assertEquals(200, call("POST", "/api/v1/registration", "192.168.0.10", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void doFilterWhenUserRouteThenLimitByPrincipalNotIp() throws Exception {
+        UserPrincipal first = new UserPrincipal(UUID.randomUUID(), "first", "first@mail.com", List.of());
+        UserPrincipal second = new UserPrincipal(UUID.randomUUID(), "second", "second@mail.com", List.of());
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(first, null, List.of()));
+        assertEquals(200, call("POST", "/api/v1/search", "10.0.0.1").getStatus());
+        assertEquals(429, call("POST", "/api/v1/search", "10.0.0.1").getStatus());
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(second, null, List.of()));
+        assertEquals(200, call("POST", "/api/v1/search", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    void doFilterWhenRouteNotConfiguredThenPass() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            MockHttpServletResponse response = call("GET", "/api/v1/1", "10.0.0.1");
+            assertEquals(200, response.getStatus());
+            assertNull(response.getHeader("Retry-After"));
+        }
+        assertEquals(0.0, meterRegistry.get("http_rate_limited_requests").tag("route", "registration").counter().count());
+    }
+
+    @Test
+    void constructorWhenRouteCapacityNotPositiveThenFailNamingRoute() {
+        RateLimitProperties properties = new RateLimitProperties(true, 1000, Duration.ofMinutes(1), List.of(), List.of(
+                new Route("broken", "POST", "/api/v1/registration", KeyType.IP, 0, Duration.ofMinutes(1))));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> new RateLimitFilter(
+                properties, new TokenBucketTable(1000), new ObjectMapper(), new SimpleMeterRegistry()));
+
+        assertTrue(exception.getMessage().contains("broken"), exception.getMessage());
+    }
+}
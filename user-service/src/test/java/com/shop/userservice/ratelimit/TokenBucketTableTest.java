@@ -0,0 +1,82 @@
+package com.shop.userservice.ratelimit;
+
+import com.shop.userservice.ratelimit.TokenBucketTable.Limit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTableTest {
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final Limit threePerSecond = Limit.of(3, Duration.ofSeconds(1));
+
+    @Test
+    void tryAcquireWhenBurstExhaustedThenReturnWaitUntilNextToken() {
+        TokenBucketTable table = new TokenBucketTable(100, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Duration.ZERO, table.tryAcquire("ip:1", threePerSecond));
+        }
+        Duration wait = table.tryAcquire("ip:1", threePerSecond);
+
+        assertTrue(wait.toMillis() > 300 && wait.toMillis() <= 334, "wait=" + wait);
+        assertEquals(Duration.ZERO, table.tryAcquire("ip:2", threePerSecond));
+
+        now.addAndGet(wait.toNanos());
+        assertEquals(Duration.ZERO, table.tryAcquire("ip:1", threePerSecond));
+    }
+
+    @Test
+    void evictIdleRemovesOnlyRefilledBuckets() {
+        TokenBucketTable table = new TokenBucketTable(100, now::get);
+        table.tryAcquire("ip:1", threePerSecond);
+        table.tryAcquire("ip:2", Limit.of(1, Duration.ofMinutes(1)));
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        table.evictIdle();
+
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void tryAcquireWhenTableFullThenMemoryStaysBounded() {
+        TokenBucketTable table = new TokenBucketTable(10, now::get);
+        Limit slow = Limit.of(1, Duration.ofHours(1));
+
+        for (int i = 0; i < 1000; i++) {
+            table.tryAcquire("ip:" + i, slow);
+        }
+
+        assertTrue(table.size() <= 10);
+    }
+
+    @Test
+    void tryAcquireWhenTableFullOfNewKeysThenLimitedClientKeepsItsBucket() {
+        TokenBucketTable table = new TokenBucketTable(10, now::get);
+        Limit slow = Limit.of(1, Duration.ofHours(1));
+        assertEquals(Duration.ZERO, table.tryAcquire("ip:limited", slow));
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(table.tryAcquire("ip:limited", slow).compareTo(Duration.ZERO) > 0);
+            table.tryAcquire("ip:" + i, slow);
+        }
+
+        assertTrue(table.tryAcquire("ip:limited", slow).compareTo(Duration.ZERO) > 0);
+        assertTrue(table.size() <= 10);
+    }
+
+    @Test
+    void limitOfWhenCapacityOrRefillPeriodNotPositiveThenThrow() {
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(-1, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(3, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(3, Duration.ofSeconds(-1)));
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(3, null));
+        assertThrows(IllegalArgumentException.class, () -> Limit.of(10, Duration.ofNanos(5)));
+    }
+}
@@ -0,0 +1,55 @@
+package com.shop.userservice.reconciliation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortedUuidSpillTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sortedIteratorMergesRunsInUnsignedOrderWithoutDuplicates() throws Exception {
+        List<UUID> values = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            values.add(UUID.randomUUID());
+        }
+        UUID negative = new UUID(-1L, 0L);
+        values.add(negative);
+
+        List<UUID> merged = new ArrayList<>();
+        try (SortedUuidSpill spill = new SortedUuidSpill(directory, 4)) {
+            values.forEach(spill::add);
+            spill.add(values.get(0));
+
+            Iterator<UUID> iterator = spill.sortedIterator();
+            iterator.forEachRemaining(merged::add);
+
+            assertEquals(27, spill.count());
+        }
+
+        List<UUID> expected = values.stream().sorted(SortedUuidSpill::compare).toList();
+        assertEquals(expected, merged);
+        assertEquals(negative, merged.get(merged.size() - 1));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    void sortedIteratorWhenEmptyThenHasNoElements() {
+        try (SortedUuidSpill spill = new SortedUuidSpill(directory, 4)) {
+            assertTrue(!spill.sortedIterator().hasNext());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.shop.userservice.reconciliation;
+
+import com.shop.userservice.entity.User;
+import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
+import com.shop.userservice.repository.UserRepository;
+import com.shop.userservice.service.UserCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserReconciliationJobTest {
+    private static final long OLD = System.currentTimeMillis() - Duration.ofDays(1).toMillis();
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private KeycloakDeletionTaskRepository deletionTaskRepository;
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    @Mock
+    private UserCacheService userCacheService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @TempDir
+    Path workDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UserReconciliationJob job(long maxRepairs, boolean dryRun) {
+        return new UserReconciliationJob(userRepository, deletionTaskRepository, keycloakService, userCacheService,
+                Runnable::run, stringRedisTemplate, meterRegistry, 2, 2, 3, 10, maxRepairs,
+                Duration.ofHours(1), dryRun, Duration.ofHours(2), workDir);
+    }
+
+    private static UserRepresentation keycloakUser(UUID uuid, long createdTimestamp) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(uuid.toString());
+        user.setCreatedTimestamp(createdTimestamp);
+        return user;
+    }
+
+    @Test
+    void runThenEnqueueKeycloakOnlyAndDeleteLocalOnly() throws Exception {
+        UUID shared1 = new UUID(1, 1);
+        UUID shared2 = new UUID(2, 2);
+        UUID keycloakOnly = new UUID(3, 3);
+        UUID young = new UUID(4, 4);
+        UUID localOnly = new UUID(5, 5);
+        User orphan = User.builder().id(7L).publicId(localOnly).email("orphan@mail.com").phoneNumber("+79990000000").build();
+
+        when(keycloakService.getShopUsersPage(0, 2)).thenReturn(List.of(keycloakUser(shared1, OLD), keycloakUser(keycloakOnly, OLD)));
+        when(keycloakService.getShopUsersPage(2, 2)).thenReturn(List.of(keycloakUser(shared2, OLD), keycloakUser(young, System.currentTimeMillis())));
+        when(keycloakService.getShopUsersPage(4, 2)).thenReturn(List.of());
+        when(keycloakService.getShopUsersPage(6, 2)).thenReturn(List.of());
+
+        when(userRepository.findPublicIdsAfter(new UUID(0, 0), Limit.of(2))).thenReturn(List.of(shared1, shared2));
+        when(userRepository.findPublicIdsAfter(shared2, Limit.of(2))).thenReturn(List.of(localOnly));
+        when(userRepository.findAllByPublicIdIn(List.of(keycloakOnly))).thenReturn(List.of());
+        when(userRepository.findAllByPublicIdIn(List.of(localOnly))).thenReturn(List.of(orphan));
+        when(keycloakService.existsUserByUUID(localOnly.toString())).thenReturn(false);
+
+        UserReconciliationJob.Summary summary = job(100, false).run();
+
+        assertEquals(4, summary.keycloakUsers);
+        assertEquals(3, summary.localUsers);
+        assertEquals(1, summary.keycloakOnly);
+        assertEquals(1, summary.localOnly);
+        assertEquals(2, summary.repaired);
+        verify(deletionTaskRepository).enqueueAll(List.of(keycloakOnly));
+        verify(userRepository).deleteAllInBatch(List.of(orphan));
+        verify(userCacheService).evictUsersCaches(List.of(orphan));
+        assertEquals(1.0, meterRegistry.get("users_reconciliation_repairs").tag("side", "local_only").counter().count());
+    }
+
+    @Test
+    void mergeWhenLocalUserStillExistsInKeycloakThenKeep() {
+        UUID missedOnPage = UUID.randomUUID();
+        when(keycloakService.existsUserByUUID(missedOnPage.toString())).thenReturn(true);
+
+        UserReconciliationJob.Summary summary = new UserReconciliationJob.Summary(0, 1);
+        job(100, false).merge(List.<UUID>of().iterator(), List.of(missedOnPage).iterator(), List.<UUID>of().iterator(), summary);
+
+        assertEquals(0, summary.localOnly);
+        verify(userRepository, never()).deleteAllInBatch(any());
+    }
+
+    @Test
+    void mergeWhenDryRunOrLimitReachedThenOnlyCountDrift() {
+        UUID first = new UUID(1, 1);
+        UUID second = new UUID(2, 2);
+        when(userRepository.findAllByPublicIdIn(anyCollection())).thenReturn(List.of());
+
+        UserReconciliationJob.Summary dryRun = new UserReconciliationJob.Summary(2, 0);
+        job(100, true).merge(List.of(first, second).iterator(), List.<UUID>of().iterator(), List.<UUID>of().iterator(), dryRun);
+
+        UserReconciliationJob.Summary limited = new UserReconciliationJob.Summary(2, 0);
+        job(1, false).merge(List.of(first, second).iterator(), List.<UUID>of().iterator(), List.<UUID>of().iterator(), limited);
+
+        assertEquals(2, dryRun.keycloakOnly);
+        assertEquals(0, dryRun.repaired);
+        assertEquals(1, limited.repaired);
+        verify(deletionTaskRepository, times(1)).enqueueAll(List.of(first));
+        verify(keycloakService, never()).getShopUsersPage(anyInt(), eq(2));
+    }
+}
@@ -0,0 +1,80 @@
+package com.shop.userservice.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * План из {@code EXPLAIN (FORMAT JSON)}: узлы дерева в порядке обхода и стоимость корня в единицах планировщика
+ */
+public record QueryPlan(String sql, double totalCost, List<Node> nodes, String json) {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * @param relation таблица для Seq Scan / Index Scan, иначе null
+     * @param index индекс для Index Scan / Index Only Scan / Bitmap Index Scan, иначе null
+     */
+    public record Node(String type, String relation, String index, double totalCost, double rows) {
+    }
+
+    public static QueryPlan parse(String sql, String json) {
+        try {
+            JsonNode root = MAPPER.readTree(json).get(0).get("Plan");
+            List<Node> nodes = new ArrayList<>();
+            collect(root, nodes);
+            return new QueryPlan(sql, root.get("Total Cost").asDouble(), nodes, json);
+        } catch (Exception exception) {
+            throw new IllegalArgumentException("Unexpected EXPLAIN output: " + json, exception);
+        }
+    }
+
+    public List<String> seqScannedRelations() {
+        return nodes.stream()
+                .filter(node -> node.type().equals("Seq Scan") && node.relation() != null)
+                .map(Node::relation)
+                .toList();
+    }
+
+    /**
+     * Таблицы, которые план читает любым сканированием (Seq, Index, Index Only, Bitmap Heap)
+     */
+    public List<String> scannedRelations() {
+        return nodes.stream()
+                .filter(node -> node.type().endsWith("Scan") && node.relation() != null)
+                .map(Node::relation)
+                .distinct()
+                .toList();
+    }
+
+    public String describe() {
+        StringBuilder description = new StringBuilder(sql).append('\n');
+        for (Node node : nodes) {
+            description.append("  ").append(node.type());
+            if (node.relation() != null) {
+                description.append(" on ").append(node.relation());
+            }
+            if (node.index() != null) {
+                description.append(" using ").append(node.index());
+            }
+            description.append(" (cost=").append(node.totalCost()).append(" rows=").append(node.rows()).append(")\n");
+        }
+        return description.toString();
+    }
+
+    private static void collect(JsonNode plan, List<Node> nodes) {
+        nodes.add(new Node(
+                plan.get("Node Type").asText(),
+                plan.hasNonNull("Relation Name") ? plan.get("Relation Name").asText() : null,
+                plan.hasNonNull("Index Name") ? plan.get("Index Name").asText() : null,
+                plan.get("Total Cost").asDouble(),
+                plan.get("Plan Rows").asDouble()));
+        JsonNode children = plan.get("Plans");
+        if (children != null) {
+            for (JsonNode child : children) {
+                collect(child, nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.shop.userservice.repository;
+
+import com.shop.userservice.dto.UserSearchDto;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.repository.SqlCapture.CapturedStatement;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Регрессия планов запросов: каждый метод репозиториев выполняется на сгенерированных данных, весь SQL, который
+ * он отправил, повторяется под {@code EXPLAIN (FORMAT JSON)} с теми же параметрами. Тест падает, если план читает
+ * большую таблицу целиком (Seq Scan) или стоимость выше бюджета.
+ * <p>
+ * Бюджет не абсолютный: это доля стоимости того же выражения, спланированного без индексов
+ * ({@code enable_indexscan}, {@code enable_bitmapscan}, {@code enable_indexonlyscan} выключены) на тех же данных.
+ * Так он не зависит от объема сгенерированных данных и настроек стоимости Postgres: точечный поиск должен быть
+ * хотя бы в {@code 1 / LOOKUP_COST_SHARE} раз дешевле чтения без индекса, поиск с фильтрами - в {@code 1 / SEARCH_COST_SHARE}.
+ * Планы, которые читают только маленькие таблицы, по стоимости не проверяются.
+ * <p>
+ * Seq Scan по таблицам не больше {@link #SMALL_TABLE_PAGES} страниц допустим - на них это правильный выбор
+ * планировщика. Новый метод репозитория без кейса здесь роняет {@link #everyRepositoryMethodHasPlanCase()}.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.change-log=classpath:/db/db.changelog-master.yaml",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Import({QueryPlanRegressionTest.SqlCaptureConfig.class, KeycloakDeletionTaskRepository.class,
+        VerifyEmailTaskRepository.class, UserImportRepository.class, UserExportRepository.class})
+class QueryPlanRegressionTest {
+    private static final int USERS = 500_000;
+    private static final int QUEUED_TASKS = 20_000;
+    private static final int SMALL_TABLE_PAGES = 16;
+    private static final double LOOKUP_COST_SHARE = 0.1;
+    private static final double SEARCH_COST_SHARE = 0.5;
+    private static final UUID IMPORT_RUN_ID = UUID.randomUUID();
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private KeycloakDeletionTaskRepository keycloakDeletionTaskRepository;
+    @Autowired
+    private VerifyEmailTaskRepository verifyEmailTaskRepository;
+    @Autowired
+    private UserImportRepository userImportRepository;
+    @Autowired
+    private UserExportRepository userExportRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private User sample;
+
+    @TestConfiguration
+    static class SqlCaptureConfig {
+
+        @Bean
+        static BeanPostProcessor sqlCapturePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource target && !(bean instanceof SqlCapture) ? new SqlCapture(target) : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * @param costShare допустимая доля стоимости плана без индексов, null - стоимость не проверяется
+     * @param fullScans таблицы, которые метод читает целиком по смыслу (выгрузка, метрика очереди)
+     */
+    private record PlanCase(String name, Runnable action, Double costShare, Set<String> fullScans) {
+    }
+
+    @BeforeAll
+    void generateData() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("""
+                INSERT INTO users (user_uuid, first_name, last_name, patronymic, phone_number, email, created_at)
+                SELECT gen_random_uuid(), 'Имя' || (i % 5000), 'Фамилия' || (i % 20000), 'Отчество' || (i % 3000),
+                       '79' || lpad(i::text, 9, '0'), 'user' || i || '@example.com', now() - (i % 1000) * interval '1 day'
+                FROM generate_series(1, ?) AS i
+                """, USERS);
+        jdbcTemplate.update("""
+                INSERT INTO keycloak_deletion_tasks (user_uuid, next_attempt_at)
+                SELECT gen_random_uuid(), now() + (i % 600) * interval '1 second' FROM generate_series(1, ?) AS i
+                """, QUEUED_TASKS);
+        jdbcTemplate.update("""
+                INSERT INTO verify_email_tasks (user_uuid, username, email, next_attempt_at)
+                SELECT gen_random_uuid(), 'user' || i, 'user' || i || '@example.com', now() + (i % 600) * interval '1 second'
+                FROM generate_series(1, ?) AS i
+                """, QUEUED_TASKS);
+        jdbcTemplate.update("""
+                INSERT INTO user_import_checkpoints (import_id, status)
+                SELECT 'import-' || i, 'COMPLETED' FROM generate_series(1, 1000) AS i
+                """);
+        jdbcTemplate.execute("ANALYZE");
+
+        sample = jdbcTemplate.queryForObject("SELECT user_uuid, email, phone_number FROM users WHERE id = ?",
+                (rs, rowNum) -> User.builder()
+                        .publicId(rs.getObject("user_uuid", UUID.class))
+                        .email(rs.getString("email"))
+                        .phoneNumber(rs.getString("phone_number"))
+                        .build(),
+                USERS / 2);
+    }
+
+    private List<PlanCase> cases() {
+        UUID missing = UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+        PageRequest page = PageRequest.of(0, 20);
+
+        return List.of(
+                lookup("UserRepository.findByPublicId", () -> userRepository.findByPublicId(sample.getPublicId())),
+                lookup("UserRepository.findByEmail", () -> userRepository.findByEmail(sample.getEmail())),
+                lookup("UserRepository.findByPhoneNumber", () -> userRepository.findByPhoneNumber(sample.getPhoneNumber())),
+                lookup("UserRepository.findAllByPublicIdIn", () -> userRepository.findAllByPublicIdIn(List.of(sample.getPublicId(), missing))),
+                lookup("UserRepository.existsByPhoneNumber", () -> userRepository.existsByPhoneNumber(sample.getPhoneNumber())),
+                lookup("UserRepository.existsByEmail", () -> userRepository.existsByEmail(sample.getEmail())),
+                lookup("UserRepository.existsByPublicId", () -> userRepository.existsByPublicId(missing)),
+                lookup("UserRepository.findPublicIdsAfter", () -> userRepository.findPublicIdsAfter(sample.getPublicId(), Limit.of(100))),
+                search("UserRepository.searchUser[email]", () -> userRepository.searchUser(
+                        new UserSearchDto(null, null, null, null, "user123456@", null, null), page)),
+                search("UserRepository.searchUser[lastName]", () -> userRepository.searchUser(
+                        new UserSearchDto(null, "Фамилия1234", null, null, null, null, null), page)),
+                search("UserRepository.searchUser[phoneNumber]", () -> userRepository.searchUser(
+                        new UserSearchDto(null, null, null, sample.getPhoneNumber(), null, null, null), page)),
+                search("UserRepository.searchUser[created]", () -> userRepository.searchUser(
+                        new UserSearchDto(null, null, null, null, null, today.minusDays(1), today), page)),
+                search("UserRepository.searchUserRankedBySimilarity", () -> userRepository.searchUserRankedBySimilarity(
+                        new UserSearchDto("Имя4321", null, "Отчество123", null, null, null, null), page)),
+
+                lookup("KeycloakDeletionTaskRepository.enqueue", () -> keycloakDeletionTaskRepository.enqueue(UUID.randomUUID())),
+                lookup("KeycloakDeletionTaskRepository.enqueueAll", () -> keycloakDeletionTaskRepository.enqueueAll(
+                        List.of(UUID.randomUUID(), UUID.randomUUID()))),
+                lookup("KeycloakDeletionTaskRepository.claim", () -> keycloakDeletionTaskRepository.claim(10, Duration.ofSeconds(30))),
+                lookup("KeycloakDeletionTaskRepository.complete", () -> keycloakDeletionTaskRepository.complete(List.of(1L, 2L, 3L))),
+                lookup("KeycloakDeletionTaskRepository.reschedule", () -> keycloakDeletionTaskRepository.reschedule(
+                        List.of(new KeycloakDeletionTaskRepository.Retry(4, Duration.ofMinutes(1), "timeout")))),
+                lookup("KeycloakDeletionTaskRepository.fail", () -> keycloakDeletionTaskRepository.fail(
+                        List.of(new KeycloakDeletionTaskRepository.Failure(5, "timeout")))),
+
+                lookup("VerifyEmailTaskRepository.enqueue", () -> verifyEmailTaskRepository.enqueue(UUID.randomUUID(), "plan", "plan@example.com")),
+                lookup("VerifyEmailTaskRepository.claim", () -> verifyEmailTaskRepository.claim(10, Duration.ofSeconds(30))),
+                lookup("VerifyEmailTaskRepository.deleteByUserUUID", () -> verifyEmailTaskRepository.deleteByUserUUID(UUID.randomUUID())),
+                lookup("VerifyEmailTaskRepository.complete", () -> verifyEmailTaskRepository.complete(List.of(1L, 2L, 3L))),
+                lookup("VerifyEmailTaskRepository.reschedule", () -> verifyEmailTaskRepository.reschedule(
+                        List.of(new VerifyEmailTaskRepository.Retry(4, Duration.ofMinutes(1), "timeout")))),
+                fullScan("VerifyEmailTaskRepository.stats", "verify_email_tasks", verifyEmailTaskRepository::stats),
+
+                lookup("UserImportRepository.findCheckpoint", () -> userImportRepository.findCheckpoint("import-500")),
+                lookup("UserImportRepository.findInputFile", () -> userImportRepository.findInputFile("import-500")),
+                lookup("UserImportRepository.startCheckpoint", () -> userImportRepository.startCheckpoint("import-plan", IMPORT_RUN_ID,
+                        new UserImportRepository.InputFile(1, "0".repeat(64)), Duration.ofMinutes(15))),
+                lookup("UserImportRepository.touchCheckpoint", () -> userImportRepository.touchCheckpoint("import-plan", IMPORT_RUN_ID)),
+                lookup("UserImportRepository.saveChunk", () -> userImportRepository.saveChunk("import-plan", IMPORT_RUN_ID,
+                        List.of(User.builder().publicId(UUID.randomUUID()).firstName("Имя").lastName("Фамилия")
+                                .patronymic("Отчество").phoneNumber("70000000001").email("plan@example.com").build()),
+                        new UserImportRepository.ChunkProgress(1, 1, 0, 0))),
+                lookup("UserImportRepository.finishCheckpoint", () -> userImportRepository.finishCheckpoint("import-plan", IMPORT_RUN_ID, "COMPLETED", null)),
+                lookup("UserImportRepository.findTakenContacts", () -> userImportRepository.findTakenContacts(
+                        List.of(sample.getEmail(), "free@example.com"), List.of(sample.getPhoneNumber(), "70000000002"))),
+
+                fullScan("UserExportRepository.forEachUser", "users", () -> userExportRepository.forEachUser(user -> {}))
+        );
+    }
+
+    @TestFactory
+    Stream<DynamicTest> repositoryQueriesUseIndexes() {
+        return cases().stream().map(planCase -> DynamicTest.dynamicTest(planCase.name(), () -> {
+            List<CapturedStatement> statements = ((SqlCapture) dataSource).capture(planCase.action());
+            assertFalse(statements.isEmpty(), "No SQL captured for " + planCase.name());
+
+            for (CapturedStatement statement : statements) {
+                QueryPlan plan = explain(statement, true);
+                for (String relation : plan.seqScannedRelations()) {
+                    if (!planCase.fullScans().contains(relation) && pages(relation) > SMALL_TABLE_PAGES) {
+                        fail("%s: Seq Scan on %s (%d pages)%n%s".formatted(planCase.name(), relation, pages(relation), plan.describe()));
+                    }
+                }
+                if (planCase.costShare() == null || plan.scannedRelations().stream().allMatch(relation -> pages(relation) <= SMALL_TABLE_PAGES)) {
+                    continue;
+                }
+
+                QueryPlan withoutIndexes = explain(statement, false);
+                double budget = withoutIndexes.totalCost() * planCase.costShare();
+                assertTrue(plan.totalCost() <= budget, () -> "%s: cost %.1f exceeds budget %.1f (%.0f%% of %.1f without indexes)%n%s%s"
+                        .formatted(planCase.name(), plan.totalCost(), budget, planCase.costShare() * 100,
+                                withoutIndexes.totalCost(), plan.describe(), withoutIndexes.describe()));
+            }
+        }));
+    }
+
+    @Test
+    void everyRepositoryMethodHasPlanCase() {
+        Set<String> covered = cases().stream()
+                .map(planCase -> planCase.name().replaceAll("\\[.*]$", ""))
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        Set<String> declared = Stream.of(UserRepository.class, KeycloakDeletionTaskRepository.class,
+                        VerifyEmailTaskRepository.class, UserImportRepository.class, UserExportRepository.class)
+                .flatMap(type -> Arrays.stream(type.getDeclaredMethods())
+                        .filter(method -> Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()))
+                        .filter(method -> !method.isSynthetic())
+                        .map(Method::getName)
+                        .map(name -> type.getSimpleName() + "." + name))
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(declared, covered);
+    }
+
+    /**
+     * @param indexes false - спланировать без индексов, как если бы их не было
+     */
+    private QueryPlan explain(CapturedStatement statement, boolean indexes) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            setIndexScans(connection, indexes);
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + statement.sql())) {
+                statement.bind(explain);
+                try (ResultSet rs = explain.executeQuery()) {
+                    rs.next();
+                    return QueryPlan.parse(statement.sql(), rs.getString(1));
+                }
+            } finally {
+                setIndexScans(connection, true);
+            }
+        }
+    }
+
+    private static void setIndexScans(Connection connection, boolean enabled) throws SQLException {
+        try (Statement settings = connection.createStatement()) {
+            for (String setting : List.of("enable_indexscan", "enable_bitmapscan", "enable_indexonlyscan")) {
+                settings.execute("SET " + setting + " = " + (enabled ? "on" : "off"));
+            }
+        }
+    }
+
+    private int pages(String relation) {
+        Integer pages = jdbcTemplate.queryForObject("SELECT relpages FROM pg_class WHERE relname = ?", Integer.class, relation);
+        return pages == null ? 0 : pages;
+    }
+
+    private static PlanCase lookup(String name, Runnable action) {
+        return new PlanCase(name, action, LOOKUP_COST_SHARE, Set.of());
+    }
+
+    private static PlanCase search(String name, Runnable action) {
+        return new PlanCase(name, action, SEARCH_COST_SHARE, Set.of());
+    }
+
+    private static PlanCase fullScan(String name, String table, Runnable action) {
+        return new PlanCase(name, action, null, Set.of(table));
+    }
+}
@@ -0,0 +1,127 @@
+package com.shop.userservice.repository;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DataSource, который внутри {@link #capture(Runnable)} запоминает SQL выполненных выражений, для подготовленных -
+ * вместе с вызовами set*(index, ...). Захваченное выражение можно повторить с теми же параметрами на другом
+ * PreparedStatement, например под EXPLAIN - получается ровно тот запрос, который отправил Hibernate или JdbcTemplate.
+ * <p>
+ * Соединения оборачиваются только внутри capture, поэтому Liquibase и загрузка данных идут напрямую.
+ */
+public class SqlCapture extends DelegatingDataSource {
+    private final ThreadLocal<List<CapturedStatement>> captured = new ThreadLocal<>();
+
+    /**
+     * @param parameters вызовы set*(index, ...) в порядке выполнения; для batch - набор первой строки
+     */
+    public record CapturedStatement(String sql, List<Binding> parameters) {
+
+        public void bind(PreparedStatement statement) throws SQLException {
+            for (Binding binding : parameters) {
+                try {
+                    binding.method().invoke(statement, binding.args());
+                } catch (IllegalAccessException | InvocationTargetException exception) {
+                    throw new SQLException("Cannot replay " + binding.method().getName(), exception);
+                }
+            }
+        }
+    }
+
+    public record Binding(Method method, Object[] args) {
+    }
+
+    public SqlCapture(DataSource target) {
+        super(target);
+    }
+
+    public List<CapturedStatement> capture(Runnable action) {
+        List<CapturedStatement> statements = new ArrayList<>();
+        captured.set(statements);
+        try {
+            action.run();
+        } finally {
+            captured.remove();
+        }
+        return statements;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        List<CapturedStatement> statements = captured.get();
+        if (statements == null) {
+            return connection;
+        }
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                List<Binding> parameters = new ArrayList<>();
+                statements.add(new CapturedStatement((String) args[0], parameters));
+                return record(statement, parameters);
+            }
+            if (result instanceof Statement statement && method.getName().equals("createStatement")) {
+                return recordPlain(statement, statements);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Выражения без параметров, например JdbcTemplate.query(sql, RowCallbackHandler)
+     */
+    private static Statement recordPlain(Statement statement, List<CapturedStatement> statements) {
+        return proxy(Statement.class, statement, (proxy, method, args) -> {
+            if (method.getName().startsWith("execute") && args != null && args.length >= 1 && args[0] instanceof String sql) {
+                statements.add(new CapturedStatement(sql, List.of()));
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private static PreparedStatement record(PreparedStatement statement, List<Binding> parameters) {
+        boolean[] batched = {false};
+        return proxy(PreparedStatement.class, statement, (proxy, method, args) -> {
+            if (method.getName().equals("addBatch") && (args == null || args.length == 0)) {
+                batched[0] = true;
+            } else if (!batched[0] && method.getName().startsWith("set") && args != null && args.length >= 2
+                    && method.getParameterTypes()[0] == int.class) {
+                parameters.add(new Binding(method, args.clone()));
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SqlCapture.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException exception) {
+            throw exception.getCause();
+        }
+    }
+}
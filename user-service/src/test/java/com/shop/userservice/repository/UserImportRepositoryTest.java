@@ -0,0 +1,140 @@
+package com.shop.userservice.repository;
+
+import com.shop.userservice.entity.User;
+import com.shop.userservice.repository.UserImportRepository.ChunkProgress;
+import com.shop.userservice.repository.UserImportRepository.InputFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.liquibase.change-log=classpath:/db/db.changelog-master.yaml",
+        "spring.jpa.hibernate.ddl-auto=none"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserImportRepository.class, KeycloakDeletionTaskRepository.class})
+class UserImportRepositoryTest {
+    private static final UUID RUN_ID = UUID.randomUUID();
+    private static final InputFile FILE = new InputFile(100, "a".repeat(64));
+    private static final Duration LEASE = Duration.ofMinutes(15);
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private UserImportRepository userImportRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("TRUNCATE users, keycloak_deletion_tasks, user_import_checkpoints");
+        userImportRepository.startCheckpoint("legacy", RUN_ID, FILE, LEASE);
+    }
+
+    @Test
+    void saveChunkWhenRowsInsertedThenCountedAsImported() {
+        ChunkProgress saved = userImportRepository.saveChunk("legacy", RUN_ID, List.of(user("first"), user("second")),
+                new ChunkProgress(2, 2, 0, 0));
+
+        assertEquals(new ChunkProgress(2, 2, 0, 0), saved);
+        assertEquals(2, count("users"));
+        assertEquals(2L, userImportRepository.findCheckpoint("legacy").orElseThrow().imported());
+    }
+
+    @Test
+    void saveChunkWhenRowExistsWithSameUuidThenSkippedWithoutDeletingAccount() {
+        User existing = user("existing");
+        userImportRepository.saveChunk("legacy", RUN_ID, List.of(existing), new ChunkProgress(1, 1, 0, 0));
+
+        ChunkProgress saved = userImportRepository.saveChunk("legacy", RUN_ID, List.of(existing), new ChunkProgress(1, 1, 0, 0));
+
+        assertEquals(new ChunkProgress(1, 0, 1, 0), saved);
+        assertEquals(0, count("keycloak_deletion_tasks"));
+    }
+
+    @Test
+    void saveChunkWhenEmailTakenByConcurrentRegistrationThenSkippedAndAccountQueuedForDeletion() {
+        userImportRepository.saveChunk("legacy", RUN_ID, List.of(user("taken")), new ChunkProgress(1, 1, 0, 0));
+        User duplicate = user("taken");
+
+        ChunkProgress saved = userImportRepository.saveChunk("legacy", RUN_ID, List.of(duplicate, user("fresh")),
+                new ChunkProgress(2, 2, 0, 0));
+
+        assertEquals(new ChunkProgress(2, 1, 1, 0), saved);
+        assertEquals(List.of(duplicate.getPublicId()),
+                jdbcTemplate.queryForList("SELECT user_uuid FROM keycloak_deletion_tasks", UUID.class));
+    }
+
+    @Test
+    void startCheckpointWhenRunningWithinLeaseThenRejectAnotherRun() {
+        assertTrue(userImportRepository.startCheckpoint("legacy", UUID.randomUUID(), FILE, LEASE).isEmpty());
+        assertTrue(userImportRepository.touchCheckpoint("legacy", RUN_ID));
+    }
+
+    @Test
+    void startCheckpointWhenLeaseExpiredThenTakeOverAndFenceOldRun() {
+        jdbcTemplate.update("UPDATE user_import_checkpoints SET updated_at = now() - interval '1 hour'");
+        UUID takeover = UUID.randomUUID();
+
+        assertTrue(userImportRepository.startCheckpoint("legacy", takeover, FILE, LEASE).isPresent());
+
+        assertFalse(userImportRepository.touchCheckpoint("legacy", RUN_ID));
+        assertThrows(IllegalStateException.class,
+                () -> userImportRepository.saveChunk("legacy", RUN_ID, List.of(user("late")), new ChunkProgress(1, 1, 0, 0)));
+        assertEquals(0, count("users"));
+        userImportRepository.finishCheckpoint("legacy", RUN_ID, "FAILED", "stale");
+        assertEquals("RUNNING", userImportRepository.findCheckpoint("legacy").orElseThrow().status());
+    }
+
+    @Test
+    void startCheckpointWhenFinishedThenKeepFileOfFirstRun() {
+        userImportRepository.finishCheckpoint("legacy", RUN_ID, "FAILED", "boom");
+
+        userImportRepository.startCheckpoint("legacy", UUID.randomUUID(), new InputFile(1, "b".repeat(64)), LEASE);
+
+        assertEquals(Optional.of(FILE), userImportRepository.findInputFile("legacy"));
+    }
+
+    static User user(String name) {
+        return User.builder()
+                .publicId(UUID.randomUUID())
+                .firstName("Ivan")
+                .lastName("Ivanov")
+                .patronymic("Ivanovich")
+                .phoneNumber("+7999" + Math.abs(name.hashCode() % 10_000_000))
+                .email(name + "@example.com")
+                .build();
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Integer.class);
+    }
+}
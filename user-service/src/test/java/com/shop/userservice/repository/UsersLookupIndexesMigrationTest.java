@@ -0,0 +1,115 @@
+package com.shop.userservice.repository;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * V6 отдельно от остальных миграций: таблица users создается вручную, чтобы положить в нее дубликаты,
+ * которые схема после V6 уже не пропустит
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class UsersLookupIndexesMigrationTest {
+    private static final String CHANGELOG = "db/migration/V6__Users_lookup_indexes.yaml";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+        jdbcTemplate.execute("DROP SCHEMA public CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA public");
+        jdbcTemplate.execute("""
+                CREATE TABLE users (
+                    id BIGSERIAL PRIMARY KEY,
+                    email VARCHAR(100) NOT NULL,
+                    phone_number VARCHAR(20) NOT NULL,
+                    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """);
+    }
+
+    @Test
+    void migrateWhenDuplicateEmailExistsThenHaltBeforeBuildingIndexes() {
+        insertUser("same@example.com", "79000000001");
+        insertUser("same@example.com", "79000000002");
+
+        assertThrows(LiquibaseException.class, this::migrate);
+
+        assertEquals(List.of(), indexes());
+    }
+
+    @Test
+    void migrateWhenDuplicatePhoneExistsThenHaltBeforeBuildingIndexes() {
+        insertUser("first@example.com", "79000000001");
+        insertUser("second@example.com", "79000000001");
+
+        assertThrows(LiquibaseException.class, this::migrate);
+
+        assertEquals(List.of(), indexes());
+    }
+
+    @Test
+    void migrateWhenNoDuplicatesThenBuildValidUniqueIndexes() throws Exception {
+        insertUser("first@example.com", "79000000001");
+
+        migrate();
+
+        List<Map<String, Object>> indexes = indexes();
+        assertEquals(List.of("idx_users_created_at", "uq_users_email", "uq_users_phone_number"),
+                indexes.stream().map(index -> index.get("name")).toList());
+        assertTrue(indexes.stream().allMatch(index -> Boolean.TRUE.equals(index.get("valid"))));
+        assertEquals(List.of(false, true, true), indexes.stream().map(index -> index.get("unique")).toList());
+
+        assertThrows(DuplicateKeyException.class, () -> insertUser("first@example.com", "79000000002"));
+        assertThrows(DuplicateKeyException.class, () -> insertUser("second@example.com", "79000000001"));
+    }
+
+    private void migrate() throws LiquibaseException {
+        try (Connection connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())) {
+            Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database).update(new Contexts());
+        } catch (SQLException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private void insertUser(String email, String phoneNumber) {
+        jdbcTemplate.update("INSERT INTO users (email, phone_number) VALUES (?, ?)", email, phoneNumber);
+    }
+
+    private List<Map<String, Object>> indexes() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname AS name, i.indisunique AS unique, i.indisvalid AS valid
+                FROM pg_index i
+                JOIN pg_class c ON c.oid = i.indexrelid
+                WHERE i.indrelid = 'users'::regclass AND NOT i.indisprimary
+                ORDER BY c.relname
+                """);
+    }
+}
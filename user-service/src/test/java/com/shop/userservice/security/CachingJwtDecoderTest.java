@@ -0,0 +1,79 @@
+package com.shop.userservice.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingJwtDecoderTest {
+    @Mock
+    private JwtDecoder delegate;
+
+    private final VerifiedTokenCache cache = new VerifiedTokenCache(100, Duration.ofMinutes(5));
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject(UUID.randomUUID().toString())
+                .claim("preferred_username", "user")
+                .claim("email", "user@gmail.com")
+                .claim("spring_sec_roles", List.of("default-roles-shop", "app-user"))
+                .issuedAt(expiresAt.minus(Duration.ofHours(1)))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    @Test
+    void decodeWhenSameTokenThenVerifyOnceAndConvertOnce() {
+        Jwt jwt = jwt("token", Instant.now().plusSeconds(300));
+        when(delegate.decode("token")).thenReturn(jwt);
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, cache);
+        UserJwtConverter converter = new UserJwtConverter(cache);
+
+        AbstractAuthenticationToken first = converter.convert(decoder.decode("token"));
+        AbstractAuthenticationToken second = converter.convert(decoder.decode("token"));
+
+        verify(delegate, times(1)).decode("token");
+        assertNotSame(first, second);
+        assertSame(first.getPrincipal(), second.getPrincipal());
+        assertEquals(List.of("ROLE_USER"), second.getAuthorities().stream().map(Object::toString).toList());
+    }
+
+    @Test
+    void decodeWhenTokenExpiredThenVerifyAgain() {
+        when(delegate.decode("token")).thenReturn(jwt("token", Instant.now().minusSeconds(1)));
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, cache);
+
+        decoder.decode("token");
+        decoder.decode("token");
+
+        verify(delegate, times(2)).decode("token");
+    }
+
+    @Test
+    void decodeWhenVerificationFailsThenNotCached() {
+        when(delegate.decode("bad")).thenThrow(new BadJwtException("signature"));
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, cache);
+
+        assertThrows(BadJwtException.class, () -> decoder.decode("bad"));
+        assertThrows(BadJwtException.class, () -> decoder.decode("bad"));
+
+        verify(delegate, times(2)).decode("bad");
+    }
+}
@@ -0,0 +1,65 @@
+package com.shop.userservice.service;
+
+import com.shop.userservice.cache.TwoLevelCacheManager;
+import com.shop.userservice.cache.UserCacheNames;
+import com.shop.userservice.entity.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheServiceTest {
+    @Mock
+    private TwoLevelCacheManager cacheManager;
+
+    @InjectMocks
+    private UserCacheService userCacheService;
+
+    @Test
+    void evictUserCachesThenSingleTaggedEvictionForAllUserCaches() {
+        UUID uuid = UUID.randomUUID();
+        when(cacheManager.redisKey(anyString(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0) + "::" + invocation.getArgument(1));
+
+        userCacheService.evictUserCaches(1L, uuid, "test@gmail.com", "777777777777");
+
+        verify(cacheManager, times(1)).evictTagged(
+                List.of(UserCacheNames.userTag(1L)),
+                List.of("users:byId::1",
+                        "users:byUUID::" + uuid,
+                        "users:byEmail::test@gmail.com",
+                        "users:byPhone::777777777777"));
+    }
+
+    @Test
+    void evictUsersCachesWhenManyUsersThenEvictInBatches() {
+        when(cacheManager.redisKey(anyString(), any())).thenReturn("key");
+        List<User> users = LongStream.rangeClosed(1, 250)
+                .mapToObj(id -> User.builder().id(id).publicId(UUID.randomUUID()).build())
+                .toList();
+
+        userCacheService.evictUsersCaches(users);
+
+        verify(cacheManager).evictTagged(argThat(tags -> tags.size() == 200), any());
+        verify(cacheManager).evictTagged(argThat(tags -> tags.size() == 50), any());
+    }
+
+    @Test
+    void evictUserCachesWhenRedisFailsThenDoNotThrow() {
+        when(cacheManager.redisKey(anyString(), any())).thenReturn("key");
+        doThrow(new IllegalStateException("redis is down")).when(cacheManager).evictTagged(any(), any());
+
+        userCacheService.evictUserCaches(User.builder().id(1L).build());
+    }
+}
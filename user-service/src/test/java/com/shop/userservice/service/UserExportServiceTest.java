@@ -0,0 +1,95 @@
+package com.shop.userservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.entity.User;
+import com.shop.userservice.repository.UserExportRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class UserExportServiceTest {
+    @Mock
+    private UserExportRepository userExportRepository;
+
+    private UserExportService userExportService;
+
+    private final UUID firstUUID = UUID.fromString("550e8400-e29b-41d4-a716-446655440000");
+    private final UUID secondUUID = UUID.fromString("550e8400-e29b-41d4-a716-446655440001");
+
+    @BeforeEach
+    void setUp() {
+        userExportService = new UserExportService(userExportRepository, new ObjectMapper());
+
+        lenient().doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(User.builder().id(1L).publicId(firstUUID).firstName("Ivan").lastName("Ivanov")
+                    .patronymic("Ivanovich").phoneNumber("79990000000").email("ivan@example.com").build());
+            consumer.accept(User.builder().id(2L).publicId(secondUUID).firstName("Anna, \"Jr\"").lastName("Petrova")
+                    .patronymic("Petrovna").phoneNumber("79990000001").email("anna@example.com").build());
+            return null;
+        }).when(userExportRepository).forEachUser(any());
+    }
+
+    @Test
+    void exportNdjsonThenOneUserPerLine() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        userExportService.exportNdjson(outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(firstUUID.toString(), new ObjectMapper().readTree(lines[0]).get("userUUID").asText());
+        assertEquals("Anna, \"Jr\"", new ObjectMapper().readTree(lines[1]).get("firstName").asText());
+    }
+
+    @Test
+    void exportCsvGzipThenHeaderAndEscapedRows() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        userExportService.exportCsvGzip(outputStream);
+
+        String csv;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            csv = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\r\n");
+        assertEquals(3, lines.length);
+        assertEquals("id,userUUID,lastName,firstName,patronymic,phoneNumber,email,createdAt", lines[0]);
+        assertEquals("2,%s,Petrova,\"Anna, \"\"Jr\"\"\",Petrovna,79990000001,anna@example.com,".formatted(secondUUID), lines[2]);
+    }
+
+    @Test
+    void exportCsvGzipWhenTextStartsWithFormulaCharThenPrefixedWithQuote() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(User.builder().id(3L).publicId(firstUUID).firstName("=HYPERLINK(\"http://evil\",\"x\")")
+                    .lastName("-2+3").patronymic("@SUM(A1)").phoneNumber("+79990000002").email("\tcmd@example.com").build());
+            return null;
+        }).when(userExportRepository).forEachUser(any());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        userExportService.exportCsvGzip(outputStream);
+
+        String csv;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            csv = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("3,%s,'-2+3,\"'=HYPERLINK(\"\"http://evil\"\",\"\"x\"\")\",'@SUM(A1),+79990000002,'\tcmd@example.com,"
+                .formatted(firstUUID), csv.split("\r\n")[1]);
+    }
+}
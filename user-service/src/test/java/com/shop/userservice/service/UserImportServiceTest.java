@@ -0,0 +1,192 @@
+package com.shop.userservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.userservice.dto.UserImportStatusDto;
+import com.shop.userservice.exception.ExternalServiceUnavailableException;
+import com.shop.userservice.exception.UserDuplicateException;
+import com.shop.userservice.exception.ValidationException;
+import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.UserImportRepository;
+import com.shop.userservice.repository.UserImportRepository.ChunkProgress;
+import com.shop.userservice.repository.UserImportRepository.InputFile;
+import com.shop.userservice.repository.UserImportRepository.TakenContacts;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserImportServiceTest {
+    private static final UUID RUN_ID = UUID.randomUUID();
+
+    @Mock
+    private UserImportRepository userImportRepository;
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    @TempDir
+    private Path workDir;
+
+    private UserImportService userImportService;
+
+    @BeforeEach
+    void setUp() {
+        userImportService = new UserImportService(userImportRepository, keycloakService, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(), Runnable::run, Runnable::run, 2, false, workDir, Duration.ofMinutes(15));
+        lenient().when(userImportRepository.saveChunk(any(), any(), any(), any())).thenAnswer(invocation -> invocation.getArgument(3));
+        lenient().when(userImportRepository.findTakenContacts(any(), any())).thenReturn(new TakenContacts(Set.of(), Set.of()));
+    }
+
+    private static String line(String username, String email, String phone) {
+        return """
+                {"username":"%s","firstName":"Ivan","lastName":"Ivanov","patronymic":"Ivanovich","phoneNumber":"%s","email":"%s","password":"password123"}"""
+                .formatted(username, phone, email);
+    }
+
+    @Test
+    void importChunkThenNormalizeDedupeProvisionAndSaveWithCheckpoint() {
+        when(userImportRepository.findTakenContacts(any(), any()))
+                .thenReturn(new TakenContacts(Set.of("taken@example.com"), Set.of()));
+        String uuid = UUID.randomUUID().toString();
+        when(keycloakService.importUser(eq("ivan"), any(), any(), any(), any(), eq(false))).thenReturn(uuid);
+        when(keycloakService.importUser(eq("kc-duplicate"), any(), any(), any(), any(), anyBoolean()))
+                .thenThrow(new UserDuplicateException("User exists with same username"));
+        when(keycloakService.findImportedUser("kc-duplicate", "dup@example.com")).thenReturn(Optional.empty());
+        when(keycloakService.importUser(eq("kc-down"), any(), any(), any(), any(), anyBoolean()))
+                .thenThrow(new ExternalServiceUnavailableException("Connection service error"));
+
+        userImportService.importChunk("legacy", RUN_ID, List.of(
+                line("ivan", "ivan@example.com", "+7 (999) 000-00-00"),
+                line("same-phone", "other@example.com", "+79990000000"),
+                line("taken", "taken@example.com", "+79990000001"),
+                line("kc-duplicate", "dup@example.com", "+79990000002"),
+                line("kc-down", "down@example.com", "+79990000003"),
+                "{not json",
+                line("bad-email", "not-an-email", "+79990000004")
+        ));
+
+        verify(keycloakService, times(3)).importUser(anyString(), any(), any(), any(), any(), anyBoolean());
+        verify(userImportRepository).saveChunk(eq("legacy"), eq(RUN_ID),
+                argThat(users -> users.size() == 1
+                        && users.get(0).getPhoneNumber().equals("+79990000000")
+                        && users.get(0).getPublicId().toString().equals(uuid)),
+                eq(new ChunkProgress(7, 1, 3, 3)));
+    }
+
+    @Test
+    void importChunkWhenKeycloakUserCreatedByInterruptedRunThenAdoptItsId() {
+        String uuid = UUID.randomUUID().toString();
+        when(keycloakService.importUser(eq("resumed"), any(), any(), any(), any(), anyBoolean()))
+                .thenThrow(new UserDuplicateException("User exists with same username"));
+        when(keycloakService.findImportedUser("resumed", "resumed@example.com")).thenReturn(Optional.of(uuid));
+
+        userImportService.importChunk("legacy", RUN_ID, List.of(line("resumed", "resumed@example.com", "+79990000020")));
+
+        verify(userImportRepository).saveChunk(eq("legacy"), eq(RUN_ID),
+                argThat(users -> users.size() == 1 && users.get(0).getPublicId().toString().equals(uuid)),
+                eq(new ChunkProgress(1, 1, 0, 0)));
+    }
+
+    @Test
+    void runImportWhenCheckpointExistsThenResumeAfterProcessedLines() throws Exception {
+        Path file = Files.createTempFile(workDir, "import", ".ndjson");
+        Files.writeString(file, String.join("\n",
+                line("first", "first@example.com", "+79990000010"),
+                line("second", "second@example.com", "+79990000011"),
+                line("third", "third@example.com", "+79990000012")));
+        when(userImportRepository.findCheckpoint("legacy")).thenReturn(Optional.of(
+                new UserImportStatusDto("legacy", UserImportService.STATUS_RUNNING, 2, 2, 0, 0, null, null, null)));
+        when(userImportRepository.touchCheckpoint("legacy", RUN_ID)).thenReturn(true);
+        when(keycloakService.importUser(any(), any(), any(), any(), any(), anyBoolean())).thenReturn(UUID.randomUUID().toString());
+
+        userImportService.runImport("legacy", RUN_ID, file);
+
+        verify(keycloakService, times(1)).importUser(eq("third"), any(), any(), any(), any(), anyBoolean());
+        verify(keycloakService, never()).importUser(eq("first"), any(), any(), any(), any(), anyBoolean());
+        verify(userImportRepository).saveChunk(eq("legacy"), eq(RUN_ID), argThat(users -> users.size() == 1), eq(new ChunkProgress(1, 1, 0, 0)));
+        verify(userImportRepository).finishCheckpoint("legacy", RUN_ID, UserImportService.STATUS_COMPLETED, null);
+    }
+
+    @Test
+    void runImportWhenCheckpointTakenOverWhileQueuedThenStopWithoutImport() throws Exception {
+        Path file = Files.createTempFile(workDir, "import", ".ndjson");
+        Files.writeString(file, line("first", "first@example.com", "+79990000010"));
+        when(userImportRepository.touchCheckpoint("legacy", RUN_ID)).thenReturn(false);
+
+        userImportService.runImport("legacy", RUN_ID, file);
+
+        verifyNoInteractions(keycloakService);
+        verify(userImportRepository, never()).saveChunk(any(), any(), any(), any());
+        verify(userImportRepository, never()).finishCheckpoint(any(), any(), any(), any());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void startImportThenStartCheckpointWithFileSizeAndSha256() throws Exception {
+        byte[] body = "{}\n".getBytes(StandardCharsets.UTF_8);
+        InputFile input = new InputFile(body.length, HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)));
+        UserImportStatusDto running = new UserImportStatusDto("legacy", UserImportService.STATUS_RUNNING, 0, 0, 0, 0, null, null, null);
+        when(userImportRepository.findInputFile("legacy")).thenReturn(Optional.of(input));
+        when(userImportRepository.startCheckpoint(eq("legacy"), any(), eq(input), eq(Duration.ofMinutes(15))))
+                .thenReturn(Optional.of(running));
+        when(userImportRepository.touchCheckpoint(eq("legacy"), any())).thenReturn(true);
+
+        assertEquals(running, userImportService.startImport("legacy", new ByteArrayInputStream(body)));
+
+        verify(userImportRepository).finishCheckpoint(eq("legacy"), any(), eq(UserImportService.STATUS_COMPLETED), isNull());
+    }
+
+    @Test
+    void startImportWhenFileDiffersFromFirstRunThenReject() throws Exception {
+        when(userImportRepository.findInputFile("legacy")).thenReturn(Optional.of(new InputFile(3, "0".repeat(64))));
+
+        assertThrows(ValidationException.class,
+                () -> userImportService.startImport("legacy", new ByteArrayInputStream("{}\n".getBytes(StandardCharsets.UTF_8))));
+
+        verify(userImportRepository, never()).startCheckpoint(any(), any(), any(), any());
+        try (Stream<Path> files = Files.list(workDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void startImportWhenCheckpointRunningByAnotherRunThenReject() throws Exception {
+        when(userImportRepository.findInputFile("legacy")).thenReturn(Optional.empty());
+        when(userImportRepository.startCheckpoint(eq("legacy"), any(), any(), any())).thenReturn(Optional.empty());
+
+        assertThrows(ValidationException.class,
+                () -> userImportService.startImport("legacy", new ByteArrayInputStream("{}\n".getBytes(StandardCharsets.UTF_8))));
+
+        verify(userImportRepository, never()).finishCheckpoint(any(), any(), any(), any());
+        verifyNoInteractions(keycloakService);
+    }
+}
@@ -1,26 +1,34 @@
 package com.shop.userservice.service;
 
+import com.shop.userservice.dto.UserDeleteEvent;
 import com.shop.userservice.dto.UserRegistrationDto;
+import com.shop.userservice.dto.UserRegistrationRollbackEvent;
 import com.shop.userservice.dto.UserSearchDto;
 import com.shop.userservice.entity.User;
 import com.shop.userservice.exception.IternalServerError;
 import com.shop.userservice.exception.UserDuplicateException;
 import com.shop.userservice.exception.UserNotFoundException;
 import com.shop.userservice.keycloak.KeycloakService;
+import com.shop.userservice.repository.KeycloakDeletionTaskRepository;
 import com.shop.userservice.repository.UserRepository;
+import com.shop.userservice.repository.VerifyEmailTaskRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -37,6 +45,18 @@ class UserServiceTest {
     @Mock
     private KeycloakService keycloakService;
 
+    @Mock
+    private UserCacheService userCacheService;
+
+    @Mock
+    private KeycloakDeletionTaskRepository keycloakDeletionTaskRepository;
+
+    @Mock
+    private VerifyEmailTaskRepository verifyEmailTaskRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserService userService;
 
@@ -112,7 +132,19 @@ class UserServiceTest {
         verify(keycloakService).createUser(any(), any(), any(), any(), any());
         verify(userRepository).existsByEmail(any());
         verify(userRepository).existsByPhoneNumber(any());
-        verify(keycloakService).deleteUserByUUID(userUUID);
+        verify(eventPublisher).publishEvent(new UserRegistrationRollbackEvent(UUID.fromString(userUUID), "test"));
+        verify(keycloakService, never()).deleteUserByUUID(any());
+        verifyNoInteractions(keycloakDeletionTaskRepository);
+    }
+
+    @Test
+    void handleUserRegistrationRollbackEventThenEnqueueKeycloakDeletion() {
+        UUID userUUID = UUID.randomUUID();
+
+        userService.handleUserRegistrationRollbackEvent(new UserRegistrationRollbackEvent(userUUID, "test"));
+
+        verify(keycloakDeletionTaskRepository).enqueue(userUUID);
+        verifyNoInteractions(keycloakService);
     }
 
     @Test
@@ -164,7 +196,7 @@ class UserServiceTest {
                 .id(1L)
                 .build();
 
-        when(userRepository.findByUserUUID(uuid)).thenReturn(Optional.of(user));
+        when(userRepository.findByPublicId(uuid)).thenReturn(Optional.of(user));
 
         User result = userService.getUserByUUID(uuid);
 
@@ -175,12 +207,49 @@ class UserServiceTest {
     void getUserByUUIDWhenUserByUUIDDoesNotExistThenThrowUserNotFoundException() {
         UUID uuid = UUID.randomUUID();
 
-        when(userRepository.findByUserUUID(uuid)).thenReturn(Optional.empty());
+        when(userRepository.findByPublicId(uuid)).thenReturn(Optional.empty());
 
         assertThrows(UserNotFoundException.class,
                 () -> userService.getUserByUUID(uuid));
     }
 
+    @Test
+    void getUsersByUUIDsWhenPartiallyCachedThenLoadOnlyMissesWithSingleQuery() {
+        UUID cachedUUID = UUID.randomUUID();
+        UUID loadedUUID = UUID.randomUUID();
+        UUID missingUUID = UUID.randomUUID();
+        User cachedUser = User.builder().id(1L).publicId(cachedUUID).build();
+        User loadedUser = User.builder().id(2L).publicId(loadedUUID).build();
+        Set<UUID> misses = new LinkedHashSet<>(List.of(loadedUUID, missingUUID));
+
+        when(userCacheService.getCachedUsersByUUID(any()))
+                .thenReturn(new UserCacheService.CachedUsers(Map.of(cachedUUID, cachedUser), misses));
+        when(userRepository.findAllByPublicIdIn(misses)).thenReturn(List.of(loadedUser));
+
+        Map<UUID, User> result = userService.getUsersByUUIDs(List.of(loadedUUID, cachedUUID, missingUUID, cachedUUID));
+
+        assertEquals(List.of(loadedUUID, cachedUUID), List.copyOf(result.keySet()));
+        assertEquals(cachedUser, result.get(cachedUUID));
+        assertEquals(loadedUser, result.get(loadedUUID));
+        verify(userRepository, times(1)).findAllByPublicIdIn(any());
+        verify(userCacheService).cacheUsersByUUID(misses, List.of(loadedUser));
+    }
+
+    @Test
+    void getUsersByUUIDsWhenAllCachedThenDoNotQueryDatabase() {
+        UUID uuid = UUID.randomUUID();
+        User user = User.builder().id(1L).publicId(uuid).build();
+
+        when(userCacheService.getCachedUsersByUUID(any()))
+                .thenReturn(new UserCacheService.CachedUsers(Map.of(uuid, user), Set.of()));
+
+        Map<UUID, User> result = userService.getUsersByUUIDs(List.of(uuid));
+
+        assertEquals(Map.of(uuid, user), result);
+        verify(userRepository, never()).findAllByPublicIdIn(any());
+        verify(userCacheService, never()).cacheUsersByUUID(any(), any());
+    }
+
     @Test
     void getUserByIdWhenUserByIdExist() {
         Long id = 1L;
@@ -264,7 +333,7 @@ class UserServiceTest {
         UUID uuid = UUID.randomUUID();
         User user = User.builder()
                 .id(1L)
-                .userUUID(uuid)
+                .publicId(uuid)
                 .build();
 
         when(userRepository.findById(id)).thenReturn(Optional.of(user));
@@ -273,7 +342,10 @@ class UserServiceTest {
 
         verify(userRepository).findById(id);
         verify(userRepository).delete(user);
-        verify(keycloakService).deleteUserByUUID(uuid.toString());
+        verify(keycloakDeletionTaskRepository).enqueue(uuid);
+        verify(verifyEmailTaskRepository).deleteByUserUUID(uuid);
+        verify(eventPublisher).publishEvent(any(UserDeleteEvent.class));
+        verifyNoInteractions(keycloakService);
     }
 
     @Test
@@ -330,14 +402,28 @@ class UserServiceTest {
 
         assertEquals(userPage, result);
     }
-}
-
-
-
 
+    @Test
+    void searchUserByFilterWhenRankBySimilarity() {
+        User user = User.builder()
+                .id(1L)
+                .build();
 
+        Pageable pageable = PageRequest.of(0, 5);
 
+        Page<User> userPage = new PageImpl<>(
+                List.of(user),
+                pageable,
+                1
+        );
 
+        UserSearchDto searchDto = new UserSearchDto("user", null, null, null, null, null, null);
 
+        when(userRepository.searchUserRankedBySimilarity(searchDto, pageable)).thenReturn(userPage);
 
+        Page<User> result = userService.searchUserByFilter(searchDto, pageable, true);
 
+        assertEquals(userPage, result);
+        verify(userRepository, never()).searchUser(any(), any());
+    }
+}